@@ -19,19 +19,28 @@ package org.fcrepo.api;
 import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM_TYPE;
 import static javax.ws.rs.core.Response.created;
 import static javax.ws.rs.core.Response.noContent;
+import static org.fcrepo.utils.ResourceMetadataCache.CONTENT;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -52,9 +61,14 @@ import org.fcrepo.AbstractResource;
 import org.fcrepo.Datastream;
 import org.fcrepo.api.rdf.HttpGraphSubjects;
 import org.fcrepo.exception.InvalidChecksumException;
+import org.fcrepo.http.DigestHeaders;
 import org.fcrepo.http.Range;
+import org.fcrepo.responses.FileChannelStreamingOutput;
+import org.fcrepo.responses.MultipartByteRangesStreamingOutput;
 import org.fcrepo.responses.RangeRequestInputStream;
 import org.fcrepo.session.InjectedSession;
+import org.fcrepo.utils.ResourceMetadata;
+import org.fcrepo.utils.ResourceMetadataCache;
 import org.modeshape.jcr.api.JcrConstants;
 import org.slf4j.Logger;
 import org.springframework.context.annotation.Scope;
@@ -73,6 +87,8 @@ public class FedoraContent extends AbstractResource {
 
     public static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
     public static final int PARTIAL_CONTENT = 206;
+
+    private static final String RFC_1123_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
     @InjectedSession
     protected Session session;
 
@@ -91,6 +107,9 @@ public class FedoraContent extends AbstractResource {
             @PathParam("path") final List<PathSegment> pathList,
             @QueryParam("checksum") final String checksum,
             @HeaderParam("Content-Type") final MediaType requestContentType,
+            @HeaderParam("Content-Length") final Long requestContentLength,
+            @HeaderParam("Content-MD5") final String contentMD5,
+            @HeaderParam("Digest") final String digest,
             final InputStream requestBodyStream)
         throws IOException, InvalidChecksumException, RepositoryException,
         URISyntaxException {
@@ -112,13 +131,16 @@ public class FedoraContent extends AbstractResource {
             if (checksum != null && !checksum.equals("")) {
                 checksumURI = new URI(checksum);
             } else {
-                checksumURI = null;
+                checksumURI = checksumOf(contentMD5, digest);
             }
 
             final Node datastreamNode =
                     datastreamService.createDatastreamNode(session, path,
                             contentType.toString(), requestBodyStream,
-                            checksumURI);
+                            checksumURI, contentLength(requestContentLength));
+            // only save once the content has been verified
+            session.save();
+            getResourceMetadataCache().invalidate(path);
 
             final HttpGraphSubjects subjects =
                     new HttpGraphSubjects(FedoraNodes.class, uriInfo);
@@ -129,7 +151,6 @@ public class FedoraContent extends AbstractResource {
                             .getURI())).build();
 
         } finally {
-            session.save();
             session.logout();
         }
     }
@@ -139,6 +160,9 @@ public class FedoraContent extends AbstractResource {
      * 
      * @param pathList
      * @param requestContentType Content-Type header
+     * @param requestContentLength Content-Length header
+     * @param contentMD5 Content-MD5 header
+     * @param digest Digest header
      * @param requestBodyStream Binary blob
      * @return 201 Created
      * @throws RepositoryException
@@ -152,6 +176,12 @@ public class FedoraContent extends AbstractResource {
             final List<PathSegment> pathList,
             @HeaderParam("Content-Type")
             final MediaType requestContentType,
+            @HeaderParam("Content-Length")
+            final Long requestContentLength,
+            @HeaderParam("Content-MD5")
+            final String contentMD5,
+            @HeaderParam("Digest")
+            final String digest,
             final InputStream requestBodyStream,
             @Context
             final Request request) throws RepositoryException, IOException,
@@ -183,9 +213,12 @@ public class FedoraContent extends AbstractResource {
             logger.debug("create Datastream {}", path);
             final Node datastreamNode =
                     datastreamService.createDatastreamNode(session, path,
-                            contentType.toString(), requestBodyStream);
+                            contentType.toString(), requestBodyStream,
+                            checksumOf(contentMD5, digest),
+                            contentLength(requestContentLength));
             final boolean isNew = datastreamNode.isNew();
             session.save();
+            getResourceMetadataCache().invalidate(path);
 
             if (isNew) {
                 final HttpGraphSubjects subjects =
@@ -217,14 +250,49 @@ public class FedoraContent extends AbstractResource {
     public Response getContent(
             @PathParam("path") final List<PathSegment> pathList,
             @HeaderParam("Range") String rangeValue,
+            @HeaderParam("If-Range") final String ifRangeValue,
             @Context final Request request)
         throws RepositoryException, IOException {
 
         try {
             final String path = toPath(pathList);
+
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(0);
+            cc.setMustRevalidate(true);
+
+            // most requests are revalidations, which we may be able to
+            // answer without loading the datastream at all
+            final ResourceMetadataCache metadataCache =
+                    getResourceMetadataCache();
+            final boolean cacheable = metadataCache.isCurrentFor(session);
+            final ResourceMetadata cached =
+                    cacheable ? metadataCache.get(path, CONTENT) : null;
+            if (cached != null && cached.getDigest() != null &&
+                    cached.getLastModifiedDate() != null) {
+                final EntityTag etag = new EntityTag(cached.getDigest());
+                final Date date = cached.getLastModifiedDate();
+                final Date roundedDate = new Date();
+                roundedDate.setTime(date.getTime() - date.getTime() % 1000);
+                final ResponseBuilder builder =
+                        request.evaluatePreconditions(roundedDate, etag);
+                if (builder != null) {
+                    return builder.type(cached.getMimeType())
+                               .header("Accept-Ranges", "bytes")
+                               .cacheControl(cc)
+                               .lastModified(date)
+                               .tag(etag)
+                               .build();
+                }
+            }
+
+            final long generation = metadataCache.generation();
             final Datastream ds =
                     datastreamService.getDatastream(session, path);
-
+            if (cacheable) {
+                metadataCache.put(path, CONTENT, ResourceMetadata.of(ds),
+                        generation);
+            }
 
             final EntityTag etag =
                     new EntityTag(ds.getContentDigest().toString());
@@ -234,50 +302,92 @@ public class FedoraContent extends AbstractResource {
             ResponseBuilder builder =
                     request.evaluatePreconditions(roundedDate, etag);
 
-            final CacheControl cc = new CacheControl();
-            cc.setMaxAge(0);
-            cc.setMustRevalidate(true);
-
             if (builder == null) {
 
-                final InputStream content = ds.getContent();
+                // send content from a local file straight from the
+                // filesystem, if we can, and otherwise only open the
+                // content (seekably, if it's chunked) once we know some of
+                // it is going to be sent
+                final File file = datastreamService.getContentFile(ds);
 
-                if (rangeValue != null && rangeValue.startsWith("bytes")) {
+                final boolean rangeRequested =
+                        rangeValue != null && rangeValue.startsWith("bytes") &&
+                                ifRangeMatches(ifRangeValue, etag,
+                                        roundedDate);
+                final List<Range> ranges =
+                        rangeRequested ? Range.convertAll(rangeValue) : null;
 
-                    final Range range = Range.convert(rangeValue);
+                if (ranges != null && ranges.size() > 1) {
 
                     final long contentSize = ds.getContentSize();
+                    final List<Range> satisfiable =
+                            new ArrayList<>(ranges.size());
+                    for (final Range range : ranges) {
+                        final Range resolved = range.resolve(contentSize);
+                        if (resolved != null) {
+                            satisfiable.add(resolved);
+                        }
+                    }
 
-                    final String endAsString;
-
-                    if (range.end() == -1) {
-                        endAsString = Long.toString(contentSize - 1);
-                    }  else {
-                        endAsString = Long.toString(range.end());
+                    if (satisfiable.isEmpty()) {
+                        builder =
+                            Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                                    .header("Content-Range",
+                                            "bytes */" + contentSize);
+                    } else {
+                        final MultipartByteRangesStreamingOutput parts =
+                            file == null ?
+                            new MultipartByteRangesStreamingOutput(
+                                    datastreamService.getContent(ds),
+                                    satisfiable, contentSize,
+                                    ds.getMimeType()) :
+                            new MultipartByteRangesStreamingOutput(file,
+                                    satisfiable, contentSize,
+                                    ds.getMimeType());
+                        return Response.status(PARTIAL_CONTENT)
+                                   .entity(parts)
+                                   .type(parts.getMediaType())
+                                   .header("Accept-Ranges", "bytes")
+                                   .cacheControl(cc)
+                                   .lastModified(date)
+                                   .tag(etag)
+                                   .build();
                     }
 
-                    final String contentRangeValue =
-                        String.format("bytes %s-%s/%s",
-                                         range.start(),
-                                         endAsString,
-                                         contentSize);
+                } else if (ranges != null) {
 
-                    if (range.end() > contentSize || (range.end() == -1 && range.start() > contentSize)) {
-                        builder = Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
-                                      .header("Content-Range", contentRangeValue);
+                    final long contentSize = ds.getContentSize();
+                    // resolved just as each of several ranges is above
+                    final Range range = ranges.get(0).resolve(contentSize);
+
+                    if (range == null) {
+                        builder =
+                            Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                                    .header("Content-Range",
+                                            "bytes */" + contentSize);
                     } else {
-                        final RangeRequestInputStream rangeInputStream =
-                            new RangeRequestInputStream(content,
+                        final Object rangeEntity = file == null ?
+                            new RangeRequestInputStream(
+                                    datastreamService.getContent(ds),
+                                                           range.start(),
+                                                           range.size()) :
+                            new FileChannelStreamingOutput(file,
                                                            range.start(),
                                                            range.size());
 
                         builder = Response.status(PARTIAL_CONTENT)
-                                      .entity(rangeInputStream)
-                                      .header("Content-Range", contentRangeValue);
+                                      .entity(rangeEntity)
+                                      .header("Content-Range",
+                                              String.format("bytes %s-%s/%s",
+                                                      range.start(),
+                                                      range.end(),
+                                                      contentSize));
                     }
 
                 } else {
-                    builder = Response.ok(content);
+                    builder = Response.ok(file == null ? datastreamService
+                            .getContent(ds) : new FileChannelStreamingOutput(
+                            file));
                 }
             }
 
@@ -292,4 +402,123 @@ public class FedoraContent extends AbstractResource {
         }
     }
 
+    /**
+     * Get the headers of the binary content of a datastream, from its
+     * metadata alone (without opening the content)
+     *
+     * @param pathList
+     * @param request
+     * @return
+     * @throws RepositoryException
+     */
+    @HEAD
+    @Timed
+    public Response headContent(
+            @PathParam("path") final List<PathSegment> pathList,
+            @Context final Request request) throws RepositoryException {
+
+        try {
+            final String path = toPath(pathList);
+            final ResourceMetadata metadata = getMetadata(path);
+
+            final EntityTag etag = new EntityTag(metadata.getDigest());
+            final Date date = metadata.getLastModifiedDate();
+            final Date roundedDate = new Date();
+            roundedDate.setTime(date.getTime() - date.getTime() % 1000);
+            ResponseBuilder builder =
+                    request.evaluatePreconditions(roundedDate, etag);
+
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(0);
+            cc.setMustRevalidate(true);
+
+            if (builder == null) {
+                builder = Response.ok().header("Content-Length",
+                        metadata.getSize());
+            }
+
+            return builder.type(metadata.getMimeType())
+                       .header("Accept-Ranges", "bytes")
+                       .cacheControl(cc)
+                       .lastModified(date)
+                       .tag(etag)
+                       .build();
+        } finally {
+            session.logout();
+        }
+    }
+
+    /**
+     * Get the metadata of a datastream, from the cache if we can
+     */
+    private ResourceMetadata getMetadata(final String path)
+        throws RepositoryException {
+        final ResourceMetadataCache metadataCache =
+                getResourceMetadataCache();
+        final boolean cacheable = metadataCache.isCurrentFor(session);
+        final ResourceMetadata cached =
+                cacheable ? metadataCache.get(path, CONTENT) : null;
+        if (cached != null && cached.getDigest() != null &&
+                cached.getLastModifiedDate() != null) {
+            return cached;
+        }
+
+        final long generation = metadataCache.generation();
+        final ResourceMetadata metadata =
+                ResourceMetadata.of(datastreamService.getDatastream(session,
+                        path));
+        if (cacheable) {
+            metadataCache.put(path, CONTENT, metadata, generation);
+        }
+        return metadata;
+    }
+
+    /**
+     * Whether a Range request should be honoured, given its If-Range header:
+     * only if the representation is still the one identified by the
+     * (strong) entity tag or exact last-modified date the client sent
+     *
+     * @param ifRangeValue the If-Range header, or null if there isn't one
+     * @param etag
+     * @param lastModified
+     * @return
+     */
+    private boolean ifRangeMatches(final String ifRangeValue,
+            final EntityTag etag, final Date lastModified) {
+        if (ifRangeValue == null) {
+            return true;
+        }
+        final String ifRange = ifRangeValue.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals("\"" + etag.getValue() + "\"");
+        }
+        final SimpleDateFormat format =
+                new SimpleDateFormat(RFC_1123_DATE, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(ifRange).equals(lastModified);
+        } catch (final ParseException e) {
+            logger.debug("Ignoring unparseable If-Range {}", ifRange);
+            return false;
+        }
+    }
+
+    /**
+     * The checksum a request body was sent with, from its Digest or (failing
+     * that) Content-MD5 header, or null if it has neither
+     */
+    private static URI checksumOf(final String contentMD5,
+            final String digest) {
+        final URI fromDigest = DigestHeaders.fromDigest(digest);
+        return fromDigest != null ? fromDigest : DigestHeaders
+                .fromContentMD5(contentMD5);
+    }
+
+    /**
+     * The declared size of a request body, or -1 if it wasn't declared
+     * (e.g. a chunked upload)
+     */
+    private static long contentLength(final Long requestContentLength) {
+        return requestContentLength == null ? -1L : requestContentLength;
+    }
 }
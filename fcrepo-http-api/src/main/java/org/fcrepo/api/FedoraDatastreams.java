@@ -16,9 +16,12 @@
 
 package org.fcrepo.api;
 
-import static javax.ws.rs.core.MediaType.MULTIPART_FORM_DATA;
 import static javax.ws.rs.core.Response.created;
 import static javax.ws.rs.core.Response.noContent;
+import static org.fcrepo.responses.ArchiveStreamingOutput.APPLICATION_TAR_TYPE;
+import static org.fcrepo.responses.ArchiveStreamingOutput.APPLICATION_ZIP_TYPE;
+import static org.fcrepo.utils.ResourceMetadataCache.DATASTREAMS;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
@@ -50,19 +53,25 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
 
 import org.fcrepo.AbstractResource;
 import org.fcrepo.Datastream;
+import org.fcrepo.StagedContent;
 import org.fcrepo.api.rdf.HttpGraphSubjects;
 import org.fcrepo.exception.InvalidChecksumException;
+import org.fcrepo.responses.ArchiveStreamingOutput;
+import org.fcrepo.responses.BundleEntry;
+import org.fcrepo.responses.MultipartMixedStreamingOutput;
 import org.fcrepo.session.InjectedSession;
 import org.fcrepo.utils.ContentDigest;
+import org.fcrepo.utils.ResourceMetadata;
+import org.fcrepo.utils.ResourceMetadataCache;
 import org.slf4j.Logger;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.codahale.metrics.annotation.Timed;
-import com.sun.jersey.core.header.ContentDisposition;
 import com.sun.jersey.multipart.BodyPart;
 import com.sun.jersey.multipart.BodyPartEntity;
 import com.sun.jersey.multipart.MultiPart;
@@ -81,6 +90,13 @@ public class FedoraDatastreams extends AbstractResource {
 
     private final Logger logger = getLogger(FedoraDatastreams.class);
 
+    private static final MediaType MULTIPART_MIXED_TYPE = MediaType
+            .valueOf("multipart/mixed");
+
+    private static final List<Variant> BUNDLE_VARIANTS = Variant.mediaTypes(
+            MULTIPART_MIXED_TYPE, APPLICATION_ZIP_TYPE, APPLICATION_TAR_TYPE)
+            .add().build();
+
     /**
      * Update the content of multiple datastreams from a multipart POST. The
      * datastream to update is given by the name of the content disposition.
@@ -110,6 +126,10 @@ public class FedoraDatastreams extends AbstractResource {
                 nodeService.deleteObject(session, path + "/" + dsid);
             }
 
+            // create the nodes here, store all their binaries at once, then
+            // attach them and save
+            final List<StagedContent> staged =
+                    new ArrayList<>(multipart.getBodyParts().size());
             for (final BodyPart part : multipart.getBodyParts()) {
                 final String dsid =
                         part.getContentDisposition().getParameters()
@@ -125,11 +145,14 @@ public class FedoraDatastreams extends AbstractResource {
                 } else if (obj instanceof InputStream) {
                     src = (InputStream) obj;
                 }
-                datastreamService.createDatastreamNode(session, dsPath, part
-                        .getMediaType().toString(), src);
+                staged.add(datastreamService.stageDatastreamContent(session,
+                        dsPath, part.getMediaType().toString(), src, null,
+                        -1L));
             }
+            datastreamService.setStagedContents(staged);
 
             session.save();
+            getResourceMetadataCache().invalidateTree(path);
 
             final HttpGraphSubjects subjects =
                     new HttpGraphSubjects(FedoraNodes.class, uriInfo);
@@ -164,6 +187,7 @@ public class FedoraDatastreams extends AbstractResource {
                 nodeService.deleteObject(session, path + "/" + dsid);
             }
             session.save();
+            getResourceMetadataCache().invalidateTree(path);
             return noContent().build();
         } finally {
             session.logout();
@@ -172,7 +196,8 @@ public class FedoraDatastreams extends AbstractResource {
 
     /**
      * Retrieve multiple datastream bitstreams in a single request as a
-     * multipart/mixed response.
+     * multipart/mixed response, or as a zip or tar archive. Each datastream's
+     * content is only opened when it is written to the response.
      * 
      * @param pathList
      * @param requestedDsids
@@ -183,7 +208,7 @@ public class FedoraDatastreams extends AbstractResource {
      * @throws NoSuchAlgorithmException
      */
     @GET
-    @Produces("multipart/mixed")
+    @Produces({"multipart/mixed", "application/zip", "application/x-tar"})
     @Timed
     public Response getDatastreamsContents(@PathParam("path")
             final List<PathSegment> pathList,
@@ -197,6 +222,40 @@ public class FedoraDatastreams extends AbstractResource {
 
         try {
             final String path = toPath(pathList);
+
+            final Variant variant = request.selectVariant(BUNDLE_VARIANTS);
+            final MediaType bundleType =
+                    variant == null ? MULTIPART_MIXED_TYPE : variant
+                            .getMediaType();
+
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(0);
+            cc.setMustRevalidate(true);
+
+            // the aggregate of all the datastreams can be revalidated
+            // without loading any of them
+            final ResourceMetadataCache metadataCache =
+                    getResourceMetadataCache();
+            final boolean cacheable =
+                    requestedDsids.isEmpty() &&
+                            metadataCache.isCurrentFor(session);
+            final ResourceMetadata cached =
+                    cacheable ? metadataCache.get(path, DATASTREAMS) : null;
+            if (cached != null) {
+                final EntityTag etag =
+                        bundleTag(cached.getDigest(), bundleType);
+                final Date date = cached.getLastModifiedDate();
+                final Date roundedDate = new Date();
+                roundedDate.setTime(date.getTime() - date.getTime() % 1000);
+                final Response.ResponseBuilder builder =
+                        request.evaluatePreconditions(roundedDate, etag);
+                if (builder != null) {
+                    return builder.cacheControl(cc).lastModified(date).tag(
+                            etag).header("Vary", "Accept").build();
+                }
+            }
+            final long generation = metadataCache.generation();
+
             // TODO: wrap some of this JCR logic in an fcrepo abstraction;
 
             final Node node = nodeService.getObject(session, path).getNode();
@@ -238,7 +297,13 @@ public class FedoraDatastreams extends AbstractResource {
 
             final URI digestURI =
                     ContentDigest.asURI(digest.getAlgorithm(), digest.digest());
-            final EntityTag etag = new EntityTag(digestURI.toString());
+            final EntityTag etag =
+                    bundleTag(digestURI.toString(), bundleType);
+            if (cacheable) {
+                metadataCache.put(path, DATASTREAMS, new ResourceMetadata(
+                        date, null, digestURI.toString(), -1, null),
+                        generation);
+            }
 
             final Date roundedDate = new Date();
             roundedDate.setTime(date.getTime() - date.getTime() % 1000);
@@ -246,33 +311,40 @@ public class FedoraDatastreams extends AbstractResource {
             Response.ResponseBuilder builder =
                     request.evaluatePreconditions(roundedDate, etag);
 
-            final CacheControl cc = new CacheControl();
-            cc.setMaxAge(0);
-            cc.setMustRevalidate(true);
-
             if (builder == null) {
-                final MultiPart multipart = new MultiPart();
-
+                final List<BundleEntry> entries =
+                        new ArrayList<>(datastreams.size());
                 for (final Datastream ds : datastreams) {
-                    final BodyPart bodyPart =
-                            new BodyPart(ds.getContent(), MediaType.valueOf(ds
-                                    .getMimeType()));
-                    bodyPart.setContentDisposition(ContentDisposition.type(
-                            "attachment").fileName(ds.getPath()).creationDate(
-                            ds.getCreatedDate()).modificationDate(
-                            ds.getLastModifiedDate()).size(ds.getContentSize())
-                            .build());
-                    multipart.bodyPart(bodyPart);
+                    entries.add(BundleEntry.of(ds));
                 }
 
-                builder = Response.ok(multipart, MULTIPART_FORM_DATA);
+                if (MULTIPART_MIXED_TYPE.equals(bundleType)) {
+                    final MultipartMixedStreamingOutput parts =
+                            new MultipartMixedStreamingOutput(entries);
+                    builder = Response.ok(parts, parts.getMediaType());
+                } else {
+                    builder =
+                            Response.ok(new ArchiveStreamingOutput(entries,
+                                    bundleType), bundleType);
+                }
             }
 
             return builder.cacheControl(cc).lastModified(date).tag(etag)
-                    .build();
+                    .header("Vary", "Accept").build();
 
         } finally {
             session.logout();
         }
     }
+
+    /**
+     * The tag for one format of a bundle. The multipart form keeps the bare
+     * digest of the datastreams; archives get their own, so a cache never
+     * answers a request for one format with another.
+     */
+    private static EntityTag bundleTag(final String digest,
+            final MediaType bundleType) {
+        return new EntityTag(MULTIPART_MIXED_TYPE.equals(bundleType) ? digest
+                : digest + "+" + bundleType.getSubtype());
+    }
 }
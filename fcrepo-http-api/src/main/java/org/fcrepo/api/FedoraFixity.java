@@ -29,10 +29,12 @@ import java.util.List;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.Request;
@@ -67,7 +69,11 @@ public class FedoraFixity extends AbstractResource {
      *
      * GET /path/to/some/datastream/fcr:fixity
      *
+     * Recent results are answered from the fixity result cache; add
+     * ?force=true to re-read every copy of the content.
+     *
      * @param pathList
+     * @param force
      * @param request
      * @param uriInfo
      * @return
@@ -79,6 +85,9 @@ public class FedoraFixity extends AbstractResource {
             TEXT_HTML})
     public Dataset getDatastreamFixity(@PathParam("path")
             final List<PathSegment> pathList,
+            @QueryParam("force")
+            @DefaultValue("false")
+            final boolean force,
             @Context
             final Request request,
             @Context
@@ -92,7 +101,7 @@ public class FedoraFixity extends AbstractResource {
 
             return datastreamService.getFixityResultsModel(
                     new HttpGraphSubjects(FedoraNodes.class, uriInfo),
-                    ds);
+                    ds, force);
         } finally {
             session.logout();
         }
@@ -17,6 +17,7 @@
 package org.fcrepo.api;
 
 import static javax.ws.rs.core.Response.created;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
@@ -98,6 +99,7 @@ public class FedoraImport extends AbstractResource {
             serializers.getSerializer(format)
                     .deserialize(session, path, stream);
             session.save();
+            getResourceMetadataCache().invalidateTree(path);
             return created(
                     new URI(subjects.getGraphSubject(session.getNode(path))
                             .getURI())).build();
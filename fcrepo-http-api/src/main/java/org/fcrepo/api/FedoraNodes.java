@@ -16,7 +16,9 @@
 
 package org.fcrepo.api;
 
+import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
 import static javax.ws.rs.core.MediaType.TEXT_HTML;
+import static javax.ws.rs.core.MediaType.TEXT_HTML_TYPE;
 import static javax.ws.rs.core.Response.created;
 import static javax.ws.rs.core.Response.noContent;
 import static javax.ws.rs.core.Response.status;
@@ -25,22 +27,42 @@ import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
 import static org.apache.http.HttpStatus.SC_CONFLICT;
 import static org.apache.http.HttpStatus.SC_NO_CONTENT;
 import static org.apache.jena.riot.WebContent.contentTypeSPARQLUpdate;
+import static org.fcrepo.RdfLexicon.NEXT_PAGE;
+import static org.fcrepo.RdfLexicon.PAGE;
+import static org.fcrepo.RdfLexicon.PAGE_OF;
 import static org.fcrepo.http.RDFMediaType.N3;
+import static org.fcrepo.http.RDFMediaType.N3_TYPE;
 import static org.fcrepo.http.RDFMediaType.N3_ALT1;
+import static org.fcrepo.http.RDFMediaType.N3_ALT1_TYPE;
 import static org.fcrepo.http.RDFMediaType.N3_ALT2;
+import static org.fcrepo.http.RDFMediaType.N3_ALT2_TYPE;
 import static org.fcrepo.http.RDFMediaType.NTRIPLES;
+import static org.fcrepo.http.RDFMediaType.NTRIPLES_TYPE;
 import static org.fcrepo.http.RDFMediaType.RDF_JSON;
+import static org.fcrepo.http.RDFMediaType.RDF_JSON_TYPE;
 import static org.fcrepo.http.RDFMediaType.RDF_XML;
+import static org.fcrepo.http.RDFMediaType.RDF_XML_TYPE;
 import static org.fcrepo.http.RDFMediaType.TURTLE;
+import static org.fcrepo.http.RDFMediaType.TURTLE_TYPE;
+import static org.fcrepo.rdf.DescriptionSection.CHILDREN;
+import static org.fcrepo.rdf.DescriptionSection.SERVICES;
 import static org.fcrepo.rdf.GraphProperties.PROBLEMS_MODEL_NAME;
+import static org.fcrepo.rdf.SerializationUtils.unifyDatasetModel;
+import static org.fcrepo.responses.RdfStreamingOutput.isStreamable;
+import static org.fcrepo.utils.ResourceMetadataCache.RESOURCE;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -48,6 +70,7 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -63,22 +86,38 @@ import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 
 import org.apache.commons.io.IOUtils;
 import org.fcrepo.AbstractResource;
 import org.fcrepo.FedoraResource;
 import org.fcrepo.api.rdf.HttpGraphSubjects;
 import org.fcrepo.exception.InvalidChecksumException;
+import org.fcrepo.http.Prefer;
+import org.fcrepo.rdf.DescriptionSection;
+import org.fcrepo.responses.RdfStreamingOutput;
 import org.fcrepo.session.InjectedSession;
+import org.fcrepo.utils.ChildCursor;
 import org.fcrepo.utils.FedoraJcrTypes;
+import org.fcrepo.utils.ResourceMetadata;
+import org.fcrepo.utils.ResourceMetadataCache;
 import org.slf4j.Logger;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetFactory;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.sun.jersey.spi.CloseableService;
 
 /**
  * CRUD operations on Fedora Nodes
@@ -91,16 +130,30 @@ public class FedoraNodes extends AbstractResource {
     @InjectedSession
     protected Session session;
 
+    @Context
+    private CloseableService closeables;
+
     private static final Logger logger = getLogger(FedoraNodes.class);
 
+    private static final List<Variant> DESCRIBE_VARIANTS = Variant
+            .mediaTypes(TURTLE_TYPE, N3_TYPE, N3_ALT1_TYPE, N3_ALT2_TYPE,
+                    RDF_XML_TYPE, RDF_JSON_TYPE, NTRIPLES_TYPE, TEXT_HTML_TYPE)
+            .add().build();
+
     /**
-     * Retrieve the node profile
+     * Retrieve the node profile. Turtle, N3 and N-Triples are written out as
+     * the description is read from the repository. Clients that don't need
+     * the whole description can say which parts to leave out with a Prefer
+     * header (see {@link Prefer}), and those parts aren't put together.
      * 
      * @param pathList
      * @param offset with limit, control the pagination window of details for
      *        child nodes
      * @param limit with offset, control the pagination window of details for
      *        child nodes
+     * @param token where the previous page of child nodes left off, from its
+     *        link to the next page
+     * @param prefer
      * @param request
      * @param uriInfo
      * @return
@@ -110,7 +163,7 @@ public class FedoraNodes extends AbstractResource {
     @GET
     @Produces({TURTLE, N3, N3_ALT1, N3_ALT2, RDF_XML, RDF_JSON, NTRIPLES,
             TEXT_HTML})
-    public Dataset describe(@PathParam("path")
+    public Response describe(@PathParam("path")
             final List<PathSegment> pathList,
             @QueryParam("offset")
             @DefaultValue("0")
@@ -118,6 +171,10 @@ public class FedoraNodes extends AbstractResource {
             @QueryParam("limit")
             @DefaultValue("-1")
             final int limit,
+            @QueryParam("continue")
+            final String token,
+            @HeaderParam("Prefer")
+            final String prefer,
             @Context
             final Request request,
             @Context
@@ -125,40 +182,264 @@ public class FedoraNodes extends AbstractResource {
         final String path = toPath(pathList);
         logger.trace("Getting profile for {}", path);
 
+        boolean streaming = false;
         try {
+            final ChildCursor after;
+            try {
+                after = token == null ? null : ChildCursor.fromToken(token);
+            } catch (final IllegalArgumentException e) {
+                return status(SC_BAD_REQUEST).entity(
+                        "Unrecognized continue token: " + token).build();
+            }
+
+            final ResourceMetadataCache metadataCache =
+                    getResourceMetadataCache();
+            final boolean cacheable = metadataCache.isCurrentFor(session);
+            final ResourceMetadata cached =
+                    cacheable ? metadataCache.get(path, RESOURCE) : null;
+            if (cached != null && cached.getLastModifiedDate() != null) {
+                notModifiedSince(cached.getLastModifiedDate(), request);
+            }
+
+            final long generation = metadataCache.generation();
             final FedoraResource resource =
                     nodeService.getObject(session, path);
-
-            final Date date = resource.getLastModifiedDate();
-            final Date roundedDate = new Date();
-            if (date != null) {
-                roundedDate.setTime(date.getTime() - date.getTime() % 1000);
+            if (cacheable) {
+                metadataCache.put(path, RESOURCE, ResourceMetadata
+                        .of(resource), generation);
             }
-            final ResponseBuilder builder =
-                    request.evaluatePreconditions(roundedDate);
-            if (builder != null) {
+
+            notModifiedSince(resource.getLastModifiedDate(), request);
+
+            final HttpGraphSubjects subjects =
+                    new HttpGraphSubjects(FedoraNodes.class, uriInfo);
+            final Prefer preferences = Prefer.convert(prefer);
+            final Set<DescriptionSection> sections = preferences.getSections();
+            final boolean paging =
+                    sections.contains(CHILDREN) &&
+                            (limit != -1 || after != null);
+            final Function<ChildCursor, Model> pager =
+                    paging ? pager(subjects.getGraphSubject(resource
+                            .getNode()), uriInfo) : null;
+
+            final Variant variant = request.selectVariant(DESCRIBE_VARIANTS);
+            if (variant != null && isStreamable(variant.getMediaType())) {
+                final Dataset responseInformation =
+                        DatasetFactory.create(ModelFactory
+                                .createDefaultModel());
+                if (sections.contains(SERVICES)) {
+                    addResponseInformationToDataset(resource,
+                            responseInformation, uriInfo, subjects);
+                }
+                final PeekingIterator<Model> models =
+                        Iterators.peekingIterator(Iterators.concat(resource
+                                .getPropertiesModels(subjects, offset, after,
+                                        limit, pager, sections), Iterators
+                                .singletonIterator(unifyDatasetModel(
+                                        responseInformation))));
+                // build the start of the description before answering, so a
+                // failure there is still an ordinary error response
+                models.peek();
+
+                // the description is read from the repository as it's
+                // written, so the session has to stay open until then, and
+                // closed when the request ends even if it never is written
+                final Closeable logout = logoutOnce(session);
+                if (closeables != null) {
+                    closeables.add(logout);
+                }
+                final StreamingOutput output =
+                        new RdfStreamingOutput(models, variant
+                                .getMediaType()) {
+
+                            @Override
+                            public void write(final OutputStream out)
+                                throws IOException {
+                                try {
+                                    super.write(out);
+                                } finally {
+                                    logout.close();
+                                }
+                            }
+                        };
+
                 final CacheControl cc = new CacheControl();
                 cc.setMaxAge(0);
                 cc.setMustRevalidate(true);
-                // here we are implicitly emitting a 304
-                // the exception is not an error, it's genuinely
-                // an exceptional condition
-                throw new WebApplicationException(builder.cacheControl(cc)
-                        .lastModified(date).build());
+                final Response response =
+                        preferenceApplied(
+                                Response.ok(output, variant.getMediaType()),
+                                preferences).cacheControl(cc).lastModified(
+                                resource.getLastModifiedDate()).build();
+                streaming = true;
+                return response;
             }
-            final HttpGraphSubjects subjects =
-                    new HttpGraphSubjects(FedoraNodes.class, uriInfo);
+
             final Dataset propertiesDataset =
-                    resource.getPropertiesDataset(subjects, offset, limit);
-            addResponseInformationToDataset(resource, propertiesDataset,
-                    uriInfo, subjects);
+                    resource.getPropertiesDataset(subjects, offset, after,
+                            limit, pager, sections);
+            if (sections.contains(SERVICES)) {
+                addResponseInformationToDataset(resource, propertiesDataset,
+                        uriInfo, subjects);
+            }
+
+            return preferenceApplied(Response.ok(propertiesDataset),
+                    preferences).build();
+
+        } finally {
+            if (!streaming) {
+                session.logout();
+            }
+        }
+
+    }
+
+    /**
+     * Log a session out the first time this is closed, however many times
+     * that happens
+     */
+    private static Closeable logoutOnce(final Session session) {
+        final AtomicBoolean open = new AtomicBoolean(true);
+        return new Closeable() {
+
+            @Override
+            public void close() {
+                if (open.compareAndSet(true, false)) {
+                    session.logout();
+                }
+            }
+        };
+    }
+
+    /**
+     * Say which of the client's preferences were taken up, and that the
+     * response depends on them
+     */
+    private static ResponseBuilder preferenceApplied(
+            final ResponseBuilder builder, final Prefer preferences) {
+        if (preferences.getReturn() != null) {
+            builder.header("Preference-Applied", "return=" +
+                    preferences.getReturn());
+        }
+        return builder.header("Vary", "Prefer");
+    }
 
-            return propertiesDataset;
+    /**
+     * Link a page of a node's children to the next one, by a continue token
+     * saying where this page left off
+     *
+     * @param subject the node whose children are being paged through
+     * @param uriInfo
+     * @return
+     */
+    private static Function<ChildCursor, Model> pager(final Resource subject,
+            final UriInfo uriInfo) {
+        final Resource page =
+                createResource(uriInfo.getRequestUri().toString());
+        return new Function<ChildCursor, Model>() {
+
+            @Override
+            public Model apply(final ChildCursor next) {
+                final Model model = ModelFactory.createDefaultModel();
+                model.add(page, RDF.type, PAGE);
+                model.add(page, PAGE_OF, subject);
+                if (next == null) {
+                    model.add(page, NEXT_PAGE, RDF.nil);
+                } else {
+                    // the token already says where to start
+                    model.add(page, NEXT_PAGE, createResource(uriInfo
+                            .getRequestUriBuilder().replaceQueryParam(
+                                    "offset").replaceQueryParam("continue",
+                                    next.toToken()).build().toString()));
+                }
+                return model;
+            }
+        };
+    }
+
+    /**
+     * Get the headers of the description of an object, from its metadata
+     * alone (without building the description)
+     *
+     * @param pathList
+     * @param request
+     * @return
+     * @throws RepositoryException
+     */
+    @HEAD
+    @Produces({TURTLE, N3, N3_ALT1, N3_ALT2, RDF_XML, RDF_JSON, NTRIPLES,
+            TEXT_HTML})
+    @Timed
+    public Response head(@PathParam("path")
+            final List<PathSegment> pathList,
+            @Context
+            final Request request) throws RepositoryException {
+        final String path = toPath(pathList);
+        logger.trace("Getting headers for {}", path);
+
+        try {
+            final ResourceMetadataCache metadataCache =
+                    getResourceMetadataCache();
+            final boolean cacheable = metadataCache.isCurrentFor(session);
+            ResourceMetadata metadata =
+                    cacheable ? metadataCache.get(path, RESOURCE) : null;
+            if (metadata == null) {
+                final long generation = metadataCache.generation();
+                metadata =
+                        ResourceMetadata.of(nodeService.getObject(session,
+                                path));
+                if (cacheable) {
+                    metadataCache.put(path, RESOURCE, metadata, generation);
+                }
+            }
+
+            final Date date = metadata.getLastModifiedDate();
+            notModifiedSince(date, request);
+
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(0);
+            cc.setMustRevalidate(true);
+            final ResponseBuilder builder =
+                    Response.ok().cacheControl(cc).lastModified(date);
+
+            // there's no entity to negotiate over, so pick the type the GET
+            // would have been sent as
+            final Variant variant = request.selectVariant(DESCRIBE_VARIANTS);
+            if (variant != null) {
+                builder.type(variant.getMediaType());
+            }
+            return builder.build();
 
         } finally {
             session.logout();
         }
+    }
 
+    /**
+     * Stop with a 304 (or 412) if the request's preconditions say the client
+     * already has the representation last modified at the given date
+     *
+     * @param date the last modified date, or null if it isn't known
+     * @param request
+     */
+    private static void notModifiedSince(final Date date,
+            final Request request) {
+        final Date roundedDate = new Date();
+        if (date != null) {
+            roundedDate.setTime(date.getTime() - date.getTime() % 1000);
+        }
+        final ResponseBuilder builder =
+                request.evaluatePreconditions(roundedDate);
+        if (builder != null) {
+            final CacheControl cc = new CacheControl();
+            cc.setMaxAge(0);
+            cc.setMustRevalidate(true);
+            // here we are implicitly emitting a 304
+            // the exception is not an error, it's genuinely
+            // an exceptional condition
+            throw new WebApplicationException(builder.cacheControl(cc)
+                    .lastModified(date).build());
+        }
     }
 
     /**
@@ -208,6 +489,7 @@ public class FedoraNodes extends AbstractResource {
                     FedoraNodes.class, uriInfo), IOUtils
                     .toString(requestBodyStream));
             session.save();
+            getResourceMetadataCache().invalidate(path);
 
             if (isNew) {
                 return created(
@@ -265,6 +547,7 @@ public class FedoraNodes extends AbstractResource {
                 }
 
                 session.save();
+                getResourceMetadataCache().invalidate(path);
 
                 return status(SC_NO_CONTENT).build();
             } else {
@@ -324,6 +607,7 @@ public class FedoraNodes extends AbstractResource {
                     requestContentType, checksumURI);
 
             session.save();
+            getResourceMetadataCache().invalidate(path);
             logger.debug("Finished creating {} with path: {}", mixin, path);
             return created(uriInfo.getRequestUri()).entity(path.substring(1))
                     .build();
@@ -348,6 +632,7 @@ public class FedoraNodes extends AbstractResource {
         try {
             nodeService.deleteObject(session, toPath(path));
             session.save();
+            getResourceMetadataCache().invalidateTree(toPath(path));
             return noContent().build();
         } finally {
             session.logout();
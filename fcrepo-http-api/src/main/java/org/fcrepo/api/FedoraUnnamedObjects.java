@@ -18,6 +18,7 @@ package org.fcrepo.api;
 
 import static javax.ws.rs.core.Response.created;
 import static org.apache.http.HttpStatus.SC_CONFLICT;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
@@ -116,6 +117,7 @@ public class FedoraUnnamedObjects extends AbstractResource {
                             checksumURI);
 
             session.save();
+            getResourceMetadataCache().invalidate(path);
             logger.debug("Finished creating {} with path: {}", mixin, path);
 
             final HttpGraphSubjects subjects =
@@ -19,6 +19,7 @@ package org.fcrepo.api.repository;
 import static javax.ws.rs.core.Response.status;
 import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
 import static org.apache.http.HttpStatus.SC_NO_CONTENT;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
@@ -95,6 +96,8 @@ public class FedoraRepositoriesProperties extends AbstractResource {
                 }
 
                 session.save();
+                // the update can touch any resource
+                getResourceMetadataCache().invalidateAll();
 
                 return status(SC_NO_CONTENT).build();
             } else {
@@ -24,7 +24,11 @@ import static org.fcrepo.test.util.TestHelpers.getUriInfoImpl;
 import static org.fcrepo.test.util.TestHelpers.mockDatastream;
 import static org.fcrepo.test.util.TestHelpers.mockSession;
 import static org.fcrepo.test.util.TestHelpers.setField;
+import static org.fcrepo.utils.ResourceMetadataCache.CONTENT;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -35,6 +39,8 @@ import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.modeshape.jcr.api.JcrConstants.JCR_CONTENT;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -44,18 +50,27 @@ import java.util.Date;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Workspace;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.fcrepo.Datastream;
 import org.fcrepo.exception.InvalidChecksumException;
 import org.fcrepo.identifiers.PidMinter;
 import org.fcrepo.services.DatastreamService;
 import org.fcrepo.services.NodeService;
+import org.fcrepo.utils.ResourceMetadata;
+import org.fcrepo.utils.ResourceMetadataCache;
+import org.fcrepo.utils.infinispan.StoreChunkInputStream;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class FedoraContentTest {
 
@@ -88,6 +103,17 @@ public class FedoraContentTest {
         setField(testObj, "uriInfo", getUriInfoImpl());
         mockSession = mockSession(testObj);
         setField(testObj, "session", mockSession);
+        when(mockDatastreams.getContent(any(Datastream.class))).thenAnswer(
+                new Answer<InputStream>() {
+
+                    @Override
+                    public InputStream answer(
+                            final InvocationOnMock invocation)
+                        throws RepositoryException {
+                        return ((Datastream) invocation.getArguments()[0])
+                                .getContent();
+                    }
+                });
     }
 
     @Test
@@ -104,15 +130,16 @@ public class FedoraContentTest {
         when(mockNodeService.exists(mockSession, dsPath)).thenReturn(false);
         when(
                 mockDatastreams.createDatastreamNode(any(Session.class),
-                        eq(dsPath), anyString(), any(InputStream.class)))
-                .thenReturn(mockNode);
+                        eq(dsPath), anyString(), any(InputStream.class),
+                        eq((URI) null), eq(4L))).thenReturn(mockNode);
         when(mockDatastreams.exists(mockSession, dsPath)).thenReturn(true);
         final Response actual =
-                testObj.modifyContent(createPathList(pid, dsId), null,
-                        dsContentStream, null);
+                testObj.modifyContent(createPathList(pid, dsId), null, 4L,
+                        null, null, dsContentStream, null);
         assertEquals(CREATED.getStatusCode(), actual.getStatus());
         verify(mockDatastreams).createDatastreamNode(any(Session.class),
-                eq(dsPath), anyString(), any(InputStream.class));
+                eq(dsPath), anyString(), any(InputStream.class),
+                eq((URI) null), eq(4L));
         verify(mockSession).save();
     }
 
@@ -131,14 +158,14 @@ public class FedoraContentTest {
         when(
                 mockDatastreams.createDatastreamNode(any(Session.class),
                         eq(dsPath), anyString(), any(InputStream.class),
-                        eq((URI) null))).thenReturn(mockNode);
+                        eq((URI) null), eq(-1L))).thenReturn(mockNode);
         when(mockDatastreams.exists(mockSession, dsPath)).thenReturn(true);
         final Response actual =
                 testObj.create(createPathList(pid, dsId), null,
-                        TEXT_PLAIN_TYPE, dsContentStream);
+                        TEXT_PLAIN_TYPE, null, null, null, dsContentStream);
         assertEquals(CREATED.getStatusCode(), actual.getStatus());
         verify(mockDatastreams).createDatastreamNode(mockSession, dsPath,
-                "text/plain", dsContentStream, null);
+                "text/plain", dsContentStream, null, -1L);
         verify(mockSession).save();
     }
 
@@ -160,18 +187,62 @@ public class FedoraContentTest {
         when(
                 mockDatastreams.createDatastreamNode(any(Session.class),
                         eq("/" + pid + "/xyz"), anyString(),
-                        any(InputStream.class), eq((URI) null))).thenReturn(
-                mockNode);
+                        any(InputStream.class), eq((URI) null), eq(-1L)))
+                .thenReturn(mockNode);
         when(mockDatastreams.exists(mockSession, dsPath)).thenReturn(true);
         final Response actual =
                 testObj.create(createPathList(pid, dsId), null,
-                        TEXT_PLAIN_TYPE, dsContentStream);
+                        TEXT_PLAIN_TYPE, null, null, null, dsContentStream);
         assertEquals(CREATED.getStatusCode(), actual.getStatus());
         verify(mockDatastreams).createDatastreamNode(mockSession,
-                "/" + pid + "/xyz", "text/plain", dsContentStream, null);
+                "/" + pid + "/xyz", "text/plain", dsContentStream, null, -1L);
         verify(mockSession).save();
     }
 
+    @Test
+    public void testCreateContentWithDigestHeader()
+        throws RepositoryException, IOException, InvalidChecksumException,
+        URISyntaxException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "xyz";
+        final String dsPath = "/" + pid + "/" + dsId;
+        final InputStream dsContentStream = IOUtils.toInputStream("asdf");
+        final URI sha1 =
+                new URI("urn:sha1:3da541559918a808c2402bba5012f6c60b27661c");
+        when(mockNode.getNode(JCR_CONTENT)).thenReturn(mockContentNode);
+        when(mockContentNode.getPath()).thenReturn(dsPath + "/jcr:content");
+        when(
+                mockDatastreams.createDatastreamNode(any(Session.class),
+                        eq(dsPath), anyString(), any(InputStream.class),
+                        eq(sha1), eq(4L))).thenReturn(mockNode);
+        final Response actual =
+                testObj.create(createPathList(pid, dsId), null,
+                        TEXT_PLAIN_TYPE, 4L, null,
+                        "SHA=PaVBVZkYqAjCQCu6UBL2xgsnZhw=", dsContentStream);
+        assertEquals(CREATED.getStatusCode(), actual.getStatus());
+        verify(mockDatastreams).createDatastreamNode(mockSession, dsPath,
+                "text/plain", dsContentStream, sha1, 4L);
+    }
+
+    @Test(expected = InvalidChecksumException.class)
+    public void testCreateContentWithBadChecksumIsNotSaved()
+        throws RepositoryException, IOException, InvalidChecksumException,
+        URISyntaxException {
+        final String dsPath = "/FedoraDatastreamsTest1/xyz";
+        when(
+                mockDatastreams.createDatastreamNode(any(Session.class),
+                        eq(dsPath), anyString(), any(InputStream.class),
+                        any(URI.class), eq(-1L))).thenThrow(
+                new InvalidChecksumException("Checksum Mismatch"));
+        try {
+            testObj.create(createPathList("FedoraDatastreamsTest1", "xyz"),
+                    null, TEXT_PLAIN_TYPE, null, "kS7IA7LOSeSlQQaNSVq1cA==",
+                    null, IOUtils.toInputStream("asdf"));
+        } finally {
+            verify(mockSession, never()).save();
+        }
+    }
+
     @Test
     public void testModifyContent() throws RepositoryException, IOException,
             InvalidChecksumException, URISyntaxException {
@@ -190,15 +261,16 @@ public class FedoraContentTest {
                         any(EntityTag.class))).thenReturn(null);
         when(
                 mockDatastreams.createDatastreamNode(any(Session.class),
-                        eq(dsPath), anyString(), any(InputStream.class)))
-                .thenReturn(mockNode);
+                        eq(dsPath), anyString(), any(InputStream.class),
+                        eq((URI) null), eq(4L))).thenReturn(mockNode);
         when(mockDatastreams.exists(mockSession, dsPath)).thenReturn(true);
         final Response actual =
-                testObj.modifyContent(createPathList(pid, dsId), null,
-                        dsContentStream, mockRequest);
+                testObj.modifyContent(createPathList(pid, dsId), null, 4L,
+                        null, null, dsContentStream, mockRequest);
         assertEquals(NO_CONTENT.getStatusCode(), actual.getStatus());
         verify(mockDatastreams).createDatastreamNode(any(Session.class),
-                eq(dsPath), anyString(), any(InputStream.class));
+                eq(dsPath), anyString(), any(InputStream.class),
+                eq((URI) null), eq(4L));
         verify(mockSession).save();
     }
 
@@ -213,7 +285,8 @@ public class FedoraContentTest {
                 mockDs);
         final Request mockRequest = mock(Request.class);
         final Response actual =
-                testObj.getContent(createPathList(pid, dsId), null, mockRequest);
+                testObj.getContent(createPathList(pid, dsId), null, null,
+                        mockRequest);
         verify(mockDs).getContent();
         verify(mockSession, never()).save();
         final String actualContent =
@@ -221,4 +294,180 @@ public class FedoraContentTest {
         assertEquals("asdf", actualContent);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGetContentFromFile() throws RepositoryException,
+            IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final String dsContent = "asdf";
+        final Datastream mockDs = mockDatastream(pid, dsId, dsContent);
+        final File file = File.createTempFile("fcrepo", ".bin");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, dsContent);
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        when(mockDatastreams.getContentFile(mockDs)).thenReturn(file);
+        final Request mockRequest = mock(Request.class);
+        final Response actual =
+                testObj.getContent(createPathList(pid, dsId), null, null,
+                        mockRequest);
+        verify(mockDs, never()).getContent();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) actual.getEntity()).write(out);
+        assertEquals("asdf", out.toString());
+    }
+
+    @Test
+    public void testHeadContent() throws RepositoryException, IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final Datastream mockDs = mockDatastream(pid, dsId, "asdf");
+        when(mockDs.getContentSize()).thenReturn(4L);
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        final Request mockRequest = mock(Request.class);
+        final Response actual =
+                testObj.headContent(createPathList(pid, dsId), mockRequest);
+        assertEquals(200, actual.getStatus());
+        assertEquals(4L, actual.getMetadata().getFirst("Content-Length"));
+        assertNull(actual.getEntity());
+        verify(mockDs, never()).getContent();
+    }
+
+    @Test
+    public void testGetMultipleRanges() throws RepositoryException,
+            IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final Datastream mockDs = mockDatastream(pid, dsId, "0123456789");
+        when(mockDs.getContentSize()).thenReturn(10L);
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        final Request mockRequest = mock(Request.class);
+        final Response actual =
+                testObj.getContent(createPathList(pid, dsId),
+                        "bytes=1-2,5-6", null, mockRequest);
+        assertEquals(206, actual.getStatus());
+        assertTrue(actual.getMetadata().getFirst("Content-Type").toString()
+                .startsWith("multipart/byteranges"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) actual.getEntity()).write(out);
+        final String body = out.toString();
+        assertTrue(body.contains("Content-Range: bytes 1-2/10\r\n\r\n12"));
+        assertTrue(body.contains("Content-Range: bytes 5-6/10\r\n\r\n56"));
+    }
+
+    @Test
+    public void testUnsatisfiableRangesDontOpenContent()
+        throws RepositoryException, IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final Datastream mockDs = mockDatastream(pid, dsId, "0123456789");
+        when(mockDs.getContentSize()).thenReturn(10L);
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        final Request mockRequest = mock(Request.class);
+        final Response multiple =
+                testObj.getContent(createPathList(pid, dsId),
+                        "bytes=20-30,40-50", null, mockRequest);
+        assertEquals(416, multiple.getStatus());
+        final Response single =
+                testObj.getContent(createPathList(pid, dsId), "bytes=10-20",
+                        null, mockRequest);
+        assertEquals(416, single.getStatus());
+        assertEquals("bytes */10", single.getMetadata().getFirst(
+                "Content-Range"));
+        verify(mockDs, never()).getContent();
+    }
+
+    @Test
+    public void testRangePastTheEndIsCutBack() throws RepositoryException,
+            IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final Datastream mockDs = mockDatastream(pid, dsId, "0123456789");
+        when(mockDs.getContentSize()).thenReturn(10L);
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        final Response actual =
+                testObj.getContent(createPathList(pid, dsId), "bytes=5-10",
+                        null, mock(Request.class));
+        assertEquals(206, actual.getStatus());
+        assertEquals("bytes 5-9/10", actual.getMetadata().getFirst(
+                "Content-Range"));
+        assertEquals("56789", IOUtils.toString((InputStream) actual
+                .getEntity()));
+    }
+
+    @Test
+    public void testRangeSeeksChunkedContent() throws RepositoryException,
+            IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final Datastream mockDs = mockDatastream(pid, dsId, "0123456789");
+        when(mockDs.getContentSize()).thenReturn(10L);
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        final StoreChunkInputStream mockChunks =
+                mock(StoreChunkInputStream.class);
+        when(mockDatastreams.getContent(mockDs)).thenReturn(mockChunks);
+        final Response actual =
+                testObj.getContent(createPathList(pid, dsId), "bytes=5-8",
+                        null, mock(Request.class));
+        assertEquals(206, actual.getStatus());
+        verify(mockChunks).seek(5L);
+        verify(mockDs, never()).getContent();
+    }
+
+    @Test
+    public void testIfRangeMismatchSendsEverything()
+        throws RepositoryException, IOException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final String path = "/" + pid + "/" + dsId;
+        final Datastream mockDs = mockDatastream(pid, dsId, "0123456789");
+        when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
+                mockDs);
+        final Request mockRequest = mock(Request.class);
+        final Response actual =
+                testObj.getContent(createPathList(pid, dsId), "bytes=1-2",
+                        "\"some-other-version\"", mockRequest);
+        assertEquals(200, actual.getStatus());
+        assertEquals("0123456789", IOUtils.toString((InputStream) actual
+                .getEntity()));
+    }
+
+    @Test
+    public void testGetContentNotModifiedFromCache()
+        throws RepositoryException, IOException {
+        final String path = "/FedoraDatastreamsTest1/testDS";
+        final Workspace mockWorkspace = mock(Workspace.class);
+        when(mockWorkspace.getName()).thenReturn("default");
+        when(mockSession.getWorkspace()).thenReturn(mockWorkspace);
+        final ResourceMetadataCache cache = getResourceMetadataCache();
+        cache.keepCurrentFor("default");
+        try {
+            cache.put(path, CONTENT, new ResourceMetadata(new Date(1000L),
+                    null, "urn:sha1:abc", 4, "text/plain"), cache
+                    .generation());
+            final Request mockRequest = mock(Request.class);
+            when(mockRequest.evaluatePreconditions(any(Date.class),
+                    any(EntityTag.class))).thenReturn(Response.notModified());
+            final Response actual =
+                    testObj.getContent(createPathList(
+                            "FedoraDatastreamsTest1", "testDS"), null, null,
+                            mockRequest);
+            assertEquals(304, actual.getStatus());
+            verify(mockDatastreams, never()).getDatastream(mockSession, path);
+        } finally {
+            cache.keepCurrentFor(null);
+            cache.invalidateAll();
+        }
+    }
+}
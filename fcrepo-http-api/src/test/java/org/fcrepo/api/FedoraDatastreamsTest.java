@@ -26,8 +26,11 @@ import static org.fcrepo.test.util.TestHelpers.getUriInfoImpl;
 import static org.fcrepo.test.util.TestHelpers.mockDatastream;
 import static org.fcrepo.test.util.TestHelpers.mockSession;
 import static org.fcrepo.test.util.TestHelpers.setField;
+import static org.fcrepo.responses.ArchiveStreamingOutput.APPLICATION_ZIP_TYPE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
@@ -35,8 +38,11 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
@@ -45,6 +51,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -53,9 +61,12 @@ import javax.jcr.Session;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
 import org.apache.commons.io.IOUtils;
 import org.fcrepo.Datastream;
 import org.fcrepo.FedoraResource;
+import org.fcrepo.StagedContent;
 import org.fcrepo.exception.InvalidChecksumException;
 import org.fcrepo.services.DatastreamService;
 import org.fcrepo.services.NodeService;
@@ -121,12 +132,14 @@ public class FedoraDatastreamsTest {
                 testObj.modifyDatastreams(createPathList(pid), Arrays.asList(
                         dsId1, dsId2), multipart);
         assertEquals(CREATED.getStatusCode(), actual.getStatus());
-        verify(mockDatastreams).createDatastreamNode(any(Session.class),
+        verify(mockDatastreams).stageDatastreamContent(any(Session.class),
                 eq("/" + pid + "/" + dsId1), anyString(),
-                any(InputStream.class));
-        verify(mockDatastreams).createDatastreamNode(any(Session.class),
+                any(InputStream.class), eq((URI) null), eq(-1L));
+        verify(mockDatastreams).stageDatastreamContent(any(Session.class),
                 eq("/" + pid + "/" + dsId2), anyString(),
-                any(InputStream.class));
+                any(InputStream.class), eq((URI) null), eq(-1L));
+        verify(mockDatastreams).setStagedContents(
+                anyListOf(StagedContent.class));
         verify(mockSession).save();
     }
 
@@ -162,16 +175,54 @@ public class FedoraDatastreamsTest {
         final Response resp =
                 testObj.getDatastreamsContents(createPathList(pid),
                         asList(dsId), mockRequest);
-        final MultiPart multipart = (MultiPart) resp.getEntity();
+        final StreamingOutput multipart = (StreamingOutput) resp.getEntity();
 
-        verify(mockDs).getContent();
+        verify(mockDs.getContentBinary(), never()).getStream();
         verify(mockSession, never()).save();
-        assertEquals(1, multipart.getBodyParts().size());
-        final InputStream actualContent =
-                (InputStream) multipart.getBodyParts().get(0).getEntity();
-        assertEquals("/FedoraDatastreamsTest1/testDS", multipart.getBodyParts()
-                .get(0).getContentDisposition().getFileName());
-        assertEquals("asdf", IOUtils.toString(actualContent, "UTF-8"));
+        assertEquals("multipart", resp.getMetadata().getFirst("Content-Type")
+                .toString().split("/")[0]);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        multipart.write(out);
+        final String body = out.toString("UTF-8");
+        assertTrue(body.contains("\"/FedoraDatastreamsTest1/testDS\""));
+        assertTrue(body.contains("\r\n\r\nasdf\r\n--"));
+    }
+
+    @Test
+    public void testGetDatastreamsContentsAsZip() throws RepositoryException,
+            IOException, NoSuchAlgorithmException {
+        final String pid = "FedoraDatastreamsTest1";
+        final String dsId = "testDS";
+        final Datastream mockDs = mockDatastream(pid, dsId, "asdf");
+        when(mockDs.hasContent()).thenReturn(true);
+        when(mockIterator.hasNext()).thenReturn(true, false);
+        when(mockIterator.nextNode()).thenReturn(mockDsNode);
+        when(mockObject.getNode()).thenReturn(mockNode);
+        when(mockNode.getNodes(new String[] {dsId})).thenReturn(mockIterator);
+        when(mockNodes.getObject(mockSession, "/FedoraDatastreamsTest1"))
+                .thenReturn(mockObject);
+        when(mockDatastreams.asDatastream(mockDsNode)).thenReturn(mockDs);
+        when(mockRequest.selectVariant(anyListOf(Variant.class))).thenReturn(
+                new Variant(APPLICATION_ZIP_TYPE, null, null));
+
+        final Response resp =
+                testObj.getDatastreamsContents(createPathList(pid),
+                        asList(dsId), mockRequest);
+        assertEquals(APPLICATION_ZIP_TYPE, resp.getMetadata().getFirst(
+                "Content-Type"));
+        assertTrue(resp.getMetadata().getFirst("ETag").toString().contains(
+                "+zip"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) resp.getEntity()).write(out);
+        try (final ZipInputStream zip =
+                new ZipInputStream(new ByteArrayInputStream(out
+                        .toByteArray()))) {
+            final ZipEntry entry = zip.getNextEntry();
+            assertEquals(dsId, entry.getName());
+            assertEquals("asdf", IOUtils.toString(zip, "UTF-8"));
+        }
     }
 
     @Test
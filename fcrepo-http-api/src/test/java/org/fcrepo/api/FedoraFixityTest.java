@@ -82,8 +82,8 @@ public class FedoraFixityTest {
         when(mockDatastreams.getDatastream(mockSession, path)).thenReturn(
                 mockDs);
         testObj.getDatastreamFixity(createPathList("objects", pid, "testDS"),
-                mockRequest, uriInfo);
+                false, mockRequest, uriInfo);
         verify(mockDatastreams).getFixityResultsModel(any(GraphSubjects.class),
-                eq(mockDs));
+                eq(mockDs), eq(false));
     }
 }
@@ -18,57 +18,83 @@ package org.fcrepo.api;
 
 import static javax.ws.rs.core.Response.Status.CREATED;
 import static javax.ws.rs.core.Response.Status.NO_CONTENT;
+import static org.fcrepo.RdfLexicon.NEXT_PAGE;
+import static org.fcrepo.http.RDFMediaType.TURTLE_TYPE;
 import static org.fcrepo.test.util.PathSegmentImpl.createPathList;
 import static org.fcrepo.test.util.TestHelpers.getUriInfoImpl;
 import static org.fcrepo.test.util.TestHelpers.mockSession;
 import static org.fcrepo.test.util.TestHelpers.setField;
 import static org.fcrepo.utils.FedoraJcrTypes.FEDORA_DATASTREAM;
 import static org.fcrepo.utils.FedoraJcrTypes.FEDORA_OBJECT;
+import static org.fcrepo.utils.ResourceMetadataCache.RESOURCE;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 
 import org.apache.commons.io.IOUtils;
 import org.fcrepo.FedoraObject;
 import org.fcrepo.FedoraResource;
 import org.fcrepo.exception.InvalidChecksumException;
 import org.fcrepo.identifiers.UUIDPidMinter;
+import org.fcrepo.rdf.DescriptionSection;
 import org.fcrepo.rdf.GraphProperties;
 import org.fcrepo.rdf.GraphSubjects;
 import org.fcrepo.services.DatastreamService;
 import org.fcrepo.services.NodeService;
 import org.fcrepo.services.ObjectService;
+import org.fcrepo.utils.ChildCursor;
+import org.fcrepo.utils.ResourceMetadata;
+import org.fcrepo.utils.ResourceMetadataCache;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.sun.jersey.api.uri.UriBuilderImpl;
+import com.sun.jersey.spi.CloseableService;
 
 public class FedoraNodesTest {
 
@@ -206,6 +232,21 @@ public class FedoraNodesTest {
         verify(mockSession).save();
     }
 
+    @Test
+    public void testDeleteObjectInvalidatesMetadata()
+        throws RepositoryException {
+        final ResourceMetadataCache cache = getResourceMetadataCache();
+        final ResourceMetadata metadata =
+                new ResourceMetadata(new Date(), null, null, 0, null);
+        cache.put("/testObject", RESOURCE, metadata, cache.generation());
+        cache.put("/testObject/ds", RESOURCE, metadata, cache.generation());
+
+        testObj.deleteObject(createPathList("testObject"));
+
+        assertNull(cache.get("/testObject", RESOURCE));
+        assertNull(cache.get("/testObject/ds", RESOURCE));
+    }
+
     @Test
     public void testDescribeObject() throws RepositoryException, IOException {
         final String pid = "FedoraObjectsRdfTest1";
@@ -216,17 +257,178 @@ public class FedoraNodesTest {
         when(mockObject.getLastModifiedDate()).thenReturn(null);
         when(
                 mockObject.getPropertiesDataset(any(GraphSubjects.class),
-                        anyLong(), anyInt())).thenReturn(mockDataset);
+                        anyLong(), any(ChildCursor.class), anyInt(),
+                        any(Function.class), any(Set.class))).thenReturn(
+                mockDataset);
         when(mockNodes.getObject(isA(Session.class), isA(String.class)))
                 .thenReturn(mockObject);
         final Request mockRequest = mock(Request.class);
-        final Dataset dataset =
-                testObj.describe(createPathList(path), 0, -1, mockRequest,
-                        uriInfo);
+        final Response actual =
+                testObj.describe(createPathList(path), 0, -1, null, null,
+                        mockRequest, uriInfo);
+        final Dataset dataset = (Dataset) actual.getEntity();
         assertNotNull(dataset.getDefaultModel());
 
     }
 
+    @Test
+    public void testDescribeObjectStreamsTurtle() throws RepositoryException,
+            IOException {
+        final String path = "/FedoraObjectsRdfTest1";
+        final Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("info:fedora/a"), model
+                .createProperty("info:fedora/b"), "c");
+        when(
+                mockObject.getPropertiesModels(any(GraphSubjects.class),
+                        anyLong(), any(ChildCursor.class), anyInt(),
+                        any(Function.class), any(Set.class))).thenReturn(
+                Iterators.singletonIterator(model));
+        when(mockNodes.getObject(mockSession, path)).thenReturn(mockObject);
+        final Request mockRequest = mock(Request.class);
+        when(mockRequest.selectVariant(anyListOf(Variant.class))).thenReturn(
+                new Variant(TURTLE_TYPE, null, null));
+
+        final Response actual =
+                testObj.describe(createPathList(path), 0, -1, null, null,
+                        mockRequest, uriInfo);
+        assertEquals(TURTLE_TYPE, actual.getMetadata().getFirst(
+                "Content-Type"));
+        verify(mockObject, never()).getPropertiesDataset(
+                any(GraphSubjects.class), anyLong(), any(ChildCursor.class),
+                anyInt(), any(Function.class), any(Set.class));
+        // still needed to write the description
+        verify(mockSession, never()).logout();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) actual.getEntity()).write(out);
+        assertTrue(out.toString("UTF-8").contains("<info:fedora/b>"));
+        verify(mockSession).logout();
+    }
+
+    @Test
+    public void testDescribeObjectLogsOutIfStreamIsNeverWritten()
+            throws RepositoryException, IOException {
+        final String path = "/FedoraObjectsRdfTest1";
+        when(
+                mockObject.getPropertiesModels(any(GraphSubjects.class),
+                        anyLong(), any(ChildCursor.class), anyInt(),
+                        any(Function.class), any(Set.class))).thenReturn(
+                Iterators.singletonIterator(ModelFactory
+                        .createDefaultModel()));
+        when(mockNodes.getObject(mockSession, path)).thenReturn(mockObject);
+        final Request mockRequest = mock(Request.class);
+        when(mockRequest.selectVariant(anyListOf(Variant.class))).thenReturn(
+                new Variant(TURTLE_TYPE, null, null));
+        final CloseableService mockCloseables = mock(CloseableService.class);
+        setField(testObj, "closeables", mockCloseables);
+
+        testObj.describe(createPathList(path), 0, -1, null, null,
+                mockRequest, uriInfo);
+        verify(mockSession, never()).logout();
+
+        // the request ends without the entity being written
+        final ArgumentCaptor<Closeable> closeable =
+                ArgumentCaptor.forClass(Closeable.class);
+        verify(mockCloseables).add(closeable.capture());
+        closeable.getValue().close();
+        closeable.getValue().close();
+        verify(mockSession).logout();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDescribeObjectLinksToNextPage()
+            throws RepositoryException, IOException {
+        final String path = "/FedoraObjectsRdfTest1";
+        when(mockNode.getPath()).thenReturn(path);
+        when(mockObject.getNode()).thenReturn(mockNode);
+        when(
+                mockObject.getPropertiesDataset(any(GraphSubjects.class),
+                        anyLong(), any(ChildCursor.class), anyInt(),
+                        any(Function.class), any(Set.class))).thenReturn(
+                mockDataset);
+        when(mockNodes.getObject(mockSession, path)).thenReturn(mockObject);
+        when(uriInfo.getRequestUriBuilder()).thenReturn(
+                new UriBuilderImpl().uri("http://localhost/fcrepo" + path +
+                        "?limit=2&continue=a"));
+        final String token = new ChildCursor(3, "b").toToken();
+
+        testObj.describe(createPathList(path), 0, 2, token, null,
+                mock(Request.class), uriInfo);
+
+        final ArgumentCaptor<ChildCursor> after =
+                ArgumentCaptor.forClass(ChildCursor.class);
+        final ArgumentCaptor<Function> pager =
+                ArgumentCaptor.forClass(Function.class);
+        verify(mockObject).getPropertiesDataset(any(GraphSubjects.class),
+                eq(0L), after.capture(), eq(2), pager.capture(),
+                any(Set.class));
+        assertEquals("b", after.getValue().getName());
+
+        final ChildCursor next = new ChildCursor(5, "d");
+        final Model page = (Model) pager.getValue().apply(next);
+        final Resource nextPage =
+                page.listObjectsOfProperty(NEXT_PAGE).next().asResource();
+        assertEquals("http://localhost/fcrepo" + path + "?limit=2&continue=" +
+                next.toToken(), nextPage.getURI());
+        final Model last = (Model) pager.getValue().apply(null);
+        assertTrue(last.contains(null, NEXT_PAGE, RDF.nil));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDescribeObjectMinimally() throws RepositoryException,
+            IOException {
+        final String path = "/FedoraObjectsRdfTest1";
+        when(
+                mockObject.getPropertiesDataset(any(GraphSubjects.class),
+                        anyLong(), any(ChildCursor.class), anyInt(),
+                        any(Function.class), any(Set.class))).thenReturn(
+                mockDataset);
+        when(mockNodes.getObject(mockSession, path)).thenReturn(mockObject);
+
+        final Response actual =
+                testObj.describe(createPathList(path), 0, 2, null,
+                        "return=minimal", mock(Request.class), uriInfo);
+        assertEquals("return=minimal", actual.getMetadata().getFirst(
+                "Preference-Applied"));
+        verify(mockObject).getPropertiesDataset(any(GraphSubjects.class),
+                eq(0L), any(ChildCursor.class), eq(2),
+                (Function<ChildCursor, Model>) isNull(),
+                eq(EnumSet.noneOf(DescriptionSection.class)));
+    }
+
+    @Test
+    public void testDescribeObjectRejectsBadToken()
+            throws RepositoryException, IOException {
+        final String path = "/FedoraObjectsRdfTest1";
+        final Response actual =
+                testObj.describe(createPathList(path), 0, 2, "%%%", null,
+                        mock(Request.class), uriInfo);
+        assertEquals(400, actual.getStatus());
+        verify(mockSession).logout();
+    }
+
+    @Test
+    public void testHeadObject() throws RepositoryException {
+        final String path = "/FedoraObjectsRdfTest1";
+        final Date lastModified = new Date(1000L);
+        when(mockObject.getLastModifiedDate()).thenReturn(lastModified);
+        when(mockNodes.getObject(mockSession, path)).thenReturn(mockObject);
+        final Request mockRequest = mock(Request.class);
+        when(mockRequest.selectVariant(anyListOf(Variant.class))).thenReturn(
+                new Variant(TURTLE_TYPE, null, null));
+        final Response actual =
+                testObj.head(createPathList(path), mockRequest);
+        assertEquals(200, actual.getStatus());
+        assertEquals(TURTLE_TYPE, actual.getMetadata().getFirst(
+                "Content-Type"));
+        assertEquals(lastModified, actual.getMetadata().getFirst(
+                "Last-Modified"));
+        verify(mockObject, never()).getPropertiesDataset(
+                any(GraphSubjects.class), anyLong(), anyInt());
+    }
+
     @Test
     public void testSparqlUpdate() throws RepositoryException, IOException {
         final String pid = "FedoraObjectsRdfTest1";
@@ -228,7 +228,7 @@ public class FedoraContentIT extends AbstractResourceIT {
         method_test_get.setHeader("Range", "bytes=50-100");
         assertEquals(416, getStatus(method_test_get));
         final HttpResponse response = client.execute(method_test_get);
-        assertEquals("bytes 50-100/20", response.getFirstHeader("Content-Range").getValue());
+        assertEquals("bytes */20", response.getFirstHeader("Content-Range").getValue());
 
     }
 }
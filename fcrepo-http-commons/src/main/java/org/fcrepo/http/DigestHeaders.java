@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.http;
+
+import static org.apache.commons.codec.binary.Base64.decodeBase64;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.fcrepo.utils.ContentDigest;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Content-MD5 (RFC 1864) and Digest (RFC 3230) header parsing logic; both
+ * carry base64 digests, which we turn into checksum URIs
+ */
+public abstract class DigestHeaders {
+
+    /**
+     * RFC 3230 / RFC 5843 digest algorithm names we support, and their
+     * MessageDigest names
+     */
+    private static final Map<String, String> digestAlgorithms = ImmutableMap
+            .of("SHA", "SHA-1", "SHA-256", "SHA-256", "SHA-512", "SHA-512",
+                    "MD5", "MD5");
+
+    /**
+     * Parse a Content-MD5 header
+     * @param contentMD5 the header, or null if there isn't one
+     * @return the checksum, or null if there isn't one
+     */
+    public static URI fromContentMD5(final String contentMD5) {
+        if (contentMD5 == null || contentMD5.trim().isEmpty()) {
+            return null;
+        }
+        return ContentDigest.asURI("MD5", decodeBase64(contentMD5.trim()));
+    }
+
+    /**
+     * Parse a Digest header, e.g. "SHA=thvDyvhfIqlvFe+A9MYgxAfm1q5="
+     * @param digest the header, or null if there isn't one
+     * @return the checksum for the first instance with an algorithm we
+     *         support, or null if there isn't one
+     */
+    public static URI fromDigest(final String digest) {
+        if (digest == null) {
+            return null;
+        }
+        for (final String instance : digest.split(",")) {
+            final String[] parts = instance.trim().split("=", 2);
+            if (parts.length < 2) {
+                continue;
+            }
+            final String algorithm =
+                    digestAlgorithms.get(parts[0].trim().toUpperCase());
+            if (algorithm != null && !parts[1].trim().isEmpty()) {
+                return ContentDigest.asURI(algorithm, decodeBase64(parts[1]
+                        .trim()));
+            }
+        }
+        return null;
+    }
+}
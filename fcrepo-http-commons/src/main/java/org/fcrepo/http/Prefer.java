@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.http;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fcrepo.rdf.DescriptionSection;
+
+/**
+ * Prefer header (RFC 7240) parsing logic, for the parts of a description a
+ * client wants: return=minimal for just the resource's own properties, and
+ * include="..." or omit="..." to add or leave out sections by URI (as in
+ * LDP), e.g.
+ *
+ * <pre>
+ * Prefer: return=representation;
+ *     omit="http://www.w3.org/ns/ldp#PreferContainment"
+ * </pre>
+ */
+public class Prefer {
+
+    public static final String MINIMAL = "minimal";
+
+    public static final String REPRESENTATION = "representation";
+
+    private static Pattern preferencePattern =
+        Pattern.compile("([\\w-]+)\\s*(?:=\\s*(\"[^\"]*\"|[^;,\\s]*))?");
+
+    private final String returnValue;
+
+    private final Set<DescriptionSection> sections;
+
+    /**
+     * @param returnValue the return preference, or null if there was none
+     * @param sections the sections of the description to include
+     */
+    public Prefer(final String returnValue,
+            final Set<DescriptionSection> sections) {
+        this.returnValue = returnValue;
+        this.sections = sections;
+    }
+
+    /**
+     * @return the return preference (minimal or representation), or null
+     *         if there was none, or it was one we don't know
+     */
+    public String getReturn() {
+        return returnValue;
+    }
+
+    /**
+     * @return the sections of the description the client wants
+     */
+    public Set<DescriptionSection> getSections() {
+        return sections;
+    }
+
+    /**
+     * Convert a Prefer header to the preferences it holds. Preferences we
+     * don't know, and section URIs we don't know, are ignored.
+     * @param source the header, or null if there was none
+     * @return
+     */
+    public static Prefer convert(final String source) {
+        if (source == null) {
+            return new Prefer(null, DescriptionSection.all());
+        }
+
+        String returnValue = null;
+        final Set<DescriptionSection> include =
+                EnumSet.noneOf(DescriptionSection.class);
+        final Set<DescriptionSection> omit =
+                EnumSet.noneOf(DescriptionSection.class);
+
+        final Matcher matcher = preferencePattern.matcher(source);
+        while (matcher.find()) {
+            final String name = matcher.group(1).toLowerCase();
+            final String value = unquote(matcher.group(2));
+            if (name.equals("return") &&
+                    (MINIMAL.equals(value) || REPRESENTATION.equals(value))) {
+                returnValue = value;
+            } else if (name.equals("include")) {
+                addSections(value, include);
+            } else if (name.equals("omit")) {
+                addSections(value, omit);
+            }
+        }
+
+        final Set<DescriptionSection> sections =
+                MINIMAL.equals(returnValue) ? EnumSet
+                        .noneOf(DescriptionSection.class) : DescriptionSection
+                        .all();
+        sections.addAll(include);
+        sections.removeAll(omit);
+        return new Prefer(returnValue, sections);
+    }
+
+    private static void addSections(final String uris,
+            final Set<DescriptionSection> sections) {
+        if (uris == null) {
+            return;
+        }
+        for (final String uri : uris.trim().split("\\s+")) {
+            final DescriptionSection section = DescriptionSection.forURI(uri);
+            if (section != null) {
+                sections.add(section);
+            }
+        }
+    }
+
+    private static String unquote(final String value) {
+        if (value != null && value.length() > 1 && value.startsWith("\"") &&
+                value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -17,6 +17,10 @@
 
 package org.fcrepo.http;
 
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,6 +33,9 @@ public class Range {
     private final long end;
     private static Pattern rangePattern =
         Pattern.compile("^bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)");
+    private static Pattern rangesPattern =
+        Pattern.compile("^bytes\\s*=\\s*\\d*\\s*-\\s*\\d*"
+                + "(\\s*,\\s*\\d*\\s*-\\s*\\d*)*\\s*$");
 
     /**
      * Unbounded Range
@@ -91,6 +98,42 @@ public class Range {
         return end;
     }
 
+    /**
+     * Pin this range down against content of the given size: an open end
+     * becomes the last byte, and an end past the last byte is cut back to it
+     * @param contentSize
+     * @return the resolved range, or null if it's unsatisfiable
+     */
+    public Range resolve(final long contentSize) {
+        if (start >= contentSize) {
+            return null;
+        }
+        final long last = contentSize - 1;
+        return new Range(start, end == -1 || end > last ? last : end);
+    }
+
+    /**
+     * Convert an HTTP Range header that may hold several byte ranges
+     * (e.g. bytes=0-99,200-299) to a list of Range objects, in the order
+     * they were asked for
+     * @param source
+     * @return the ranges, or a single unbounded range if the header can't
+     *         be parsed
+     */
+    public static List<Range> convertAll(final String source) {
+        final Matcher matcher = rangesPattern.matcher(source);
+        if (!matcher.matches()) {
+            return asList(new Range());
+        }
+
+        final List<Range> ranges = new ArrayList<>();
+        for (final String spec : source.substring(source.indexOf('=') + 1)
+                .split(",")) {
+            ranges.add(convert("bytes=" + spec.trim()));
+        }
+        return ranges;
+    }
+
     /**
      * Convert an HTTP Range header to a Range object
      * @param source
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import javax.jcr.RepositoryException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+/**
+ * Serialize several datastreams as a zip or tar archive, one entry per
+ * datastream named by its dsid. Each datastream's content is opened only
+ * when its entry is written.
+ */
+public class ArchiveStreamingOutput implements StreamingOutput {
+
+    public static final MediaType APPLICATION_ZIP_TYPE =
+            new MediaType("application", "zip");
+
+    public static final MediaType APPLICATION_TAR_TYPE =
+            new MediaType("application", "x-tar");
+
+    /**
+     * How hard to compress zip entries. Most binaries worth bundling are
+     * already compressed, so by default we spend as little time on it as
+     * we can.
+     */
+    private static final int ZIP_LEVEL = Integer.getInteger(
+            "fcrepo.bundle.zip.level", Deflater.BEST_SPEED);
+
+    private static final Logger LOGGER =
+            getLogger(ArchiveStreamingOutput.class);
+
+    private final List<BundleEntry> entries;
+
+    private final MediaType mediaType;
+
+    /**
+     * @param entries the datastreams to send, in order
+     * @param mediaType either {@link #APPLICATION_ZIP_TYPE} or
+     *        {@link #APPLICATION_TAR_TYPE}
+     */
+    public ArchiveStreamingOutput(final List<BundleEntry> entries,
+            final MediaType mediaType) {
+        if (!APPLICATION_ZIP_TYPE.isCompatible(mediaType) &&
+                !APPLICATION_TAR_TYPE.isCompatible(mediaType)) {
+            throw new IllegalArgumentException("Not an archive type: " +
+                    mediaType);
+        }
+        this.entries = entries;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the type of archive this writes
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException,
+        WebApplicationException {
+        LOGGER.debug("Sending {} datastreams as {}", entries.size(),
+                mediaType);
+        final ArchiveOutputStream archive = open(out);
+        for (final BundleEntry entry : entries) {
+            archive.putArchiveEntry(entryFor(entry));
+            try (final InputStream content = entry.open()) {
+                IOUtils.copy(content, archive);
+            } catch (final RepositoryException e) {
+                throw new WebApplicationException(e);
+            }
+            archive.closeArchiveEntry();
+        }
+        archive.finish();
+        archive.flush();
+    }
+
+    private ArchiveOutputStream open(final OutputStream out) {
+        // finish() completes the archive without closing the response
+        if (APPLICATION_ZIP_TYPE.isCompatible(mediaType)) {
+            final ZipArchiveOutputStream zip =
+                    new ZipArchiveOutputStream(out);
+            zip.setLevel(ZIP_LEVEL);
+            return zip;
+        }
+        final TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        return tar;
+    }
+
+    private ArchiveEntry entryFor(final BundleEntry entry) {
+        if (APPLICATION_ZIP_TYPE.isCompatible(mediaType)) {
+            final ZipArchiveEntry zipEntry =
+                    new ZipArchiveEntry(entry.getName());
+            zipEntry.setSize(entry.getSize());
+            zipEntry.setTime(entry.getLastModifiedDate().getTime());
+            return zipEntry;
+        }
+        // tar needs the exact size before the content
+        final TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getName());
+        tarEntry.setSize(entry.getSize());
+        tarEntry.setModTime(entry.getLastModifiedDate());
+        return tarEntry;
+    }
+}
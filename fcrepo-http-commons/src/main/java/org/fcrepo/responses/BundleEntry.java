@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+
+import org.fcrepo.Datastream;
+
+/**
+ * One datastream to be sent in a bundle of several. The metadata is read
+ * up front, but the content isn't opened until the entry is written, so a
+ * bundle only ever holds one binary stream open at a time.
+ */
+public class BundleEntry {
+
+    private final String path;
+
+    private final String name;
+
+    private final String mimeType;
+
+    private final Date created;
+
+    private final Date lastModified;
+
+    private final long size;
+
+    private final Binary binary;
+
+    /**
+     * @param path the repository path of the datastream
+     * @param name the datastream's name within its object
+     * @param mimeType
+     * @param created
+     * @param lastModified
+     * @param size the size of the content in bytes
+     * @param binary the content
+     */
+    public BundleEntry(final String path, final String name,
+            final String mimeType, final Date created,
+            final Date lastModified, final long size, final Binary binary) {
+        this.path = path;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.created = created;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.binary = binary;
+    }
+
+    /**
+     * Read what a bundle needs to know about a datastream, without opening
+     * its content
+     *
+     * @param ds
+     * @return
+     * @throws RepositoryException
+     */
+    public static BundleEntry of(final Datastream ds)
+        throws RepositoryException {
+        final Binary binary = ds.getContentBinary();
+        return new BundleEntry(ds.getPath(), ds.getDsId(), ds.getMimeType(),
+                ds.getCreatedDate(), ds.getLastModifiedDate(), binary
+                        .getSize(), binary);
+    }
+
+    /**
+     * Open the content. The caller is responsible for closing it.
+     *
+     * @return
+     * @throws RepositoryException
+     */
+    public InputStream open() throws RepositoryException {
+        return binary.getStream();
+    }
+
+    /**
+     * @return the repository path of the datastream
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the datastream's name within its object
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the mime type of the content
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return when the datastream was created
+     */
+    public Date getCreatedDate() {
+        return created;
+    }
+
+    /**
+     * @return when the datastream was last modified
+     */
+    public Date getLastModifiedDate() {
+        return lastModified;
+    }
+
+    /**
+     * @return the size of the content in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+}
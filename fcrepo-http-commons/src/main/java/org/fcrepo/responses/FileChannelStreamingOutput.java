@@ -0,0 +1,101 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.nio.channels.Channels.newChannel;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+
+/**
+ * Send (part of) a file straight from the filesystem, rather than through
+ * the JCR's binary stream.
+ *
+ * The bytes are moved with FileChannel.transferTo. That only lets the
+ * kernel send them itself (sendfile) if the response is a channel, which a
+ * servlet container's isn't, so they are normally copied through a heap
+ * buffer like any other stream.
+ */
+public class FileChannelStreamingOutput implements StreamingOutput {
+
+    private static final Logger LOGGER =
+            getLogger(FileChannelStreamingOutput.class);
+
+    private final File file;
+
+    private final long start;
+
+    private final long length;
+
+    /**
+     * Send the whole file
+     * @param file
+     */
+    public FileChannelStreamingOutput(final File file) {
+        this(file, 0, -1);
+    }
+
+    /**
+     * Send part of the file
+     * @param file
+     * @param start the offset of the first byte to send
+     * @param length the number of bytes to send, or -1 for the rest of the
+     *        file
+     */
+    public FileChannelStreamingOutput(final File file, final long start,
+            final long length) {
+        this.file = file;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException,
+        WebApplicationException {
+        try (final FileInputStream in = new FileInputStream(file);
+                final FileChannel channel = in.getChannel()) {
+            final long end =
+                    length < 0 ? channel.size() : Math.min(channel.size(),
+                            start + length);
+            LOGGER.debug("Transferring bytes {}-{} of {}", start, end, file);
+
+            final WritableByteChannel target =
+                    out instanceof WritableByteChannel
+                            ? (WritableByteChannel) out : newChannel(out);
+            long position = start;
+            while (position < end) {
+                final long sent =
+                        channel.transferTo(position, end - position, target);
+                if (sent == 0 && position >= channel.size()) {
+                    // the file shrank under us
+                    break;
+                }
+                position += sent;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.UUID.randomUUID;
+import static org.fcrepo.responses.RangeRequestInputStream.moveTo;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.fcrepo.http.Range;
+import org.slf4j.Logger;
+
+/**
+ * Serialize several byte ranges of a binary as a multipart/byteranges body.
+ *
+ * Parts come from a file in the order they were asked for. Parts from a
+ * stream can only be read forward, so they're sorted, and any that overlap
+ * are merged.
+ */
+public class MultipartByteRangesStreamingOutput implements StreamingOutput {
+
+    private static final Logger LOGGER =
+            getLogger(MultipartByteRangesStreamingOutput.class);
+
+    private final List<Range> ranges;
+
+    private final long contentSize;
+
+    private final String contentType;
+
+    private final File file;
+
+    private final InputStream content;
+
+    private final String boundary = randomUUID().toString();
+
+    /**
+     * Send ranges of a file
+     * @param file
+     * @param ranges the ranges, already resolved against the content size
+     * @param contentSize
+     * @param contentType the type of the binary
+     */
+    public MultipartByteRangesStreamingOutput(final File file,
+            final List<Range> ranges, final long contentSize,
+            final String contentType) {
+        this.file = file;
+        this.content = null;
+        this.ranges = ranges;
+        this.contentSize = contentSize;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Send ranges of a stream
+     * @param content
+     * @param ranges the ranges, already resolved against the content size
+     * @param contentSize
+     * @param contentType the type of the binary
+     */
+    public MultipartByteRangesStreamingOutput(final InputStream content,
+            final List<Range> ranges, final long contentSize,
+            final String contentType) {
+        this.file = null;
+        this.content = content;
+        this.ranges = coalesce(ranges);
+        this.contentSize = contentSize;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return the multipart/byteranges type, with this body's boundary
+     */
+    public MediaType getMediaType() {
+        return MediaType.valueOf("multipart/byteranges; boundary=" +
+                boundary);
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException,
+        WebApplicationException {
+        LOGGER.debug("Sending {} ranges", ranges.size());
+        long position = 0;
+        try {
+            for (final Range range : ranges) {
+                out.write(("\r\n--" + boundary + "\r\nContent-Type: " +
+                        contentType + "\r\nContent-Range: bytes " +
+                        range.start() + "-" + range.end() + "/" +
+                        contentSize + "\r\n\r\n").getBytes(US_ASCII));
+                if (file != null) {
+                    new FileChannelStreamingOutput(file, range.start(), range
+                            .size()).write(out);
+                } else {
+                    moveTo(content, position, range.start());
+                    IOUtils.copy(new BoundedInputStream(
+                            new CloseShieldInputStream(content), range
+                                    .size()), out);
+                    position = range.end() + 1;
+                }
+            }
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes(US_ASCII));
+        } finally {
+            if (content != null) {
+                content.close();
+            }
+        }
+    }
+
+    /**
+     * Sort ranges and merge any that overlap or touch
+     */
+    private static List<Range> coalesce(final List<Range> ranges) {
+        final List<Range> sorted = new ArrayList<>(ranges);
+        Collections.sort(sorted, new Comparator<Range>() {
+
+            @Override
+            public int compare(final Range a, final Range b) {
+                return Long.compare(a.start(), b.start());
+            }
+        });
+
+        final List<Range> merged = new ArrayList<>(sorted.size());
+        for (final Range range : sorted) {
+            final int last = merged.size() - 1;
+            if (last >= 0 && range.start() <= merged.get(last).end() + 1) {
+                final Range previous = merged.get(last);
+                merged.set(last, new Range(previous.start(), Math.max(
+                        previous.end(), range.end())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.UUID.randomUUID;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+import com.sun.jersey.core.header.ContentDisposition;
+
+/**
+ * Serialize several datastreams as a multipart/mixed body, opening each
+ * one's content only when its part is written
+ */
+public class MultipartMixedStreamingOutput implements StreamingOutput {
+
+    private static final Logger LOGGER =
+            getLogger(MultipartMixedStreamingOutput.class);
+
+    private final List<BundleEntry> entries;
+
+    private final String boundary = randomUUID().toString();
+
+    /**
+     * @param entries the datastreams to send, in order
+     */
+    public MultipartMixedStreamingOutput(final List<BundleEntry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return the multipart/mixed type, with this body's boundary
+     */
+    public MediaType getMediaType() {
+        return MediaType.valueOf("multipart/mixed; boundary=" + boundary);
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException,
+        WebApplicationException {
+        LOGGER.debug("Sending {} datastreams", entries.size());
+        for (final BundleEntry entry : entries) {
+            final ContentDisposition disposition =
+                    ContentDisposition.type("attachment").fileName(
+                            entry.getPath()).creationDate(
+                            entry.getCreatedDate()).modificationDate(
+                            entry.getLastModifiedDate()).size(
+                            entry.getSize()).build();
+            out.write(("\r\n--" + boundary + "\r\nContent-Type: " +
+                    entry.getMimeType() + "\r\nContent-Disposition: " +
+                    disposition + "\r\n\r\n").getBytes(UTF_8));
+            try (final InputStream content = entry.open()) {
+                IOUtils.copy(content, out);
+            } catch (final RepositoryException e) {
+                throw new WebApplicationException(e);
+            }
+        }
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(UTF_8));
+    }
+}
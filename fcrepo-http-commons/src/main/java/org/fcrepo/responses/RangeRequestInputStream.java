@@ -19,6 +19,7 @@ package org.fcrepo.responses;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.io.input.ProxyInputStream;
+import org.fcrepo.utils.Seekable;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -48,11 +49,38 @@ public class RangeRequestInputStream extends FilterInputStream {
     }
 
 
+    /**
+     * Move a stream forward from one position to another: seek it if it
+     * can, or else skip it, only falling back to reading through the
+     * skipped bytes if skipping makes no progress
+     *
+     * @param in
+     * @param from the stream's current position
+     * @param to the position to move to
+     * @throws IOException
+     */
+    static void moveTo(final InputStream in, final long from, final long to)
+        throws IOException {
+        if (in instanceof Seekable) {
+            ((Seekable) in).seek(to);
+            return;
+        }
+        long remaining = to - from;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                IOUtils.skip(in, remaining);
+                return;
+            }
+            remaining -= skipped;
+        }
+    }
+
     private static class SkipInputStream extends ProxyInputStream {
         public SkipInputStream(final InputStream in,
-                               long skip) throws IOException {
+                               final long skip) throws IOException {
             super(in);
-            IOUtils.skip(in, skip);
+            moveTo(in, 0, skip);
         }
     }
 }
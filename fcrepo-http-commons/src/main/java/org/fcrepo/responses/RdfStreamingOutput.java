@@ -0,0 +1,110 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static org.apache.jena.riot.WebContent.contentTypeToLang;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.jena.riot.Lang;
+import org.slf4j.Logger;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Serialize a description as it is built, one small model at a time, so the
+ * response starts straight away and memory use doesn't grow with the number
+ * of children.
+ *
+ * This only works for formats where separately written pieces still make
+ * one document. The first model (with the namespace prefixes) is written in
+ * the requested format, and the rest as N-Triples, which is also valid
+ * Turtle and N3.
+ *
+ * By the time a model fails to build, the response has already started, so
+ * its status can't change. Instead, the failure is rethrown, so the
+ * connection is aborted rather than the response ended as if the
+ * description were complete.
+ */
+public class RdfStreamingOutput implements StreamingOutput {
+
+    private static final Logger LOGGER =
+            getLogger(RdfStreamingOutput.class);
+
+    private static final String NTRIPLES_FORMAT = Lang.NTRIPLES.getName()
+            .toUpperCase();
+
+    private final Iterator<Model> models;
+
+    private final String format;
+
+    /**
+     * @param models the description, in the order it should be written
+     * @param mediaType a type for which {@link #isStreamable} holds
+     */
+    public RdfStreamingOutput(final Iterator<Model> models,
+            final MediaType mediaType) {
+        if (!isStreamable(mediaType)) {
+            throw new IllegalArgumentException("Can't stream " + mediaType);
+        }
+        this.models = models;
+        this.format = langOf(mediaType).getName().toUpperCase();
+    }
+
+    /**
+     * @param mediaType
+     * @return whether a description can be streamed in the given format
+     */
+    public static boolean isStreamable(final MediaType mediaType) {
+        final Lang lang = mediaType == null ? null : langOf(mediaType);
+        return Lang.TURTLE.equals(lang) || Lang.N3.equals(lang) ||
+                Lang.NTRIPLES.equals(lang);
+    }
+
+    private static Lang langOf(final MediaType mediaType) {
+        return contentTypeToLang(mediaType.getType() + "/" +
+                mediaType.getSubtype());
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException,
+        WebApplicationException {
+        LOGGER.debug("Streaming description as {}", format);
+        int count = 0;
+        try {
+            while (models.hasNext()) {
+                models.next().write(out, count == 0 ? format : NTRIPLES_FORMAT);
+                // get the first bytes out, then the rest in batches
+                if (count++ % 100 == 0) {
+                    out.flush();
+                }
+            }
+        } catch (final RuntimeException e) {
+            // the models are built from the repository as we go
+            LOGGER.debug("Description failed after {} models", count, e);
+            throw e;
+        }
+        LOGGER.debug("Streamed {} models", count);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.http;
+
+import static org.fcrepo.http.DigestHeaders.fromContentMD5;
+import static org.fcrepo.http.DigestHeaders.fromDigest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+public class DigestHeadersTest {
+
+    // "asdf"
+    private static final URI MD5 =
+            URI.create("urn:md5:912ec803b2ce49e4a541068d495ab570");
+
+    private static final URI SHA1 =
+            URI.create("urn:sha1:3da541559918a808c2402bba5012f6c60b27661c");
+
+    @Test
+    public void testContentMD5() {
+        assertEquals(MD5, fromContentMD5("kS7IA7LOSeSlQQaNSVq1cA=="));
+        assertNull(fromContentMD5(null));
+        assertNull(fromContentMD5(" "));
+    }
+
+    @Test
+    public void testDigest() {
+        assertEquals(SHA1, fromDigest("SHA=PaVBVZkYqAjCQCu6UBL2xgsnZhw="));
+        assertEquals(MD5, fromDigest("md5=kS7IA7LOSeSlQQaNSVq1cA=="));
+    }
+
+    @Test
+    public void testDigestSkipsUnsupportedAlgorithms() {
+        assertEquals(SHA1, fromDigest("UNIXsum=30637, " +
+                "SHA=PaVBVZkYqAjCQCu6UBL2xgsnZhw="));
+        assertNull(fromDigest("UNIXsum=30637"));
+        assertNull(fromDigest("garbage"));
+        assertNull(fromDigest(null));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.http;
+
+import static org.fcrepo.rdf.DescriptionSection.CHILDREN;
+import static org.fcrepo.rdf.DescriptionSection.CONTENT;
+import static org.fcrepo.rdf.DescriptionSection.SERVICES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.EnumSet;
+
+import org.fcrepo.rdf.DescriptionSection;
+import org.junit.Test;
+
+public class PreferTest {
+
+    @Test
+    public void testNoPreferences() {
+        final Prefer prefer = Prefer.convert(null);
+
+        assertNull(prefer.getReturn());
+        assertEquals(DescriptionSection.all(), prefer.getSections());
+    }
+
+    @Test
+    public void testMinimal() {
+        final Prefer prefer = Prefer.convert("return=minimal");
+
+        assertEquals("minimal", prefer.getReturn());
+        assertEquals(EnumSet.noneOf(DescriptionSection.class), prefer
+                .getSections());
+    }
+
+    @Test
+    public void testMinimalWithInclude() {
+        final Prefer prefer =
+                Prefer.convert("return=minimal; include=\"" +
+                        CONTENT.getURI() + " " + SERVICES.getURI() + "\"");
+
+        assertEquals(EnumSet.of(CONTENT, SERVICES), prefer.getSections());
+    }
+
+    @Test
+    public void testRepresentationWithOmit() {
+        final Prefer prefer =
+                Prefer.convert("return=representation; omit=\"" +
+                        CHILDREN.getURI() + "\", respond-async");
+
+        assertEquals("representation", prefer.getReturn());
+        final EnumSet<DescriptionSection> expected =
+                EnumSet.allOf(DescriptionSection.class);
+        expected.remove(CHILDREN);
+        assertEquals(expected, prefer.getSections());
+    }
+
+    @Test
+    public void testUnknownPreferences() {
+        final Prefer prefer =
+                Prefer.convert("return=everything; omit=\"info:x\"");
+
+        assertNull(prefer.getReturn());
+        assertEquals(DescriptionSection.all(), prefer.getSections());
+    }
+}
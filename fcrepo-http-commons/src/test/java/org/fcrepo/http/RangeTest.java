@@ -16,10 +16,13 @@
 
 package org.fcrepo.http;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class RangeTest {
@@ -74,4 +77,32 @@ public class RangeTest {
         assertEquals(-1L, range.size());
 
     }
+
+    @Test
+    public void testMultipleRangeParsing() {
+        final List<Range> ranges = Range.convertAll("bytes=50-100, 200-,-5");
+
+        assertEquals(3, ranges.size());
+        assertEquals(50L, ranges.get(0).start());
+        assertEquals(100L, ranges.get(0).end());
+        assertEquals(200L, ranges.get(1).start());
+        assertEquals(-1L, ranges.get(1).end());
+        assertEquals(Range.convert("bytes=-5").end(), ranges.get(2).end());
+    }
+
+    @Test
+    public void testGarbageMultipleRangeParsing() {
+        final List<Range> ranges = Range.convertAll("bytes=1-2,x");
+
+        assertEquals(1, ranges.size());
+        assertFalse(ranges.get(0).hasRange());
+    }
+
+    @Test
+    public void testResolve() {
+        assertEquals(99L, new Range(50).resolve(100).end());
+        assertEquals(99L, new Range(50, 500).resolve(100).end());
+        assertEquals(60L, new Range(50, 60).resolve(100).end());
+        assertNull(new Range(100, 200).resolve(100));
+    }
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.util.Arrays.asList;
+import static org.fcrepo.responses.ArchiveStreamingOutput.APPLICATION_TAR_TYPE;
+import static org.fcrepo.responses.ArchiveStreamingOutput.APPLICATION_ZIP_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ArchiveStreamingOutputTest {
+
+    @Test
+    public void shouldWriteZip() throws IOException, RepositoryException {
+        final byte[] zip = write(APPLICATION_ZIP_TYPE);
+        assertEntries(new ZipArchiveInputStream(new ByteArrayInputStream(zip)));
+    }
+
+    @Test
+    public void shouldWriteTar() throws IOException, RepositoryException {
+        final byte[] tar = write(APPLICATION_TAR_TYPE);
+        assertEntries(new TarArchiveInputStream(new ByteArrayInputStream(tar)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOtherTypes() {
+        new ArchiveStreamingOutput(Collections.<BundleEntry> emptyList(),
+                MediaType.TEXT_PLAIN_TYPE);
+    }
+
+    private static byte[] write(final MediaType type) throws IOException,
+        RepositoryException {
+        final List<BundleEntry> entries =
+                asList(entry("ds1", "asdf"), entry("ds2", "qwerty"));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ArchiveStreamingOutput(entries, type).write(out);
+        return out.toByteArray();
+    }
+
+    private static void assertEntries(final ArchiveInputStream archive)
+        throws IOException {
+        ArchiveEntry entry = archive.getNextEntry();
+        assertEquals("ds1", entry.getName());
+        assertEquals("asdf", IOUtils.toString(archive, "UTF-8"));
+        entry = archive.getNextEntry();
+        assertEquals("ds2", entry.getName());
+        assertEquals("qwerty", IOUtils.toString(archive, "UTF-8"));
+        assertNull(archive.getNextEntry());
+        archive.close();
+    }
+
+    private static BundleEntry entry(final String name, final String content)
+        throws RepositoryException {
+        final Binary binary = mock(Binary.class);
+        when(binary.getStream()).thenReturn(IOUtils.toInputStream(content));
+        return new BundleEntry("/a/" + name, name, "text/plain", new Date(),
+                new Date(), content.length(), binary);
+    }
+}
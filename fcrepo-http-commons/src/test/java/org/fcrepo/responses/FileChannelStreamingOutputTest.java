@@ -0,0 +1,60 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileChannelStreamingOutputTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("fcrepo", ".bin");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, "0123456789");
+    }
+
+    @Test
+    public void shouldSendTheWholeFile() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FileChannelStreamingOutput(file).write(out);
+        assertEquals("0123456789", out.toString());
+    }
+
+    @Test
+    public void shouldSendARange() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FileChannelStreamingOutput(file, 5L, 3L).write(out);
+        assertEquals("567", out.toString());
+    }
+
+    @Test
+    public void shouldSendAnUnboundedRange() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FileChannelStreamingOutput(file, 5L, -1L).write(out);
+        assertEquals("56789", out.toString());
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.fcrepo.http.Range;
+import org.junit.Test;
+
+public class MultipartByteRangesStreamingOutputTest {
+
+    @Test
+    public void shouldSendFileRangesInOrder() throws IOException {
+        final File file = File.createTempFile("fcrepo", ".bin");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, "0123456789");
+        final MultipartByteRangesStreamingOutput test =
+                new MultipartByteRangesStreamingOutput(file, asList(
+                        new Range(7, 8), new Range(1, 2)), 10, "text/plain");
+
+        final String body = write(test);
+
+        assertTrue(body.indexOf("bytes 7-8/10\r\n\r\n78") < body
+                .indexOf("bytes 1-2/10\r\n\r\n12"));
+        assertTrue(body.endsWith("--\r\n"));
+    }
+
+    @Test
+    public void shouldMergeOverlappingStreamRanges() throws IOException {
+        final MultipartByteRangesStreamingOutput test =
+                new MultipartByteRangesStreamingOutput(
+                        new ByteArrayInputStream("0123456789".getBytes()),
+                        asList(new Range(5, 6), new Range(1, 2), new Range(
+                                2, 3)), 10, "text/plain");
+
+        final String body = write(test);
+
+        assertTrue(body.contains("bytes 1-3/10\r\n\r\n123\r\n"));
+        assertTrue(body.contains("bytes 5-6/10\r\n\r\n56\r\n"));
+        assertEquals(2, body.split("Content-Range").length - 1);
+    }
+
+    private static String write(final MultipartByteRangesStreamingOutput test)
+        throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        test.write(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class MultipartMixedStreamingOutputTest {
+
+    @Test
+    public void shouldOpenEachDatastreamOnlyWhenWritten()
+        throws IOException, RepositoryException {
+        final Binary first = mockBinary("asdf");
+        final Binary second = mockBinary("qwerty");
+        final MultipartMixedStreamingOutput test =
+                new MultipartMixedStreamingOutput(asList(entry("/a/ds1",
+                        first), entry("/a/ds2", second)));
+        verify(first, never()).getStream();
+        verify(second, never()).getStream();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        test.write(out);
+        final String body = out.toString("UTF-8");
+
+        final String boundary =
+                test.getMediaType().getParameters().get("boundary");
+        assertTrue(body.indexOf("\"/a/ds1\"") < body.indexOf("\"/a/ds2\""));
+        assertTrue(body.contains("Content-Type: text/plain\r\n"));
+        assertTrue(body.contains("\r\n\r\nasdf\r\n--" + boundary + "\r\n"));
+        assertTrue(body.endsWith("\r\n\r\nqwerty\r\n--" + boundary +
+                "--\r\n"));
+        assertEquals(2, body.split("Content-Disposition: attachment").length -
+                1);
+    }
+
+    private static BundleEntry entry(final String path, final Binary binary)
+        throws RepositoryException {
+        return new BundleEntry(path, path.substring(path.lastIndexOf('/') + 1),
+                "text/plain", new Date(), new Date(), binary.getSize(), binary);
+    }
+
+    private static Binary mockBinary(final String content)
+        throws RepositoryException {
+        final Binary binary = mock(Binary.class);
+        when(binary.getStream()).thenReturn(IOUtils.toInputStream(content));
+        when(binary.getSize()).thenReturn((long) content.length());
+        return binary;
+    }
+}
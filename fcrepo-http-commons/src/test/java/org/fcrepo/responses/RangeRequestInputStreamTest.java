@@ -17,6 +17,7 @@
 package org.fcrepo.responses;
 
 import org.apache.commons.io.IOUtils;
+import org.fcrepo.utils.Seekable;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -42,4 +43,35 @@ public class RangeRequestInputStreamTest {
         final String s = IOUtils.toString(out);
         assertEquals("0123456789", s);
     }
+
+    @Test
+    public void shouldSeekSeekableStreams() throws IOException {
+        final SeekableStream in =
+                new SeekableStream("0123456789".getBytes());
+        final RangeRequestInputStream out =
+                new RangeRequestInputStream(in, 5L, 3L);
+        assertEquals("567", IOUtils.toString(out));
+        assertEquals(5L, in.sought);
+    }
+
+    private static class SeekableStream extends ByteArrayInputStream
+            implements Seekable {
+
+        long sought = -1;
+
+        SeekableStream(final byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public void seek(final long position) {
+            sought = position;
+            pos = (int) position;
+        }
+
+        @Override
+        public long skip(final long n) {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
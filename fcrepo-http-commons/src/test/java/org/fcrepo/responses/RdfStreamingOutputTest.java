@@ -0,0 +1,121 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.responses;
+
+import static java.util.Arrays.asList;
+import static org.fcrepo.http.RDFMediaType.NTRIPLES_TYPE;
+import static org.fcrepo.http.RDFMediaType.RDF_XML_TYPE;
+import static org.fcrepo.http.RDFMediaType.TURTLE_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Test;
+
+import com.google.common.collect.Iterators;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+public class RdfStreamingOutputTest {
+
+    @Test
+    public void shouldStreamValidTurtle() throws IOException {
+        final Model read = roundTrip(TURTLE_TYPE, "TURTLE");
+        assertEquals(2, read.size());
+    }
+
+    @Test
+    public void shouldStreamValidNTriples() throws IOException {
+        final Model read = roundTrip(NTRIPLES_TYPE, "N-TRIPLE");
+        assertEquals(2, read.size());
+    }
+
+    @Test
+    public void shouldOnlyStreamLineBasedFormats() {
+        assertTrue(RdfStreamingOutput.isStreamable(TURTLE_TYPE));
+        assertTrue(RdfStreamingOutput.isStreamable(NTRIPLES_TYPE));
+        assertFalse(RdfStreamingOutput.isStreamable(RDF_XML_TYPE));
+        assertFalse(RdfStreamingOutput.isStreamable(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOtherFormats() {
+        new RdfStreamingOutput(asList(model("a")).iterator(), RDF_XML_TYPE);
+    }
+
+    @Test
+    public void shouldAbortWhenTheDescriptionIsCutShort() throws IOException {
+        final Iterator<Model> failing = new Iterator<Model>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Model next() {
+                throw new IllegalStateException("repository went away");
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new RdfStreamingOutput(Iterators.concat(Iterators
+                    .singletonIterator(model("a")), failing), TURTLE_TYPE)
+                    .write(out);
+            fail("Expected the failure to be rethrown");
+        } catch (final IllegalStateException e) {
+            assertEquals("repository went away", e.getMessage());
+        }
+        // internal errors aren't written into the response
+        assertFalse(out.toString("UTF-8").contains("repository went away"));
+        // what was written before the failure is still readable
+        assertEquals(1, ModelFactory.createDefaultModel().read(
+                new ByteArrayInputStream(out.toByteArray()), null, "TURTLE")
+                .size());
+    }
+
+    private static Model roundTrip(final MediaType type, final String lang)
+        throws IOException {
+        final Model first = model("a");
+        first.setNsPrefix("ex", "http://example.org/");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RdfStreamingOutput(asList(first, model("b")).iterator(), type)
+                .write(out);
+        return ModelFactory.createDefaultModel().read(
+                new ByteArrayInputStream(out.toByteArray()), null, lang);
+    }
+
+    private static Model model(final String subject) {
+        final Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource("http://example.org/" + subject),
+                model.createProperty("http://example.org/p"), "o");
+        return model;
+    }
+}
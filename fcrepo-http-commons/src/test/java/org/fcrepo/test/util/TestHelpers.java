@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 
+import javax.jcr.Binary;
 import javax.jcr.LoginException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -226,6 +227,12 @@ public abstract class TestHelpers {
                 when(mockDs.getContent()).thenReturn(
                         IOUtils.toInputStream(content));
                 when(mockDs.getContentDigest()).thenReturn(cd);
+                final Binary mockBinary = mock(Binary.class);
+                when(mockBinary.getStream()).thenReturn(
+                        IOUtils.toInputStream(content));
+                when(mockBinary.getSize()).thenReturn(
+                        (long) content.getBytes().length);
+                when(mockDs.getContentBinary()).thenReturn(mockBinary);
             }
         } catch (final Throwable t) {
         }
@@ -41,6 +41,12 @@ public interface FedoraJcrTypes {
 
     String CONTENT_DIGEST = "fedora:digest";
 
+    String CONTENT_DIGESTS = "fedora:digests";
+
+    String FIXITY_LAST_CHECKED = "fedora:lastFixityCheck";
+
+    String FIXITY_LAST_OUTCOME = "fedora:lastFixityOutcome";
+
     String FCR_CONTENT = "fcr:content";
 
     String ROOT = "mode:root";
@@ -16,10 +16,13 @@
 package org.fcrepo;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static org.fcrepo.metrics.RegistryService.getMetrics;
 import static org.fcrepo.services.ServiceHelpers.getNodePropertySize;
-import static org.fcrepo.utils.FedoraTypesUtils.getBinary;
+import static org.fcrepo.utils.BinaryLocationCache.getBinaryLocationCache;
 import static org.fcrepo.utils.FedoraTypesUtils.isFedoraDatastream;
+import static org.fcrepo.utils.FixityResultCache.getFixityResultCache;
 import static org.modeshape.jcr.api.JcrConstants.JCR_CONTENT;
 import static org.modeshape.jcr.api.JcrConstants.JCR_DATA;
 import static org.modeshape.jcr.api.JcrConstants.JCR_MIME_TYPE;
@@ -29,21 +32,33 @@ import static org.slf4j.LoggerFactory.getLogger;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Value;
 
 import org.fcrepo.binary.PolicyDecisionPoint;
 import org.fcrepo.exception.InvalidChecksumException;
 import org.fcrepo.utils.ContentDigest;
 import org.fcrepo.utils.FedoraJcrTypes;
+import org.fcrepo.utils.FixityInputStream;
+import org.fcrepo.utils.VerifyingInputStream;
 import org.modeshape.jcr.api.Binary;
 import org.modeshape.jcr.api.JcrConstants;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
 import org.slf4j.Logger;
 
 import com.codahale.metrics.Histogram;
+import com.google.common.base.Splitter;
 
 /**
  * Abstraction for a Fedora datastream backed by a JCR node.
@@ -112,9 +127,21 @@ public class Datastream extends FedoraResource implements FedoraJcrTypes {
      * @throws RepositoryException
      */
     public InputStream getContent() throws RepositoryException {
+        return getContentBinary().getStream();
+    }
+
+    /**
+     * Get the binary holding this datastream's content without opening it.
+     * The binary's stream can still be opened after the session is logged
+     * out, so callers can put off reading the content until they need it.
+     *
+     * @return The Binary of content associated with this datastream.
+     * @throws RepositoryException
+     */
+    public javax.jcr.Binary getContentBinary() throws RepositoryException {
         final Node contentNode = node.getNode(JCR_CONTENT);
         LOGGER.trace("Retrieved datastream content node.");
-        return contentNode.getProperty(JCR_DATA).getBinary().getStream();
+        return contentNode.getProperty(JCR_DATA).getBinary();
     }
 
     /**
@@ -127,6 +154,59 @@ public class Datastream extends FedoraResource implements FedoraJcrTypes {
                            final URI checksum,
                            PolicyDecisionPoint storagePolicyDecisionPoint)
         throws RepositoryException, InvalidChecksumException {
+        setContent(content, contentType, checksum, -1L,
+                   storagePolicyDecisionPoint);
+    }
+
+    /**
+     * Sets the content of this Datastream.
+     *
+     * @param content
+     * @param contentType
+     * @param checksum the expected checksum, or null; content that doesn't
+     *        match it is rejected before it's committed to the binary store
+     * @param contentSize the declared size of the content, or -1 if it isn't
+     *        known; used to pick a storage policy, and checked along with
+     *        the checksum
+     * @param storagePolicyDecisionPoint
+     * @throws RepositoryException
+     */
+    public void setContent(final InputStream content, final String contentType,
+                           final URI checksum, final long contentSize,
+                           PolicyDecisionPoint storagePolicyDecisionPoint)
+        throws RepositoryException, InvalidChecksumException {
+
+        final StagedContent staged =
+            stageContent(content, contentType, checksum, contentSize,
+                         storagePolicyDecisionPoint);
+        staged.store();
+        setContent(staged);
+    }
+
+    /**
+     * Prepare to set the content of this Datastream: create its content node
+     * and pick a storage hint. The returned content can then be stored in the
+     * binary store (see {@link StagedContent#store()}) on any thread, and
+     * finally attached with {@link #setContent(StagedContent)}.
+     *
+     * @param content
+     * @param contentType
+     * @param checksum the expected checksum, or null; content that doesn't
+     *        match it is rejected before it's committed to the binary store
+     * @param contentSize the declared size of the content, or -1 if it isn't
+     *        known; used to pick a storage policy, and checked along with
+     *        the checksum
+     * @param storagePolicyDecisionPoint
+     * @return
+     * @throws RepositoryException
+     */
+    public StagedContent stageContent(final InputStream content,
+                                      final String contentType,
+                                      final URI checksum,
+                                      final long contentSize,
+                                      final PolicyDecisionPoint
+                                      storagePolicyDecisionPoint)
+        throws RepositoryException {
 
         final Node contentNode =
             findOrCreateChild(node, JCR_CONTENT, NT_RESOURCE);
@@ -146,38 +226,90 @@ public class Datastream extends FedoraResource implements FedoraJcrTypes {
 
 
         if (storagePolicyDecisionPoint != null) {
-            hint = storagePolicyDecisionPoint.evaluatePolicies(node);
+            hint = storagePolicyDecisionPoint.evaluatePolicies(node,
+                                                                contentSize);
         }
 
-        Binary binary = (Binary) getBinary(node, content, hint);
-
-        /*
-         * This next line of code deserves explanation. If we chose for the
-         * simpler line:
-         * Property dataProperty = contentNode.setProperty(JCR_DATA,
-         * requestBodyStream);
-         * then the JCR would not block on the stream's completion, and we would
-         * return to the requester before the mutation to the repo had actually
-         * completed. So instead we use createBinary(requestBodyStream), because
-         * its contract specifies:
-         * "The passed InputStream is closed before this method returns either
-         * normally or because of an exception."
-         * which lets us block and not return until the job is done! The simpler
-         * code may still be useful to us for an asynchronous method that we
-         * develop later.
-         */
+        // compute any digests ModeShape doesn't in the same pass as the upload
+        final Map<String, MessageDigest> ingestDigests =
+            getIngestDigests(checksum);
+        final InputStream digestingContent = ingestDigests.isEmpty() ?
+            content : new FixityInputStream(content, ingestDigests.values()
+                    .toArray(new MessageDigest[ingestDigests.size()]));
+
+        // check the content against the expected checksum as it's stored, so
+        // the store gives up on bad content before committing it
+        final VerifyingInputStream verifyingContent = checksum == null ?
+            null : new VerifyingInputStream(digestingContent, checksum,
+                                            contentSize);
+
+        return new StagedContent(this, contentNode, verifyingContent == null ?
+            digestingContent : verifyingContent, verifyingContent,
+            ingestDigests, hint, checksum);
+    }
+
+    /**
+     * Attach content that was staged for this Datastream and has been stored
+     *
+     * @param staged
+     * @throws RepositoryException
+     * @throws InvalidChecksumException
+     */
+    public void setContent(final StagedContent staged)
+        throws RepositoryException, InvalidChecksumException {
+
+        checkArgument(staged.getDatastream() == this,
+                      "Content was staged for another datastream!");
+        final Binary binary = staged.getBinary();
+        checkState(binary != null, "Content must be stored before it's set!");
+
+        final Node contentNode = staged.getContentNode();
         final Property dataProperty = contentNode.setProperty(JCR_DATA, binary);
 
-        final String dsChecksum = binary.getHexHash();
-        if (checksum != null &&
-                !checksum.equals(ContentDigest.asURI("SHA-1", dsChecksum))) {
-            LOGGER.debug("Failed checksum test");
-            throw new InvalidChecksumException("Checksum Mismatch of " +
-                                               dsChecksum + " and " + checksum);
+        // the stored bytes may have been rewritten; don't trust old checks
+        // or old locations
+        if (binary instanceof BinaryValue) {
+            final BinaryKey key = ((BinaryValue) binary).getKey();
+            getFixityResultCache().invalidate(key);
+            getBinaryLocationCache().invalidate(key);
+        }
+
+        final Map<String, URI> computedDigests = new HashMap<>();
+        for (final Map.Entry<String, MessageDigest> digest : staged
+                .getIngestDigests().entrySet()) {
+            computedDigests.put(digest.getKey(), ContentDigest.asURI(digest
+                    .getKey(), digest.getValue().digest()));
+        }
+        computedDigests.put("SHA-1", ContentDigest.asURI("SHA-1", binary
+                .getHexHash()));
+
+        final URI checksum = staged.getChecksum();
+        if (checksum != null) {
+            final String algorithm = ContentDigest.getAlgorithm(checksum);
+            final URI computed =
+                computedDigests.get(algorithm == null ? "SHA-1" : algorithm);
+            if (!checksum.equals(computed)) {
+                LOGGER.debug("Failed checksum test");
+                throw new InvalidChecksumException("Checksum Mismatch of " +
+                                                   computed + " and " +
+                                                   checksum);
+            }
         }
 
         decorateContentNode(contentNode);
 
+        computedDigests.remove("SHA-1");
+        if (!computedDigests.isEmpty()) {
+            final String[] values = new String[computedDigests.size()];
+            int i = 0;
+            for (final URI digest : computedDigests.values()) {
+                values[i++] = digest.toString();
+            }
+            contentNode.setProperty(CONTENT_DIGESTS, values);
+        } else if (contentNode.hasProperty(CONTENT_DIGESTS)) {
+            contentNode.getProperty(CONTENT_DIGESTS).remove();
+        }
+
         LOGGER.debug("Created data property at path: {}",
                      dataProperty.getPath());
 
@@ -232,6 +364,73 @@ public class Datastream extends FedoraResource implements FedoraJcrTypes {
         return ContentDigest.asURI("SHA-1",dsChecksum);
     }
 
+    /**
+     * Get a pre-calculated content digest for the binary payload
+     * @param algorithm a MessageDigest algorithm name, e.g. SHA-256
+     * @return a URI with the format algorithm:value, or null if no digest
+     *         was calculated with that algorithm
+     * @throws RepositoryException
+     */
+    public URI getContentDigest(final String algorithm)
+        throws RepositoryException {
+        final String canonical = ContentDigest.getCanonicalAlgorithm(algorithm);
+        if ("SHA-1".equals(canonical)) {
+            return getContentDigest();
+        }
+        final Node contentNode = node.getNode(JCR_CONTENT);
+        if (canonical == null || !contentNode.hasProperty(CONTENT_DIGESTS)) {
+            return null;
+        }
+        for (final Value value : contentNode.getProperty(CONTENT_DIGESTS)
+                .getValues()) {
+            final URI digest = URI.create(value.getString());
+            if (canonical.equals(ContentDigest.getAlgorithm(digest))) {
+                return digest;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a MessageDigest for every digest that should be calculated while
+     * content is ingested: those listed (comma-separated) in the
+     * fcrepo.digest.algorithms system property, and that of the checksum
+     * the client sent. SHA-1 is left out, since ModeShape computes it.
+     *
+     * @param checksum the checksum sent by the client, or null
+     * @return MessageDigests keyed by canonical algorithm name
+     */
+    private static Map<String, MessageDigest> getIngestDigests(
+            final URI checksum) {
+        final Set<String> algorithms = new HashSet<>();
+        for (final String algorithm : Splitter.on(',').trimResults()
+                .omitEmptyStrings().split(
+                        System.getProperty("fcrepo.digest.algorithms", ""))) {
+            final String canonical =
+                ContentDigest.getCanonicalAlgorithm(algorithm);
+            if (canonical == null) {
+                LOGGER.warn("Ignoring unsupported digest algorithm {}",
+                            algorithm);
+            } else {
+                algorithms.add(canonical);
+            }
+        }
+        if (checksum != null && ContentDigest.getAlgorithm(checksum) != null) {
+            algorithms.add(ContentDigest.getAlgorithm(checksum));
+        }
+        algorithms.remove("SHA-1");
+
+        final Map<String, MessageDigest> digests = new HashMap<>();
+        for (final String algorithm : algorithms) {
+            try {
+                digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            } catch (final NoSuchAlgorithmException e) {
+                LOGGER.warn("Could not create MessageDigest: {}", e);
+            }
+        }
+        return digests;
+    }
+
     /**
      * @return The ID of this datastream, unique within an object. Normally just
      *         the name of the backing JCR node.
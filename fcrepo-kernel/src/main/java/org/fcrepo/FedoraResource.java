@@ -26,22 +26,27 @@ import static org.slf4j.LoggerFactory.getLogger;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Set;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.version.VersionHistory;
 
+import org.fcrepo.rdf.DescriptionSection;
 import org.fcrepo.rdf.GraphProperties;
 import org.fcrepo.rdf.GraphSubjects;
 import org.fcrepo.rdf.impl.DefaultGraphSubjects;
 import org.fcrepo.rdf.impl.JcrGraphProperties;
+import org.fcrepo.utils.ChildCursor;
 import org.fcrepo.utils.FedoraJcrTypes;
 import org.fcrepo.utils.JcrRdfTools;
 import org.modeshape.jcr.api.JcrConstants;
 import org.modeshape.jcr.api.JcrTools;
 import org.slf4j.Logger;
 
+import com.google.common.base.Function;
 import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.query.DatasetFactory;
 import com.hp.hpl.jena.rdf.model.Model;
@@ -266,6 +271,77 @@ public class FedoraResource extends JcrTools implements FedoraJcrTypes {
         }
     }
 
+    /**
+     * Serialize a page of the JCR properties as an RDF Dataset, starting
+     * after where the previous page left off
+     *
+     * @param subjects
+     * @param offset
+     * @param after where the previous page left off, or null
+     * @param limit
+     * @param pager makes the statements linking to the next page, given
+     *        where this page leaves off (null if it's the last), or null
+     * @param sections the parts of the description to include, beyond the
+     *        object's own properties
+     * @return
+     * @throws RepositoryException
+     */
+    public Dataset getPropertiesDataset(final GraphSubjects subjects,
+            final long offset, final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException {
+
+        if (this.properties != null) {
+            return this.properties.getProperties(node, subjects, offset,
+                    after, limit, pager, sections);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Serialize the JCR properties as a series of RDF models, built only as
+     * they are read. The session must stay open until the iterator is used
+     * up.
+     *
+     * @param subjects
+     * @param offset
+     * @param limit
+     * @return
+     * @throws RepositoryException
+     */
+    public Iterator<Model> getPropertiesModels(final GraphSubjects subjects,
+            final long offset, final int limit)
+        throws RepositoryException {
+        return this.properties.getPropertiesModels(node, subjects, offset,
+                limit);
+    }
+
+    /**
+     * Serialize a page of the JCR properties as a series of RDF models,
+     * starting after where the previous page left off
+     *
+     * @param subjects
+     * @param offset
+     * @param after where the previous page left off, or null
+     * @param limit
+     * @param pager makes the statements linking to the next page, given
+     *        where this page leaves off (null if it's the last), or null
+     * @param sections the parts of the description to include, beyond the
+     *        object's own properties
+     * @return
+     * @throws RepositoryException
+     */
+    public Iterator<Model> getPropertiesModels(final GraphSubjects subjects,
+            final long offset, final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException {
+        return this.properties.getPropertiesModels(node, subjects, offset,
+                after, limit, pager, sections);
+    }
+
     /**
      * Serialize the JCR properties of this object as an RDF Dataset
      * @return
@@ -48,6 +48,8 @@ public final class RdfLexicon {
             createProperty(INTERNAL_NAMESPACE + "computedChecksum");
     public static final Property HAS_COMPUTED_SIZE =
             createProperty(INTERNAL_NAMESPACE + "computedSize");
+    public static final Property HAS_LAST_FIXITY_CHECK =
+            createProperty(INTERNAL_NAMESPACE + "lastFixityCheck");
 
     public static final Property HAS_FIXITY_CHECK_COUNT =
             createProperty(INTERNAL_NAMESPACE + "numFixityChecks");
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.fcrepo.exception.InvalidChecksumException;
+import org.fcrepo.utils.FedoraTypesUtils;
+import org.fcrepo.utils.VerifyingInputStream;
+import org.modeshape.jcr.api.Binary;
+import org.slf4j.Logger;
+
+/**
+ * Content on its way into a Datastream (see
+ * {@link Datastream#stageContent}). Storing it in the binary store doesn't
+ * touch the session's pending changes, so it may happen on another thread
+ * through a session of its own (see {@link #store(Session)}), e.g. to store
+ * several datastreams' content at once; attaching it to the Datastream has
+ * to happen on the thread that uses the Datastream's session.
+ */
+public class StagedContent {
+
+    private static final Logger LOGGER = getLogger(StagedContent.class);
+
+    private final Datastream datastream;
+
+    private final Node contentNode;
+
+    private final InputStream content;
+
+    private final VerifyingInputStream verifyingContent;
+
+    private final Map<String, MessageDigest> ingestDigests;
+
+    private final String hint;
+
+    private final URI checksum;
+
+    private volatile Binary binary;
+
+    StagedContent(final Datastream datastream, final Node contentNode,
+            final InputStream content,
+            final VerifyingInputStream verifyingContent,
+            final Map<String, MessageDigest> ingestDigests, final String hint,
+            final URI checksum) {
+        this.datastream = datastream;
+        this.contentNode = contentNode;
+        this.content = content;
+        this.verifyingContent = verifyingContent;
+        this.ingestDigests = ingestDigests;
+        this.hint = hint;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Store the content in the binary store through the Datastream's own
+     * session, so on that session's thread
+     *
+     * @throws InvalidChecksumException if the content didn't match the
+     *         expected checksum (in which case nothing was stored)
+     */
+    public void store() throws InvalidChecksumException {
+        final Node node = datastream.getNode();
+        LOGGER.debug("Storing content for {} with hint {}", node, hint);
+        /*
+         * We create the binary up front with createBinary(content), rather
+         * than the simpler contentNode.setProperty(JCR_DATA, content),
+         * because the JCR would not block on the stream's completion for the
+         * latter, and we would return to the requester before the mutation to
+         * the repo had actually completed. createBinary's contract specifies:
+         * "The passed InputStream is closed before this method returns either
+         * normally or because of an exception."
+         * which lets us block and not return until the job is done!
+         */
+        try {
+            binary =
+                    (Binary) FedoraTypesUtils.getBinary(node, content, hint);
+        } catch (final RuntimeException e) {
+            checkContent();
+            throw e;
+        }
+    }
+
+    /**
+     * Store the content in the binary store through another session, which
+     * may be used on any thread. Binaries aren't tied to the session that
+     * created them, so the result can still be attached with
+     * {@link Datastream#setContent(StagedContent)}.
+     *
+     * @param session a session not in use on any other thread
+     * @throws InvalidChecksumException if the content didn't match the
+     *         expected checksum (in which case nothing was stored)
+     */
+    public void store(final Session session) throws InvalidChecksumException {
+        // the datastream's nodes belong to another thread's session
+        LOGGER.debug("Storing staged content with hint {}", hint);
+        try {
+            binary =
+                    (Binary) FedoraTypesUtils.getBinary(session, content,
+                            hint);
+        } catch (final RuntimeException e) {
+            checkContent();
+            throw e;
+        }
+    }
+
+    /**
+     * Blame a failed store on the content, if it didn't match its checksum
+     */
+    private void checkContent() throws InvalidChecksumException {
+        if (verifyingContent != null &&
+                verifyingContent.getMismatch() != null) {
+            LOGGER.debug("Failed checksum test while storing content");
+            throw new InvalidChecksumException(verifyingContent
+                    .getMismatch());
+        }
+    }
+
+    /**
+     * @return the Datastream this content is for
+     */
+    public Datastream getDatastream() {
+        return datastream;
+    }
+
+    /**
+     * @return the stored binary, or null if the content hasn't been stored
+     */
+    Binary getBinary() {
+        return binary;
+    }
+
+    Node getContentNode() {
+        return contentNode;
+    }
+
+    Map<String, MessageDigest> getIngestDigests() {
+        return ingestDigests;
+    }
+
+    URI getChecksum() {
+        return checksum;
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.fcrepo;
 
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
+
 import java.util.Calendar;
 import java.util.Date;
 import java.util.UUID;
@@ -111,11 +113,13 @@ public class Transaction {
     }
 
     /**
-     * "Commit" the transaction by saving the backing-session
+     * "Commit" the transaction by saving the backing-session. Any resource
+     * may have changed in it, so all cached resource metadata is dropped.
      * @throws RepositoryException
      */
     public void commit() throws RepositoryException {
         this.session.save();
+        getResourceMetadataCache().invalidateAll();
         this.state = State.COMMITED;
         this.expire();
     }
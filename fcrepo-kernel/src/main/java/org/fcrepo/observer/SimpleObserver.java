@@ -24,8 +24,12 @@ import static javax.jcr.observation.Event.PROPERTY_ADDED;
 import static javax.jcr.observation.Event.PROPERTY_CHANGED;
 import static javax.jcr.observation.Event.PROPERTY_REMOVED;
 import static org.fcrepo.metrics.RegistryService.getMetrics;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.jcr.RepositoryException;
@@ -34,6 +38,7 @@ import javax.jcr.observation.Event;
 import javax.jcr.observation.EventListener;
 
 import org.fcrepo.utils.EventIterator;
+import org.fcrepo.utils.ResourceMetadataCache;
 import org.modeshape.jcr.api.Repository;
 import org.slf4j.Logger;
 
@@ -80,19 +85,29 @@ public class SimpleObserver implements EventListener {
         final Session session = repository.login();
         session.getWorkspace().getObservationManager().addEventListener(this,
                 EVENT_TYPES, "/", true, null, null, false);
+        getResourceMetadataCache().keepCurrentFor(
+                session.getWorkspace().getName());
         session.save();
         session.logout();
     }
 
     /**
-     * Filter JCR events and transform them into our own FedoraEvents.
+     * Filter JCR events and transform them into our own FedoraEvents. Every
+     * event, filtered or not, invalidates the cached metadata of the nodes it
+     * touches.
      *
      * @param events
      */
     @Override
     public void onEvent(final javax.jcr.observation.EventIterator events) {
 
-        for (final Event e : filter(new EventIterator(events), eventFilter)) {
+        final List<Event> received = new ArrayList<>();
+        for (final Event e : new EventIterator(events)) {
+            invalidateMetadata(e);
+            received.add(e);
+        }
+
+        for (final Event e : filter(received, eventFilter)) {
 
             EVENT_COUNTER.inc();
 
@@ -101,4 +116,24 @@ public class SimpleObserver implements EventListener {
         }
     }
 
+    /**
+     * Invalidate the cached metadata of the node an event touched (both ends
+     * of a move)
+     */
+    private static void invalidateMetadata(final Event e) {
+        final ResourceMetadataCache cache = getResourceMetadataCache();
+        try {
+            cache.invalidate(e.getPath());
+            if (e.getType() == NODE_MOVED && e.getInfo() != null) {
+                final Object source = e.getInfo().get("srcAbsPath");
+                if (source != null) {
+                    cache.invalidate(source.toString());
+                }
+            }
+        } catch (final RepositoryException ex) {
+            LOGGER.warn("Could not tell which node {} touched, " +
+                    "invalidating all cached metadata", e, ex);
+            cache.invalidateAll();
+        }
+    }
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.rdf;
+
+import static org.fcrepo.RdfLexicon.INTERNAL_NAMESPACE;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The parts of a node's description beyond its own properties, each of which
+ * costs something to put together and can be left out when a client doesn't
+ * need it. Each is named by a URI, for use in a Prefer header.
+ */
+public enum DescriptionSection {
+
+    /**
+     * Descriptors, node types, counts and configuration of the repository,
+     * in the description of the root node
+     */
+    REPOSITORY(INTERNAL_NAMESPACE + "PreferRepository"),
+
+    /**
+     * The node's parent and the parent's properties
+     */
+    PARENT(INTERNAL_NAMESPACE + "PreferParent"),
+
+    /**
+     * The node's children, with their properties, and the count of them
+     */
+    CHILDREN("http://www.w3.org/ns/ldp#PreferContainment"),
+
+    /**
+     * The properties of the node's jcr:content, and where it is stored
+     */
+    CONTENT(INTERNAL_NAMESPACE + "PreferContent"),
+
+    /**
+     * Links to the services available for the node (versions, fixity,
+     * transactions, ...), added by the HTTP layer
+     */
+    SERVICES(INTERNAL_NAMESPACE + "PreferServices");
+
+    private final String uri;
+
+    private DescriptionSection(final String uri) {
+        this.uri = uri;
+    }
+
+    /**
+     * @return the URI naming this section
+     */
+    public String getURI() {
+        return uri;
+    }
+
+    /**
+     * @param uri
+     * @return the section the URI names, or null if it names none
+     */
+    public static DescriptionSection forURI(final String uri) {
+        for (final DescriptionSection section : values()) {
+            if (section.uri.equals(uri)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return every section, as in a full description
+     */
+    public static Set<DescriptionSection> all() {
+        return EnumSet.allOf(DescriptionSection.class);
+    }
+}
@@ -16,10 +16,17 @@
 
 package org.fcrepo.rdf;
 
+import java.util.Iterator;
+import java.util.Set;
+
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
+import org.fcrepo.utils.ChildCursor;
+
+import com.google.common.base.Function;
 import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.sparql.util.Symbol;
 
 
@@ -49,6 +56,28 @@ public interface GraphProperties {
     Dataset getProperties(final Node node, final GraphSubjects subjects,
             final long offset, final int limit) throws RepositoryException;
 
+    /**
+     * Return a page of the properties generated by this factory for the
+     * given object and subject factory, starting after where the previous
+     * page left off, with statements linking to the next page.
+     * @param node
+     * @param subjects
+     * @param offset
+     * @param after where the previous page left off, or null
+     * @param limit
+     * @param pager makes the statements linking to the next page, given
+     *        where this page leaves off (null if it's the last), or null
+     * @param sections the parts of the description to include, beyond the
+     *        node's own properties
+     * @return
+     * @throws RepositoryException
+     */
+    Dataset getProperties(final Node node, final GraphSubjects subjects,
+            final long offset, final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException;
+
     /**
      * Return a list of all properties generated by this factory
      * for the given object and subject factory.
@@ -59,4 +88,43 @@ public interface GraphProperties {
      */
     Dataset getProperties(final Node node, final GraphSubjects subjects)
         throws RepositoryException;
+
+    /**
+     * Return the same properties as {@link #getProperties(Node, GraphSubjects,
+     * long, int)}, as a series of small models that are only built as the
+     * iterator reaches them, so they can be written out without holding the
+     * whole description in memory. The first model carries the namespace
+     * prefixes. The node's session must stay open until the iterator is
+     * used up.
+     * @param node
+     * @param subjects
+     * @param offset
+     * @param limit
+     * @return
+     * @throws RepositoryException
+     */
+    Iterator<Model> getPropertiesModels(final Node node,
+            final GraphSubjects subjects, final long offset, final int limit)
+        throws RepositoryException;
+
+    /**
+     * Return the same properties as {@link #getProperties(Node, GraphSubjects,
+     * long, ChildCursor, int, Function, Set)}, as a series of small models
+     * that are only built as the iterator reaches them.
+     * @param node
+     * @param subjects
+     * @param offset
+     * @param after
+     * @param limit
+     * @param pager
+     * @param sections
+     * @return
+     * @throws RepositoryException
+     */
+    Iterator<Model> getPropertiesModels(final Node node,
+            final GraphSubjects subjects, final long offset,
+            final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException;
 }
@@ -16,14 +16,21 @@
 
 package org.fcrepo.rdf.impl;
 
+import java.util.Iterator;
+import java.util.Set;
+
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
+import org.fcrepo.rdf.DescriptionSection;
 import org.fcrepo.rdf.GraphProperties;
 import org.fcrepo.rdf.GraphSubjects;
+import org.fcrepo.utils.ChildCursor;
 import org.fcrepo.utils.JcrPropertyStatementListener;
 import org.fcrepo.utils.JcrRdfTools;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.query.DatasetFactory;
 import com.hp.hpl.jena.rdf.model.Model;
@@ -43,9 +50,25 @@ public class JcrGraphProperties implements GraphProperties {
     public Dataset getProperties(final Node node, final GraphSubjects subjects,
             final long offset, final int limit)
         throws RepositoryException {
-        final Model model = JcrRdfTools.getJcrPropertiesModel(subjects, node);
-        final Model treeModel = JcrRdfTools.getJcrTreeModel(
-                subjects, node, offset, limit);
+        return getDataset(node, subjects, JcrRdfTools.getJcrPropertiesModel(
+                subjects, node), JcrRdfTools.getJcrTreeModel(subjects, node,
+                offset, limit));
+    }
+
+    @Override
+    public Dataset getProperties(final Node node, final GraphSubjects subjects,
+            final long offset, final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException {
+        return getDataset(node, subjects, JcrRdfTools.getJcrPropertiesModel(
+                subjects, node, sections), JcrRdfTools.getJcrTreeModel(
+                subjects, node, offset, after, limit, pager, sections));
+    }
+
+    private static Dataset getDataset(final Node node,
+            final GraphSubjects subjects, final Model model,
+            final Model treeModel) throws RepositoryException {
         final Model problemModel = JcrRdfTools.getProblemsModel();
 
         JcrPropertyStatementListener listener =
@@ -75,4 +98,26 @@ public class JcrGraphProperties implements GraphProperties {
         return getProperties(node, subjects, 0, -1);
     }
 
+    @Override
+    public Iterator<Model> getPropertiesModels(final Node node,
+            final GraphSubjects subjects, final long offset, final int limit)
+        throws RepositoryException {
+        return Iterators.concat(Iterators.singletonIterator(JcrRdfTools
+                .getJcrPropertiesModel(subjects, node)), JcrRdfTools
+                .getJcrTreeModels(subjects, node, offset, limit));
+    }
+
+    @Override
+    public Iterator<Model> getPropertiesModels(final Node node,
+            final GraphSubjects subjects, final long offset,
+            final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException {
+        return Iterators.concat(Iterators.singletonIterator(JcrRdfTools
+                .getJcrPropertiesModel(subjects, node, sections)), JcrRdfTools
+                .getJcrTreeModels(subjects, node, offset, after, limit,
+                        pager, sections));
+    }
+
 }
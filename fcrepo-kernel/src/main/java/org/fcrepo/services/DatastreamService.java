@@ -17,26 +17,49 @@
 package org.fcrepo.services;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
 import static com.google.common.collect.Collections2.filter;
 import static com.google.common.collect.ImmutableSet.copyOf;
 import static com.google.common.collect.Sets.difference;
+import static java.lang.Math.round;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.fcrepo.metrics.RegistryService.getMetrics;
 import static org.fcrepo.services.ServiceHelpers.getCheckCacheFixityFunction;
+import static org.fcrepo.utils.FixityEngine.throughput;
+import static org.fcrepo.utils.FixityResultCache.getFixityResultCache;
 import static org.fcrepo.utils.JcrRdfTools.getGraphSubject;
 import static org.modeshape.jcr.api.JcrConstants.JCR_CONTENT;
+import static org.modeshape.jcr.api.JcrConstants.JCR_DATA;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
 import org.fcrepo.Datastream;
+import org.fcrepo.StagedContent;
 import org.fcrepo.binary.PolicyDecisionPoint;
 import org.fcrepo.exception.InvalidChecksumException;
 import org.fcrepo.rdf.GraphProperties;
@@ -44,14 +67,20 @@ import org.fcrepo.rdf.GraphSubjects;
 import org.fcrepo.utils.FixityResult;
 import org.fcrepo.utils.JcrRdfTools;
 import org.fcrepo.utils.LowLevelCacheEntry;
+import org.fcrepo.utils.ReplicaRepairer;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.sparql.util.Context;
@@ -78,6 +107,12 @@ public class DatastreamService extends RepositoryService {
     static final Timer timer = getMetrics().timer(
             name(Datastream.class, "fixity-check-time"));
 
+    static final Histogram fixityThroughput = getMetrics().histogram(
+            name(Datastream.class, "fixity-check-throughput-mb-per-second"));
+
+    static final Meter fixityBytesMeter = getMetrics().meter(
+            name(Datastream.class, "fixity-check-bytes"));
+
     static final Counter fixityRepairedCounter = getMetrics().counter(
             name(LowLevelStorageService.class, "fixity-repaired-counter"));
 
@@ -86,6 +121,17 @@ public class DatastreamService extends RepositoryService {
 
     private static final Logger logger = getLogger(DatastreamService.class);
 
+    public static final int STAGING_PARALLELISM = Math.max(1, Integer
+            .getInteger("fcrepo.ingest.parallelism", 4));
+
+    /**
+     * The most binaries stored at once, across all requests
+     */
+    public static final int STAGING_THREADS = Math.max(1, Integer
+            .getInteger("fcrepo.ingest.threads", 16));
+
+    private static final ExecutorService stagers = newStagerPool();
+
     /**
      * Create a new Datastream node in the JCR store
      * 
@@ -125,12 +171,122 @@ public class DatastreamService extends RepositoryService {
         final InputStream requestBodyStream, final URI checksum)
         throws RepositoryException, IOException, InvalidChecksumException {
 
+        return createDatastreamNode(session, dsPath, contentType,
+                requestBodyStream, checksum, -1L);
+    }
+
+    /**
+     * Create a new Datastream node in the JCR store
+     * 
+     * @param session the jcr session to use
+     * @param dsPath the absolute path to put the datastream
+     * @param contentType the mime-type for the requestBodyStream
+     * @param requestBodyStream binary payload for the datastream
+     * @param checksum the digest for the binary payload (as urn:sha1:xyz)
+     * @param contentSize the declared size of the binary payload, or -1 if
+     *        it isn't known
+     * @return
+     * @throws RepositoryException
+     * @throws IOException
+     * @throws InvalidChecksumException
+     */
+    public Node createDatastreamNode(final Session session,
+        final String dsPath, final String contentType,
+        final InputStream requestBodyStream, final URI checksum,
+        final long contentSize)
+        throws RepositoryException, IOException, InvalidChecksumException {
+
         final Datastream ds = new Datastream(session, dsPath);
-        ds.setContent(requestBodyStream, contentType, checksum,
+        ds.setContent(requestBodyStream, contentType, checksum, contentSize,
                 getStoragePolicyDecisionPoint());
         return ds.getNode();
     }
 
+    /**
+     * Create a new Datastream node in the JCR store, and get its content
+     * ready to be stored by {@link #setStagedContents(List)}
+     *
+     * @param session the jcr session to use
+     * @param dsPath the absolute path to put the datastream
+     * @param contentType the mime-type for the requestBodyStream
+     * @param requestBodyStream binary payload for the datastream
+     * @param checksum the digest for the binary payload (as urn:sha1:xyz), or
+     *        null
+     * @param contentSize the declared size of the binary payload, or -1 if
+     *        it isn't known
+     * @return
+     * @throws RepositoryException
+     */
+    public StagedContent stageDatastreamContent(final Session session,
+        final String dsPath, final String contentType,
+        final InputStream requestBodyStream, final URI checksum,
+        final long contentSize) throws RepositoryException {
+
+        final Datastream ds = new Datastream(session, dsPath);
+        return ds.stageContent(requestBodyStream, contentType, checksum,
+                contentSize, getStoragePolicyDecisionPoint());
+    }
+
+    /**
+     * Store staged content in the binary store, at most
+     * fcrepo.ingest.parallelism binaries at once, then attach each to its
+     * Datastream. Ingest takes about as long as the largest binary, rather
+     * than the sum of them all. Each binary is stored through a session of
+     * its own, since the datastreams' session isn't thread-safe. If any
+     * store fails, the others are cancelled, or waited for if they've
+     * started, before this returns.
+     *
+     * @param staged
+     * @throws RepositoryException
+     * @throws InvalidChecksumException if any content didn't match its
+     *         checksum
+     */
+    public void setStagedContents(final List<StagedContent> staged)
+        throws RepositoryException, InvalidChecksumException {
+        final Deque<StagingTask> storing = new ArrayDeque<>();
+        try {
+            for (final StagedContent content : staged) {
+                awaitStaging(storing, STAGING_PARALLELISM - 1);
+                final StagingTask task = new StagingTask(content);
+                task.future = stagers.submit(task);
+                storing.add(task);
+            }
+            awaitStaging(storing, 0);
+        } finally {
+            // don't leave stores running on content the caller is about to
+            // discard
+            for (final StagingTask task : storing) {
+                task.abandon();
+            }
+        }
+
+        // the session isn't thread-safe, so attach the binaries here
+        for (final StagedContent content : staged) {
+            content.getDatastream().setContent(content);
+        }
+    }
+
+    /**
+     * Wait until no more than the given number of stores are outstanding
+     */
+    private static void awaitStaging(final Deque<StagingTask> storing,
+            final int outstanding) throws InvalidChecksumException {
+        while (storing.size() > outstanding) {
+            try {
+                storing.peek().future.get();
+                storing.poll();
+            } catch (final ExecutionException e) {
+                storing.poll();
+                propagateIfInstanceOf(e.getCause(),
+                        InvalidChecksumException.class);
+                throw propagate(e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw propagate(e);
+            }
+        }
+    }
+
     /**
      * Retrieve the JCR node for a Datastream by pid and dsid
      * 
@@ -158,6 +314,68 @@ public class DatastreamService extends RepositoryService {
         return new Datastream(session, path);
     }
 
+    /**
+     * Get the plain file holding a datastream's content, if it's in a
+     * FileSystemBinaryStore on this machine, so it can be sent without
+     * streaming it through the JCR
+     * 
+     * @param datastream
+     * @return the file, or null if there isn't a complete local one
+     * @throws RepositoryException
+     */
+    public File getContentFile(final Datastream datastream)
+        throws RepositoryException {
+        final BinaryKey key = getContentKey(datastream);
+        if (key == null) {
+            return null;
+        }
+        final File file = llStoreService.getLocalFile(key);
+        if (file == null || file.length() != datastream.getContentSize()) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Open a datastream's content. If it's in an InfinispanBinaryStore, the
+     * stream can seek (see {@link org.fcrepo.utils.Seekable}) and loads
+     * chunks ahead of the reader, so a range is read without the chunks
+     * before it.
+     * 
+     * @param datastream
+     * @return the content
+     * @throws RepositoryException
+     */
+    public InputStream getContent(final Datastream datastream)
+        throws RepositoryException {
+        final BinaryKey key = getContentKey(datastream);
+        if (key != null) {
+            final InputStream chunks = llStoreService.getChunkedContent(key);
+            if (chunks != null) {
+                return chunks;
+            }
+        }
+        return datastream.getContent();
+    }
+
+    /**
+     * @return the key of the datastream's content in the binary store, or
+     *         null if it can't be looked up there
+     */
+    private BinaryKey getContentKey(final Datastream datastream)
+        throws RepositoryException {
+        if (llStoreService == null) {
+            return null;
+        }
+        final Binary binary =
+                datastream.getNode().getNode(JCR_CONTENT).getProperty(
+                        JCR_DATA).getBinary();
+        if (!(binary instanceof BinaryValue)) {
+            return null;
+        }
+        return ((BinaryValue) binary).getKey();
+    }
+
     /**
      * Retrieve a Datastream instance by pid and dsid
      * 
@@ -179,9 +397,24 @@ public class DatastreamService extends RepositoryService {
      */
     public Dataset getFixityResultsModel(final GraphSubjects subjects,
             final Datastream datastream) throws RepositoryException {
+        return getFixityResultsModel(subjects, datastream, false);
+    }
+
+    /**
+     * Get the fixity results for the datastream as a RDF Dataset
+     * 
+     * @param subjects
+     * @param datastream
+     * @param force re-read every copy, even if a fresh result is cached
+     * @return
+     * @throws RepositoryException
+     */
+    public Dataset getFixityResultsModel(final GraphSubjects subjects,
+            final Datastream datastream, final boolean force)
+        throws RepositoryException {
 
         final Collection<FixityResult> blobs =
-                runFixityAndFixProblems(datastream);
+                runFixityAndFixProblems(datastream, force);
 
         final Model model =
                 JcrRdfTools.getFixityResultsModel(subjects, datastream
@@ -207,6 +440,21 @@ public class DatastreamService extends RepositoryService {
      */
     public Collection<FixityResult> runFixityAndFixProblems(
             final Datastream datastream) throws RepositoryException {
+        return runFixityAndFixProblems(datastream, false);
+    }
+
+    /**
+     * Run the fixity check on the datastream and attempt to automatically
+     * correct failures if additional copies of the bitstream are available
+     * 
+     * @param datastream
+     * @param force re-read every copy, even if a fresh result is cached
+     * @return
+     * @throws RepositoryException
+     */
+    public Collection<FixityResult> runFixityAndFixProblems(
+            final Datastream datastream, final boolean force)
+        throws RepositoryException {
 
         Set<FixityResult> fixityResults;
         Set<FixityResult> goodEntries;
@@ -216,11 +464,12 @@ public class DatastreamService extends RepositoryService {
         fixityCheckCounter.inc();
 
         final Timer.Context context = timer.time();
+        final long elapsed;
 
         try {
             fixityResults =
                     copyOf(getFixity(datastream.getNode().getNode(JCR_CONTENT),
-                            digestUri, size));
+                            digestUri, size, force));
 
             goodEntries =
                     copyOf(filter(fixityResults, new Predicate<FixityResult>() {
@@ -233,9 +482,11 @@ public class DatastreamService extends RepositoryService {
                     }));
 
         } finally {
-            context.stop();
+            elapsed = context.stop();
         }
 
+        reportThroughput(fixityResults, elapsed);
+
         if (goodEntries.size() == 0) {
             logger.error("ALL COPIES OF " + datastream.getNode().getPath() +
                     " HAVE FAILED FIXITY CHECKS.");
@@ -248,26 +499,59 @@ public class DatastreamService extends RepositoryService {
         final Set<FixityResult> badEntries =
                 difference(fixityResults, goodEntries);
 
+        final List<LowLevelCacheEntry> badCacheEntries =
+                new ArrayList<>(badEntries.size());
         for (final FixityResult result : badEntries) {
-            try {
-                result.getEntry()
-                        .storeValue(anyGoodCacheEntry.getInputStream());
-                final FixityResult newResult =
-                        result.getEntry().checkFixity(digestUri, size);
-                if (newResult.isSuccess()) {
-                    result.setRepaired();
-                    fixityRepairedCounter.inc();
-                } else {
-                    fixityErrorCounter.inc();
-                }
-            } catch (final IOException e) {
-                logger.warn("Exception repairing low-level cache entry: {}", e);
+            // copies on cluster nodes that didn't answer can't be repaired
+            if (result.getEntry() != null) {
+                badCacheEntries.add(result.getEntry());
+            }
+        }
+
+        final Collection<LowLevelCacheEntry> repaired =
+                new ReplicaRepairer().repair(anyGoodCacheEntry,
+                        badCacheEntries, digestUri, size);
+
+        for (final FixityResult result : badEntries) {
+            if (result.getEntry() == null) {
+                logger.warn("Could not check the copy of {} on cluster node "
+                        + "{}: {}", datastream.getNode().getPath(),
+                        result.getClusterNode(), result.status);
+            } else if (repaired.contains(result.getEntry())) {
+                result.setRepaired();
+                fixityRepairedCounter.inc();
+                getFixityResultCache().put(
+                        new FixityResult(result.getEntry(), size, digestUri)
+                                .verify(digestUri, size));
+            } else {
+                fixityErrorCounter.inc();
             }
         }
 
         return fixityResults;
     }
 
+    /**
+     * Record the number of bytes read by a fixity run and the resulting
+     * throughput, as measured by the fixity timer
+     * 
+     * @param fixityResults
+     * @param elapsedNanos
+     */
+    private static void reportThroughput(
+            final Collection<FixityResult> fixityResults,
+            final long elapsedNanos) {
+        long bytes = 0;
+        for (final FixityResult result : fixityResults) {
+            bytes += result.computedSize;
+        }
+        fixityBytesMeter.mark(bytes);
+        final double mbPerSecond = throughput(bytes, elapsedNanos);
+        fixityThroughput.update(round(mbPerSecond));
+        logger.debug("Fixity check read {} bytes at {} MB/s", bytes,
+                mbPerSecond);
+    }
+
     /**
      * Get the fixity results for this datastream's bitstream, and compare it
      * against the given checksum and size.
@@ -280,9 +564,26 @@ public class DatastreamService extends RepositoryService {
      */
     public Collection<FixityResult> getFixity(final Node resource,
             final URI dsChecksum, final long dsSize) throws RepositoryException {
+        return getFixity(resource, dsChecksum, dsSize, false);
+    }
+
+    /**
+     * Get the fixity results for this datastream's bitstream, and compare it
+     * against the given checksum and size.
+     * 
+     * @param resource
+     * @param dsChecksum -the checksum and algorithm represented as a URI
+     * @param dsSize
+     * @param force re-read every copy, even if a fresh result is cached
+     * @return
+     * @throws RepositoryException
+     */
+    public Collection<FixityResult> getFixity(final Node resource,
+            final URI dsChecksum, final long dsSize, final boolean force)
+        throws RepositoryException {
         logger.debug("Checking resource: " + resource.getPath());
         final Function<LowLevelCacheEntry, FixityResult> checkCacheFunc =
-                getCheckCacheFixityFunction(dsChecksum, dsSize);
+                getCheckCacheFixityFunction(dsChecksum, dsSize, force);
         return llStoreService.transformLowLevelCacheEntries(resource,
                 checkCacheFunc);
     }
@@ -320,4 +621,64 @@ public class DatastreamService extends RepositoryService {
         return storagePolicyDecisionPoint;
     }
 
+
+    private static ExecutorService newStagerPool() {
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(STAGING_THREADS, STAGING_THREADS, 60L,
+                        SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("fcrepo-binary-stager-%d")
+                                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Store one staged content through a session of its own. A task either
+     * runs to the end or, if abandoned before it starts, never runs at all.
+     */
+    private class StagingTask implements Callable<Void> {
+
+        private final StagedContent content;
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Future<Void> future;
+
+        StagingTask(final StagedContent content) {
+            this.content = content;
+        }
+
+        @Override
+        public Void call() throws RepositoryException,
+            InvalidChecksumException {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                final Session session = repo.login();
+                try {
+                    content.store(session);
+                } finally {
+                    session.logout();
+                }
+                return null;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Keep the task from starting, or wait for it to finish if it has
+         */
+        void abandon() {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(false);
+            } else {
+                awaitUninterruptibly(done);
+            }
+        }
+    }
 }
@@ -0,0 +1,475 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.services;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.lang.Math.min;
+import static java.lang.System.getProperty;
+import static java.util.Arrays.asList;
+import static java.lang.Thread.currentThread;
+import static java.util.Calendar.getInstance;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javax.jcr.query.Query.JCR_SQL2;
+import static org.fcrepo.metrics.RegistryService.getMetrics;
+import static org.fcrepo.utils.FixityResult.FixityState.REPAIRED;
+import static org.modeshape.jcr.api.JcrConstants.JCR_CONTENT;
+import static org.modeshape.jcr.api.JcrConstants.JCR_PATH;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.fcrepo.Datastream;
+import org.fcrepo.utils.FedoraJcrTypes;
+import org.fcrepo.utils.FixityResult;
+import org.modeshape.jcr.api.JcrTools;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Counter;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Background fixity scrubber: works through every fedora:datastream node in
+ * path order, a batch at a time, throttled to a bytes/sec and objects/sec
+ * budget. The outcome and time of each check, and the path of the last
+ * datastream checked, are kept in a separate workspace
+ * (fcrepo.fixity.scrubber.workspace) rather than on the datastreams
+ * themselves, so scrubbing doesn't touch their jcr:lastModified (and so
+ * their ETags) or send events, and a restarted scrubber picks up where it
+ * left off.
+ *
+ * The scrubber is off unless fcrepo.fixity.scrubber.enabled is set.
+ */
+@Component
+public class FixityScrubberService implements FedoraJcrTypes {
+
+    private static final Logger LOGGER =
+            getLogger(FixityScrubberService.class);
+
+    /**
+     * The cursor value that starts a new pass over the repository
+     */
+    public static final String START_OF_PASS = "/";
+
+    public static final String OUTCOME_SUCCESS = "SUCCESS";
+
+    public static final String OUTCOME_REPAIRED = "REPAIRED";
+
+    public static final String OUTCOME_FAILURE = "FAILURE";
+
+    /**
+     * The node in the state workspace that holds the cursor
+     */
+    static final String CURSOR_NODE = "/fedora:scrubberCursor";
+
+    static final String CURSOR_PROPERTY = "fedora:cursor";
+
+    static final Counter scrubbedCounter = getMetrics().counter(
+            name(FixityScrubberService.class, "scrubbed-datastreams"));
+
+    static final Counter scrubFailureCounter = getMetrics().counter(
+            name(FixityScrubberService.class, "scrub-failures"));
+
+    @Inject
+    private Repository repo;
+
+    @Autowired
+    private DatastreamService datastreamService;
+
+    private boolean enabled = getBoolean("fcrepo.fixity.scrubber.enabled");
+
+    private long interval = getLong("fcrepo.fixity.scrubber.interval", 1000L);
+
+    private int batchSize = getInteger("fcrepo.fixity.scrubber.batchSize", 100);
+
+    private RateLimiter bytesLimiter = RateLimiter.create(getLong(
+            "fcrepo.fixity.scrubber.bytesPerSecond", 10 * 1024 * 1024L));
+
+    private RateLimiter objectsLimiter = RateLimiter.create(getLong(
+            "fcrepo.fixity.scrubber.objectsPerSecond", 10L));
+
+    private String stateWorkspace = getProperty(
+            "fcrepo.fixity.scrubber.workspace", "fedora-fixity");
+
+    private final JcrTools jcrTools = new JcrTools();
+
+    private String cursor;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Start the scrubber, if it's enabled
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        LOGGER.info("Starting fixity scrubber at {}", getCursor());
+        scheduler =
+                newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setDaemon(true).setNameFormat("fcrepo-fixity-scrubber")
+                        .build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    scrubBatch();
+                } catch (final RuntimeException e) {
+                    LOGGER.error("Fixity scrubber batch failed: {}", e);
+                }
+            }
+        }, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Stop the scrubber
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Check the next batch of datastreams after the cursor. When there are
+     * none left, the cursor is reset so the next batch starts a new pass.
+     * The cursor moves past each datastream whatever the outcome of its
+     * check, so one bad datastream can't stall the scrubber.
+     *
+     * @return the number of datastreams checked
+     */
+    public int scrubBatch() {
+        try {
+            final Session session = repo.login();
+            try {
+                final Session stateSession = loginToStateWorkspace();
+                try {
+                    return scrubBatch(session, stateSession);
+                } finally {
+                    stateSession.logout();
+                }
+            } finally {
+                session.logout();
+            }
+        } catch (final RepositoryException e) {
+            LOGGER.error("Could not run fixity scrubber batch: {}", e);
+            return 0;
+        }
+    }
+
+    private int scrubBatch(final Session session, final Session stateSession)
+        throws RepositoryException {
+        final NodeIterator nodes =
+                getNextDatastreams(session, getCursor(stateSession));
+
+        if (!nodes.hasNext()) {
+            LOGGER.info("Fixity scrubber finished a pass over the repository");
+            setCursor(stateSession, START_OF_PASS);
+            return 0;
+        }
+
+        int count = 0;
+        while (nodes.hasNext() && !currentThread().isInterrupted()) {
+            final Node node = nodes.nextNode();
+            final String path = node.getPath();
+            final String outcome = scrub(node);
+            try {
+                if (outcome != null) {
+                    recordOutcome(stateSession, path, outcome);
+                }
+            } finally {
+                setCursor(stateSession, path);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Check a single datastream
+     *
+     * @return the outcome, or null if there was no content to check
+     */
+    private String scrub(final Node node) {
+        String outcome;
+        try {
+            if (!node.hasNode(JCR_CONTENT)) {
+                return null;
+            }
+            final Datastream datastream = datastreamService.asDatastream(node);
+
+            objectsLimiter.acquire();
+            acquireBytes(datastream.getContentSize());
+
+            final Collection<FixityResult> results =
+                    datastreamService.runFixityAndFixProblems(datastream, true);
+
+            // each further replica was read too
+            if (results.size() > 1) {
+                acquireBytes(datastream.getContentSize() *
+                        (results.size() - 1));
+            }
+
+            outcome = getOutcome(results);
+        } catch (final RepositoryException | RuntimeException e) {
+            LOGGER.warn("Could not scrub datastream {}: {}", node, e);
+            outcome = OUTCOME_FAILURE;
+        }
+
+        scrubbedCounter.inc();
+        if (OUTCOME_FAILURE.equals(outcome)) {
+            scrubFailureCounter.inc();
+        }
+        LOGGER.debug("Scrubbed {}: {}", node, outcome);
+        return outcome;
+    }
+
+    /**
+     * Record the outcome of a check at the datastream's path in the state
+     * workspace
+     */
+    private void recordOutcome(final Session stateSession, final String path,
+            final String outcome) throws RepositoryException {
+        try {
+            final Node state = jcrTools.findOrCreateNode(stateSession, path);
+            state.setProperty(FIXITY_LAST_CHECKED, getInstance());
+            state.setProperty(FIXITY_LAST_OUTCOME, outcome);
+            stateSession.save();
+        } catch (final RepositoryException e) {
+            LOGGER.warn("Could not record fixity outcome for {}: {}", path, e);
+            stateSession.refresh(false);
+        }
+    }
+
+    /**
+     * Summarize the fixity results for a datastream: FAILURE if any copy is
+     * still bad (or there are no copies at all), REPAIRED if a copy was
+     * repaired, and SUCCESS otherwise.
+     *
+     * @param results
+     * @return
+     */
+    static String getOutcome(final Collection<FixityResult> results) {
+        if (results.isEmpty()) {
+            return OUTCOME_FAILURE;
+        }
+        boolean repaired = false;
+        for (final FixityResult result : results) {
+            if (result.status.contains(REPAIRED)) {
+                repaired = true;
+            } else if (!result.isSuccess()) {
+                return OUTCOME_FAILURE;
+            }
+        }
+        return repaired ? OUTCOME_REPAIRED : OUTCOME_SUCCESS;
+    }
+
+    private NodeIterator getNextDatastreams(final Session session,
+            final String after) throws RepositoryException {
+        final QueryManager queryManager =
+                session.getWorkspace().getQueryManager();
+
+        final String querystring =
+                "SELECT [" + JCR_PATH + "] FROM [" + FEDORA_DATASTREAM +
+                        "] AS ds WHERE PATH(ds) > $cursor ORDER BY PATH(ds)";
+
+        final Query query = queryManager.createQuery(querystring, JCR_SQL2);
+        query.bindValue("cursor", session.getValueFactory().createValue(after));
+        query.setLimit(batchSize);
+        return query.execute().getNodes();
+    }
+
+    private void acquireBytes(final long bytes) {
+        long remaining = bytes;
+        while (remaining > 0) {
+            final int permits = (int) min(remaining, Integer.MAX_VALUE);
+            bytesLimiter.acquire(permits);
+            remaining -= permits;
+        }
+    }
+
+    /**
+     * Log in to the workspace that holds the scrubber's state, creating it
+     * on first use
+     */
+    private Session loginToStateWorkspace() throws RepositoryException {
+        final Session session = repo.login();
+        try {
+            if (!asList(session.getWorkspace().getAccessibleWorkspaceNames())
+                    .contains(stateWorkspace)) {
+                LOGGER.info("Creating fixity scrubber workspace {}",
+                        stateWorkspace);
+                session.getWorkspace().createWorkspace(stateWorkspace);
+            }
+        } finally {
+            session.logout();
+        }
+        return repo.login(stateWorkspace);
+    }
+
+    /**
+     * Get the path of the last datastream checked
+     *
+     * @return
+     */
+    public synchronized String getCursor() {
+        if (cursor == null) {
+            try {
+                final Session stateSession = loginToStateWorkspace();
+                try {
+                    return getCursor(stateSession);
+                } finally {
+                    stateSession.logout();
+                }
+            } catch (final RepositoryException e) {
+                LOGGER.warn("Could not read fixity scrubber cursor: {}", e);
+                return START_OF_PASS;
+            }
+        }
+        return cursor;
+    }
+
+    private synchronized String getCursor(final Session stateSession)
+        throws RepositoryException {
+        if (cursor == null) {
+            cursor = START_OF_PASS;
+            try {
+                final String saved =
+                        stateSession.getNode(CURSOR_NODE).getProperty(
+                                CURSOR_PROPERTY).getString();
+                if (!saved.isEmpty()) {
+                    cursor = saved;
+                }
+            } catch (final PathNotFoundException e) {
+                LOGGER.debug("No fixity scrubber cursor saved yet");
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Move the cursor, saving it in the state workspace
+     *
+     * @param cursor the path of the last datastream checked
+     */
+    public synchronized void setCursor(final String cursor) {
+        this.cursor = cursor;
+        try {
+            final Session stateSession = loginToStateWorkspace();
+            try {
+                setCursor(stateSession, cursor);
+            } finally {
+                stateSession.logout();
+            }
+        } catch (final RepositoryException e) {
+            LOGGER.warn("Could not save fixity scrubber cursor: {}", e);
+        }
+    }
+
+    private synchronized void setCursor(final Session stateSession,
+            final String cursor) throws RepositoryException {
+        this.cursor = cursor;
+        try {
+            jcrTools.findOrCreateNode(stateSession, CURSOR_NODE).setProperty(
+                    CURSOR_PROPERTY, cursor);
+            stateSession.save();
+        } catch (final RepositoryException e) {
+            LOGGER.warn("Could not save fixity scrubber cursor: {}", e);
+            stateSession.refresh(false);
+        }
+    }
+
+    /**
+     * Set the repository (if Spring didn't wire it in)
+     */
+    public void setRepository(final Repository repository) {
+        this.repo = repository;
+    }
+
+    /**
+     * Set the datastream service (if Spring didn't wire it in)
+     */
+    public void setDatastreamService(final DatastreamService service) {
+        this.datastreamService = service;
+    }
+
+    /**
+     * Turn the scrubber on or off (takes effect on the next start())
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Set the delay (in ms) between batches
+     */
+    public void setInterval(final long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Set the maximum number of datastreams checked per batch
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the read budget, in bytes per second
+     */
+    public void setBytesPerSecond(final double bytesPerSecond) {
+        bytesLimiter.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Set the datastream budget, in datastreams per second
+     */
+    public void setObjectsPerSecond(final double objectsPerSecond) {
+        objectsLimiter.setRate(objectsPerSecond);
+    }
+
+    /**
+     * Set the workspace that holds the outcomes and the cursor
+     */
+    public synchronized void setStateWorkspace(final String stateWorkspace) {
+        this.stateWorkspace = stateWorkspace;
+        this.cursor = null;
+    }
+}
@@ -16,26 +16,52 @@
 
 package org.fcrepo.services;
 
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Collections2.transform;
 import static com.google.common.collect.ImmutableSet.builder;
 import static com.google.common.collect.ImmutableSet.of;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
 import static java.util.Collections.emptySet;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.metrics.RegistryService.getMetrics;
+import static org.fcrepo.services.ServiceHelpers.getBlobCache;
 import static org.fcrepo.services.ServiceHelpers.getClusterExecutor;
+import static org.fcrepo.services.ServiceHelpers.getClusterMembers;
+import static org.fcrepo.utils.LowLevelCacheEntry.DATA_SUFFIX;
+import static org.fcrepo.utils.infinispan.ChunkDigests.removeWithChunks;
 import static org.modeshape.jcr.api.JcrConstants.JCR_DATA;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.File;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.jcr.Node;
 import javax.jcr.Property;
@@ -44,20 +70,34 @@ import javax.jcr.RepositoryException;
 
 import org.fcrepo.services.functions.CacheLocalTransform;
 import org.fcrepo.services.functions.GetBinaryKey;
+import org.fcrepo.services.functions.GetCacheStore;
+import org.fcrepo.utils.ClusterNodeStatus;
+import org.fcrepo.utils.ClusterResults;
 import org.fcrepo.utils.LowLevelCacheEntry;
 import org.fcrepo.utils.impl.ChainingCacheStoreEntry;
 import org.fcrepo.utils.impl.LocalBinaryStoreEntry;
+import org.fcrepo.utils.infinispan.CacheChunkInputStream;
+import org.infinispan.Cache;
 import org.infinispan.distexec.DistributedExecutorService;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.util.concurrent.FutureListener;
+import org.infinispan.util.concurrent.NotifyingFuture;
 import org.modeshape.jcr.GetBinaryStore;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.binary.BinaryStore;
 import org.modeshape.jcr.value.binary.CompositeBinaryStore;
+import org.modeshape.jcr.value.binary.FileSystemBinaryStore;
 import org.modeshape.jcr.value.binary.infinispan.InfinispanBinaryStore;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Component;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Function;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Service for managing access to low-level binary blobs (which may include
@@ -72,15 +112,53 @@ public class LowLevelStorageService {
     private static final Logger LOGGER =
             getLogger(LowLevelStorageService.class);
 
+    static final Timer clusterNodeResponseTimer = getMetrics().timer(
+            name(LowLevelStorageService.class, "cluster-node-response-time"));
+
+    static final Counter clusterNodeTimeoutCounter = getMetrics().counter(
+            name(LowLevelStorageService.class, "cluster-node-timeout-counter"));
+
+    /**
+     * The default number of named stores in a CompositeBinaryStore that are
+     * visited concurrently
+     */
+    public static final int DEFAULT_STORE_CONCURRENCY = 4;
+
+    /**
+     * The default time (in ms) to wait on a single named store, once it has
+     * started being read
+     */
+    public static final long DEFAULT_STORE_TIMEOUT = 10 * 60 * 1000L;
+
+    /**
+     * The default time (in ms) to wait for every cluster node to answer
+     */
+    public static final long DEFAULT_CLUSTER_TIMEOUT = 10 * 60 * 1000L;
+
     @Inject
     private Repository repo;
 
+    private int storeConcurrency = getInteger(
+            "fcrepo.fixity.store.concurrency", DEFAULT_STORE_CONCURRENCY);
+
+    private long storeTimeout = getLong("fcrepo.fixity.store.timeout",
+            DEFAULT_STORE_TIMEOUT);
+
+    private ExecutorService storeExecutor;
+
+    private long clusterTimeout = getLong("fcrepo.fixity.cluster.timeout",
+            DEFAULT_CLUSTER_TIMEOUT);
+
     private Echo echo = new Echo();
 
     private GetBinaryStore getBinaryStore = new GetBinaryStore();
 
     private GetBinaryKey getBinaryKey = new GetBinaryKey();
 
+    private GetCacheStore getCacheStore = new GetCacheStore();
+
+    private Ticker ticker = Ticker.systemTicker();
+
     /**
      * Apply some Function to the low-level cache entries for the Node
      * 
@@ -132,7 +210,11 @@ public class LowLevelStorageService {
     }
 
     /**
-     * Transform low-level cache entries from a particular CompositeBinaryStore
+     * Transform low-level cache entries from a particular CompositeBinaryStore.
+     * The named stores are visited concurrently, and any store that doesn't
+     * answer within the store timeout of starting to be read is left out of
+     * the results. A store still waiting for a worker after that long (all
+     * of them being tied up by slower stores) is left out too.
      * 
      * @param key a Modeshape BinaryValue's key.
      * @return a set of transformed objects
@@ -146,15 +228,44 @@ public class LowLevelStorageService {
         final Iterator<Map.Entry<String, BinaryStore>> it =
                 compositeStore.getNamedStoreIterator();
 
+        final ExecutorService executor = getStoreExecutor();
+        final Map<String, NamedStoreTransform<T>> tasks =
+                new LinkedHashMap<String, NamedStoreTransform<T>>();
+        final Map<String, Future<Set<T>>> futures =
+                new LinkedHashMap<String, Future<Set<T>>>();
+
         while (it.hasNext()) {
             final Map.Entry<String, BinaryStore> entry = it.next();
-            final BinaryStore bs = entry.getValue();
-            if (bs.hasBinary(key)) {
-                final Function<LowLevelCacheEntry, T> decorator =
-                        new ExternalIdDecorator<>(entry.getKey(), transform);
-                final Set<T> transformeds =
-                        transformLowLevelCacheEntries(bs, key, decorator);
-                results.addAll(transformeds);
+            final NamedStoreTransform<T> task =
+                    new NamedStoreTransform<T>(entry.getKey(), entry
+                            .getValue(), key, transform);
+            tasks.put(entry.getKey(), task);
+            futures.put(entry.getKey(), executor.submit(task));
+        }
+
+        final long timeout = MILLISECONDS.toNanos(storeTimeout);
+
+        for (final Map.Entry<String, Future<Set<T>>> entry : futures
+                .entrySet()) {
+            final Future<Set<T>> future = entry.getValue();
+            try {
+                results.addAll(tasks.get(entry.getKey()).await(future,
+                        timeout));
+            } catch (final TimeoutException e) {
+                LOGGER.warn("Named store {} did not respond within {} ms; "
+                        + "skipping it for key {}", entry.getKey(),
+                        storeTimeout, key);
+                future.cancel(true);
+            } catch (final ExecutionException e) {
+                LOGGER.error("Error transforming entry in named store "
+                        + entry.getKey(), e.getCause());
+            } catch (final InterruptedException e) {
+                LOGGER.error(e.getMessage(), e);
+                currentThread().interrupt();
+                for (final Future<Set<T>> f : futures.values()) {
+                    f.cancel(true);
+                }
+                break;
             }
         }
 
@@ -182,13 +293,12 @@ public class LowLevelStorageService {
 
         } else if (store instanceof InfinispanBinaryStore) {
             try {
-                return getClusterResults((InfinispanBinaryStore) store, key,
+                return getResults(getClusterResults(
+                        (InfinispanBinaryStore) store, key, transform),
                         transform);
             } catch (final InterruptedException e) {
                 LOGGER.error(e.getMessage(), e);
-                return emptySet();
-            } catch (final ExecutionException e) {
-                LOGGER.error(e.getMessage(), e);
+                currentThread().interrupt();
                 return emptySet();
             }
         } else {
@@ -196,6 +306,76 @@ public class LowLevelStorageService {
         }
     }
 
+    /**
+     * Get the plain file holding a binary, if it's in a (possibly named)
+     * FileSystemBinaryStore on this machine. This never asks the cluster.
+     * 
+     * @param key a Modeshape BinaryValue's key.
+     * @return the file, or null if the binary isn't in a local file
+     */
+    public File getLocalFile(final BinaryKey key) {
+        final BinaryStore store = getBinaryStore.apply(repo);
+
+        if (store instanceof CompositeBinaryStore) {
+            final Iterator<Map.Entry<String, BinaryStore>> it =
+                    ((CompositeBinaryStore) store).getNamedStoreIterator();
+            while (it.hasNext()) {
+                final File file = getLocalFile(it.next().getValue(), key);
+                if (file != null) {
+                    return file;
+                }
+            }
+            return null;
+        }
+        return getLocalFile(store, key);
+    }
+
+    private static File getLocalFile(final BinaryStore store,
+            final BinaryKey key) {
+        if (store instanceof FileSystemBinaryStore) {
+            return new LocalBinaryStoreEntry(store, key).getFile();
+        }
+        return null;
+    }
+
+    /**
+     * Get a stream over a binary in a (possibly named) InfinispanBinaryStore
+     * that can seek, and that loads chunks ahead of the reader. The chunks
+     * are read through the store's cache, so this works on any node.
+     * 
+     * @param key a Modeshape BinaryValue's key.
+     * @return the stream, or null if the binary isn't in an
+     *         InfinispanBinaryStore
+     */
+    public InputStream getChunkedContent(final BinaryKey key) {
+        final BinaryStore store = getBinaryStore.apply(repo);
+
+        if (store instanceof CompositeBinaryStore) {
+            final Iterator<Map.Entry<String, BinaryStore>> it =
+                    ((CompositeBinaryStore) store).getNamedStoreIterator();
+            while (it.hasNext()) {
+                final InputStream content =
+                        getChunkedContent(it.next().getValue(), key);
+                if (content != null) {
+                    return content;
+                }
+            }
+            return null;
+        }
+        return getChunkedContent(store, key);
+    }
+
+    private static InputStream getChunkedContent(final BinaryStore store,
+            final BinaryKey key) {
+        // small binaries are kept in the JCR, not the store
+        if (store instanceof InfinispanBinaryStore && store.hasBinary(key)) {
+            return new CacheChunkInputStream(
+                    getBlobCache((InfinispanBinaryStore) store),
+                    key.toString() + DATA_SUFFIX);
+        }
+        return null;
+    }
+
     /**
      * Get the low-level cache entries for a Node containing a jcr:data binary
      * property
@@ -275,53 +455,183 @@ public class LowLevelStorageService {
                 + "InfinispanBinaryStore {}", key, ispnStore);
 
         try {
-            return getClusterResults(ispnStore, key, this.echo);
+            return getResults(getClusterResults(ispnStore, key, this.echo),
+                    this.echo);
         } catch (final InterruptedException e) {
             LOGGER.error(e.getMessage(), e);
-            return emptySet();
-        } catch (final ExecutionException e) {
-            LOGGER.error(e.getMessage(), e);
+            currentThread().interrupt();
             return emptySet();
         }
     }
 
     /**
-     * Get the transform results in a clustered Infinispan binary store
+     * Get the transform results in a clustered Infinispan binary store.
+     * Results are gathered as each node finishes; nodes that haven't answered
+     * by the cluster deadline are cancelled and reported as unresponsive.
      * 
      * @param cacheStore the Modeshape BinaryStore to use
      * @param key the BinaryKey we want to transform
      * @param transform the Function to apply
      * @throws InterruptedException
-     * @throws ExecutionException
      */
-    public <T> Set<T>
+    public <T> ClusterResults<T>
     getClusterResults(final InfinispanBinaryStore cacheStore,
         final BinaryKey key,
         final Function<LowLevelCacheEntry, T> transform)
-        throws InterruptedException, ExecutionException {
+        throws InterruptedException {
         final DistributedExecutorService exec = getClusterExecutor(cacheStore);
-        @SuppressWarnings({"synthetic-access", "unchecked", "rawtypes"})
-        final List<Future<Collection<T>>> futures =
-                exec.submitEverywhere(new CacheLocalTransform(key,
-                        new Unroll<T>(transform)));
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Callable<Collection<T>> task =
+                new CacheLocalTransform(key, new Unroll<T>(transform));
+
+        final long start = nanoTime();
+        final long deadline = start + MILLISECONDS.toNanos(clusterTimeout);
+
+        final Map<String, Future<Collection<T>>> futures =
+                submitToCluster(exec, getClusterMembers(cacheStore), task);
+
+        // nodes are queued here as they finish (or straight away, if their
+        // futures can't tell us when they're done)
+        final BlockingQueue<String> finished =
+                new LinkedBlockingQueue<String>();
+        final Map<String, Long> finishTimes =
+                new ConcurrentHashMap<String, Long>();
+
+        for (final Map.Entry<String, Future<Collection<T>>> entry : futures
+                .entrySet()) {
+            final String node = entry.getKey();
+            final Future<Collection<T>> future = entry.getValue();
+            if (future instanceof NotifyingFuture) {
+                ((NotifyingFuture<Collection<T>>) future)
+                        .attachListener(new FutureListener<Collection<T>>() {
+
+                            @Override
+                            public void futureDone(
+                                    final Future<Collection<T>> done) {
+                                finishTimes.put(node, nanoTime());
+                                finished.add(node);
+                            }
+                        });
+            } else {
+                finished.add(node);
+            }
+        }
+
         final Set<T> results = new HashSet<T>(futures.size());
+        final Set<String> pending = new LinkedHashSet<String>(futures.keySet());
+        final Set<String> failed = new LinkedHashSet<String>();
+
+        try {
+            while (!pending.isEmpty()) {
+                final String node =
+                        finished.poll(deadline - nanoTime(), NANOSECONDS);
+                if (node == null) {
+                    break;
+                }
+                try {
+                    results.addAll(futures.get(node).get(
+                            max(0, deadline - nanoTime()), NANOSECONDS));
+                    pending.remove(node);
+                    final Long finishTime = finishTimes.get(node);
+                    clusterNodeResponseTimer.update((finishTime == null
+                            ? nanoTime() : finishTime) - start, NANOSECONDS);
+                } catch (final TimeoutException e) {
+                    break;
+                } catch (final ExecutionException e) {
+                    LOGGER.error("Error transforming entry on cluster node "
+                            + node, e.getCause());
+                    pending.remove(node);
+                    failed.add(node);
+                }
+            }
 
-        while (futures.size() > 0) {
-            final Iterator<Future<Collection<T>>> futureIter =
-                    futures.iterator();
-            while (futureIter.hasNext()) {
-                final Future<Collection<T>> future = futureIter.next();
+            // nodes whose futures can't notify are waited on one at a time,
+            // so a slow one can run out the clock for others that have
+            // already answered; take those before giving up on the rest
+            final Iterator<String> it = pending.iterator();
+            while (it.hasNext()) {
+                final String node = it.next();
+                final Future<Collection<T>> future = futures.get(node);
+                if (!future.isDone()) {
+                    continue;
+                }
                 try {
-                    final Collection<T> result = future.get(100, MILLISECONDS);
-                    futureIter.remove();
-                    results.addAll(result);
+                    results.addAll(future.get(0, NANOSECONDS));
+                    clusterNodeResponseTimer.update(nanoTime() - start,
+                            NANOSECONDS);
                 } catch (final TimeoutException e) {
-                    // we're just going to ignore this and try again!
+                    continue;
+                } catch (final ExecutionException e) {
+                    LOGGER.error("Error transforming entry on cluster node "
+                            + node, e.getCause());
+                    failed.add(node);
                 }
+                it.remove();
             }
+        } finally {
+            for (final String node : pending) {
+                futures.get(node).cancel(true);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            clusterNodeTimeoutCounter.inc(pending.size());
+            LOGGER.warn("Cluster nodes {} did not respond within {} ms for "
+                    + "key {}", pending, clusterTimeout, key);
         }
 
-        return results;
+        return new ClusterResults<T>(results, pending, failed);
+    }
+
+    /**
+     * Submit the task to each cluster member, keyed by member address; if we
+     * don't know the members, submit it everywhere and number the nodes.
+     */
+    private static <T> Map<String, Future<Collection<T>>> submitToCluster(
+            final DistributedExecutorService exec,
+            final List<Address> members, final Callable<Collection<T>> task) {
+        final Map<String, Future<Collection<T>>> futures =
+                new LinkedHashMap<String, Future<Collection<T>>>();
+
+        if (members == null || members.isEmpty()) {
+            final List<Future<Collection<T>>> everywhere =
+                    exec.submitEverywhere(task);
+            for (int i = 0; i < everywhere.size(); i++) {
+                futures.put("node-" + (i + 1), everywhere.get(i));
+            }
+        } else {
+            for (final Address member : members) {
+                futures.put(member.toString(), exec.submit(member, task));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Get the merged results of a cluster run, logging any nodes that didn't
+     * contribute. If the transform can say what a missing node means (see
+     * {@link ClusterNodeStatus}), a result for each of them is added.
+     */
+    private static <T> Set<T> getResults(final ClusterResults<T> results,
+            final Function<LowLevelCacheEntry, T> transform) {
+        if (results.isComplete()) {
+            return results.getResults();
+        }
+        LOGGER.warn("Incomplete cluster results: {}", results);
+        if (!(transform instanceof ClusterNodeStatus)) {
+            return results.getResults();
+        }
+
+        @SuppressWarnings("unchecked")
+        final ClusterNodeStatus<T> status = (ClusterNodeStatus<T>) transform;
+        final Set<T> withStatus = new HashSet<T>(results.getResults());
+        for (final String node : results.getUnresponsiveNodes()) {
+            withStatus.add(status.unresponsiveNode(node));
+        }
+        for (final String node : results.getFailedNodes()) {
+            withStatus.add(status.failedNode(node));
+        }
+        return withStatus;
     }
 
     /**
@@ -345,6 +655,173 @@ public class LowLevelStorageService {
         this.getBinaryKey = getBinaryKey;
     }
 
+    /**
+     * Set the number of named stores in a CompositeBinaryStore to visit
+     * concurrently
+     */
+    public synchronized void setStoreConcurrency(final int storeConcurrency) {
+        checkArgument(storeConcurrency > 0,
+                "Store concurrency must be positive!");
+        this.storeConcurrency = storeConcurrency;
+        if (storeExecutor != null) {
+            storeExecutor.shutdown();
+            storeExecutor = null;
+        }
+    }
+
+    /**
+     * Set the time (in ms) to wait on any single named store before giving
+     * up on it. It's counted from when the store starts being read, not from
+     * when it's queued behind other stores.
+     */
+    public void setStoreTimeout(final long storeTimeout) {
+        this.storeTimeout = storeTimeout;
+    }
+
+    /**
+     * Set the clock named store timeouts are measured by (used for testing)
+     */
+    void setTicker(final Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    /**
+     * Set the time (in ms) to wait for every cluster node to answer before
+     * returning partial results
+     */
+    public void setClusterTimeout(final long clusterTimeout) {
+        this.clusterTimeout = clusterTimeout;
+    }
+
+    /**
+     * Set the function that retrieves the CacheStore behind a Cache
+     */
+    public void setGetCacheStore(final GetCacheStore getCacheStore) {
+        this.getCacheStore = getCacheStore;
+    }
+
+    /**
+     * Remove chunk digests along with their chunks in every (possibly named)
+     * InfinispanBinaryStore on this node, from startup on, rather than only
+     * once a fixity check has reached the store
+     */
+    @PostConstruct
+    public void removeChunkDigestsWithChunks() {
+        final BinaryStore store = getBinaryStore.apply(repo);
+
+        if (store instanceof CompositeBinaryStore) {
+            final Iterator<Map.Entry<String, BinaryStore>> it =
+                    ((CompositeBinaryStore) store).getNamedStoreIterator();
+            while (it.hasNext()) {
+                removeChunkDigestsWithChunks(it.next().getValue());
+            }
+        } else {
+            removeChunkDigestsWithChunks(store);
+        }
+    }
+
+    private void removeChunkDigestsWithChunks(final BinaryStore store) {
+        if (store instanceof InfinispanBinaryStore) {
+            final Cache<?, ?> cache =
+                    getBlobCache((InfinispanBinaryStore) store);
+            final CacheStore cacheStore = getCacheStore.apply(cache);
+            // a cache without a store has nowhere to keep digests
+            if (cacheStore != null) {
+                removeWithChunks(cache, cacheStore);
+            }
+        }
+    }
+
+    /**
+     * Shut down the named store executor
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (storeExecutor != null) {
+            storeExecutor.shutdownNow();
+            storeExecutor = null;
+        }
+    }
+
+    private synchronized ExecutorService getStoreExecutor() {
+        if (storeExecutor == null) {
+            final ThreadPoolExecutor executor =
+                    new ThreadPoolExecutor(storeConcurrency, storeConcurrency,
+                            60L, SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactoryBuilder().setDaemon(true)
+                                    .setNameFormat("fcrepo-binary-store-%d")
+                                    .build());
+            executor.allowCoreThreadTimeOut(true);
+            storeExecutor = executor;
+        }
+        return storeExecutor;
+    }
+
+    /**
+     * Transform the entries for a key in a single named store of a
+     * CompositeBinaryStore
+     */
+    private class NamedStoreTransform<T> implements Callable<Set<T>> {
+
+        private final String name;
+
+        private final BinaryStore store;
+
+        private final BinaryKey key;
+
+        private final Function<LowLevelCacheEntry, T> transform;
+
+        private volatile long started;
+
+        private volatile boolean running;
+
+        NamedStoreTransform(final String name, final BinaryStore store,
+                final BinaryKey key,
+                final Function<LowLevelCacheEntry, T> transform) {
+            this.name = name;
+            this.store = store;
+            this.key = key;
+            this.transform = transform;
+        }
+
+        @Override
+        public Set<T> call() {
+            started = ticker.read();
+            running = true;
+            if (!store.hasBinary(key)) {
+                return emptySet();
+            }
+            final Function<LowLevelCacheEntry, T> decorator =
+                    new ExternalIdDecorator<>(name, transform);
+            return transformLowLevelCacheEntries(store, key, decorator);
+        }
+
+        /**
+         * Wait for this store's results, for up to the timeout from when it
+         * starts running. If it's still queued, give it up to the timeout
+         * to start.
+         *
+         * @param future this transform, as submitted
+         * @param timeout in ns
+         */
+        Set<T> await(final Future<Set<T>> future, final long timeout)
+            throws InterruptedException, ExecutionException,
+            TimeoutException {
+            if (!running) {
+                try {
+                    return future.get(timeout, NANOSECONDS);
+                } catch (final TimeoutException e) {
+                    if (!running) {
+                        throw e;
+                    }
+                }
+            }
+            return future.get(max(0, started + timeout - ticker.read()),
+                    NANOSECONDS);
+        }
+    }
+
     static class ExternalIdDecorator<T> implements
             Function<LowLevelCacheEntry, T>, Serializable {
 
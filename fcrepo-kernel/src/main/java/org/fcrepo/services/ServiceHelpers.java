@@ -21,6 +21,7 @@ import static org.modeshape.jcr.api.JcrConstants.JCR_DATA;
 import static org.modeshape.jcr.api.JcrConstants.NT_FILE;
 
 import java.net.URI;
+import java.util.List;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -32,8 +33,10 @@ import javax.jcr.Value;
 import org.fcrepo.services.functions.CheckCacheEntryFixity;
 import org.fcrepo.utils.FixityResult;
 import org.fcrepo.utils.LowLevelCacheEntry;
+import org.infinispan.Cache;
 import org.infinispan.distexec.DefaultExecutorService;
 import org.infinispan.distexec.DistributedExecutorService;
+import org.infinispan.remoting.transport.Address;
 import org.modeshape.jcr.value.binary.infinispan.InfinispanBinaryStore;
 import org.springframework.stereotype.Component;
 
@@ -138,10 +141,32 @@ public abstract class ServiceHelpers {
      */
     public static DistributedExecutorService getClusterExecutor(
             final InfinispanBinaryStore cacheStore) {
+        return new DefaultExecutorService(getBlobCache(cacheStore));
+    }
+
+    /**
+     * Get the cache an InfinispanBinaryStore keeps binary content in
+     * 
+     * @param cacheStore
+     * @return
+     */
+    public static Cache<?, ?> getBlobCache(
+            final InfinispanBinaryStore cacheStore) {
         // Watch out! This is trying to pluck out the blob cache store. This
         // works as long as
         // modeshape continues to be ordered..
-        return new DefaultExecutorService(cacheStore.getCaches().get(1));
+        return cacheStore.getCaches().get(1);
+    }
+
+    /**
+     * Get the addresses of the cluster members that hold the blob cache
+     * 
+     * @param cacheStore
+     * @return the member addresses, or null if the cache isn't clustered
+     */
+    public static List<Address> getClusterMembers(
+            final InfinispanBinaryStore cacheStore) {
+        return getBlobCache(cacheStore).getCacheManager().getMembers();
     }
 
     /**
@@ -158,4 +183,20 @@ public abstract class ServiceHelpers {
         return new CheckCacheEntryFixity(dsChecksum, dsSize);
     }
 
+    /**
+     * Get a function that transforms a cache entry into a fixity result,
+     * optionally bypassing cached results
+     *
+     * @param dsChecksum
+     * @param dsSize
+     * @param force re-read the content even if a fresh result is cached
+     * @return
+     */
+    public static
+    Function<LowLevelCacheEntry, FixityResult>
+    getCheckCacheFixityFunction(final URI dsChecksum, final long dsSize,
+            final boolean force) {
+        return new CheckCacheEntryFixity(dsChecksum, dsSize, force);
+    }
+
 }
@@ -16,6 +16,8 @@
 
 package org.fcrepo.services.functions;
 
+import static org.fcrepo.utils.infinispan.ChunkDigests.removeWithChunks;
+
 import java.io.Serializable;
 import java.util.Set;
 
@@ -82,5 +84,8 @@ public class CacheLocalTransform<K, V, T> implements
     public void setEnvironment(final Cache<K, V> cache, final Set<K> keys) {
         this.store = transform.apply(cache);
         this.cacheName = ((CacheImpl<K, V>) cache).getName();
+        // chunk digests are written to this node's store, so it's this
+        // node that has to clean them up
+        removeWithChunks(cache, store);
     }
 }
@@ -16,6 +16,9 @@
 package org.fcrepo.services.functions;
 
 import static com.google.common.base.Throwables.propagate;
+import static org.fcrepo.utils.FixityResult.FixityState.FAILED_NODE;
+import static org.fcrepo.utils.FixityResult.FixityState.UNRESPONSIVE_NODE;
+import static org.fcrepo.utils.FixityResultCache.getFixityResultCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.Serializable;
@@ -24,6 +27,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.fcrepo.services.LowLevelStorageService;
+import org.fcrepo.utils.ClusterNodeStatus;
 import org.fcrepo.utils.ContentDigest;
 import org.fcrepo.utils.FixityResult;
 import org.fcrepo.utils.LowLevelCacheEntry;
@@ -41,7 +45,7 @@ import com.google.common.base.Function;
  */
 public class CheckCacheEntryFixity implements
         Function<LowLevelCacheEntry, FixityResult>,
-        Serializable {
+        ClusterNodeStatus<FixityResult>, Serializable {
 
     /**
      * So that it can be communicated as state to cluster members
@@ -56,21 +60,50 @@ public class CheckCacheEntryFixity implements
 
     private final long dsSize;
 
+    private final boolean force;
+
     /**
      * A constructor providing the checksum info to close over.
      */
     public CheckCacheEntryFixity(final URI dsChecksum, final long dsSize) {
+        this(dsChecksum, dsSize, false);
+    }
+
+    /**
+     * A constructor providing the checksum info to close over.
+     * @param force if true, always re-read the content rather than
+     *        answering from the fixity result cache
+     */
+    public CheckCacheEntryFixity(final URI dsChecksum, final long dsSize,
+            final boolean force) {
         this.dsChecksum = dsChecksum;
         this.dsSize = dsSize;
+        this.force = force;
     }
 
     @Override
     public FixityResult apply(final LowLevelCacheEntry input) {
         logger.debug("Checking fixity for resource in cache store " +
                 input.toString());
+        if (!force) {
+            final FixityResult cached =
+                    getFixityResultCache().get(input,
+                            ContentDigest.getAlgorithm(dsChecksum));
+            if (cached != null) {
+                logger.debug("Using cached fixity result from {}", cached
+                        .getLastChecked());
+                final FixityResult result =
+                        new FixityResult(input, cached.computedSize,
+                                cached.computedChecksum).verify(dsChecksum,
+                                dsSize);
+                result.setLastChecked(cached.getLastChecked());
+                return result;
+            }
+        }
         FixityResult result = null;
         try {
             result = input.checkFixity(dsChecksum, dsSize);
+            getFixityResultCache().put(result);
         } catch (final BinaryStoreException e) {
             logger.error("Exception checking low-level fixity: {}", e);
             throw propagate(e);
@@ -78,6 +111,16 @@ public class CheckCacheEntryFixity implements
         return result;
     }
 
+    @Override
+    public FixityResult unresponsiveNode(final String node) {
+        return FixityResult.forClusterNode(node, UNRESPONSIVE_NODE);
+    }
+
+    @Override
+    public FixityResult failedNode(final String node) {
+        return FixityResult.forClusterNode(node, FAILED_NODE);
+    }
+
     /**
      * Returns the digest to be used in checksum verification.
      */
@@ -107,4 +150,11 @@ public class CheckCacheEntryFixity implements
         return dsSize;
     }
 
+    /**
+     * Returns whether cached fixity results are bypassed.
+     */
+    public boolean isForced() {
+        return force;
+    }
+
 }
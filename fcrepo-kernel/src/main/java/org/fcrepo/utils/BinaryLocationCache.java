@@ -0,0 +1,100 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static java.lang.Long.getLong;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.Set;
+
+import org.modeshape.jcr.value.BinaryKey;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded, expiring cache of the external identifiers of the stores that
+ * hold each binary, so that serializing a node doesn't take a (possibly
+ * cluster-wide) low-level store lookup every time.
+ *
+ * The cache holds at most fcrepo.location.cache.size binaries, each for
+ * fcrepo.location.cache.ttl ms.
+ */
+public class BinaryLocationCache {
+
+    public static final long DEFAULT_SIZE = 10000;
+
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+
+    private static final BinaryLocationCache instance =
+            new BinaryLocationCache(getLong("fcrepo.location.cache.size",
+                    DEFAULT_SIZE), getLong("fcrepo.location.cache.ttl",
+                    DEFAULT_TTL));
+
+    private final Cache<BinaryKey, Set<String>> cache;
+
+    /**
+     * @param maximumSize the maximum number of binaries to hold
+     * @param ttl how long (in ms) locations stay fresh
+     */
+    public BinaryLocationCache(final long maximumSize, final long ttl) {
+        cache =
+                CacheBuilder.newBuilder().maximumSize(maximumSize)
+                        .expireAfterWrite(ttl, MILLISECONDS).build();
+    }
+
+    /**
+     * Get the shared binary location cache
+     * @return
+     */
+    public static BinaryLocationCache getBinaryLocationCache() {
+        return instance;
+    }
+
+    /**
+     * Get the cached locations of a binary
+     * @param key
+     * @return the store identifiers, or null if they aren't cached
+     */
+    public Set<String> get(final BinaryKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Remember the locations of a binary
+     * @param key
+     * @param locations
+     */
+    public void put(final BinaryKey key, final Set<String> locations) {
+        cache.put(key, locations);
+    }
+
+    /**
+     * Forget the locations of a binary, e.g. because its content was just
+     * (re)written
+     * @param key
+     */
+    public void invalidate(final BinaryKey key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Forget every cached location
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+import static com.google.common.base.Joiner.on;
+import static java.lang.Math.max;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static org.apache.commons.codec.binary.Base64.decodeBase64;
+import static org.apache.commons.codec.binary.Base64.encodeBase64URLSafeString;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Where a listing of a node's children left off: the names of the last few
+ * children returned, and the place of the very last one in the node's
+ * children. Handed to clients as an opaque token, so they can pick the
+ * listing up again without paging past the children they have already seen.
+ */
+public class ChildCursor {
+
+    private static final Logger LOGGER = getLogger(ChildCursor.class);
+
+    /**
+     * How many of the last children returned a cursor remembers, to pick
+     * the listing up again from if the very last one has been removed
+     */
+    static final int TRAIL_LENGTH = 5;
+
+    // can't appear in a JCR name
+    private static final String SEPARATOR = "\u0000";
+
+    private final long position;
+
+    private final List<String> names;
+
+    /**
+     * @param position the position just past the last child returned, among
+     *        all the node's children
+     * @param name the name of the last child returned
+     */
+    public ChildCursor(final long position, final String name) {
+        this(position, singletonList(name));
+    }
+
+    private ChildCursor(final long position, final List<String> names) {
+        this.position = position;
+        this.names = names;
+    }
+
+    /**
+     * @param nextPosition the position just past the next child returned
+     * @param nextName the name of the next child returned
+     * @return a cursor just past that child, that still remembers the ones
+     *         before it
+     */
+    public ChildCursor then(final long nextPosition, final String nextName) {
+        final List<String> trail = new ArrayList<>(TRAIL_LENGTH);
+        trail.addAll(names.subList(max(0, names.size() - TRAIL_LENGTH + 1),
+                names.size()));
+        trail.add(nextName);
+        return new ChildCursor(nextPosition, unmodifiableList(trail));
+    }
+
+    /**
+     * @return the position just past the last child returned
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the name of the last child returned
+     */
+    public String getName() {
+        return names.get(names.size() - 1);
+    }
+
+    /**
+     * @return the names of the last few children returned, oldest first
+     */
+    List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return this cursor, as a token safe to use in a URL
+     */
+    public String toToken() {
+        return encodeBase64URLSafeString((position + ":" + on(SEPARATOR)
+                .join(names)).getBytes(UTF_8));
+    }
+
+    /**
+     * @param token
+     * @return the cursor the token was made from
+     * @throws IllegalArgumentException if it isn't a cursor token
+     */
+    public static ChildCursor fromToken(final String token) {
+        final String decoded = new String(decodeBase64(token), UTF_8);
+        final int colon = decoded.indexOf(':');
+        try {
+            final long position = Long.parseLong(decoded.substring(0, colon));
+            final List<String> names =
+                    asList(decoded.substring(colon + 1).split(SEPARATOR, -1));
+            if (position < 1 || names.size() > TRAIL_LENGTH ||
+                    names.contains("")) {
+                throw new IllegalArgumentException("Bad cursor: " + token);
+            }
+            return new ChildCursor(position, unmodifiableList(names));
+        } catch (final NumberFormatException |
+                StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Bad cursor: " + token, e);
+        }
+    }
+
+    /**
+     * Get an iterator over the node's children, placed just past the last
+     * child this cursor returned. If nothing before it has changed, that's a
+     * single skip; otherwise it is looked for from the start. If it was
+     * removed itself, the listing picks up after the latest of the children
+     * before it that is still there. If none of them are, it starts over.
+     * Either way it may repeat children, but won't miss any that were there
+     * all along.
+     *
+     * @param node the node whose children were listed
+     * @return
+     * @throws RepositoryException
+     */
+    public NodeIterator seek(final Node node) throws RepositoryException {
+        final String name = getName();
+        if (node.hasNode(name)) {
+            final NodeIterator children = node.getNodes();
+            if (skip(children, position - 1) && children.hasNext() &&
+                    children.nextNode().getName().equals(name)) {
+                return children;
+            }
+            LOGGER.debug("{} has moved in {}, looking for it", name, node);
+        }
+        for (final String earlier : Lists.reverse(names)) {
+            if (node.hasNode(earlier)) {
+                final NodeIterator children = node.getNodes();
+                while (children.hasNext()) {
+                    if (children.nextNode().getName().equals(earlier)) {
+                        LOGGER.debug("Resuming {} after {}", node, earlier);
+                        return children;
+                    }
+                }
+            }
+        }
+        LOGGER.debug("{} no longer has any of {}, starting over", node,
+                names);
+        return node.getNodes();
+    }
+
+    private static boolean skip(final NodeIterator children,
+            final long count) {
+        try {
+            children.skip(count);
+            return true;
+        } catch (final NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChildCursor(" + position + ", " + names + ")";
+    }
+}
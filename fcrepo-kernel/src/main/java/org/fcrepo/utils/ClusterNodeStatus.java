@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+/**
+ * A transform that can stand a result in for a cluster node that didn't
+ * contribute any, so that callers can tell a copy that's missing because
+ * its node didn't answer from one that isn't there at all.
+ *
+ * @param <T> the type of the transform's results
+ */
+public interface ClusterNodeStatus<T> {
+
+    /**
+     * The result for a node that didn't answer before the deadline
+     * @param node the node's address
+     * @return
+     */
+    T unresponsiveNode(String node);
+
+    /**
+     * The result for a node that answered with an error
+     * @param node the node's address
+     * @return
+     */
+    T failedNode(String node);
+}
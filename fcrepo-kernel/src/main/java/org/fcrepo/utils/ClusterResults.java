@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import java.util.Set;
+
+/**
+ * The (possibly partial) results of running a task across every node
+ * in a cluster, along with the nodes that didn't answer.
+ *
+ * @param <T> the type of the per-node results
+ */
+public class ClusterResults<T> {
+
+    private final Set<T> results;
+
+    private final Set<String> unresponsiveNodes;
+
+    private final Set<String> failedNodes;
+
+    /**
+     * @param results the merged results from every node that answered
+     * @param unresponsiveNodes nodes that didn't answer before the deadline
+     * @param failedNodes nodes that answered with an error
+     */
+    public ClusterResults(final Set<T> results,
+            final Set<String> unresponsiveNodes,
+            final Set<String> failedNodes) {
+        this.results = results;
+        this.unresponsiveNodes = unresponsiveNodes;
+        this.failedNodes = failedNodes;
+    }
+
+    /**
+     * Get the merged results from every node that answered
+     * @return
+     */
+    public Set<T> getResults() {
+        return results;
+    }
+
+    /**
+     * Get the nodes that didn't answer before the deadline
+     * @return
+     */
+    public Set<String> getUnresponsiveNodes() {
+        return unresponsiveNodes;
+    }
+
+    /**
+     * Get the nodes that answered with an error
+     * @return
+     */
+    public Set<String> getFailedNodes() {
+        return failedNodes;
+    }
+
+    /**
+     * Did every node answer successfully?
+     * @return
+     */
+    public boolean isComplete() {
+        return unresponsiveNodes.isEmpty() && failedNodes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterResults: " + results.size() + " results; unresponsive: "
+                + unresponsiveNodes + "; failed: " + failedNodes;
+    }
+}
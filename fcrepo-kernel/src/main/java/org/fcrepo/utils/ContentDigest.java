@@ -37,11 +37,16 @@ public abstract class ContentDigest {
 
     private static final Logger LOGGER = getLogger(ContentDigest.class);
 
-    public static final Map<String, String> algorithmToScheme = ImmutableMap
-            .of("SHA-1", "urn:sha1", "SHA1", "urn:sha1");
+    public static final Map<String, String> algorithmToScheme =
+        ImmutableMap.<String, String> builder()
+            .put("SHA-1", "urn:sha1").put("SHA1", "urn:sha1")
+            .put("SHA-256", "urn:sha256").put("SHA256", "urn:sha256")
+            .put("SHA-512", "urn:sha512").put("SHA512", "urn:sha512")
+            .put("MD5", "urn:md5").build();
 
     public static final Map<String, String> schemeToAlgorithm =
-        ImmutableMap.of("urn:sha1", "SHA-1");
+        ImmutableMap.of("urn:sha1", "SHA-1", "urn:sha256", "SHA-256",
+                        "urn:sha512", "SHA-512", "urn:md5", "MD5");
 
     /**
      * Convert a MessageDigest algorithm and checksum value to a URN
@@ -82,6 +87,16 @@ public abstract class ContentDigest {
                  digestUri.getSchemeSpecificPart().split(":", 2)[0]);
     }
 
+    /**
+     * Given a MessageDigest algorithm name (or alias), get its canonical name
+     * @param algorithm
+     * @return the canonical name, or null if the algorithm isn't supported
+     */
+    public static String getCanonicalAlgorithm(final String algorithm) {
+        final String scheme = algorithmToScheme.get(algorithm.toUpperCase());
+        return scheme == null ? null : schemeToAlgorithm.get(scheme);
+    }
+
     private static String asString(final byte[] data) {
         return encodeHexString(data);
     }
@@ -275,10 +275,30 @@ public abstract class FedoraTypesUtils {
         try {
             checkArgument(n != null,
                     "null cannot have a Binary created for it!");
+            return getBinary(n.getSession(), i, hint);
+        } catch (final RepositoryException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Creates a JCR {@link Binary} through the given session, which needn't
+     * be the session of the node the binary will be set on
+     * 
+     * @param s a {@link Session}
+     * @param i an {@link InputStream}
+     * @param hint a storage hint for the binary store
+     * @return a JCR {@link Binary}
+     */
+    public static Binary getBinary(final Session s, final InputStream i,
+            final String hint) {
+        try {
+            checkArgument(s != null,
+                    "null cannot have a Binary created for it!");
             checkArgument(i != null,
                     "null cannot have a Binary created from it!");
             final JcrValueFactory jcrValueFactory =
-                    ((JcrValueFactory) n.getSession().getValueFactory());
+                    ((JcrValueFactory) s.getValueFactory());
             return jcrValueFactory.createBinary(i, hint);
         } catch (final RepositoryException e) {
             throw propagate(e);
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Block-buffered digest calculation: reads a stream through a large,
+ * per-thread reusable buffer and feeds every requested MessageDigest
+ * (and the byte count) in a single pass.
+ */
+public class FixityEngine {
+
+    private static final Logger LOGGER = getLogger(FixityEngine.class);
+
+    /**
+     * The default read buffer size (1 MB, matching the Infinispan chunk size)
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> defaultBuffers =
+        new ThreadLocal<byte[]>() {
+
+            @Override
+            protected byte[] initialValue() {
+                return new byte[DEFAULT_BUFFER_SIZE];
+            }
+        };
+
+    private final int bufferSize;
+
+    private final String[] algorithms;
+
+    /**
+     * Compute the given digests with the default buffer size
+     * @param algorithms MessageDigest algorithm names, e.g. SHA-1, MD5
+     */
+    public FixityEngine(final String... algorithms) {
+        this(DEFAULT_BUFFER_SIZE, algorithms);
+    }
+
+    /**
+     * Compute the given digests, reading through a buffer of the given size
+     * @param bufferSize
+     * @param algorithms MessageDigest algorithm names, e.g. SHA-1, MD5
+     */
+    public FixityEngine(final int bufferSize, final String... algorithms) {
+        checkArgument(bufferSize > 0, "Buffer size must be positive!");
+        this.bufferSize = bufferSize;
+        this.algorithms = algorithms.clone();
+    }
+
+    /**
+     * Drain the stream, computing the byte count and every digest. The stream
+     * is left open for the caller to close.
+     *
+     * @param in
+     * @return the computed digests, size and timing
+     * @throws IOException
+     */
+    public DigestResult digest(final InputStream in) throws IOException {
+        return digest(in, null);
+    }
+
+    /**
+     * Drain the stream, computing the byte count and every digest, and copy
+     * every block read to the given output stream as it goes. Neither stream
+     * is closed.
+     *
+     * @param in
+     * @param out where to copy the content, or null
+     * @return the computed digests, size and timing
+     * @throws IOException
+     */
+    public DigestResult digest(final InputStream in, final OutputStream out)
+        throws IOException {
+        final MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = getDigest(algorithms[i]);
+        }
+
+        final byte[] buffer = getBuffer();
+        final long start = nanoTime();
+        long byteCount = 0;
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            for (final MessageDigest digest : digests) {
+                digest.update(buffer, 0, read);
+            }
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+            byteCount += read;
+        }
+
+        final long elapsed = nanoTime() - start;
+
+        final ImmutableMap.Builder<String, byte[]> values =
+            ImmutableMap.builder();
+        for (int i = 0; i < algorithms.length; i++) {
+            values.put(algorithms[i], digests[i].digest());
+        }
+
+        final DigestResult result =
+            new DigestResult(byteCount, values.build(), elapsed);
+        LOGGER.debug("Digested {} bytes in {} ms ({} MB/s)", byteCount,
+                NANOSECONDS.toMillis(elapsed), result.getThroughput());
+        return result;
+    }
+
+    private byte[] getBuffer() {
+        if (bufferSize == DEFAULT_BUFFER_SIZE) {
+            return defaultBuffers.get();
+        }
+        return new byte[bufferSize];
+    }
+
+    private static MessageDigest getDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            LOGGER.warn("Could not create MessageDigest: {}", e);
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * The outcome of a single digesting pass over a stream
+     */
+    public static class DigestResult {
+
+        private final long byteCount;
+
+        private final Map<String, byte[]> digests;
+
+        private final long elapsedNanos;
+
+        DigestResult(final long byteCount, final Map<String, byte[]> digests,
+                final long elapsedNanos) {
+            this.byteCount = byteCount;
+            this.digests = digests;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Get the number of bytes read
+         * @return
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        /**
+         * Get the digest value computed for the given algorithm
+         * @param algorithm
+         * @return the digest bytes, or null if it wasn't requested
+         */
+        public byte[] getDigest(final String algorithm) {
+            return digests.get(algorithm);
+        }
+
+        /**
+         * Get every computed digest, keyed by algorithm
+         * @return
+         */
+        public Map<String, byte[]> getDigests() {
+            return digests;
+        }
+
+        /**
+         * Get the time spent reading and digesting the stream
+         * @return
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Get the read throughput in MB/s
+         * @return
+         */
+        public double getThroughput() {
+            return throughput(byteCount, elapsedNanos);
+        }
+    }
+
+    /**
+     * Convert a byte count and a duration into MB/s
+     * @param bytes
+     * @param nanos
+     * @return
+     */
+    public static double throughput(final long bytes, final long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+}
@@ -15,20 +15,25 @@
  */
 package org.fcrepo.utils;
 
+import static java.util.Arrays.asList;
+
 import java.io.InputStream;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.util.List;
 
 import org.apache.commons.io.input.CountingInputStream;
 
 /**
- * An InputStream wrapper that calculates the size and digest
+ * An InputStream wrapper that calculates the size and digests
  * while reading from the stream.
  * @author Chris Beer
  * @date Mar 12, 2013
  */
 public class FixityInputStream extends CountingInputStream {
 
+    private final List<MessageDigest> digests;
+
     /**
      * Creates a <code>FilterInputStream</code> by assigning the
      * argument <code>in</code> to the field <code>this.in</code>
@@ -38,7 +43,28 @@ public class FixityInputStream extends CountingInputStream {
      *           this instance is to be created without an underlying stream.
      */
     public FixityInputStream(final InputStream in, final MessageDigest digest) {
-        super(new DigestInputStream(in, digest));
+        this(in, new MessageDigest[] {digest});
+    }
+
+    /**
+     * Wrap the stream so that every digest is updated in the same pass
+     *
+     * @param in the underlying input stream
+     * @param digests the digests to update
+     */
+    public FixityInputStream(final InputStream in,
+            final MessageDigest... digests) {
+        super(wrap(in, digests));
+        this.digests = asList(digests.clone());
+    }
+
+    private static InputStream wrap(final InputStream in,
+            final MessageDigest... digests) {
+        InputStream wrapped = in;
+        for (final MessageDigest digest : digests) {
+            wrapped = new DigestInputStream(wrapped, digest);
+        }
+        return wrapped;
     }
 
     /**
@@ -46,7 +72,15 @@ public class FixityInputStream extends CountingInputStream {
      * @return
      */
     public MessageDigest getMessageDigest() {
-        return ((DigestInputStream) in).getMessageDigest();
+        return digests.get(0);
+    }
+
+    /**
+     * Retrieve every digest calculated for the input stream
+     * @return
+     */
+    public List<MessageDigest> getMessageDigests() {
+        return digests;
     }
 
 }
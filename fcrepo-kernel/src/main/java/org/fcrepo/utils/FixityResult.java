@@ -18,7 +18,9 @@ package org.fcrepo.utils;
 import static java.util.Objects.hash;
 
 import java.net.URI;
+import java.util.Date;
 import java.util.EnumSet;
+import java.util.Objects;
 
 /**
  * Structure for presenting the results of a fixity check
@@ -30,7 +32,8 @@ public class FixityResult {
      * The possible fixity states (which may be ORed together later)
      */
     public static enum FixityState {
-        SUCCESS, REPAIRED, BAD_CHECKSUM, BAD_SIZE
+        SUCCESS, REPAIRED, BAD_CHECKSUM, BAD_SIZE, UNRESPONSIVE_NODE,
+        FAILED_NODE
     }
 
     /**
@@ -43,6 +46,9 @@ public class FixityResult {
      *       bitstream didn't match the stored size
      * - REPAIRED and BAD_*: the checksum or size failed to match, but it
      *       was automatically recovered from a different copy
+     * - UNRESPONSIVE_NODE or FAILED_NODE: the cluster node holding a copy
+     *       didn't answer in time, or answered with an error, so the copy
+     *       couldn't be checked at all
      */
     public EnumSet<FixityState> status = EnumSet.noneOf(FixityState.class);
 
@@ -61,6 +67,10 @@ public class FixityResult {
 
     private final LowLevelCacheEntry entry;
 
+    private String clusterNode;
+
+    private Date lastChecked = new Date();
+
     /**
      * Initialize an empty fixity result
      */
@@ -99,11 +109,34 @@ public class FixityResult {
     }
 
     /**
-     * Get the identifier for the entry's store
+     * Prepare the result for a cluster node whose copy couldn't be checked
+     * @param node the node's address
+     * @param state UNRESPONSIVE_NODE or FAILED_NODE
+     * @return
+     */
+    public static FixityResult forClusterNode(final String node,
+            final FixityState state) {
+        final FixityResult result = new FixityResult();
+        result.clusterNode = node;
+        result.status.add(state);
+        return result;
+    }
+
+    /**
+     * Get the identifier for the entry's store, or the address of the cluster
+     * node whose copy couldn't be checked
      * @return
      */
     public String getStoreIdentifier() {
-        return entry.getExternalIdentifier();
+        return entry == null ? clusterNode : entry.getExternalIdentifier();
+    }
+
+    /**
+     * Get the address of the cluster node whose copy couldn't be checked
+     * @return the address, or null if the copy was checked
+     */
+    public String getClusterNode() {
+        return clusterNode;
     }
 
     @Override
@@ -114,7 +147,8 @@ public class FixityResult {
             final FixityResult that = (FixityResult) obj;
             result =
                 computedSize == that.computedSize &&
-                computedChecksum.equals(that.computedChecksum);
+                Objects.equals(computedChecksum, that.computedChecksum) &&
+                Objects.equals(clusterNode, that.clusterNode);
         }
 
         return result;
@@ -122,11 +156,14 @@ public class FixityResult {
 
     @Override
     public int hashCode() {
-        return hash(computedSize, computedChecksum);
+        return hash(computedSize, computedChecksum, clusterNode);
     }
 
     @Override
     public String toString() {
+        if (clusterNode != null) {
+            return "Fixity: " + status + " on cluster node " + clusterNode;
+        }
         return "Fixity: checksum: " + computedChecksum.toString() + " / " +
             Long.toString(computedSize);
     }
@@ -145,7 +182,7 @@ public class FixityResult {
      * @return
      */
     public boolean matches(final URI checksum) {
-        return computedChecksum.equals(checksum);
+        return computedChecksum != null && computedChecksum.equals(checksum);
     }
 
     /**
@@ -175,6 +212,44 @@ public class FixityResult {
         return status.contains(FixityState.SUCCESS);
     }
 
+    /**
+     * Set the SUCCESS or BAD_* states by comparing the computed size and
+     * checksum against the expected ones
+     * @param checksum the expected checksum
+     * @param size the expected size
+     * @return this result
+     */
+    public FixityResult verify(final URI checksum, final long size) {
+        if (!matches(checksum)) {
+            status.add(FixityState.BAD_CHECKSUM);
+        }
+
+        if (!matches(size)) {
+            status.add(FixityState.BAD_SIZE);
+        }
+
+        if (matches(size, checksum)) {
+            status.add(FixityState.SUCCESS);
+        }
+        return this;
+    }
+
+    /**
+     * Get the time the content was actually read and digested
+     * @return
+     */
+    public Date getLastChecked() {
+        return lastChecked;
+    }
+
+    /**
+     * Set the time the content was actually read and digested
+     * @param lastChecked
+     */
+    public void setLastChecked(final Date lastChecked) {
+        this.lastChecked = lastChecked;
+    }
+
     /**
      * Mark the fixity result as been automatically repaired
      */
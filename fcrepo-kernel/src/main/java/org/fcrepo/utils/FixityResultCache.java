@@ -0,0 +1,173 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static java.lang.Long.getLong;
+import static java.util.Objects.hash;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Iterator;
+
+import org.modeshape.jcr.value.BinaryKey;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded, expiring cache of the fixity results computed for each copy of
+ * a binary, keyed by BinaryKey, store and digest algorithm. Cached results
+ * keep the time of the check that produced them.
+ *
+ * The cache holds at most fcrepo.fixity.cache.size results, each for
+ * fcrepo.fixity.cache.ttl ms (0 turns the cache off).
+ */
+public class FixityResultCache {
+
+    private static final Logger LOGGER = getLogger(FixityResultCache.class);
+
+    public static final long DEFAULT_SIZE = 10000;
+
+    public static final long DEFAULT_TTL = 5 * 60 * 1000L;
+
+    private static final FixityResultCache instance = new FixityResultCache(
+            getLong("fcrepo.fixity.cache.size", DEFAULT_SIZE), getLong(
+                    "fcrepo.fixity.cache.ttl", DEFAULT_TTL));
+
+    private final Cache<Key, FixityResult> cache;
+
+    private final boolean enabled;
+
+    /**
+     * @param maximumSize the maximum number of results to hold
+     * @param ttl how long (in ms) a result stays fresh
+     */
+    public FixityResultCache(final long maximumSize, final long ttl) {
+        enabled = maximumSize > 0 && ttl > 0;
+        cache =
+                CacheBuilder.newBuilder().maximumSize(maximumSize)
+                        .expireAfterWrite(ttl, MILLISECONDS).build();
+    }
+
+    /**
+     * Get the shared fixity result cache
+     * @return
+     */
+    public static FixityResultCache getFixityResultCache() {
+        return instance;
+    }
+
+    /**
+     * Get the cached result of checking the entry with the given algorithm
+     * @param entry
+     * @param algorithm
+     * @return a cached result, or null
+     */
+    public FixityResult get(final LowLevelCacheEntry entry,
+            final String algorithm) {
+        final Key key = keyFor(entry, algorithm);
+        if (key == null) {
+            return null;
+        }
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Remember the result of a fixity check
+     * @param result
+     */
+    public void put(final FixityResult result) {
+        if (result == null || result.computedChecksum == null) {
+            return;
+        }
+        final Key key =
+                keyFor(result.getEntry(), ContentDigest
+                        .getAlgorithm(result.computedChecksum));
+        if (key != null) {
+            cache.put(key, result);
+        }
+    }
+
+    /**
+     * Forget every result for a binary, e.g. because its content was just
+     * (re)written
+     * @param binaryKey
+     */
+    public void invalidate(final BinaryKey binaryKey) {
+        if (!enabled || binaryKey == null) {
+            return;
+        }
+        final Iterator<Key> keys = cache.asMap().keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().binaryKey.equals(binaryKey)) {
+                keys.remove();
+            }
+        }
+        LOGGER.debug("Invalidated cached fixity results for {}", binaryKey);
+    }
+
+    /**
+     * Forget every cached result
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private Key keyFor(final LowLevelCacheEntry entry, final String algorithm) {
+        if (!enabled || entry == null || entry.getKey() == null ||
+                algorithm == null) {
+            return null;
+        }
+        final String store = entry.getExternalIdentifier();
+        if (store == null) {
+            return null;
+        }
+        return new Key(entry.getKey(), store, algorithm);
+    }
+
+    private static class Key {
+
+        final BinaryKey binaryKey;
+
+        final String store;
+
+        final String algorithm;
+
+        Key(final BinaryKey binaryKey, final String store,
+                final String algorithm) {
+            this.binaryKey = binaryKey;
+            this.store = store;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj instanceof Key) {
+                final Key that = (Key) obj;
+                return binaryKey.equals(that.binaryKey) &&
+                        store.equals(that.store) &&
+                        algorithm.equals(that.algorithm);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(binaryKey, store, algorithm);
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.fcrepo.utils;
 
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
 import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
 import static com.hp.hpl.jena.rdf.model.ResourceFactory.createTypedLiteral;
 import static javax.jcr.PropertyType.BINARY;
@@ -34,23 +36,29 @@ import static org.fcrepo.RdfLexicon.HAS_COMPUTED_CHECKSUM;
 import static org.fcrepo.RdfLexicon.HAS_COMPUTED_SIZE;
 import static org.fcrepo.RdfLexicon.HAS_FIXITY_RESULT;
 import static org.fcrepo.RdfLexicon.HAS_FIXITY_STATE;
+import static org.fcrepo.RdfLexicon.HAS_LAST_FIXITY_CHECK;
 import static org.fcrepo.RdfLexicon.HAS_LOCATION;
 import static org.fcrepo.RdfLexicon.HAS_VERSION;
 import static org.fcrepo.RdfLexicon.HAS_VERSION_LABEL;
 import static org.fcrepo.RdfLexicon.IS_FIXITY_RESULT_OF;
 import static org.fcrepo.metrics.RegistryService.getMetrics;
+import static org.fcrepo.utils.BinaryLocationCache.getBinaryLocationCache;
 import static org.fcrepo.utils.FedoraTypesUtils.getNodeTypeManager;
 import static org.fcrepo.utils.FedoraTypesUtils.getPredicateForProperty;
 import static org.fcrepo.utils.FedoraTypesUtils.getRepositoryCount;
 import static org.fcrepo.utils.FedoraTypesUtils.getRepositorySize;
 import static org.fcrepo.utils.FedoraTypesUtils.getValueFactory;
+import static org.fcrepo.utils.NamespacePrefixCache.getNamespacePrefixCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.Calendar;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 
+import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
@@ -68,16 +76,22 @@ import javax.jcr.version.VersionIterator;
 
 import com.hp.hpl.jena.vocabulary.RDF;
 import org.fcrepo.RdfLexicon;
+import org.fcrepo.rdf.DescriptionSection;
 import org.fcrepo.rdf.GraphSubjects;
 import org.fcrepo.services.LowLevelStorageService;
 import org.fcrepo.services.functions.GetClusterConfiguration;
 import org.modeshape.jcr.api.JcrConstants;
 import org.modeshape.jcr.api.NamespaceRegistry;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
 import org.slf4j.Logger;
 
 import com.codahale.metrics.Counter;
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import com.hp.hpl.jena.datatypes.RDFDatatype;
@@ -99,6 +113,8 @@ public abstract class JcrRdfTools {
 
     private static final Logger LOGGER = getLogger(JcrRdfTools.class);
 
+    private static final String JCR_SYSTEM = "jcr:system";
+
     private static GetClusterConfiguration getClusterConfiguration =
             new GetClusterConfiguration();
 
@@ -185,6 +201,7 @@ public abstract class JcrRdfTools {
 
     /**
      * Create a default Jena Model populated with the registered JCR namespaces
+     * (as of the last snapshot of them)
      * 
      * @param session
      * @return
@@ -193,25 +210,7 @@ public abstract class JcrRdfTools {
     private static Model createDefaultJcrModel(final Session session)
         throws RepositoryException {
         final Model model = ModelFactory.createDefaultModel();
-
-        final javax.jcr.NamespaceRegistry namespaceRegistry =
-                NamespaceTools.getNamespaceRegistry(session);
-        assert (namespaceRegistry != null);
-
-        for (final String prefix : namespaceRegistry.getPrefixes()) {
-            final String nsURI = namespaceRegistry.getURI(prefix);
-            if (nsURI != null && !nsURI.equals("") && !prefix.equals("xmlns")) {
-
-                if (prefix.equals("jcr")) {
-                    model.setNsPrefix("fedora-internal",
-                            getRDFNamespaceForJcrNamespace(nsURI));
-                } else {
-                    model.setNsPrefix(prefix,
-                            getRDFNamespaceForJcrNamespace(nsURI));
-                }
-            }
-        }
-
+        model.setNsPrefixes(getNamespacePrefixCache().getPrefixes(session));
         return model;
     }
 
@@ -224,7 +223,9 @@ public abstract class JcrRdfTools {
      */
     public static Model getJcrNamespaceModel(final Session session)
         throws RepositoryException {
-        final Model model = createDefaultJcrModel(session);
+        // read the registry itself, rather than the snapshot
+        final Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefixes(getNamespacePrefixCache().refresh(session));
 
         final Map<String, String> prefixMap = model.getNsPrefixMap();
 
@@ -292,16 +293,37 @@ public abstract class JcrRdfTools {
      */
     public static Model getJcrPropertiesModel(final GraphSubjects factory,
             final Node node) throws RepositoryException {
+        return getJcrPropertiesModel(factory, node, DescriptionSection.all());
+    }
+
+    /**
+     * Get an RDF Model for a node that includes its own JCR properties, and
+     * those of the given sections that belong to the node itself (the
+     * repository's description, for the root node, and its jcr:content).
+     * Sections left out aren't looked up at all.
+     *
+     * @param factory
+     * @param node
+     * @param sections
+     * @return
+     * @throws RepositoryException
+     */
+    public static Model getJcrPropertiesModel(final GraphSubjects factory,
+            final Node node, final Set<DescriptionSection> sections)
+        throws RepositoryException {
 
         final Model model = createDefaultJcrModel(node.getSession());
 
-        if (node.getPrimaryNodeType().getName().equals(FedoraJcrTypes.ROOT)) {
+        if (sections.contains(DescriptionSection.REPOSITORY) &&
+                node.getPrimaryNodeType().getName().equals(
+                        FedoraJcrTypes.ROOT)) {
             /* a rdf description of the root node */
             LOGGER.debug("Creating RDF response for repository description");
             addRepositoryMetricsToModel(factory, node, model);
         }
 
-        addJcrPropertiesToModel(factory, node, model);
+        addJcrPropertiesToModel(factory, node, model, true, sections
+                .contains(DescriptionSection.CONTENT));
 
         return model;
     }
@@ -413,79 +435,345 @@ public abstract class JcrRdfTools {
         final Resource contentNodeSubject =
                 factory.getGraphSubject(contentNode);
 
-        // TODO: get this from somewhere else.
+        final Binary binary =
+                contentNode.getProperty(JcrConstants.JCR_DATA).getBinary();
+        final BinaryKey key =
+                binary instanceof BinaryValue ? ((BinaryValue) binary)
+                        .getKey() : null;
 
-        if (llstore == null) {
-            llstore = new LowLevelStorageService();
-            llstore.setRepository(node.getSession().getRepository());
-        }
+        Set<String> locations =
+                key == null ? null : getBinaryLocationCache().get(key);
 
-        final Set<LowLevelCacheEntry> cacheEntries =
-                llstore.getLowLevelCacheEntries(contentNode);
+        if (locations == null) {
+            // TODO: get this from somewhere else.
+
+            if (llstore == null) {
+                llstore = new LowLevelStorageService();
+                llstore.setRepository(node.getSession().getRepository());
+            }
+
+            final Set<LowLevelCacheEntry> cacheEntries =
+                    llstore.getLowLevelCacheEntries(contentNode);
+
+            final ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+            for (final LowLevelCacheEntry e : cacheEntries) {
+                builder.add(e.getExternalIdentifier());
+            }
+            locations = builder.build();
+
+            if (key != null) {
+                getBinaryLocationCache().put(key, locations);
+            }
+        }
 
-        for (final LowLevelCacheEntry e : cacheEntries) {
-            model.add(contentNodeSubject, RdfLexicon.HAS_LOCATION, e
-                    .getExternalIdentifier());
+        for (final String location : locations) {
+            model.add(contentNodeSubject, RdfLexicon.HAS_LOCATION, location);
         }
 
     }
 
     /**
-     * Add the properties of a Node's parent and immediate children (as well as
-     * the jcr:content of children) to the given RDF model
+     * Add the properties of a Node's parent and of the requested window of its
+     * immediate children (as well as the jcr:content of children) to the given
+     * RDF model, along with the number of children
      * 
      * @param node
-     * @param offset
-     * @param limit @throws RepositoryException
+     * @param offset the number of children to pass over
+     * @param limit the number of children to include, or -1 for the rest
+     * @throws RepositoryException
      */
     public static Model getJcrTreeModel(final GraphSubjects factory,
             final Node node, final long offset, final int limit)
         throws RepositoryException {
+        return getJcrTreeModel(factory, node, offset, null, limit, null,
+                DescriptionSection.all());
+    }
+
+    /**
+     * Add the properties of a Node's parent and of the requested window of its
+     * immediate children to the given RDF model, starting after a cursor, and
+     * with a link to the next page
+     *
+     * @param node
+     * @param offset the number of children to pass over
+     * @param after where the previous page left off, or null to start from
+     *        the first child
+     * @param limit the number of children to include, or -1 for the rest
+     * @param pager makes the statements that link to the next page, from
+     *        where this one leaves off (null if it's the last page), or null
+     *        for no links
+     * @param sections which of the parent and children to include
+     * @throws RepositoryException
+     */
+    public static Model getJcrTreeModel(final GraphSubjects factory,
+            final Node node, final long offset, final ChildCursor after,
+            final int limit, final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException {
 
         final Model model = createDefaultJcrModel(node.getSession());
 
+        try {
+            final Iterator<Model> models =
+                    getJcrTreeModels(factory, node, offset, after, limit,
+                            pager, sections);
+            while (models.hasNext()) {
+                model.add(models.next());
+            }
+        } catch (final RuntimeException e) {
+            propagateIfInstanceOf(e.getCause(), RepositoryException.class);
+            throw e;
+        }
+
+        return model;
+    }
+
+    /**
+     * The statements of {@link #getJcrTreeModel}, as a series of small models
+     * built only as the iterator reaches them: the node's parent, then each
+     * child in the window in turn, then the count of children. Writing each
+     * model out as it arrives means only one child's description is ever held
+     * in memory. The node's session must stay open until the iterator is used
+     * up; repository errors along the way are rethrown unchecked.
+     *
+     * Children before the window are skipped over without being loaded,
+     * unless the node has children that are left out of the listing (its
+     * jcr:content, or the root's jcr:system), in which case they have to be
+     * looked at to count the offset right. The count of children comes from
+     * the iterator's size where the repository knows it.
+     * 
+     * @param factory
+     * @param node
+     * @param offset
+     * @param limit
+     * @return
+     * @throws RepositoryException
+     */
+    public static Iterator<Model> getJcrTreeModels(
+            final GraphSubjects factory, final Node node, final long offset,
+            final int limit) throws RepositoryException {
+        return getJcrTreeModels(factory, node, offset, null, limit, null,
+                DescriptionSection.all());
+    }
+
+    /**
+     * The statements of {@link #getJcrTreeModel}, as a series of small models,
+     * starting after a cursor and ending with a link to the next page.
+     *
+     * A cursor resumes the listing where the previous page left off without
+     * counting through the children before it, so deep pages of a large node
+     * cost no more than the first, and children added or removed between
+     * pages don't shift the window. The offset, if any, is counted from the
+     * cursor.
+     *
+     * @param factory
+     * @param node
+     * @param offset
+     * @param after where the previous page left off, or null to start from
+     *        the first child
+     * @param limit
+     * @param pager makes the statements that link to the next page, from
+     *        where this one leaves off (null if it's the last page), or null
+     *        for no links
+     * @param sections which of the parent and children to include; without
+     *        the children, the node's children aren't visited at all
+     * @return
+     * @throws RepositoryException
+     */
+    public static Iterator<Model> getJcrTreeModels(
+            final GraphSubjects factory, final Node node, final long offset,
+            final ChildCursor after, final int limit,
+            final Function<ChildCursor, Model> pager,
+            final Set<DescriptionSection> sections)
+        throws RepositoryException {
+
+        final Model parentModel = ModelFactory.createDefaultModel();
+
         final Resource subject = getGraphSubject(factory, node);
 
         // don't do this if the node is the root node.
-        if (node.getDepth() != 0) {
+        if (sections.contains(DescriptionSection.PARENT) &&
+                node.getDepth() != 0) {
             final Node parentNode = node.getParent();
-            model.add(subject, RdfLexicon.HAS_PARENT, getGraphSubject(factory,
-                    parentNode));
-            addJcrPropertiesToModel(factory, parentNode, model);
+            parentModel.add(subject, RdfLexicon.HAS_PARENT, getGraphSubject(
+                    factory, parentNode));
+            addJcrPropertiesToModel(factory, parentNode, parentModel, false);
         }
 
-        final javax.jcr.NodeIterator nodeIterator = node.getNodes();
-
-        int i = 0;
-        long excludedNodeCount = 0;
+        if (!sections.contains(DescriptionSection.CHILDREN)) {
+            return Iterators.singletonIterator(parentModel);
+        }
 
-        while (nodeIterator.hasNext()) {
-            final Node childNode = nodeIterator.nextNode();
+        final javax.jcr.NodeIterator nodeIterator =
+                after == null ? node.getNodes() : after.seek(node);
+        final long size = nodeIterator.getSize();
+        final long excludedNodeCount = countExcludedChildren(node);
+
+        // with nothing to leave out, jump straight to the window
+        long skipped = 0;
+        if (after == null && excludedNodeCount == 0 && offset > 0) {
+            skipped = size < 0 ? offset : Math.min(offset, size);
+            try {
+                nodeIterator.skip(skipped);
+            } catch (final NoSuchElementException e) {
+                LOGGER.trace("Offset {} is past the last child of {}",
+                        offset, node);
+                skipped = nodeIterator.getPosition();
+            }
+        }
+        final long start = skipped;
+
+        final Iterator<Model> childModels = new AbstractIterator<Model>() {
+
+            private long i = start;
+
+            private boolean counted = false;
+
+            // carries on from the cursor this page started at, so the next
+            // one remembers children from before this page too
+            private ChildCursor last = after;
+
+            @Override
+            protected Model computeNext() {
+                try {
+                    while ((limit == -1 || i < offset + limit) &&
+                            nodeIterator.hasNext()) {
+                        final Node childNode = nodeIterator.nextNode();
+
+                        if (isExcludedChild(childNode) || i++ < offset) {
+                            continue;
+                        }
+                        last =
+                                last == null ? new ChildCursor(nodeIterator
+                                        .getPosition(), childNode.getName())
+                                        : last.then(nodeIterator
+                                                .getPosition(), childNode
+                                                .getName());
+
+                        final Model model = ModelFactory.createDefaultModel();
+                        final Resource childNodeSubject =
+                                getGraphSubject(factory, childNode);
+
+                        addJcrPropertiesToModel(factory, childNode, model,
+                                false);
+                        model.add(subject, RdfLexicon.HAS_CHILD,
+                                childNodeSubject);
+                        model.add(childNodeSubject, RdfLexicon.HAS_PARENT,
+                                subject);
+                        return model;
+                    }
+
+                    if (counted) {
+                        return endOfData();
+                    }
+                    counted = true;
+                    final boolean more = pager != null && hasMoreChildren();
+                    final long childCount = countChildren();
+                    final Model model = ModelFactory.createDefaultModel();
+                    model.add(subject, RdfLexicon.HAS_CHILD_COUNT,
+                            ResourceFactory.createTypedLiteral(childCount));
+                    if (pager != null) {
+                        model.add(pager.apply(more ? last : null));
+                    }
+                    return model;
+                } catch (final RepositoryException e) {
+                    throw propagate(e);
+                }
+            }
 
-            // exclude jcr system nodes or jcr:content nodes
-            if (FedoraTypesUtils.isInternalNode.apply(childNode) ||
-                    childNode.getName().equals(JcrConstants.JCR_CONTENT)) {
-                excludedNodeCount++;
-            } else {
-                final Resource childNodeSubject =
-                        getGraphSubject(factory, childNode);
+            /**
+             * Whether any children are left past the window, moving past the
+             * first of them
+             */
+            private boolean hasMoreChildren() throws RepositoryException {
+                if (last == null) {
+                    return false;
+                }
+                while (nodeIterator.hasNext()) {
+                    if (!isExcludedChild(nodeIterator.nextNode())) {
+                        i++;
+                        return true;
+                    }
+                }
+                return false;
+            }
 
-                if (i >= offset && (limit == -1 || i < (offset + limit))) {
-                    addJcrPropertiesToModel(factory, childNode, model);
+            private long countChildren() throws RepositoryException {
+                if (size >= 0) {
+                    return size - excludedNodeCount;
+                }
+                // the repository can't say up front, so count the rest
+                long count = i;
+                javax.jcr.NodeIterator rest = nodeIterator;
+                if (after != null) {
+                    // children before the cursor weren't counted
+                    count = 0;
+                    rest = node.getNodes();
                 }
+                while (rest.hasNext()) {
+                    if (!isExcludedChild(rest.nextNode())) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        };
 
-                i++;
+        return Iterators.concat(Iterators.singletonIterator(parentModel),
+                childModels);
+    }
 
-                model.add(subject, RdfLexicon.HAS_CHILD, childNodeSubject);
-                model.add(childNodeSubject, RdfLexicon.HAS_PARENT, subject);
-            }
+    /**
+     * Whether a child node is left out of its parent's listing
+     */
+    private static boolean isExcludedChild(final Node childNode)
+        throws RepositoryException {
+        // exclude jcr system nodes or jcr:content nodes
+        return FedoraTypesUtils.isInternalNode.apply(childNode) ||
+                childNode.getName().equals(JcrConstants.JCR_CONTENT);
+    }
 
+    /**
+     * Count the children {@link #isExcludedChild} would leave out, by name,
+     * without visiting the rest
+     */
+    private static long countExcludedChildren(final Node node)
+        throws RepositoryException {
+        long count = node.hasNode(JcrConstants.JCR_CONTENT) ? 1 : 0;
+        if (node.getDepth() == 0 && node.hasNode(JCR_SYSTEM) &&
+                FedoraTypesUtils.isInternalNode.apply(node
+                        .getNode(JCR_SYSTEM))) {
+            count++;
         }
+        return count;
+    }
 
-        model.add(subject, RdfLexicon.HAS_CHILD_COUNT, ResourceFactory
-                .createTypedLiteral(nodeIterator.getSize() - excludedNodeCount));
+    /**
+     * Add all of a node's properties to the given model
+     * 
+     * @param node
+     * @param model
+     * @throws RepositoryException
+     */
+    private static void addJcrPropertiesToModel(final GraphSubjects factory,
+            final Node node, final Model model) throws RepositoryException {
+        addJcrPropertiesToModel(factory, node, model, true, true);
+    }
 
-        return model;
+    /**
+     * Add all of a node's properties to the given model
+     *
+     * @param node
+     * @param model
+     * @param lookupLocations if false, leave out the locations of the node's
+     *        content, rather than asking the low-level stores (e.g. for
+     *        every child in a listing)
+     * @throws RepositoryException
+     */
+    private static void addJcrPropertiesToModel(final GraphSubjects factory,
+            final Node node, final Model model, final boolean lookupLocations)
+        throws RepositoryException {
+        addJcrPropertiesToModel(factory, node, model, lookupLocations, true);
     }
 
     /**
@@ -493,10 +781,16 @@ public abstract class JcrRdfTools {
      * 
      * @param node
      * @param model
+     * @param lookupLocations if false, leave out the locations of the node's
+     *        content, rather than asking the low-level stores (e.g. for
+     *        every child in a listing)
+     * @param includeContent if false, leave out the node's jcr:content
      * @throws RepositoryException
      */
     private static void addJcrPropertiesToModel(final GraphSubjects factory,
-            final Node node, final Model model) throws RepositoryException {
+            final Node node, final Model model, final boolean lookupLocations,
+            final boolean includeContent)
+        throws RepositoryException {
 
         final Resource subject = getGraphSubject(factory, node);
         final javax.jcr.PropertyIterator properties = node.getProperties();
@@ -507,8 +801,8 @@ public abstract class JcrRdfTools {
             addPropertyToModel(subject, model, property);
         }
 
-        // always include the jcr:content node information
-        if (node.hasNode(JcrConstants.JCR_CONTENT)) {
+        // include the jcr:content node information, unless asked not to
+        if (includeContent && node.hasNode(JcrConstants.JCR_CONTENT)) {
             final Node contentNode = node.getNode(JcrConstants.JCR_CONTENT);
             final Resource contentSubject =
                     getGraphSubject(factory, contentNode);
@@ -516,8 +810,13 @@ public abstract class JcrRdfTools {
             model.add(subject, RdfLexicon.HAS_CONTENT, contentSubject);
             model.add(contentSubject, RdfLexicon.IS_CONTENT_OF, subject);
 
-            addJcrPropertiesToModel(factory, contentNode, model);
-            addJcrContentLocationInformationToModel(factory, node, model);
+            addJcrPropertiesToModel(factory, contentNode, model,
+                    lookupLocations);
+            // all or nothing, so what's listed doesn't depend on what
+            // happens to be cached
+            if (lookupLocations) {
+                addJcrContentLocationInformationToModel(factory, node, model);
+            }
         }
     }
 
@@ -696,6 +995,7 @@ public abstract class JcrRdfTools {
             prefix = namespaceRegistry.getPrefix(namespace);
         } else {
             prefix = namespaceRegistry.registerNamespace(namespace);
+            getNamespacePrefixCache().invalidate();
         }
 
         final String localName = predicate.getLocalName();
@@ -805,11 +1105,23 @@ public abstract class JcrRdfTools {
                         createTypedLiteral(state.toString()));
             }
 
+            // the copy on a cluster node that didn't answer wasn't read
+            if (result.getClusterNode() != null) {
+                continue;
+            }
+
             final String checksum = result.computedChecksum.toString();
             model.add(resultSubject, HAS_COMPUTED_CHECKSUM,
                     createResource(checksum));
             model.add(resultSubject, HAS_COMPUTED_SIZE,
                     createTypedLiteral(result.computedSize));
+
+            if (result.getLastChecked() != null) {
+                final Calendar lastChecked = Calendar.getInstance();
+                lastChecked.setTime(result.getLastChecked());
+                model.add(resultSubject, HAS_LAST_FIXITY_CHECK,
+                        createTypedLiteral(lastChecked));
+            }
         }
         return model;
     }
@@ -828,5 +1140,6 @@ public abstract class JcrRdfTools {
     public static void setLlstore(
             final LowLevelStorageService lowLevelStorageService) {
         llstore = lowLevelStorageService;
+        getBinaryLocationCache().invalidateAll();
     }
 }
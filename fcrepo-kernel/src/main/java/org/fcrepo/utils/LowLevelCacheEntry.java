@@ -16,16 +16,11 @@
 package org.fcrepo.utils;
 
 import static com.google.common.base.Throwables.propagate;
-import static org.fcrepo.utils.FixityResult.FixityState.BAD_CHECKSUM;
-import static org.fcrepo.utils.FixityResult.FixityState.BAD_SIZE;
-import static org.fcrepo.utils.FixityResult.FixityState.SUCCESS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
@@ -43,7 +38,11 @@ public abstract class LowLevelCacheEntry {
 
     private static final Logger LOGGER = getLogger(LowLevelCacheEntry.class);
 
-    protected static final String DATA_SUFFIX = "-data";
+    /**
+     * The suffix of the cache keys an InfinispanBinaryStore keeps a
+     * binary's content under
+     */
+    public static final String DATA_SUFFIX = "-data";
 
 
     protected String externalId;
@@ -91,48 +90,43 @@ public abstract class LowLevelCacheEntry {
      */
     public FixityResult checkFixity(final URI checksum, final long size)
         throws BinaryStoreException {
-        final FixityInputStream ds;
+        return checkFixity(getInputStream(), checksum, size);
+    }
+
+    /**
+     * Check the given stream of this entry's content against the checksum
+     * and size, closing it afterwards.
+     *
+     * @param is
+     * @param checksum
+     * @param size
+     * @return
+     */
+    protected FixityResult checkFixity(final InputStream is,
+        final URI checksum, final long size) {
         final String digest = ContentDigest.getAlgorithm(checksum);
-        try {
-            ds = new FixityInputStream(getInputStream(),
-                                       MessageDigest.getInstance(digest));
-        } catch (NoSuchAlgorithmException e) {
-            LOGGER.warn("Could not create MessageDigest: {}", e);
-            throw propagate(e);
-        }
 
         try {
 
-            while (ds.read() != -1) {
-                // noop; we're just reading the stream for the checksum and size
-            }
+            final FixityEngine.DigestResult digested =
+                new FixityEngine(digest).digest(is);
 
             final FixityResult result =
-                new FixityResult(this, ds.getByteCount(),
+                new FixityResult(this, digested.getByteCount(),
                                  ContentDigest
                                  .asURI(digest,
-                                        ds.getMessageDigest().digest()));
-
-            if (!result.matches(checksum)) {
-                result.status.add(BAD_CHECKSUM);
-            }
-
-            if (!result.matches(size)) {
-                result.status.add(BAD_SIZE);
-            }
-
-            if (result.matches(size, checksum)) {
-                result.status.add(SUCCESS);
-            }
+                                        digested.getDigest(digest)))
+                .verify(checksum, size);
 
-            LOGGER.debug("Got {}", result.toString());
+            LOGGER.debug("Got {} at {} MB/s", result.toString(),
+                    digested.getThroughput());
 
             return result;
         } catch (final IOException e) {
             throw propagate(e);
         } finally {
             try {
-                ds.close();
+                is.close();
             } catch (IOException e) {
                 LOGGER.debug("Got error closing input stream: {}", e);
             }
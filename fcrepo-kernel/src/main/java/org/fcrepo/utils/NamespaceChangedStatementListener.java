@@ -18,6 +18,7 @@ package org.fcrepo.utils;
 
 import static com.google.common.base.Throwables.propagate;
 import static org.fcrepo.RdfLexicon.HAS_NAMESPACE_PREFIX;
+import static org.fcrepo.utils.NamespacePrefixCache.getNamespacePrefixCache;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import javax.jcr.NamespaceRegistry;
@@ -65,6 +66,7 @@ public class NamespaceChangedStatementListener extends StatementListener {
             LOGGER.debug("Registering namespace prefix {} for uri {}", prefix,
                     uri);
             namespaceRegistry.registerNamespace(prefix, uri);
+            getNamespacePrefixCache().invalidate();
         } catch (final RepositoryException e) {
             throw propagate(e);
         }
@@ -87,6 +89,7 @@ public class NamespaceChangedStatementListener extends StatementListener {
                 LOGGER.debug("De-registering namespace prefix {} for uri {}",
                         prefix, uri);
                 namespaceRegistry.unregisterNamespace(prefix);
+                getNamespacePrefixCache().invalidate();
             }
         } catch (final RepositoryException e) {
             throw propagate(e);
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+import static java.lang.Long.getLong;
+import static java.lang.System.currentTimeMillis;
+import static org.fcrepo.utils.JcrRdfTools.getRDFNamespaceForJcrNamespace;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jcr.NamespaceRegistry;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A snapshot of the RDF prefix mapping for the repository's registered
+ * namespaces, so that building a model doesn't go through the whole
+ * namespace registry every time.
+ *
+ * The snapshot is dropped whenever a namespace is registered or unregistered
+ * through the kernel, and otherwise kept for fcrepo.namespace.cache.ttl ms,
+ * to pick up namespaces registered some other way (e.g. on another member of
+ * a cluster).
+ */
+public class NamespacePrefixCache {
+
+    private static final Logger LOGGER =
+            getLogger(NamespacePrefixCache.class);
+
+    public static final long DEFAULT_TTL = 60 * 1000L;
+
+    private static final NamespacePrefixCache instance =
+            new NamespacePrefixCache(getLong("fcrepo.namespace.cache.ttl",
+                    DEFAULT_TTL));
+
+    private final long ttl;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicReference<Snapshot> snapshot =
+            new AtomicReference<>();
+
+    /**
+     * @param ttl how long (in ms) a snapshot stays fresh
+     */
+    public NamespacePrefixCache(final long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Get the shared namespace prefix cache
+     * @return
+     */
+    public static NamespacePrefixCache getNamespacePrefixCache() {
+        return instance;
+    }
+
+    /**
+     * Get the RDF prefix mapping for the session's repository, from the
+     * snapshot if it's still good
+     * @param session
+     * @return an immutable map of prefix to RDF namespace
+     * @throws RepositoryException
+     */
+    public Map<String, String> getPrefixes(final Session session)
+        throws RepositoryException {
+        final Snapshot current = snapshot.get();
+        if (current != null && current.isFreshFor(session.getRepository())) {
+            return current.prefixes;
+        }
+        return refresh(session);
+    }
+
+    /**
+     * Read the RDF prefix mapping for the session's repository from its
+     * namespace registry, and keep it as the snapshot
+     * @param session
+     * @return an immutable map of prefix to RDF namespace
+     * @throws RepositoryException
+     */
+    public Map<String, String> refresh(final Session session)
+        throws RepositoryException {
+        // a snapshot read across a change is already out of date
+        final long readGeneration = generation.get();
+        final Map<String, String> prefixes = readPrefixes(session);
+        snapshot.set(new Snapshot(session.getRepository(), prefixes,
+                readGeneration));
+        LOGGER.debug("Read {} namespace prefixes", prefixes.size());
+        return prefixes;
+    }
+
+    /**
+     * Drop the snapshot, because a namespace was just registered or
+     * unregistered
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot.set(null);
+    }
+
+    private static Map<String, String> readPrefixes(final Session session)
+        throws RepositoryException {
+        final NamespaceRegistry namespaceRegistry =
+                NamespaceTools.getNamespaceRegistry(session);
+        assert (namespaceRegistry != null);
+
+        final Map<String, String> prefixes = new HashMap<>();
+        for (final String prefix : namespaceRegistry.getPrefixes()) {
+            final String nsURI = namespaceRegistry.getURI(prefix);
+            if (nsURI != null && !nsURI.equals("") && !prefix.equals("xmlns")) {
+
+                if (prefix.equals("jcr")) {
+                    prefixes.put("fedora-internal",
+                            getRDFNamespaceForJcrNamespace(nsURI));
+                } else {
+                    prefixes.put(prefix, getRDFNamespaceForJcrNamespace(nsURI));
+                }
+            }
+        }
+        return ImmutableMap.copyOf(prefixes);
+    }
+
+    private class Snapshot {
+
+        private final Repository repository;
+
+        private final Map<String, String> prefixes;
+
+        private final long generation;
+
+        private final long created = currentTimeMillis();
+
+        private Snapshot(final Repository repository,
+                final Map<String, String> prefixes, final long generation) {
+            this.repository = repository;
+            this.prefixes = prefixes;
+            this.generation = generation;
+        }
+
+        private boolean isFreshFor(final Repository repository) {
+            return this.repository == repository &&
+                    generation == NamespacePrefixCache.this.generation.get() &&
+                    currentTimeMillis() - created < ttl;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static java.lang.Boolean.FALSE;
+import static java.lang.Integer.getInteger;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.modeshape.jcr.value.binary.BinaryStoreException;
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Repair damaged copies of a binary from a good one. The good copy is read
+ * once and teed to every damaged copy at the same time, and its digest is
+ * checked inline, so a repair costs one read plus one write per damaged
+ * copy. At most {@link #MAX_WRITERS} copies are written at once; beyond
+ * that, the damaged copies are repaired in batches, each of which reads the
+ * good copy again.
+ * <p>
+ * A damaged copy's store only sees the end of its stream once the good copy
+ * has been verified; if reading or verifying the good copy fails, every
+ * store's read fails too. That keeps stores that write to a temporary file
+ * and move it into place from committing anything, but a chunked store has
+ * already overwritten the chunks it was sent by then, so an abandoned
+ * repair may leave its copy partly overwritten. Such a copy is never
+ * reported as repaired, so it stays recorded as damaged.
+ */
+public class ReplicaRepairer {
+
+    private static final Logger LOGGER = getLogger(ReplicaRepairer.class);
+
+    /**
+     * The most damaged copies written at once, across all repairs
+     */
+    public static final int MAX_WRITERS = getInteger(
+            "fcrepo.fixity.repair.threads", 8);
+
+    /**
+     * Each damaged copy needs its own writer thread, or the tee would block
+     * on a copy nobody is reading yet, so a batch takes a slot per copy
+     * before submitting any of them; with as many slots as threads, a
+     * submitted writer never waits in the queue
+     */
+    private static final ExecutorService writers = newWriterPool();
+
+    private static final Semaphore writerSlots =
+            new Semaphore(MAX_WRITERS, true);
+
+    private final int bufferSize;
+
+    /**
+     * Repair through the default buffer size
+     */
+    public ReplicaRepairer() {
+        this(FixityEngine.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Repair through buffers of the given size
+     * @param bufferSize
+     */
+    public ReplicaRepairer(final int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Copy the content of the good entry over every damaged entry.
+     *
+     * @param good an entry that passed its fixity check
+     * @param damaged the entries to overwrite
+     * @param checksum the expected checksum
+     * @param size the expected size
+     * @return the damaged entries that were rewritten with content matching
+     *         the expected checksum and size
+     * @throws BinaryStoreException
+     */
+    public Collection<LowLevelCacheEntry> repair(final LowLevelCacheEntry good,
+            final Collection<LowLevelCacheEntry> damaged, final URI checksum,
+            final long size) throws BinaryStoreException {
+        final ImmutableSet.Builder<LowLevelCacheEntry> repaired =
+                ImmutableSet.builder();
+        for (final List<LowLevelCacheEntry> batch : Iterables.partition(
+                damaged, MAX_WRITERS)) {
+            final Collection<LowLevelCacheEntry> rewritten =
+                    repairBatch(good, batch, checksum, size);
+            if (rewritten == null) {
+                // the good copy didn't verify; reading it again won't help
+                break;
+            }
+            repaired.addAll(rewritten);
+        }
+        return repaired.build();
+    }
+
+    /**
+     * Tee one read of the good copy to a batch of no more than MAX_WRITERS
+     * damaged copies
+     *
+     * @return the copies rewritten, or null if the good copy didn't verify
+     */
+    private Collection<LowLevelCacheEntry> repairBatch(
+            final LowLevelCacheEntry good,
+            final List<LowLevelCacheEntry> damaged, final URI checksum,
+            final long size) throws BinaryStoreException {
+        try {
+            writerSlots.acquire(damaged.size());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BinaryStoreException(e);
+        }
+        try {
+            return teeToReplicas(good, damaged, checksum, size);
+        } finally {
+            writerSlots.release(damaged.size());
+        }
+    }
+
+    private Collection<LowLevelCacheEntry> teeToReplicas(
+            final LowLevelCacheEntry good,
+            final List<LowLevelCacheEntry> damaged, final URI checksum,
+            final long size) throws BinaryStoreException {
+        final String algorithm = ContentDigest.getAlgorithm(checksum);
+        final List<Replica> replicas = new ArrayList<>(damaged.size());
+
+        FixityEngine.DigestResult digested = null;
+        boolean verified = false;
+        try {
+            for (final LowLevelCacheEntry entry : damaged) {
+                replicas.add(new Replica(entry));
+            }
+
+            final InputStream in = good.getInputStream();
+            try {
+                digested =
+                        new FixityEngine(bufferSize, algorithm).digest(in,
+                                new TeeOutputStream(replicas));
+            } finally {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    LOGGER.debug("Got error closing input stream: {}", e);
+                }
+            }
+
+            final FixityResult copied =
+                    new FixityResult(good, digested.getByteCount(),
+                            ContentDigest.asURI(algorithm, digested
+                                    .getDigest(algorithm))).verify(checksum,
+                            size);
+            verified = copied.isSuccess();
+            if (!verified) {
+                LOGGER.error("Good copy {} changed while repairing from it: {}",
+                        good.getExternalIdentifier(), copied);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Could not read good copy {}: {}", good
+                    .getExternalIdentifier(), e);
+        } finally {
+            // the verdict has to be in before the pipes close, so that no
+            // store ever sees a clean end of stream for unverified content
+            for (final Replica replica : replicas) {
+                replica.finish(verified);
+            }
+        }
+
+        final ImmutableSet.Builder<LowLevelCacheEntry> repaired =
+                ImmutableSet.builder();
+        for (final Replica replica : replicas) {
+            if (replica.await() && verified) {
+                repaired.add(replica.entry);
+            }
+        }
+
+        if (!verified) {
+            return null;
+        }
+
+        LOGGER.debug("Repaired {} of {} copies from {} at {} MB/s", repaired
+                .build().size(), replicas.size(),
+                good.getExternalIdentifier(), digested.getThroughput());
+        return repaired.build();
+    }
+
+    private static ExecutorService newWriterPool() {
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(MAX_WRITERS, MAX_WRITERS, 60L, SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("fcrepo-fixity-repair-%d")
+                                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * A damaged copy being rewritten from a pipe on its own thread
+     */
+    private class Replica implements Callable<Void> {
+
+        private final LowLevelCacheEntry entry;
+
+        private final InputStream pipeIn;
+
+        private final PipedOutputStream pipeOut;
+
+        private final Future<Void> future;
+
+        private boolean failed = false;
+
+        /**
+         * Whether the good copy was read in full and matched its checksum;
+         * null until it's known
+         */
+        private volatile Boolean verified;
+
+        Replica(final LowLevelCacheEntry entry) throws BinaryStoreException {
+            this.entry = entry;
+            try {
+                pipeOut = new PipedOutputStream();
+                pipeIn =
+                        new VerifiedInputStream(new PipedInputStream(pipeOut,
+                                bufferSize));
+            } catch (final IOException e) {
+                throw new BinaryStoreException(e);
+            }
+            future = writers.submit(this);
+        }
+
+        @Override
+        public Void call() throws BinaryStoreException, IOException {
+            try {
+                entry.storeValue(pipeIn);
+                return null;
+            } finally {
+                // unblocks the tee if the store gave up early
+                pipeIn.close();
+            }
+        }
+
+        void write(final byte[] b, final int off, final int len) {
+            if (failed) {
+                return;
+            }
+            try {
+                pipeOut.write(b, off, len);
+            } catch (final IOException e) {
+                LOGGER.warn("Could not write repair to {}: {}", entry
+                        .getExternalIdentifier(), e);
+                failed = true;
+            }
+        }
+
+        /**
+         * Pass on the verdict on the good copy and close the pipe
+         */
+        void finish(final boolean verified) {
+            this.verified = verified;
+            try {
+                pipeOut.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Got error closing repair pipe: {}", e);
+            }
+        }
+
+        boolean await() {
+            try {
+                future.get();
+                return !failed;
+            } catch (final ExecutionException e) {
+                LOGGER.warn("Could not repair {}: {}", entry
+                        .getExternalIdentifier(), e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            }
+            return false;
+        }
+
+        /**
+         * Fails the store's read as soon as the good copy is known to be bad,
+         * and at the end of the stream unless the good copy was verified, so
+         * that the store aborts instead of committing
+         */
+        private class VerifiedInputStream extends FilterInputStream {
+
+            VerifiedInputStream(final InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                checkVerified(false);
+                final int b = super.read();
+                checkVerified(b == -1);
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+                checkVerified(false);
+                final int n = super.read(b, off, len);
+                checkVerified(n == -1);
+                return n;
+            }
+
+            private void checkVerified(final boolean atEnd) throws IOException {
+                final Boolean verdict = verified;
+                if (FALSE.equals(verdict) || (atEnd && verdict == null)) {
+                    throw new IOException("Could not verify good copy; " +
+                            "abandoning repair of " +
+                            entry.getExternalIdentifier());
+                }
+            }
+        }
+    }
+
+    /**
+     * Write every block to all the replicas that are still accepting data
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final List<Replica> replicas;
+
+        TeeOutputStream(final List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+
+        @Override
+        public void write(final int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            for (final Replica replica : replicas) {
+                replica.write(b, off, len);
+            }
+        }
+    }
+}
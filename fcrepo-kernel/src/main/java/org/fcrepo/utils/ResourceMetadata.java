@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import java.util.Date;
+
+import javax.jcr.RepositoryException;
+
+import org.fcrepo.Datastream;
+import org.fcrepo.FedoraResource;
+
+/**
+ * The properties of a resource needed to answer a conditional request
+ * (last modified and created dates, content digest, size and mime type),
+ * detached from the node they were read from
+ */
+public class ResourceMetadata {
+
+    private final Long lastModified;
+
+    private final Long created;
+
+    private final String digest;
+
+    private final long size;
+
+    private final String mimeType;
+
+    /**
+     * @param lastModified
+     * @param created
+     * @param digest the content digest, or null if there isn't one
+     * @param size the content size, or -1 if there isn't any content
+     * @param mimeType the content type, or null if there isn't any content
+     */
+    public ResourceMetadata(final Date lastModified, final Date created,
+            final String digest, final long size, final String mimeType) {
+        this.lastModified =
+                lastModified == null ? null : lastModified.getTime();
+        this.created = created == null ? null : created.getTime();
+        this.digest = digest;
+        this.size = size;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Read the dates of a resource
+     * @param resource
+     * @return
+     * @throws RepositoryException
+     */
+    public static ResourceMetadata of(final FedoraResource resource)
+        throws RepositoryException {
+        return new ResourceMetadata(resource.getLastModifiedDate(), resource
+                .getCreatedDate(), null, -1, null);
+    }
+
+    /**
+     * Read the dates and content properties of a datastream
+     * @param ds
+     * @return
+     * @throws RepositoryException
+     */
+    public static ResourceMetadata of(final Datastream ds)
+        throws RepositoryException {
+        return new ResourceMetadata(ds.getLastModifiedDate(), ds
+                .getCreatedDate(), ds.getContentDigest().toString(), ds
+                .getContentSize(), ds.getMimeType());
+    }
+
+    /**
+     * @return the last modified date, or null if it isn't known
+     */
+    public Date getLastModifiedDate() {
+        return lastModified == null ? null : new Date(lastModified);
+    }
+
+    /**
+     * @return the created date, or null if it isn't known
+     */
+    public Date getCreatedDate() {
+        return created == null ? null : new Date(created);
+    }
+
+    /**
+     * @return the content digest, or null if there isn't one
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the content size, or -1 if there isn't any content
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the content type, or null if there isn't any content
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static java.lang.Long.getLong;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Session;
+
+import org.fcrepo.TxSession;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded cache of the metadata of resources, keyed by path, so that a
+ * conditional request can be answered (e.g. with a 304) without loading the
+ * node. Each path may hold a few views of its resource, e.g. the resource
+ * itself, its content and the aggregate of its datastreams.
+ *
+ * Entries are kept current from observation events (see
+ * {@link org.fcrepo.observer.SimpleObserver}), so the cache is only used
+ * once something has promised to do that for a workspace, and never for
+ * sessions inside a transaction. A change to a node invalidates its path and
+ * every ancestor's, as soon as its event is delivered. Since events arrive
+ * asynchronously, whatever saves a change should also invalidate its path
+ * straight away, so that its own next request can't be answered from stale
+ * metadata; the events are the backstop for changes made elsewhere.
+ *
+ * The cache holds at most fcrepo.metadata.cache.size paths, each for at most
+ * fcrepo.metadata.cache.ttl ms (0 turns the cache off).
+ */
+public class ResourceMetadataCache {
+
+    private static final Logger LOGGER =
+            getLogger(ResourceMetadataCache.class);
+
+    public static final long DEFAULT_SIZE = 10000;
+
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+
+    /**
+     * The view of a resource itself
+     */
+    public static final String RESOURCE = "resource";
+
+    /**
+     * The view of a datastream's content, which has its own ETag and
+     * headers, so can't share the datastream's own entry
+     */
+    public static final String CONTENT = "content";
+
+    /**
+     * The view of the aggregate of all of an object's datastreams
+     */
+    public static final String DATASTREAMS = "datastreams";
+
+    private static final ResourceMetadataCache instance =
+            new ResourceMetadataCache(getLong("fcrepo.metadata.cache.size",
+                    DEFAULT_SIZE), getLong("fcrepo.metadata.cache.ttl",
+                    DEFAULT_TTL));
+
+    private final Cache<String, ConcurrentMap<String, ResourceMetadata>> cache;
+
+    private final boolean enabled;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile String workspace;
+
+    /**
+     * @param maximumSize the maximum number of paths to hold
+     * @param ttl how long (in ms) an entry may be kept
+     */
+    public ResourceMetadataCache(final long maximumSize, final long ttl) {
+        enabled = maximumSize > 0 && ttl > 0;
+        cache =
+                CacheBuilder.newBuilder().maximumSize(maximumSize)
+                        .expireAfterWrite(ttl, MILLISECONDS).build();
+    }
+
+    /**
+     * Get the shared resource metadata cache
+     * @return
+     */
+    public static ResourceMetadataCache getResourceMetadataCache() {
+        return instance;
+    }
+
+    /**
+     * Promise to invalidate entries for every change in the given workspace
+     * @param workspaceName
+     */
+    public void keepCurrentFor(final String workspaceName) {
+        LOGGER.debug("Keeping resource metadata current for workspace {}",
+                workspaceName);
+        workspace = workspaceName;
+    }
+
+    /**
+     * Whether entries can be trusted for requests made with this session
+     * @param session
+     * @return
+     */
+    public boolean isCurrentFor(final Session session) {
+        final String current = workspace;
+        return enabled && current != null &&
+                !(session instanceof TxSession) &&
+                current.equals(session.getWorkspace().getName());
+    }
+
+    /**
+     * Get the current generation of the cache, to pass to
+     * {@link #put(String, String, ResourceMetadata, long)}. Take it before
+     * reading the metadata to be cached.
+     * @return
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Get the cached metadata of a view of a resource
+     * @param path
+     * @param view
+     * @return the metadata, or null if it isn't cached
+     */
+    public ResourceMetadata get(final String path, final String view) {
+        if (!enabled) {
+            return null;
+        }
+        final ConcurrentMap<String, ResourceMetadata> views =
+                cache.getIfPresent(path);
+        return views == null ? null : views.get(view);
+    }
+
+    /**
+     * Remember the metadata of a view of a resource, unless anything was
+     * invalidated since the given generation (in which case the metadata
+     * may already be stale)
+     * @param path
+     * @param view
+     * @param metadata
+     * @param readAt the generation taken before the metadata was read
+     */
+    public void put(final String path, final String view,
+            final ResourceMetadata metadata, final long readAt) {
+        if (!enabled) {
+            return;
+        }
+        final ConcurrentMap<String, ResourceMetadata> created =
+                new ConcurrentHashMap<>(4);
+        final ConcurrentMap<String, ResourceMetadata> existing =
+                cache.asMap().putIfAbsent(path, created);
+        (existing == null ? created : existing).put(view, metadata);
+
+        if (generation.get() != readAt) {
+            LOGGER.debug("Not caching metadata for {}: it may be stale", path);
+            cache.invalidate(path);
+        }
+    }
+
+    /**
+     * Forget the metadata of a resource and of all of its ancestors, e.g.
+     * because it changed
+     * @param path
+     */
+    public void invalidate(final String path) {
+        generation.incrementAndGet();
+        String current = path;
+        while (current != null && !current.isEmpty()) {
+            cache.invalidate(current);
+            final int slash = current.lastIndexOf('/');
+            if (slash > 0) {
+                current = current.substring(0, slash);
+            } else if (slash == 0 && current.length() > 1) {
+                current = "/";
+            } else {
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Forget the metadata of a resource, of all of its ancestors and of all
+     * of its descendants, e.g. because it was removed
+     * @param path
+     */
+    public void invalidateTree(final String path) {
+        invalidate(path);
+        final String prefix = path.endsWith("/") ? path : path + "/";
+        for (final String cached : cache.asMap().keySet()) {
+            if (cached.startsWith(prefix)) {
+                cache.invalidate(cached);
+            }
+        }
+    }
+
+    /**
+     * Forget all cached metadata
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
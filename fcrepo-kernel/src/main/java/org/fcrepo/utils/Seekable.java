@@ -0,0 +1,34 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import java.io.IOException;
+
+/**
+ * A stream that can jump to a position without reading the bytes before it
+ */
+public interface Seekable {
+
+    /**
+     * Move to the given position, so the next read returns the byte at that
+     * offset from the start of the stream. Seeking past the end leaves the
+     * stream at its end.
+     *
+     * @param position
+     * @throws IOException
+     */
+    void seek(long position) throws IOException;
+}
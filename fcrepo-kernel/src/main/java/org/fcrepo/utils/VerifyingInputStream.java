@@ -0,0 +1,174 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static com.google.common.base.Throwables.propagate;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.slf4j.Logger;
+
+/**
+ * An InputStream wrapper that checks content against an expected digest (and
+ * size, if it's known) while it's read. The read that reaches the end of
+ * content that doesn't match fails, as does the first read past the expected
+ * size, so whatever is consuming the stream (e.g. a binary store) never
+ * commits it.
+ */
+public class VerifyingInputStream extends FilterInputStream {
+
+    private static final Logger LOGGER =
+            getLogger(VerifyingInputStream.class);
+
+    private final URI expected;
+
+    private final String algorithm;
+
+    private final MessageDigest digest;
+
+    private final long expectedSize;
+
+    private long count;
+
+    private boolean finished;
+
+    private volatile String mismatch;
+
+    /**
+     * @param in
+     * @param expected the expected digest, e.g. urn:sha1:...
+     * @param expectedSize the expected size, or -1 if it isn't known
+     */
+    public VerifyingInputStream(final InputStream in, final URI expected,
+            final long expectedSize) {
+        super(in);
+        this.expected = expected;
+        final String declared = ContentDigest.getAlgorithm(expected);
+        this.algorithm = declared == null ? "SHA-1" : declared;
+        try {
+            this.digest = MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw propagate(e);
+        }
+        this.expectedSize = expectedSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b == -1) {
+            finish();
+        } else {
+            digest.update((byte) b);
+            counted(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+        final int read = super.read(b, off, len);
+        if (read == -1) {
+            finish();
+        } else {
+            digest.update(b, off, read);
+            counted(read);
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes still have to be digested, so read them
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read =
+                    read(buffer, 0, (int) Math.min(buffer.length, n -
+                            skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        // marking would let bytes be digested twice
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return why the content failed verification, or null if it hasn't
+     *         (yet)
+     */
+    public String getMismatch() {
+        return mismatch;
+    }
+
+    private void counted(final int read) throws IOException {
+        count += read;
+        if (expectedSize >= 0 && count > expectedSize) {
+            fail("Expected " + expectedSize + " bytes, but got at least " +
+                    count);
+        }
+    }
+
+    private void finish() throws IOException {
+        if (finished) {
+            if (mismatch != null) {
+                throw new IOException(mismatch);
+            }
+            return;
+        }
+        finished = true;
+        if (expectedSize >= 0 && count != expectedSize) {
+            fail("Expected " + expectedSize + " bytes, but got " + count);
+        }
+        final URI computed = ContentDigest.asURI(algorithm, digest.digest());
+        if (!expected.equals(computed)) {
+            fail("Checksum Mismatch of " + computed + " and " + expected);
+        }
+        LOGGER.debug("Verified {} bytes against {}", count, expected);
+    }
+
+    private void fail(final String reason) throws IOException {
+        LOGGER.debug("Failed verification: {}", reason);
+        finished = true;
+        mismatch = reason;
+        throw new IOException(reason);
+    }
+}
@@ -16,14 +16,19 @@
 package org.fcrepo.utils.impl;
 
 import static java.util.Objects.hash;
+import static org.fcrepo.utils.infinispan.ChunkDigests.storeDigest;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.poi.util.IOUtils;
+import org.fcrepo.utils.FixityResult;
 import org.fcrepo.utils.LowLevelCacheEntry;
 import org.fcrepo.utils.infinispan.StoreChunkInputStream;
 import org.fcrepo.utils.infinispan.StoreChunkOutputStream;
@@ -35,6 +40,8 @@ import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
 import org.slf4j.Logger;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * An entry in a specific BinaryStore
  */
@@ -45,6 +52,8 @@ public class CacheStoreEntry extends LowLevelCacheEntry {
     private final CacheStore store;
     private final String cacheName;
 
+    private volatile Set<Integer> damagedChunks;
+
     /**
      * An entry in an infinispan CacheStore
      */
@@ -88,11 +97,75 @@ public class CacheStoreEntry extends LowLevelCacheEntry {
         LOGGER.info("Doing a low-level write to store {} for key {}",
                     getExternalIdentifier(), key);
 
+        // if the last fixity check pinned the damage down to a few chunks,
+        // only those need rewriting
+        final Set<Integer> chunksToStore = damagedChunks;
+        if (chunksToStore != null) {
+            LOGGER.info("Rewriting chunks {} of {}", chunksToStore, key);
+        }
+
         final OutputStream outputStream =
                 new StoreChunkOutputStream(store, key.toString() +
-                                           DATA_SUFFIX);
+                                           DATA_SUFFIX, chunksToStore);
         IOUtils.copy(stream, outputStream);
         outputStream.close();
+        damagedChunks = null;
+    }
+
+    /**
+     * Check the entry's content against the checksum and size, and each of
+     * its chunks against their stored digests. If the size is right and
+     * every chunk has a digest, a following storeValue() only rewrites the
+     * chunks that didn't match. If the content is good, digests are recorded
+     * for any chunks that lacked them.
+     *
+     * @param checksum
+     * @param size
+     * @return
+     * @throws BinaryStoreException
+     */
+    @Override
+    public FixityResult checkFixity(final URI checksum, final long size)
+        throws BinaryStoreException {
+        final StoreChunkInputStream in =
+                new StoreChunkInputStream(store, key.toString() + DATA_SUFFIX);
+        in.setVerifyChunks(true);
+
+        final FixityResult result = checkFixity(in, checksum, size);
+
+        final Map<Integer, byte[]> unrecorded = in.getUnrecordedDigests();
+        if (result.isSuccess()) {
+            damagedChunks = null;
+            recordChunkDigests(unrecorded);
+        } else if (unrecorded.isEmpty() && result.matches(size) &&
+                !in.getDamagedChunks().isEmpty()) {
+            damagedChunks = ImmutableSet.copyOf(in.getDamagedChunks());
+            LOGGER.warn("Chunks {} of {} in {} are damaged", damagedChunks,
+                    key, getExternalIdentifier());
+        } else {
+            damagedChunks = null;
+        }
+        return result;
+    }
+
+    /**
+     * Get the chunks found damaged by the last fixity check, if the damage
+     * could be pinned down to individual chunks
+     * @return the chunk indexes, or null
+     */
+    public Set<Integer> getDamagedChunks() {
+        return damagedChunks;
+    }
+
+    private void recordChunkDigests(final Map<Integer, byte[]> digests) {
+        try {
+            for (final Map.Entry<Integer, byte[]> digest : digests.entrySet()) {
+                storeDigest(store, key.toString() + DATA_SUFFIX, digest
+                        .getKey(), digest.getValue());
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Could not record chunk digests for {}: {}", key, e);
+        }
     }
 
     /**
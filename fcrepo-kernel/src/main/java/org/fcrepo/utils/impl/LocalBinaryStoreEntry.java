@@ -18,6 +18,7 @@ package org.fcrepo.utils.impl;
 import static java.util.Objects.hash;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -59,6 +60,38 @@ public class LocalBinaryStoreEntry extends LowLevelCacheEntry {
         return store.getInputStream(key);
     }
 
+    /**
+     * Get the plain file holding this entry's content, if the store is a
+     * FileSystemBinaryStore
+     * @return the file, or null if there isn't one
+     */
+    public File getFile() {
+        if (!(store instanceof FileSystemBinaryStore)) {
+            return null;
+        }
+        final File file = fileFor((FileSystemBinaryStore) store, key);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Where a FileSystemBinaryStore keeps a binary: under its directory, in
+     * a file named by the key, three directories down, one for each of the
+     * key's first three pairs of hex digits (ab/cd/ef/abcdef...). ModeShape
+     * doesn't expose this, so it's followed by hand here and nowhere else;
+     * LocalBinaryStoreEntryTest checks it against a real store.
+     *
+     * @param store
+     * @param key
+     * @return the file the binary would be in; it may not exist
+     */
+    static File fileFor(final FileSystemBinaryStore store,
+            final BinaryKey key) {
+        final String sha1 = key.toString();
+        return new File(new File(new File(new File(store.getDirectory(),
+                sha1.substring(0, 2)), sha1.substring(2, 4)), sha1.substring(
+                4, 6)), sha1);
+    }
+
     /**
      * Send a raw input stream to the underlying store for this entry; used for
      * fixing e.g. fixity failures.
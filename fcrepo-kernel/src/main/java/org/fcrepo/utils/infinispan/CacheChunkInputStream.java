@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils.infinispan;
+
+import java.io.IOException;
+
+import org.infinispan.Cache;
+import org.infinispan.CacheException;
+
+/**
+ * A {@link StoreChunkInputStream} that reads the chunks through an
+ * Infinispan Cache rather than straight from this node's CacheStore, so it
+ * sees whatever the cache does: entries still in memory, and entries held
+ * by other nodes of a distributed cache. That makes it fit to send a
+ * binary's content to clients, with seeking and read-ahead.
+ *
+ * Chunks read this way can't be checked against their stored digests,
+ * which are only kept in the CacheStores.
+ */
+public class CacheChunkInputStream extends StoreChunkInputStream {
+
+    private final Cache<?, ?> blobCache;
+
+    /**
+     * Get the chunk input stream for the given key in the given Infinispan
+     * Cache
+     * @param blobCache
+     * @param key
+     */
+    public CacheChunkInputStream(final Cache<?, ?> blobCache,
+            final String key) {
+        super(null, key);
+        this.blobCache = blobCache;
+    }
+
+    @Override
+    protected byte[] loadChunk(final String chunkKey) throws IOException {
+        try {
+            return (byte[]) blobCache.get(chunkKey);
+        } catch (final CacheException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void setVerifyChunks(final boolean verifyChunks) {
+        if (verifyChunks) {
+            throw new UnsupportedOperationException(
+                    "Chunks read through a cache can't be verified");
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils.infinispan;
+
+import static com.google.common.base.Throwables.propagate;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.infinispan.Cache;
+import org.infinispan.container.InternalEntryFactory;
+import org.infinispan.container.InternalEntryFactoryImpl;
+import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.metadata.EmbeddedMetadata;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.slf4j.Logger;
+
+/**
+ * Helpers for the per-chunk digests kept next to each chunk of a binary in
+ * an Infinispan CacheStore. The digest of chunk "prefix-N" is stored under
+ * "prefix-N-sha1", which ModeShape's own chunk readers never look at, and is
+ * removed along with the chunk (see {@link #removeWithChunks}).
+ */
+public abstract class ChunkDigests {
+
+    public static final String CHUNK_DIGEST_ALGORITHM = "SHA-1";
+
+    public static final String CHUNK_DIGEST_SUFFIX = "-sha1";
+
+    private static final Logger LOGGER = getLogger(ChunkDigests.class);
+
+    private static final InternalEntryFactory entryFactory =
+        new InternalEntryFactoryImpl();
+
+    /**
+     * Get the key of the chunk with the given index
+     * @param keyPrefix
+     * @param index
+     * @return
+     */
+    public static String chunkKey(final String keyPrefix, final int index) {
+        return keyPrefix + "-" + index;
+    }
+
+    /**
+     * Get the key of the digest of the chunk with the given index
+     * @param keyPrefix
+     * @param index
+     * @return
+     */
+    public static String digestKey(final String keyPrefix, final int index) {
+        return chunkKey(keyPrefix, index) + CHUNK_DIGEST_SUFFIX;
+    }
+
+    /**
+     * Is this the key of a chunk (rather than, e.g., of a chunk's digest)?
+     * @param key
+     * @return
+     */
+    public static boolean isChunkKey(final Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        final String k = (String) key;
+        final int dash = k.lastIndexOf('-');
+        if (dash < 0 || dash == k.length() - 1) {
+            return false;
+        }
+        for (int i = dash + 1; i < k.length(); i++) {
+            if (!Character.isDigit(k.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the digest of each chunk removed from the cache (e.g. when
+     * ModeShape collects an unused binary) from the given store, which is
+     * where the digests were kept. Registering more than once for a cache
+     * has no further effect.
+     * @param cache
+     * @param store the cache's store
+     */
+    public static synchronized void removeWithChunks(final Cache<?, ?> cache,
+            final CacheStore store) {
+        for (final Object listener : cache.getListeners()) {
+            if (listener instanceof ChunkRemovalListener) {
+                return;
+            }
+        }
+        LOGGER.debug("Removing chunk digests along with chunks of {}",
+                cache.getName());
+        cache.addListener(new ChunkRemovalListener(store));
+    }
+
+    /**
+     * Compute the digest of a chunk
+     * @param chunk
+     * @return
+     */
+    public static byte[] digest(final byte[] chunk) {
+        try {
+            return MessageDigest.getInstance(CHUNK_DIGEST_ALGORITHM).digest(
+                    chunk);
+        } catch (final NoSuchAlgorithmException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Load the stored digest of a chunk
+     * @param store
+     * @param keyPrefix
+     * @param index
+     * @return the digest, or null if none was stored
+     * @throws IOException
+     */
+    public static byte[] loadDigest(final CacheStore store,
+            final String keyPrefix, final int index) throws IOException {
+        try {
+            final CacheEntry entry = store.load(digestKey(keyPrefix, index));
+            return entry == null ? null : (byte[]) entry.getValue();
+        } catch (final CacheLoaderException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Store the digest of a chunk
+     * @param store
+     * @param keyPrefix
+     * @param index
+     * @param digest
+     * @throws IOException
+     */
+    public static void storeDigest(final CacheStore store,
+            final String keyPrefix, final int index, final byte[] digest)
+        throws IOException {
+        try {
+            store.store(entryFactory.create(digestKey(keyPrefix, index),
+                    digest, new EmbeddedMetadata.Builder().build()));
+        } catch (final CacheLoaderException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Removes a chunk's digest once the chunk itself is gone
+     */
+    @Listener(sync = false)
+    public static class ChunkRemovalListener {
+
+        private final CacheStore store;
+
+        ChunkRemovalListener(final CacheStore store) {
+            this.store = store;
+        }
+
+        /**
+         * Remove the digest of a removed chunk
+         * @param event
+         */
+        @CacheEntryRemoved
+        public void chunkRemoved(
+                final CacheEntryRemovedEvent<Object, Object> event) {
+            if (event.isPre() || !isChunkKey(event.getKey())) {
+                return;
+            }
+            final String key = event.getKey() + CHUNK_DIGEST_SUFFIX;
+            try {
+                store.remove(key);
+            } catch (final CacheLoaderException e) {
+                LOGGER.warn("Could not remove chunk digest {}: {}", key, e);
+            }
+        }
+    }
+}
@@ -39,22 +39,67 @@
 
 package org.fcrepo.utils.infinispan;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.utils.infinispan.ChunkDigests.chunkKey;
+import static org.fcrepo.utils.infinispan.ChunkDigests.digest;
+import static org.fcrepo.utils.infinispan.ChunkDigests.loadDigest;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.infinispan.container.entries.CacheEntry;
 import org.infinispan.loaders.CacheLoaderException;
 import org.infinispan.loaders.CacheStore;
+import org.fcrepo.utils.Seekable;
 import org.modeshape.common.logging.Logger;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 
 /**
  * Merges chunks from cache and provides InputStream-feeling.
  *
+ * Every chunk but the last is the same size, so {@link #seek(long)} can go
+ * straight to the chunk holding a position without loading the ones before
+ * it, and so can {@link #skip(long)} when it would pass over whole chunks.
+ *
+ * The next few chunks (fcrepo.chunk.readahead, 2 by default) are loaded in
+ * the background while the current one is read, so a sequential read
+ * doesn't stall on every chunk boundary. At most that many chunks are held
+ * per stream beyond the current one. The loads for every stream share a
+ * fixed number of threads (fcrepo.chunk.readahead.threads, 16 by default);
+ * when they're all busy, loads wait their turn.
+ *
+ * If chunk verification is turned on, each chunk read is checked against
+ * its stored digest (see {@link ChunkDigests}); chunks that don't match are
+ * reported by {@link #getDamagedChunks()}, and chunks with no stored digest
+ * by {@link #getUnrecordedDigests()}.
+ *
  * @author Chris Beer
  * @date Mar 11, 2013
  */
-public class StoreChunkInputStream extends InputStream {
+public class StoreChunkInputStream extends InputStream implements Seekable {
+
+    public static final int DEFAULT_READ_AHEAD = Integer.getInteger(
+            "fcrepo.chunk.readahead", 2);
+
+    public static final int DEFAULT_READ_AHEAD_THREADS = Integer.getInteger(
+            "fcrepo.chunk.readahead.threads", 16);
+
+    private static final ExecutorService loaders = loaders();
 
     private final Logger logger;
 
@@ -62,21 +107,58 @@ public class StoreChunkInputStream extends InputStream {
 
     private final String key;
 
+    private final int readAhead;
+
     protected int indexInBuffer;
 
     protected byte[] buffer;
 
     private int chunkNumber;
 
+    /**
+     * The size of every chunk but the last, once we've seen the first one
+     */
+    private int chunkSize = -1;
+
+    /**
+     * The index of the next chunk to schedule a load for
+     */
+    private int loadNumber;
+
+    /**
+     * Loads of chunks chunkNumber .. loadNumber - 1, in order
+     */
+    private final Deque<Future<LoadedChunk>> loading = new ArrayDeque<>();
+
+    private boolean verifyChunks;
+
+    private final Set<Integer> damagedChunks = new TreeSet<>();
+
+    private final Map<Integer, byte[]> unrecordedDigests = new HashMap<>();
+
     /**
      * Get the chunk input stream for the given key in the given Infinispan CacheStore
      * @param blobCache
      * @param key
      */
     public StoreChunkInputStream(final CacheStore blobCache, final String key) {
+        this(blobCache, key, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * Get the chunk input stream for the given key in the given Infinispan
+     * CacheStore, loading up to readAhead chunks ahead of the reader
+     * @param blobCache
+     * @param key
+     * @param readAhead how many chunks to load in the background; 0 loads
+     *        each chunk only when it's needed
+     */
+    public StoreChunkInputStream(final CacheStore blobCache, final String key,
+            final int readAhead) {
         logger = Logger.getLogger(getClass());
         this.blobCache = blobCache;
         this.key = key;
+        this.readAhead = Math.max(0, readAhead);
     }
 
     @Override
@@ -129,11 +211,34 @@ public class StoreChunkInputStream extends InputStream {
         }
     }
 
+    private static ExecutorService loaders() {
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(DEFAULT_READ_AHEAD_THREADS,
+                        DEFAULT_READ_AHEAD_THREADS, 60L, SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("fcrepo-chunk-readahead-%d")
+                                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     @Override
     public final long skip(long n) throws IOException {
         if (n <= 0 || indexInBuffer == -1) {
             return 0;
         }
+        if (buffer == null && chunkSize > 0 && n >= chunkSize) {
+            // the next chunk would be skipped whole, so go straight to the
+            // one holding the target, without loading any in between
+            final long from = (long) chunkNumber * chunkSize;
+            seek(from + n);
+            if (indexInBuffer == -1) {
+                return 0;
+            }
+            return (long) (chunkNumber - 1) * chunkSize + indexInBuffer -
+                    from;
+        }
         if (buffer == null) {
             fillBuffer();
             return skip(n);
@@ -151,6 +256,55 @@ public class StoreChunkInputStream extends InputStream {
         }
     }
 
+    @Override
+    public void seek(final long position) throws IOException {
+        if (position < 0) {
+            throw new IOException("Can't seek to negative position " +
+                    position);
+        }
+        if (chunkSize < 0) {
+            final byte[] first = load(0, false).chunk;
+            if (first == null) {
+                seekToEnd();
+                return;
+            }
+            chunkSize = first.length;
+            if (position < chunkSize && !verifyChunks) {
+                // it's the chunk we just loaded for its size
+                cancelLoads();
+                chunkNumber = 1;
+                loadNumber = 1;
+                buffer = first;
+                indexInBuffer = (int) position;
+                return;
+            }
+        }
+
+        final long index = chunkSize == 0 ? 0 : position / chunkSize;
+        if (index > Integer.MAX_VALUE) {
+            seekToEnd();
+            return;
+        }
+
+        logger.debug("Seeking to {0} in chunk {1}", position, chunkKey(key,
+                (int) index));
+        cancelLoads();
+        chunkNumber = (int) index;
+        loadNumber = chunkNumber;
+        fillBuffer();
+        if (indexInBuffer != -1) {
+            indexInBuffer =
+                    (int) Math.min(position - index * chunkSize,
+                            buffer.length);
+        }
+    }
+
+    private void seekToEnd() {
+        cancelLoads();
+        buffer = new byte[0];
+        indexInBuffer = -1;
+    }
+
     private void fillBuffer() throws IOException {
 
         buffer = nextChunk();
@@ -163,20 +317,158 @@ public class StoreChunkInputStream extends InputStream {
     }
 
     protected byte[] nextChunk() throws IOException {
-        final String chunkKey = key + "-" + chunkNumber++;
+        final int index = chunkNumber++;
+
+        final LoadedChunk loaded;
+        if (readAhead == 0) {
+            loadNumber = chunkNumber;
+            loaded = load(index, verifyChunks);
+        } else {
+            // keep the current chunk's load and readAhead more in flight
+            while (loadNumber <= index + readAhead) {
+                final int toLoad = loadNumber++;
+                final boolean verify = verifyChunks;
+                loading.add(loaders.submit(new Callable<LoadedChunk>() {
+
+                    @Override
+                    public LoadedChunk call() throws IOException {
+                        return load(toLoad, verify);
+                    }
+                }));
+            }
+            loaded = await(loading.poll());
+        }
+
+        if (loaded.chunk == null) {
+            logger.trace("Unable to read chunk {0}", chunkKey(key, index));
+            // past the end; nobody wants the rest
+            cancelLoads();
+            return null;
+        }
+
+        if (index == 0) {
+            chunkSize = loaded.chunk.length;
+        }
+        if (loaded.verified) {
+            verifyChunk(index, loaded.chunk, loaded.digest);
+        }
+        return loaded.chunk;
+    }
+
+    /**
+     * Load a chunk, and its stored digest if it'll be verified
+     */
+    private LoadedChunk load(final int index, final boolean verify)
+        throws IOException {
+        final String chunkKey = chunkKey(key, index);
         logger.debug("Read chunk {0} from cache {1}", chunkKey, blobCache);
 
+        final byte[] chunk = loadChunk(chunkKey);
+        if (chunk == null) {
+            return new LoadedChunk(null, false, null);
+        }
+        return new LoadedChunk(chunk, verify, verify ? loadDigest(blobCache,
+                key, index) : null);
+    }
+
+    /**
+     * Get the content of a chunk
+     * @param chunkKey
+     * @return the chunk, or null if there's no such chunk
+     * @throws IOException
+     */
+    protected byte[] loadChunk(final String chunkKey) throws IOException {
         try {
             final CacheEntry cacheEntry = blobCache.load(chunkKey);
+            return cacheEntry == null ? null : (byte[]) cacheEntry.getValue();
+        } catch (final CacheLoaderException e) {
+            throw new IOException(e);
+        }
+    }
 
-            if (cacheEntry == null) {
-                logger.trace("Unable to read chunk {0}", chunkKey);
-                return null;
+    private static LoadedChunk await(final Future<LoadedChunk> future)
+        throws IOException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
-
-            return (byte[]) cacheEntry.getValue();
-        } catch (final CacheLoaderException e) {
+            throw new IOException(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
             throw new IOException(e);
         }
     }
+
+    private void cancelLoads() {
+        for (final Future<LoadedChunk> future : loading) {
+            future.cancel(false);
+        }
+        loading.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelLoads();
+        super.close();
+    }
+
+    private void verifyChunk(final int index, final byte[] chunk,
+            final byte[] stored) {
+        final byte[] computed = digest(chunk);
+        if (stored == null) {
+            unrecordedDigests.put(index, computed);
+        } else if (!Arrays.equals(stored, computed)) {
+            logger.debug("Chunk {0} doesn't match its digest",
+                    chunkKey(key, index));
+            damagedChunks.add(index);
+        }
+    }
+
+    /**
+     * Check each chunk read against its stored digest
+     * @param verifyChunks
+     */
+    public void setVerifyChunks(final boolean verifyChunks) {
+        this.verifyChunks = verifyChunks;
+    }
+
+    /**
+     * Get the indexes of the chunks read so far that didn't match their
+     * stored digests
+     * @return
+     */
+    public Set<Integer> getDamagedChunks() {
+        return damagedChunks;
+    }
+
+    /**
+     * Get the digests computed for chunks read so far that had no stored
+     * digest, keyed by chunk index
+     * @return
+     */
+    public Map<Integer, byte[]> getUnrecordedDigests() {
+        return unrecordedDigests;
+    }
+
+    /**
+     * A chunk, with its stored digest if it was loaded for verification
+     */
+    private static class LoadedChunk {
+
+        final byte[] chunk;
+
+        final boolean verified;
+
+        final byte[] digest;
+
+        LoadedChunk(final byte[] chunk, final boolean verified,
+                final byte[] digest) {
+            this.chunk = chunk;
+            this.verified = verified;
+            this.digest = digest;
+        }
+    }
 }
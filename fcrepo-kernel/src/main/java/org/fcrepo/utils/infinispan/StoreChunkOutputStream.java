@@ -15,9 +15,23 @@
  */
 package org.fcrepo.utils.infinispan;
 
-import java.io.ByteArrayOutputStream;
+import static java.util.Arrays.copyOf;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.utils.infinispan.ChunkDigests.chunkKey;
+import static org.fcrepo.utils.infinispan.ChunkDigests.digest;
+import static org.fcrepo.utils.infinispan.ChunkDigests.storeDigest;
+
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.infinispan.container.InternalEntryFactory;
 import org.infinispan.container.InternalEntryFactoryImpl;
@@ -27,10 +41,27 @@ import org.infinispan.loaders.CacheStore;
 import org.infinispan.metadata.EmbeddedMetadata;
 import org.modeshape.common.logging.Logger;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * A near-copy of a Modeshape class (of the same name, but is
  * unfortunately hidden from us) that takes a single OutputStream
- * and chunks it into 1MB chunks for Infinispan
+ * and chunks it into fixed-size (1MB by default) chunks for Infinispan.
+ * A digest of each chunk is stored alongside it (see {@link ChunkDigests}).
+ *
+ * Each chunk is filled in a buffer of exactly the chunk size, which is
+ * handed to the store as is, and stored in the background while the next
+ * one fills; at most fcrepo.chunk.inflight (2 by default) stores are
+ * outstanding per stream, and fcrepo.chunk.writer.threads (16 by default)
+ * across all streams. Existing chunks are only looked up (to keep their
+ * metadata) when we're overwriting a binary.
+ *
+ * ModeShape records the chunk size in each binary's metadata, so an
+ * overwrite reuses the chunk size the binary was written with (that of its
+ * first chunk) rather than fcrepo.chunk.size, and a partial rewrite of a
+ * binary whose chunk size can't be told is refused. fcrepo.chunk.size is
+ * only used for binaries that aren't in the store at all, and must match
+ * the chunk size of the repository's binary storage.
  *
  * @author Chris Beer
  * @date Mar 14, 2013
@@ -39,19 +70,50 @@ public class StoreChunkOutputStream extends OutputStream {
 
     protected final Logger logger;
 
-    // 1 MB
-    public static final int CHUNKSIZE = 1024 * 1024 * 1;
+    // 1 MB, as for ModeShape's InfinispanBinaryStore
+    public static final int CHUNKSIZE = Integer.getInteger(
+            "fcrepo.chunk.size", 1024 * 1024 * 1);
+
+    public static final int DEFAULT_IN_FLIGHT = Integer.getInteger(
+            "fcrepo.chunk.inflight", 2);
+
+    public static final int DEFAULT_WRITER_THREADS = Integer.getInteger(
+            "fcrepo.chunk.writer.threads", 16);
+
+    // chunk stores don't wait on each other, so extra ones can just queue
+    private static final ExecutorService writers = newWriterPool();
 
     protected final CacheStore blobCache;
 
     protected final String keyPrefix;
 
-    private final ByteArrayOutputStream chunkBuffer;
+    private int chunkSize = -1;
+
+    /**
+     * The first chunk as it was before we started, looked up along with
+     * the chunk size
+     */
+    private InternalCacheEntry firstChunk;
+
+    private byte[] chunkBuffer;
+
+    private int chunkLength;
 
     private boolean closed;
 
     protected int chunkIndex;
 
+    private final Set<Integer> chunksToStore;
+
+    private final int inFlight;
+
+    private final Deque<Future<Void>> storing = new ArrayDeque<>();
+
+    /**
+     * Whether the first chunk already existed, i.e. we're overwriting
+     */
+    private boolean overwriting;
+
     private final InternalEntryFactory entryFactory =
         new InternalEntryFactoryImpl();
 
@@ -63,10 +125,44 @@ public class StoreChunkOutputStream extends OutputStream {
      */
     public StoreChunkOutputStream(final CacheStore blobCache,
                                   final String keyPrefix) {
+        this(blobCache, keyPrefix, null);
+    }
+
+    /**
+     * Prepare to store only some of the chunks of the OutputStream in the
+     * given CacheStore with the given prefix, e.g. to rewrite just the
+     * damaged chunks of a binary. The other chunks are read and discarded.
+     * @param blobCache
+     * @param keyPrefix
+     * @param chunksToStore the indexes of the chunks to store, or null for
+     *        all of them
+     */
+    public StoreChunkOutputStream(final CacheStore blobCache,
+                                  final String keyPrefix,
+                                  final Set<Integer> chunksToStore) {
+        this(blobCache, keyPrefix, chunksToStore, DEFAULT_IN_FLIGHT);
+    }
+
+    /**
+     * Prepare to store (some of) the chunks of the OutputStream in the given
+     * CacheStore with the given prefix, with up to inFlight chunk stores
+     * running in the background
+     * @param blobCache
+     * @param keyPrefix
+     * @param chunksToStore the indexes of the chunks to store, or null for
+     *        all of them
+     * @param inFlight how many chunk stores may be outstanding; 0 stores
+     *        each chunk before accepting more data
+     */
+    public StoreChunkOutputStream(final CacheStore blobCache,
+                                  final String keyPrefix,
+                                  final Set<Integer> chunksToStore,
+                                  final int inFlight) {
         logger = Logger.getLogger(getClass());
         this.blobCache = blobCache;
         this.keyPrefix = keyPrefix;
-        chunkBuffer = new ByteArrayOutputStream(1024);
+        this.chunksToStore = chunksToStore;
+        this.inFlight = Math.max(0, inFlight);
     }
 
     /**
@@ -76,64 +172,200 @@ public class StoreChunkOutputStream extends OutputStream {
         return chunkIndex;
     }
 
+    /**
+     * @return the size of the chunks being written
+     * @throws IOException if the binary's existing chunk size can't be told
+     */
+    public int getChunkSize() throws IOException {
+        if (chunkSize < 0) {
+            chunkSize = lookupChunkSize();
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Get the chunk size the binary was written with: exactly the size of
+     * its first chunk if it has more than one, or at least that if it has
+     * just the one
+     */
+    private int lookupChunkSize() throws IOException {
+        try {
+            firstChunk = blobCache.load(chunkKey(keyPrefix, 0));
+            if (firstChunk == null ||
+                    !(firstChunk.getValue() instanceof byte[])) {
+                if (chunksToStore != null) {
+                    throw new IOException("Refusing to rewrite chunks " +
+                            chunksToStore + " of " + keyPrefix +
+                            " without its first chunk to tell the " +
+                            "chunk size");
+                }
+                return CHUNKSIZE;
+            }
+            final int firstLength = ((byte[]) firstChunk.getValue()).length;
+            if (!blobCache.containsKey(chunkKey(keyPrefix, 1))) {
+                return Math.max(firstLength, CHUNKSIZE);
+            }
+            if (firstLength != CHUNKSIZE) {
+                logger.debug("{0} was written in chunks of {1} bytes, not "
+                        + "fcrepo.chunk.size {2}; keeping its chunk size",
+                        keyPrefix, firstLength, CHUNKSIZE);
+            }
+            return firstLength;
+        } catch (final CacheLoaderException e) {
+            throw new IOException(e);
+        }
+    }
+
     @Override
     public void write(final int b) throws IOException {
-        if (chunkBuffer.size() == CHUNKSIZE) {
+        if (chunkLength == getChunkSize()) {
             storeBufferInBLOBCache();
         }
-        chunkBuffer.write(b);
+        buffer()[chunkLength++] = (byte) b;
     }
 
     @Override
-    public void write(final byte[] b, final int off, final int len)
+    public void write(final byte[] b, int off, int len)
         throws IOException {
-        if (len + chunkBuffer.size() <= CHUNKSIZE) {
-            chunkBuffer.write(b, off, len);
-        } else {
-            final int storeLength = CHUNKSIZE - chunkBuffer.size();
-            write(b, off, storeLength);
-            storeBufferInBLOBCache();
-            write(b, off + storeLength, len - storeLength);
+        while (len > 0) {
+            if (chunkLength == getChunkSize()) {
+                storeBufferInBLOBCache();
+            }
+            final int copyLength = Math.min(len, chunkSize - chunkLength);
+            System.arraycopy(b, off, buffer(), chunkLength, copyLength);
+            chunkLength += copyLength;
+            off += copyLength;
+            len -= copyLength;
         }
     }
 
     @Override
     public void close() throws IOException {
-        logger.debug("Close. Buffer size at close: {0}", chunkBuffer.size());
+        logger.debug("Close. Buffer size at close: {0}", chunkLength);
         if (closed) {
             logger.debug("Stream already closed.");
             return;
         }
         closed = true;
-        // store last chunk
-        if (chunkBuffer.size() > 0) {
-            storeBufferInBLOBCache();
+        try {
+            // store last chunk
+            if (chunkLength > 0) {
+                storeBufferInBLOBCache();
+            }
+        } finally {
+            awaitStores(0);
         }
     }
 
+    private byte[] buffer() {
+        if (chunkBuffer == null) {
+            chunkBuffer = new byte[chunkSize];
+        }
+        return chunkBuffer;
+    }
+
     private void storeBufferInBLOBCache() throws IOException {
-        final byte[] chunk = chunkBuffer.toByteArray();
+        final int index = chunkIndex++;
+        final int length = chunkLength;
+        chunkLength = 0;
+
+        if (chunksToStore != null && !chunksToStore.contains(index)) {
+            logger.trace("Skip chunk {0}", chunkKey(keyPrefix, index));
+            return;
+        }
+
+        // the store owns the chunk from here on, so the next one gets a
+        // fresh buffer
+        final byte[] chunk =
+                length == chunkSize ? chunkBuffer : copyOf(chunkBuffer, length);
+        chunkBuffer = null;
+
+        final String chunkKey = chunkKey(keyPrefix, index);
         try {
-            final String chunkKey = keyPrefix + "-" + chunkIndex;
-            final InternalCacheEntry c = blobCache.load(chunkKey);
+            final InternalCacheEntry existing;
+            if (index == 0) {
+                existing = firstChunk;
+                overwriting = existing != null;
+            } else if (chunksToStore != null) {
+                existing = blobCache.load(chunkKey);
+            } else {
+                existing = overwriting ? blobCache.load(chunkKey) : null;
+            }
+
             final InternalCacheEntry cacheEntry;
-            if (c == null) {
+            if (existing == null) {
                 cacheEntry =
                     entryFactory.create(chunkKey,
                                         chunk,
                                         new EmbeddedMetadata
                                         .Builder().build());
             } else {
-                cacheEntry = entryFactory.create(chunkKey, chunk, c);
+                cacheEntry = entryFactory.create(chunkKey, chunk, existing);
             }
 
-            logger.debug("Store chunk {0}", chunkKey);
-            blobCache.store(cacheEntry);
-            chunkIndex++;
-            chunkBuffer.reset();
+            final Callable<Void> store = new Callable<Void>() {
+
+                @Override
+                public Void call() throws CacheLoaderException, IOException {
+                    logger.debug("Store chunk {0}", chunkKey);
+                    blobCache.store(cacheEntry);
+                    storeDigest(blobCache, keyPrefix, index, digest(chunk));
+                    return null;
+                }
+            };
+
+            if (inFlight == 0) {
+                store.call();
+            } else {
+                awaitStores(inFlight - 1);
+                storing.add(writers.submit(store));
+            }
         } catch (final CacheLoaderException e) {
             throw new IOException(e);
         }
     }
 
+    /**
+     * Wait until no more than the given number of chunk stores are
+     * outstanding
+     * @param outstanding
+     * @throws IOException if any store we waited for failed
+     */
+    private void awaitStores(final int outstanding) throws IOException {
+        IOException failure = null;
+        while (storing.size() > outstanding) {
+            final Future<Void> future = storing.poll();
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ?
+                            (IOException) e.getCause() :
+                            new IOException(e.getCause());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                if (failure == null) {
+                    failure = new IOException(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static ExecutorService newWriterPool() {
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(DEFAULT_WRITER_THREADS,
+                        DEFAULT_WRITER_THREADS, 60L, SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactoryBuilder().setDaemon(true)
+                                .setNameFormat("fcrepo-chunk-writer-%d")
+                                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
 }
@@ -25,7 +25,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,6 +37,7 @@ import static org.modeshape.jcr.api.JcrConstants.JCR_DATA;
 import static org.modeshape.jcr.api.JcrConstants.JCR_MIME_TYPE;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -42,6 +45,7 @@ import java.net.URISyntaxException;
 import java.util.Calendar;
 import java.util.Date;
 
+import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
@@ -283,6 +287,77 @@ public class DatastreamTest implements FedoraJcrTypes {
         assertEquals(3, actual);
     }
 
+    @Test
+    public void testSetContentWithSha256Checksum()
+            throws RepositoryException, InvalidChecksumException,
+            URISyntaxException {
+        final org.modeshape.jcr.api.Binary mockBin =
+                mock(org.modeshape.jcr.api.Binary.class);
+        final InputStream content =
+                new ByteArrayInputStream("0123456789".getBytes());
+        final String sha256 =
+                "urn:sha256:84d89877f0d4041efb6bf91a16f0248f"
+                        + "2fd573e6af05c19f96bedb9f882f7882";
+        mockStatic(FedoraTypesUtils.class);
+        when(
+                getBinary(any(Node.class), any(InputStream.class),
+                        any(String.class))).thenAnswer(
+                new Answer<org.modeshape.jcr.api.Binary>() {
+
+                    @Override
+                    public org.modeshape.jcr.api.Binary answer(
+                            final InvocationOnMock invocation)
+                        throws IOException {
+                        IOUtils.toByteArray((InputStream) invocation
+                                .getArguments()[1]);
+                        return mockBin;
+                    }
+                });
+        final Node mockContent = getContentNodeMock(10);
+        when(mockDsNode.getNode(JCR_CONTENT)).thenReturn(mockContent);
+        final Property mockData = mock(Property.class);
+        when(mockContent.setProperty(JCR_DATA, mockBin)).thenReturn(mockData);
+        when(mockContent.getProperty(JCR_DATA)).thenReturn(mockData);
+        when(mockData.getBinary()).thenReturn(mockBin);
+        testObj.setContent(content, null, new URI(sha256), null);
+        verify(mockContent).setProperty(CONTENT_DIGESTS,
+                new String[] {sha256});
+    }
+
+    @Test
+    public void testSetContentWithChecksumMismatchWhileStoring()
+            throws RepositoryException, URISyntaxException {
+        final InputStream content =
+                new ByteArrayInputStream("0123456789".getBytes());
+        mockStatic(FedoraTypesUtils.class);
+        when(
+                getBinary(any(Node.class), any(InputStream.class),
+                        any(String.class))).thenAnswer(
+                new Answer<org.modeshape.jcr.api.Binary>() {
+
+                    @Override
+                    public org.modeshape.jcr.api.Binary answer(
+                            final InvocationOnMock invocation) {
+                        try {
+                            IOUtils.toByteArray((InputStream) invocation
+                                    .getArguments()[1]);
+                        } catch (final IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return null;
+                    }
+                });
+        final Node mockContent = getContentNodeMock(10);
+        when(mockDsNode.getNode(JCR_CONTENT)).thenReturn(mockContent);
+        try {
+            testObj.setContent(content, null, new URI("urn:sha1:xyz"), null);
+            fail("Expected an InvalidChecksumException");
+        } catch (final InvalidChecksumException e) {
+            verify(mockContent, never()).setProperty(eq(JCR_DATA),
+                    any(Binary.class));
+        }
+    }
+
     @Test
     public void testHasMixin() throws RepositoryException {
         final NodeType mockYes = mock(NodeType.class);
@@ -17,6 +17,7 @@
 package org.fcrepo;
 
 import static java.lang.System.currentTimeMillis;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.never;
@@ -68,6 +69,14 @@ public class TransactionTest {
         assertTrue(update <= System.currentTimeMillis());
     }
 
+    @Test
+    public void testCommitInvalidatesCachedMetadata()
+        throws RepositoryException {
+        final long generation = getResourceMetadataCache().generation();
+        testObj.commit();
+        assertTrue(getResourceMetadataCache().generation() > generation);
+    }
+
     @Test
     public void testExpire() throws RepositoryException {
         final long orig = testObj.getExpires().getTime();
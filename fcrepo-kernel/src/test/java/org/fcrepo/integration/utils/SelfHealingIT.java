@@ -125,7 +125,7 @@ public class SelfHealingIT {
         return datastreamService
             .getFixity(ds.getNode().getNode(JcrConstants.JCR_CONTENT),
                        ds.getContentDigest(),
-                       ds.getContentSize());
+                       ds.getContentSize(), true);
 
     }
 
@@ -19,6 +19,9 @@ package org.fcrepo.observer;
 import static com.google.common.collect.Iterables.filter;
 import static java.util.Arrays.asList;
 import static org.fcrepo.observer.SimpleObserver.EVENT_TYPES;
+import static org.fcrepo.utils.ResourceMetadataCache.RESOURCE;
+import static org.fcrepo.utils.ResourceMetadataCache.getResourceMetadataCache;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -29,6 +32,7 @@ import static org.mockito.MockitoAnnotations.initMocks;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 import java.lang.reflect.Field;
+import java.util.Date;
 import java.util.List;
 
 import javax.jcr.Session;
@@ -37,6 +41,8 @@ import javax.jcr.observation.Event;
 import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.ObservationManager;
 
+import org.fcrepo.utils.ResourceMetadata;
+import org.fcrepo.utils.ResourceMetadataCache;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -118,6 +124,26 @@ public class SimpleObserverTest {
         verify(mockBus, never()).post(any(Event.class));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testOnEventInvalidatesMetadata() throws Exception {
+        setField("eventBus", testObj, mockBus);
+        setField("eventFilter", testObj, mockFilter);
+        final ResourceMetadataCache cache = getResourceMetadataCache();
+        cache.put("/a", RESOURCE, new ResourceMetadata(new Date(), null, null,
+                -1, null), cache.generation());
+        final Event mockEvent = mock(Event.class);
+        when(mockEvent.getPath()).thenReturn("/a/b/jcr:lastModified");
+        final EventIterator mockEvents = mock(EventIterator.class);
+        when(mockEvents.hasNext()).thenReturn(true, false);
+        when(mockEvents.nextEvent()).thenReturn(mockEvent);
+        mockStatic(Iterables.class);
+        when(filter(any(Iterable.class), eq(mockFilter))).thenReturn(
+                asList(new Event[0]));
+        testObj.onEvent(mockEvents);
+        assertNull(cache.get("/a", RESOURCE));
+    }
+
     private static void setField(final String name, final SimpleObserver obj,
             final Object val) throws Exception {
         final Field field = SimpleObserver.class.getDeclaredField(name);
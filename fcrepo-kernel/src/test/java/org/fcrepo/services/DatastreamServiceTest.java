@@ -18,30 +18,40 @@ package org.fcrepo.services;
 
 import static com.hp.hpl.jena.rdf.model.ResourceFactory.createResource;
 import static java.util.Arrays.asList;
+import static org.apache.commons.io.IOUtils.copy;
 import static org.fcrepo.services.ServiceHelpers.getCheckCacheFixityFunction;
 import static org.fcrepo.utils.FedoraTypesUtils.getBinary;
 import static org.fcrepo.utils.JcrRdfTools.getFixityResultsModel;
 import static org.fcrepo.utils.JcrRdfTools.getGraphSubject;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentCaptor.forClass;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jcr.Node;
 import javax.jcr.Property;
+import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.nodetype.NodeType;
@@ -61,6 +71,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.modeshape.jcr.api.Binary;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -96,6 +108,12 @@ public class DatastreamServiceTest implements FedoraJcrTypes {
     @Mock
     private Node mockContent;
 
+    @Mock
+    private Repository mockRepo;
+
+    @Mock
+    private Session mockStoreSession;
+
     private DatastreamService testObj;
 
     private LowLevelStorageService llStore;
@@ -107,6 +125,8 @@ public class DatastreamServiceTest implements FedoraJcrTypes {
         when(mockSession.getRootNode()).thenReturn(mockRoot);
         llStore = mock(LowLevelStorageService.class);
         testObj.setLlStoreService(llStore);
+        testObj.setRepository(mockRepo);
+        when(mockRepo.login()).thenReturn(mockStoreSession);
     }
 
     @Test
@@ -136,6 +156,89 @@ public class DatastreamServiceTest implements FedoraJcrTypes {
         verify(mockContent).setProperty(JCR_DATA, mockBinary);
     }
 
+    @Test
+    public void testSetStagedContents() throws Exception {
+        final Node mockOtherNode = mock(Node.class);
+        final Node mockOtherContent = mock(Node.class);
+        final Property mockData = mock(Property.class);
+        final Binary mockBinary = mock(Binary.class);
+        final Binary mockOtherBinary = mock(Binary.class);
+        when(mockRoot.getNode("foo/bar")).thenReturn(mockNode);
+        when(mockRoot.getNode("foo/baz")).thenReturn(mockOtherNode);
+        when(mockNode.getNode(JCR_CONTENT)).thenReturn(mockContent);
+        when(mockOtherNode.getNode(JCR_CONTENT)).thenReturn(mockOtherContent);
+        when(mockContent.setProperty(JCR_DATA, mockBinary)).thenReturn(
+                mockData);
+        when(mockOtherContent.setProperty(JCR_DATA, mockOtherBinary))
+                .thenReturn(mockData);
+        final InputStream mockIS = mock(InputStream.class);
+        final InputStream mockOtherIS = mock(InputStream.class);
+        mockStatic(FedoraTypesUtils.class);
+        when(getBinary(eq(mockStoreSession), eq(mockIS), any(String.class)))
+                .thenReturn(mockBinary);
+        when(getBinary(eq(mockStoreSession), eq(mockOtherIS),
+                any(String.class))).thenReturn(mockOtherBinary);
+
+        testObj.setStagedContents(asList(testObj.stageDatastreamContent(
+                mockSession, "/foo/bar", MOCK_CONTENT_TYPE, mockIS, null, -1L),
+                testObj.stageDatastreamContent(mockSession, "/foo/baz",
+                        MOCK_CONTENT_TYPE, mockOtherIS, null, -1L)));
+
+        verify(mockContent).setProperty(JCR_DATA, mockBinary);
+        verify(mockOtherContent).setProperty(JCR_DATA, mockOtherBinary);
+        // the request's session is never shared with the store threads
+        verify(mockSession, never()).getValueFactory();
+        verify(mockStoreSession, times(2)).logout();
+    }
+
+    @Test
+    public void testSetStagedContentsWaitsForRunningStores()
+        throws Exception {
+        final Node mockOtherNode = mock(Node.class);
+        when(mockRoot.getNode("foo/bar")).thenReturn(mockNode);
+        when(mockRoot.getNode("foo/baz")).thenReturn(mockOtherNode);
+        final InputStream mockIS = mock(InputStream.class);
+        final InputStream mockOtherIS = mock(InputStream.class);
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final AtomicBoolean otherFinished = new AtomicBoolean();
+        mockStatic(FedoraTypesUtils.class);
+        when(getBinary(eq(mockStoreSession), eq(mockIS), any(String.class)))
+                .thenAnswer(new Answer<Binary>() {
+
+                    @Override
+                    public Binary answer(final InvocationOnMock invocation)
+                        throws InterruptedException {
+                        bothStarted.countDown();
+                        bothStarted.await();
+                        throw new IllegalStateException("Expected");
+                    }
+                });
+        when(getBinary(eq(mockStoreSession), eq(mockOtherIS),
+                any(String.class))).thenAnswer(new Answer<Binary>() {
+
+            @Override
+            public Binary answer(final InvocationOnMock invocation)
+                throws InterruptedException {
+                bothStarted.countDown();
+                bothStarted.await();
+                Thread.sleep(100);
+                otherFinished.set(true);
+                return mock(Binary.class);
+            }
+        });
+
+        try {
+            testObj.setStagedContents(asList(testObj.stageDatastreamContent(
+                    mockSession, "/foo/bar", MOCK_CONTENT_TYPE, mockIS, null,
+                    -1L), testObj.stageDatastreamContent(mockSession,
+                    "/foo/baz", MOCK_CONTENT_TYPE, mockOtherIS, null, -1L)));
+            fail("Failed store should have been reported");
+        } catch (final IllegalStateException e) {
+            assertTrue(otherFinished.get());
+        }
+        verify(mockStoreSession, times(2)).logout();
+    }
+
     @Test
     public void testGetDatastreamNode() throws Exception {
         final String testPath = "/foo/bar";
@@ -237,11 +340,24 @@ public class DatastreamServiceTest implements FedoraJcrTypes {
 
         final Datastream mockDatastream = mock(Datastream.class);
 
-        final InputStream mockIS = mock(InputStream.class);
+        final byte[] content = "0123456789".getBytes();
 
         final LowLevelCacheEntry mockGoodEntry = mock(LowLevelCacheEntry.class);
-        when(mockGoodEntry.getInputStream()).thenReturn(mockIS);
+        when(mockGoodEntry.getInputStream()).thenReturn(
+                new ByteArrayInputStream(content));
         final LowLevelCacheEntry mockBadEntry = mock(LowLevelCacheEntry.class);
+        final ByteArrayOutputStream repairedContent =
+                new ByteArrayOutputStream();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+                throws IOException {
+                copy((InputStream) invocation.getArguments()[0],
+                        repairedContent);
+                return null;
+            }
+        }).when(mockBadEntry).storeValue(any(InputStream.class));
         final FixityResult mockGoodResult = mock(FixityResult.class);
         when(mockGoodResult.matches(any(Long.class), any(URI.class)))
                 .thenReturn(true);
@@ -251,12 +367,6 @@ public class DatastreamServiceTest implements FedoraJcrTypes {
                 .thenReturn(false);
         when(mockBadResult.getEntry()).thenReturn(mockBadEntry);
 
-        final FixityResult mockRepairedResult = mock(FixityResult.class);
-        when(mockRepairedResult.matches(any(Long.class), any(URI.class)))
-                .thenReturn(true);
-        when(mockRepairedResult.getEntry()).thenReturn(mockGoodEntry);
-        when(mockRepairedResult.isSuccess()).thenReturn(true);
-
         final Collection<FixityResult> mockFixityResults =
                 asList(mockGoodResult, mockBadResult);
 
@@ -264,20 +374,24 @@ public class DatastreamServiceTest implements FedoraJcrTypes {
 
         when(mockDatastream.getNode()).thenReturn(mockNode);
         when(mockDatastream.getContentDigest()).thenReturn(
-                URI.create("urn:sha1:abc"));
+                URI.create("urn:sha1:"
+                        + "87acec17cd9dcd20a716cc2cf67417b71c8a7016"));
+        when(mockDatastream.getContentSize()).thenReturn(10L);
 
         when(
                 llStore.transformLowLevelCacheEntries(eq(mockContent),
                         any(CheckCacheEntryFixity.class))).thenReturn(
                 mockFixityResults);
 
-        when(mockBadEntry.checkFixity(any(URI.class), any(Long.class)))
-                .thenReturn(mockRepairedResult);
         final Collection<FixityResult> fixityResults =
                 testObj.runFixityAndFixProblems(mockDatastream);
 
         verify(mockBadResult).setRepaired();
-        verify(mockBadEntry).storeValue(mockIS);
+        verify(mockBadEntry).storeValue(any(InputStream.class));
+        assertEquals("0123456789", repairedContent.toString());
+        verify(mockGoodEntry).getInputStream();
+        verify(mockBadEntry, never()).checkFixity(any(URI.class),
+                any(Long.class));
 
         assertTrue("expected to find good result", fixityResults
                 .contains(mockGoodResult));
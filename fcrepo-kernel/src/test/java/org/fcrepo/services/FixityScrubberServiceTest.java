@@ -0,0 +1,252 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.services;
+
+import static java.util.Arrays.asList;
+import static org.fcrepo.services.FixityScrubberService.CURSOR_PROPERTY;
+import static org.fcrepo.services.FixityScrubberService.OUTCOME_FAILURE;
+import static org.fcrepo.services.FixityScrubberService.OUTCOME_REPAIRED;
+import static org.fcrepo.services.FixityScrubberService.OUTCOME_SUCCESS;
+import static org.fcrepo.services.FixityScrubberService.START_OF_PASS;
+import static org.fcrepo.utils.FixityResult.FixityState.BAD_CHECKSUM;
+import static org.fcrepo.utils.FixityResult.FixityState.REPAIRED;
+import static org.fcrepo.utils.FixityResult.FixityState.SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Calendar;
+import java.util.Collections;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Property;
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+
+import org.fcrepo.Datastream;
+import org.fcrepo.utils.FedoraJcrTypes;
+import org.fcrepo.utils.FixityResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class FixityScrubberServiceTest implements FedoraJcrTypes {
+
+    @Mock
+    private Repository mockRepo;
+
+    @Mock
+    private Session mockSession;
+
+    @Mock
+    private Session mockStateSession;
+
+    @Mock
+    private Node mockStateRoot;
+
+    @Mock
+    private Node mockState;
+
+    @Mock
+    private Node mockCursorNode;
+
+    @Mock
+    private Property mockCursorProperty;
+
+    @Mock
+    private Workspace mockWorkspace;
+
+    @Mock
+    private QueryManager mockQueryManager;
+
+    @Mock
+    private Query mockQuery;
+
+    @Mock
+    private QueryResult mockQueryResult;
+
+    @Mock
+    private NodeIterator mockNodes;
+
+    @Mock
+    private ValueFactory mockValueFactory;
+
+    @Mock
+    private Value mockValue;
+
+    @Mock
+    private Node mockNode;
+
+    @Mock
+    private Node mockContent;
+
+    @Mock
+    private Datastream mockDatastream;
+
+    @Mock
+    private DatastreamService mockDatastreamService;
+
+    private FixityScrubberService testObj;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        initMocks(this);
+        when(mockRepo.login()).thenReturn(mockSession);
+        when(mockRepo.login("test-fixity")).thenReturn(mockStateSession);
+        when(mockSession.getWorkspace()).thenReturn(mockWorkspace);
+        when(mockWorkspace.getAccessibleWorkspaceNames()).thenReturn(
+                new String[] {"default", "test-fixity"});
+        when(mockStateSession.getRootNode()).thenReturn(mockStateRoot);
+        when(mockStateSession.getNode("/fedora:scrubberCursor")).thenThrow(
+                new PathNotFoundException());
+        when(mockStateRoot.getNode("fedora:scrubberCursor")).thenReturn(
+                mockCursorNode);
+        when(mockStateRoot.getNode("foo/bar")).thenReturn(mockState);
+        when(mockWorkspace.getQueryManager()).thenReturn(mockQueryManager);
+        when(mockQueryManager.createQuery(anyString(), anyString()))
+                .thenReturn(mockQuery);
+        when(mockSession.getValueFactory()).thenReturn(mockValueFactory);
+        when(mockValueFactory.createValue(anyString())).thenReturn(mockValue);
+        when(mockQuery.execute()).thenReturn(mockQueryResult);
+        when(mockQueryResult.getNodes()).thenReturn(mockNodes);
+
+        testObj = new FixityScrubberService();
+        testObj.setRepository(mockRepo);
+        testObj.setDatastreamService(mockDatastreamService);
+        testObj.setStateWorkspace("test-fixity");
+        testObj.setBytesPerSecond(Double.MAX_VALUE);
+        testObj.setObjectsPerSecond(Double.MAX_VALUE);
+    }
+
+    @Test
+    public void testScrubBatch() throws RepositoryException {
+        final FixityResult goodResult = new FixityResult();
+        goodResult.status.add(SUCCESS);
+
+        when(mockNodes.hasNext()).thenReturn(true, false);
+        when(mockNodes.nextNode()).thenReturn(mockNode);
+        when(mockNode.getPath()).thenReturn("/foo/bar");
+        when(mockNode.hasNode(JCR_CONTENT)).thenReturn(true);
+        when(mockNode.getNode(JCR_CONTENT)).thenReturn(mockContent);
+        when(mockDatastreamService.asDatastream(mockNode)).thenReturn(
+                mockDatastream);
+        when(mockDatastreamService.runFixityAndFixProblems(mockDatastream,
+                true)).thenReturn(asList(goodResult));
+
+        assertEquals(1, testObj.scrubBatch());
+
+        verify(mockQuery).bindValue("cursor", mockValue);
+        verify(mockValueFactory).createValue(START_OF_PASS);
+        verify(mockState).setProperty(eq(FIXITY_LAST_CHECKED),
+                any(Calendar.class));
+        verify(mockState).setProperty(FIXITY_LAST_OUTCOME, OUTCOME_SUCCESS);
+        verify(mockCursorNode).setProperty(CURSOR_PROPERTY, "/foo/bar");
+        verify(mockContent, never()).setProperty(eq(FIXITY_LAST_OUTCOME),
+                anyString());
+        verify(mockSession, never()).save();
+        verify(mockSession).logout();
+        verify(mockStateSession).logout();
+        assertEquals("/foo/bar", testObj.getCursor());
+    }
+
+    @Test
+    public void testRuntimeFailureRecordedAndSkipped()
+        throws RepositoryException {
+        when(mockNodes.hasNext()).thenReturn(true, false);
+        when(mockNodes.nextNode()).thenReturn(mockNode);
+        when(mockNode.getPath()).thenReturn("/foo/bar");
+        when(mockNode.hasNode(JCR_CONTENT)).thenReturn(true);
+        when(mockDatastreamService.asDatastream(mockNode)).thenReturn(
+                mockDatastream);
+        when(mockDatastreamService.runFixityAndFixProblems(mockDatastream,
+                true)).thenThrow(new IllegalStateException("broken store"));
+
+        assertEquals(1, testObj.scrubBatch());
+
+        verify(mockState).setProperty(FIXITY_LAST_OUTCOME, OUTCOME_FAILURE);
+        assertEquals("/foo/bar", testObj.getCursor());
+    }
+
+    @Test
+    public void testCursorSurvivesRestart() throws RepositoryException {
+        doReturn(mockCursorNode).when(mockStateSession).getNode(
+                "/fedora:scrubberCursor");
+        when(mockCursorNode.getProperty(CURSOR_PROPERTY)).thenReturn(
+                mockCursorProperty);
+        when(mockCursorProperty.getString()).thenReturn("/foo/bar");
+
+        final FixityScrubberService restarted = new FixityScrubberService();
+        restarted.setRepository(mockRepo);
+        restarted.setStateWorkspace("test-fixity");
+        assertEquals("/foo/bar", restarted.getCursor());
+    }
+
+    @Test
+    public void testCreatesStateWorkspace() throws RepositoryException {
+        when(mockWorkspace.getAccessibleWorkspaceNames()).thenReturn(
+                new String[] {"default"});
+        when(mockNodes.hasNext()).thenReturn(false);
+
+        testObj.scrubBatch();
+        verify(mockWorkspace).createWorkspace("test-fixity");
+    }
+
+    @Test
+    public void testEndOfPassResetsCursor() throws RepositoryException {
+        testObj.setCursor("/foo/bar");
+        when(mockNodes.hasNext()).thenReturn(false);
+
+        assertEquals(0, testObj.scrubBatch());
+        verify(mockValueFactory).createValue("/foo/bar");
+        assertEquals(START_OF_PASS, testObj.getCursor());
+    }
+
+    @Test
+    public void testGetOutcome() {
+        final FixityResult goodResult = new FixityResult();
+        goodResult.status.add(SUCCESS);
+        final FixityResult badResult = new FixityResult();
+        badResult.status.add(BAD_CHECKSUM);
+        final FixityResult repairedResult = new FixityResult();
+        repairedResult.status.add(BAD_CHECKSUM);
+        repairedResult.status.add(REPAIRED);
+
+        assertEquals(OUTCOME_SUCCESS, FixityScrubberService.getOutcome(asList(
+                goodResult, goodResult)));
+        assertEquals(OUTCOME_REPAIRED, FixityScrubberService
+                .getOutcome(asList(goodResult, repairedResult)));
+        assertEquals(OUTCOME_FAILURE, FixityScrubberService.getOutcome(asList(
+                goodResult, badResult)));
+        assertEquals(OUTCOME_FAILURE, FixityScrubberService
+                .getOutcome(Collections.<FixityResult> emptyList()));
+    }
+}
@@ -18,13 +18,17 @@ package org.fcrepo.services;
 
 import static com.google.common.collect.ImmutableSet.of;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.fcrepo.services.ServiceHelpers.getBlobCache;
 import static org.fcrepo.services.ServiceHelpers.getClusterExecutor;
+import static org.fcrepo.utils.FixityResult.FixityState.UNRESPONSIVE_NODE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,22 +37,35 @@ import static org.modeshape.jcr.api.JcrConstants.JCR_DATA;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.spy;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
 
+import org.fcrepo.services.functions.CacheLocalTransform;
+import org.fcrepo.services.functions.CheckCacheEntryFixity;
 import org.fcrepo.services.functions.GetBinaryKey;
 import org.fcrepo.services.functions.GetCacheStore;
+import org.fcrepo.utils.ClusterResults;
+import org.fcrepo.utils.FixityResult;
 import org.fcrepo.utils.LowLevelCacheEntry;
 import org.fcrepo.utils.impl.CacheStoreEntry;
 import org.fcrepo.utils.impl.LocalBinaryStoreEntry;
+import org.fcrepo.utils.infinispan.ChunkDigests.ChunkRemovalListener;
 import org.infinispan.Cache;
 import org.infinispan.distexec.DistributedExecutorService;
 import org.infinispan.loaders.CacheStore;
@@ -56,6 +73,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.modeshape.jcr.GetBinaryStore;
 import org.modeshape.jcr.api.JcrConstants;
 import org.modeshape.jcr.value.BinaryKey;
@@ -67,6 +86,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.google.common.base.Function;
+import com.google.common.base.Ticker;
 
 @RunWith(PowerMockRunner.class)
 @PowerMockIgnore({"org.slf4j.*", "javax.xml.parsers.*", "org.apache.xerces.*"})
@@ -220,9 +240,9 @@ public class LowLevelStorageServiceTest {
                 mock(Future.class);
         final Future<Collection<LowLevelCacheEntry>> future2 =
                 mock(Future.class);
-        when(future1.get(any(Long.class), eq(MILLISECONDS))).thenReturn(
+        when(future1.get(any(Long.class), eq(NANOSECONDS))).thenReturn(
                 cacheResponse1);
-        when(future2.get(any(Long.class), eq(MILLISECONDS))).thenReturn(
+        when(future2.get(any(Long.class), eq(NANOSECONDS))).thenReturn(
                 cacheResponse2);
 
         final List<Future<?>> mockClusterResults = new ArrayList<Future<?>>(2);
@@ -255,6 +275,290 @@ public class LowLevelStorageServiceTest {
 
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void shouldRemoveChunkDigestsWithChunksFromStartup() {
+
+        mockStatic(ServiceHelpers.class);
+
+        final Cache<?, ?> ispnCache = mock(Cache.class);
+        final CacheStore ispnCacheStore = mock(CacheStore.class);
+        final GetCacheStore mockCacheStoreFunc = mock(GetCacheStore.class);
+        when(mockCacheStoreFunc.apply(ispnCache)).thenReturn(ispnCacheStore);
+
+        final InfinispanBinaryStore infinispanBinaryStore =
+                mock(InfinispanBinaryStore.class);
+        when((Cache) getBlobCache(infinispanBinaryStore)).thenReturn(
+                ispnCache);
+
+        final CompositeBinaryStore mockStore = mock(CompositeBinaryStore.class);
+        final Map<String, BinaryStore> map = new HashMap<>();
+        map.put("a", mock(BinaryStore.class));
+        map.put("b", infinispanBinaryStore);
+        when(mockStore.getNamedStoreIterator()).thenReturn(
+                map.entrySet().iterator());
+        when(mockStoreFunc.apply(mockRepo)).thenReturn(mockStore);
+
+        final LowLevelStorageService testObj = new LowLevelStorageService();
+        testObj.setRepository(mockRepo);
+        testObj.setGetBinaryStore(mockStoreFunc);
+        testObj.setGetCacheStore(mockCacheStoreFunc);
+        testObj.removeChunkDigestsWithChunks();
+
+        verify(ispnCache).addListener(any(ChunkRemovalListener.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldMarkClusterNodesThatDoNotRespond() throws Exception {
+
+        mockStatic(ServiceHelpers.class);
+
+        final InfinispanBinaryStore infinispanBinaryStore =
+                mock(InfinispanBinaryStore.class);
+        final DistributedExecutorService mockCluster =
+                mock(DistributedExecutorService.class);
+        when(getClusterExecutor(infinispanBinaryStore)).thenReturn(mockCluster);
+
+        final BinaryKey key = new BinaryKey("key-123");
+        final CacheStore ispnCacheStore = mock(CacheStore.class);
+        final LowLevelCacheEntry cacheEntry =
+                new CacheStoreEntry(ispnCacheStore, "cache1", key);
+        final Set<LowLevelCacheEntry> cacheResponse = of(cacheEntry);
+
+        final Future<Collection<LowLevelCacheEntry>> future1 =
+                mock(Future.class);
+        final Future<Collection<LowLevelCacheEntry>> future2 =
+                mock(Future.class);
+        when(future1.get(any(Long.class), eq(NANOSECONDS))).thenReturn(
+                cacheResponse);
+        when(future2.get(any(Long.class), eq(NANOSECONDS))).thenThrow(
+                new TimeoutException());
+
+        final List<Future<?>> mockClusterResults = new ArrayList<Future<?>>(2);
+        mockClusterResults.add(future1);
+        mockClusterResults.add(future2);
+        when(mockCluster.submitEverywhere(any(CacheLocalTransform.class)))
+                .thenReturn(mockClusterResults);
+
+        final LowLevelStorageService testObj = new LowLevelStorageService();
+        testObj.setClusterTimeout(100);
+
+        final ClusterResults<LowLevelCacheEntry> results =
+                testObj.getClusterResults(infinispanBinaryStore, key,
+                        new LowLevelStorageService.Echo());
+
+        assertEquals(cacheResponse, results.getResults());
+        assertFalse(results.isComplete());
+        assertEquals(of("node-2"), results.getUnresponsiveNodes());
+        verify(future2).cancel(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldKeepNodesThatFinishedBehindASlowOne() throws Exception {
+
+        mockStatic(ServiceHelpers.class);
+
+        final InfinispanBinaryStore infinispanBinaryStore =
+                mock(InfinispanBinaryStore.class);
+        final DistributedExecutorService mockCluster =
+                mock(DistributedExecutorService.class);
+        when(getClusterExecutor(infinispanBinaryStore)).thenReturn(mockCluster);
+
+        final BinaryKey key = new BinaryKey("key-123");
+        final LowLevelCacheEntry cacheEntry =
+                new CacheStoreEntry(mock(CacheStore.class), "cache2", key);
+        final Set<LowLevelCacheEntry> cacheResponse = of(cacheEntry);
+
+        // the first node is still running when the clock runs out, the
+        // second finished while we were waiting on the first
+        final Future<Collection<LowLevelCacheEntry>> slow = mock(Future.class);
+        final Future<Collection<LowLevelCacheEntry>> done = mock(Future.class);
+        when(slow.get(any(Long.class), eq(NANOSECONDS))).thenThrow(
+                new TimeoutException());
+        when(slow.isDone()).thenReturn(false);
+        when(done.get(any(Long.class), eq(NANOSECONDS))).thenReturn(
+                cacheResponse);
+        when(done.isDone()).thenReturn(true);
+
+        final List<Future<?>> mockClusterResults = new ArrayList<Future<?>>(2);
+        mockClusterResults.add(slow);
+        mockClusterResults.add(done);
+        when(mockCluster.submitEverywhere(any(CacheLocalTransform.class)))
+                .thenReturn(mockClusterResults);
+
+        final LowLevelStorageService testObj = new LowLevelStorageService();
+        testObj.setClusterTimeout(100);
+
+        final ClusterResults<LowLevelCacheEntry> results =
+                testObj.getClusterResults(infinispanBinaryStore, key,
+                        new LowLevelStorageService.Echo());
+
+        assertEquals(cacheResponse, results.getResults());
+        assertEquals(of("node-1"), results.getUnresponsiveNodes());
+        verify(slow).cancel(true);
+        verify(done, never()).cancel(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldReportUnresponsiveNodesInFixityResults()
+        throws Exception {
+
+        mockStatic(ServiceHelpers.class);
+
+        final InfinispanBinaryStore infinispanBinaryStore =
+                mock(InfinispanBinaryStore.class);
+        final DistributedExecutorService mockCluster =
+                mock(DistributedExecutorService.class);
+        when(getClusterExecutor(infinispanBinaryStore)).thenReturn(mockCluster);
+
+        final BinaryKey key = new BinaryKey("key-123");
+        final URI checksum = new URI("urn:sha1:abc");
+        final FixityResult checked = new FixityResult(10, checksum);
+
+        final Future<Collection<FixityResult>> future1 = mock(Future.class);
+        final Future<Collection<FixityResult>> future2 = mock(Future.class);
+        when(future1.get(any(Long.class), eq(NANOSECONDS))).thenReturn(
+                of(checked));
+        when(future2.get(any(Long.class), eq(NANOSECONDS))).thenThrow(
+                new TimeoutException());
+
+        final List<Future<?>> mockClusterResults = new ArrayList<Future<?>>(2);
+        mockClusterResults.add(future1);
+        mockClusterResults.add(future2);
+        when(mockCluster.submitEverywhere(any(CacheLocalTransform.class)))
+                .thenReturn(mockClusterResults);
+
+        final LowLevelStorageService testObj = new LowLevelStorageService();
+        testObj.setClusterTimeout(100);
+
+        final Set<FixityResult> results =
+                testObj.transformLowLevelCacheEntries(infinispanBinaryStore,
+                        key, new CheckCacheEntryFixity(checksum, 10));
+
+        assertEquals(2, results.size());
+        assertTrue(results.contains(checked));
+        assertTrue(results.contains(FixityResult.forClusterNode("node-2",
+                UNRESPONSIVE_NODE)));
+    }
+
+    @Test
+    public void shouldSkipNamedStoresThatTimeOut() throws Exception {
+
+        final BinaryStore fastStore = mock(BinaryStore.class);
+        final BinaryStore slowStore = mock(BinaryStore.class);
+        final BinaryKey key = new BinaryKey("key-123");
+        final CountDownLatch released = new CountDownLatch(1);
+
+        when(fastStore.hasBinary(key)).thenReturn(true);
+        // never answers until the test is over
+        when(slowStore.hasBinary(key)).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(final InvocationOnMock invocation)
+                    throws InterruptedException {
+                released.await();
+                return true;
+            }
+        });
+
+        final Map<String, BinaryStore> map =
+                new LinkedHashMap<String, BinaryStore>();
+        map.put("slow", slowStore);
+        map.put("fast", fastStore);
+        final CompositeBinaryStore mockStore = mock(CompositeBinaryStore.class);
+        when(mockStore.getNamedStoreIterator()).thenReturn(
+                map.entrySet().iterator());
+
+        final LowLevelStorageService testObj = new LowLevelStorageService();
+        testObj.setStoreConcurrency(2);
+        testObj.setStoreTimeout(100);
+
+        try {
+            final Set<LowLevelCacheEntry> entries =
+                    testObj.getLowLevelCacheEntriesFromStore(mockStore, key);
+
+            assertEquals(1, entries.size());
+            assertTrue(entries.contains(new LocalBinaryStoreEntry(fastStore,
+                    key)));
+        } finally {
+            released.countDown();
+            testObj.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldTimeNamedStoresFromWhenTheyStart() throws Exception {
+
+        final BinaryStore firstStore = mock(BinaryStore.class);
+        final BinaryStore secondStore = mock(BinaryStore.class);
+        final BinaryKey key = new BinaryKey("key-123");
+
+        // time only passes when a store says so
+        final AtomicLong now = new AtomicLong();
+        final Thread caller = Thread.currentThread();
+        final AtomicBoolean secondRunning = new AtomicBoolean();
+        final CountDownLatch checkedOnSecond = new CountDownLatch(1);
+        final Ticker ticker = new Ticker() {
+
+            @Override
+            public long read() {
+                if (Thread.currentThread() == caller && secondRunning.get()) {
+                    checkedOnSecond.countDown();
+                }
+                return now.get();
+            }
+        };
+
+        // each store takes 1.5s of the 2s timeout; the second one is still
+        // running, 3s after both were queued, when its result is awaited
+        final long storeTime = MILLISECONDS.toNanos(1500);
+        when(firstStore.hasBinary(key)).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) {
+                now.addAndGet(storeTime);
+                return true;
+            }
+        });
+        when(secondStore.hasBinary(key)).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(final InvocationOnMock invocation)
+                    throws InterruptedException {
+                now.addAndGet(storeTime);
+                secondRunning.set(true);
+                checkedOnSecond.await();
+                return true;
+            }
+        });
+
+        final Map<String, BinaryStore> map =
+                new LinkedHashMap<String, BinaryStore>();
+        map.put("first", firstStore);
+        map.put("second", secondStore);
+        final CompositeBinaryStore mockStore = mock(CompositeBinaryStore.class);
+        when(mockStore.getNamedStoreIterator()).thenReturn(
+                map.entrySet().iterator());
+
+        final LowLevelStorageService testObj = new LowLevelStorageService();
+        testObj.setStoreConcurrency(1);
+        testObj.setStoreTimeout(2000);
+        testObj.setTicker(ticker);
+
+        try {
+            final Set<LowLevelCacheEntry> entries =
+                    testObj.getLowLevelCacheEntriesFromStore(mockStore, key);
+
+            assertEquals(2, entries.size());
+        } finally {
+            checkedOnSecond.countDown();
+            testObj.shutdown();
+        }
+    }
+
     @Test
     public void shouldReturnAnEmptySetForMissingBinaryStore()
             throws RepositoryException {
@@ -16,17 +16,25 @@
 
 package org.fcrepo.services.functions;
 
+import static org.fcrepo.utils.FixityResultCache.getFixityResultCache;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.net.URI;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
+import org.fcrepo.utils.FixityResult;
 import org.fcrepo.utils.LowLevelCacheEntry;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
 
 public class CheckCacheEntryFixityTest {
@@ -39,6 +47,11 @@ public class CheckCacheEntryFixityTest {
         initMocks(this);
     }
 
+    @After
+    public void tearDown() {
+        getFixityResultCache().invalidateAll();
+    }
+
     @Test
     public void testApply() throws BinaryStoreException, BinaryStoreException,
             NoSuchAlgorithmException {
@@ -49,4 +62,24 @@ public class CheckCacheEntryFixityTest {
         testObj.apply(mockEntry);
         verify(mockEntry).checkFixity(testUri, testSize);
     }
+
+    @Test
+    public void testApplyUsesCachedResult() throws BinaryStoreException {
+        final URI testUri = URI.create("urn:sha1:abc");
+        when(mockEntry.getKey()).thenReturn(new BinaryKey("abc"));
+        when(mockEntry.getExternalIdentifier()).thenReturn("store-a");
+        final FixityResult result = new FixityResult(mockEntry, 10, testUri);
+        when(mockEntry.checkFixity(testUri, 10)).thenReturn(result);
+
+        new CheckCacheEntryFixity(testUri, 10).apply(mockEntry);
+        final FixityResult cached =
+                new CheckCacheEntryFixity(testUri, 10).apply(mockEntry);
+
+        verify(mockEntry, times(1)).checkFixity(testUri, 10);
+        assertTrue(cached.isSuccess());
+        assertEquals(result.getLastChecked(), cached.getLastChecked());
+
+        new CheckCacheEntryFixity(testUri, 10, true).apply(mockEntry);
+        verify(mockEntry, times(2)).checkFixity(testUri, 10);
+    }
 }
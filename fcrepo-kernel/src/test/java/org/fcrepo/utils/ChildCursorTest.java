@@ -0,0 +1,141 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class ChildCursorTest {
+
+    @Mock
+    private Node mockNode;
+
+    @Mock
+    private NodeIterator mockNodes;
+
+    @Mock
+    private NodeIterator mockRescan;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void testTokenRoundTrip() {
+        final ChildCursor cursor =
+                ChildCursor.fromToken(new ChildCursor(42, "a:b/c").toToken());
+        assertEquals(42L, cursor.getPosition());
+        assertEquals("a:b/c", cursor.getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMalformedToken() {
+        ChildCursor.fromToken("not-a-token");
+    }
+
+    @Test
+    public void testSeekSkipsStraightToLastChild() throws RepositoryException {
+        final Node child = mock(Node.class);
+        when(child.getName()).thenReturn("b");
+        when(mockNode.hasNode("b")).thenReturn(true);
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+        when(mockNodes.hasNext()).thenReturn(true);
+        when(mockNodes.nextNode()).thenReturn(child);
+
+        assertSame(mockNodes, new ChildCursor(10, "b").seek(mockNode));
+        verify(mockNodes).skip(9);
+        verify(mockNode).getNodes();
+    }
+
+    @Test
+    public void testSeekFindsMovedChild() throws RepositoryException {
+        final Node moved = mock(Node.class);
+        when(moved.getName()).thenReturn("a");
+        final Node child = mock(Node.class);
+        when(child.getName()).thenReturn("b");
+        when(mockNode.hasNode("b")).thenReturn(true);
+        when(mockNode.getNodes()).thenReturn(mockNodes, mockRescan);
+        when(mockNodes.hasNext()).thenReturn(true);
+        when(mockNodes.nextNode()).thenReturn(moved);
+        when(mockRescan.hasNext()).thenReturn(true);
+        when(mockRescan.nextNode()).thenReturn(moved, child);
+
+        assertSame(mockRescan, new ChildCursor(10, "b").seek(mockNode));
+        verify(mockRescan, never()).skip(9);
+    }
+
+    @Test
+    public void testTokenKeepsTheLastFewNames() {
+        ChildCursor cursor = new ChildCursor(1, "a");
+        for (int i = 2; i <= ChildCursor.TRAIL_LENGTH + 1; i++) {
+            cursor = cursor.then(i, "fedora:" + i);
+        }
+        final ChildCursor read = ChildCursor.fromToken(cursor.toToken());
+        assertEquals(ChildCursor.TRAIL_LENGTH, read.getNames().size());
+        assertEquals("fedora:2", read.getNames().get(0));
+        assertEquals("fedora:" + (ChildCursor.TRAIL_LENGTH + 1), read
+                .getName());
+        assertEquals(ChildCursor.TRAIL_LENGTH + 1, read.getPosition());
+    }
+
+    @Test
+    public void testSeekResumesAfterAnEarlierChildIfLastWasRemoved()
+            throws RepositoryException {
+        // "c" was the last child listed, and both it and "b" before it have
+        // been removed since, so the listing carries on after "a"
+        final Node a = mock(Node.class);
+        when(a.getName()).thenReturn("a");
+        final Node d = mock(Node.class);
+        when(d.getName()).thenReturn("d");
+        when(mockNode.hasNode("a")).thenReturn(true);
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+        when(mockNodes.hasNext()).thenReturn(true);
+        when(mockNodes.nextNode()).thenReturn(a, d);
+
+        final ChildCursor cursor =
+                new ChildCursor(1, "a").then(2, "b").then(3, "c");
+        final NodeIterator children = cursor.seek(mockNode);
+        assertSame(mockNodes, children);
+        verify(mockNodes, never()).skip(2);
+        assertEquals("d", children.nextNode().getName());
+    }
+
+    @Test
+    public void testSeekStartsOverIfNoListedChildIsLeft()
+            throws RepositoryException {
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+
+        assertSame(mockNodes, new ChildCursor(1, "a").then(10, "b").seek(
+                mockNode));
+        verify(mockNodes, never()).skip(9);
+        verify(mockNodes, never()).nextNode();
+    }
+}
@@ -19,7 +19,9 @@ package org.fcrepo.utils;
 import static java.net.URI.create;
 import static org.fcrepo.utils.ContentDigest.asURI;
 import static org.fcrepo.utils.ContentDigest.getAlgorithm;
+import static org.fcrepo.utils.ContentDigest.getCanonicalAlgorithm;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
 
@@ -42,4 +44,20 @@ public class ContentDigestTest {
         assertEquals("Failed to produce a proper digest algorithm!", "SHA-1",
                 getAlgorithm(asURI("SHA-1", "fake")));
     }
+
+    @Test
+    public void testOtherAlgorithms() {
+        assertEquals(create("urn:sha256:fake"), asURI("SHA-256", "fake"));
+        assertEquals(create("urn:sha512:fake"), asURI("SHA-512", "fake"));
+        assertEquals(create("urn:md5:fake"), asURI("MD5", "fake"));
+        assertEquals("SHA-256", getAlgorithm(create("urn:sha256:fake")));
+        assertEquals("MD5", getAlgorithm(create("urn:md5:fake")));
+    }
+
+    @Test
+    public void testGetCanonicalAlgorithm() {
+        assertEquals("SHA-256", getCanonicalAlgorithm("sha256"));
+        assertEquals("SHA-1", getCanonicalAlgorithm("SHA1"));
+        assertNull(getCanonicalAlgorithm("CRC32"));
+    }
 }
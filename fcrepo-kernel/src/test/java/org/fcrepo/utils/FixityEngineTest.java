@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class FixityEngineTest {
+
+    private static final byte[] DATA = "0123456789".getBytes();
+
+    @Test
+    public void testSingleDigest() throws IOException {
+        final FixityEngine.DigestResult result =
+                new FixityEngine("SHA-1").digest(new ByteArrayInputStream(
+                        DATA));
+
+        assertEquals(10, result.getByteCount());
+        assertEquals("87acec17cd9dcd20a716cc2cf67417b71c8a7016",
+                encodeHexString(result.getDigest("SHA-1")));
+        assertNull(result.getDigest("MD5"));
+    }
+
+    @Test
+    public void testMultipleDigestsInOnePass() throws IOException {
+        final FixityEngine.DigestResult result =
+                new FixityEngine("SHA-1", "SHA-256", "MD5")
+                        .digest(new ByteArrayInputStream(DATA));
+
+        assertEquals(10, result.getByteCount());
+        assertEquals(3, result.getDigests().size());
+        assertEquals("87acec17cd9dcd20a716cc2cf67417b71c8a7016",
+                encodeHexString(result.getDigest("SHA-1")));
+        assertEquals("84d89877f0d4041efb6bf91a16f0248f"
+                + "2fd573e6af05c19f96bedb9f882f7882",
+                encodeHexString(result.getDigest("SHA-256")));
+        assertEquals("781e5e245d69b566979b86e28d23f2c7",
+                encodeHexString(result.getDigest("MD5")));
+    }
+
+    @Test
+    public void testSmallBuffer() throws IOException {
+        final FixityEngine.DigestResult result =
+                new FixityEngine(3, "SHA-1").digest(new ByteArrayInputStream(
+                        DATA));
+
+        assertEquals(10, result.getByteCount());
+        assertEquals("87acec17cd9dcd20a716cc2cf67417b71c8a7016",
+                encodeHexString(result.getDigest("SHA-1")));
+    }
+
+    @Test
+    public void testThroughput() {
+        assertEquals(1.0, FixityEngine.throughput(1024 * 1024, 1000000000L),
+                0.0001);
+        assertEquals(0.0, FixityEngine.throughput(1024, 0), 0.0);
+        assertTrue(FixityEngine.throughput(1, 1) > 0);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownAlgorithm() throws IOException {
+        new FixityEngine("NOT-A-DIGEST").digest(new ByteArrayInputStream(
+                DATA));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadBufferSize() {
+        new FixityEngine(0, "SHA-1");
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.modeshape.jcr.value.BinaryKey;
+
+public class FixityResultCacheTest {
+
+    private static final URI CHECKSUM = URI.create("urn:sha1:abc");
+
+    @Mock
+    private LowLevelCacheEntry mockEntry;
+
+    @Mock
+    private LowLevelCacheEntry mockOtherStoreEntry;
+
+    private FixityResultCache testObj;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(mockEntry.getKey()).thenReturn(new BinaryKey("abc"));
+        when(mockEntry.getExternalIdentifier()).thenReturn("store-a");
+        when(mockOtherStoreEntry.getKey()).thenReturn(new BinaryKey("abc"));
+        when(mockOtherStoreEntry.getExternalIdentifier()).thenReturn(
+                "store-b");
+        testObj = new FixityResultCache(10, 60000);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final FixityResult result = new FixityResult(mockEntry, 3, CHECKSUM);
+        testObj.put(result);
+
+        assertSame(result, testObj.get(mockEntry, "SHA-1"));
+        assertNull(testObj.get(mockEntry, "SHA-256"));
+        assertNull(testObj.get(mockOtherStoreEntry, "SHA-1"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        testObj.put(new FixityResult(mockEntry, 3, CHECKSUM));
+        testObj.put(new FixityResult(mockOtherStoreEntry, 3, CHECKSUM));
+
+        testObj.invalidate(new BinaryKey("abc"));
+
+        assertNull(testObj.get(mockEntry, "SHA-1"));
+        assertNull(testObj.get(mockOtherStoreEntry, "SHA-1"));
+    }
+
+    @Test
+    public void testDisabled() {
+        testObj = new FixityResultCache(10, 0);
+        testObj.put(new FixityResult(mockEntry, 3, CHECKSUM));
+
+        assertNull(testObj.get(mockEntry, "SHA-1"));
+    }
+}
@@ -39,9 +39,11 @@ import static javax.jcr.PropertyType.UNDEFINED;
 import static javax.jcr.PropertyType.URI;
 import static javax.jcr.PropertyType.WEAKREFERENCE;
 import static javax.jcr.query.Query.JCR_SQL2;
+import static org.fcrepo.RdfLexicon.HAS_CHILD_COUNT;
 import static org.fcrepo.RdfLexicon.HAS_COMPUTED_CHECKSUM;
 import static org.fcrepo.RdfLexicon.HAS_COMPUTED_SIZE;
 import static org.fcrepo.RdfLexicon.HAS_CONTENT;
+import static org.fcrepo.RdfLexicon.HAS_LAST_FIXITY_CHECK;
 import static org.fcrepo.RdfLexicon.HAS_LOCATION;
 import static org.fcrepo.RdfLexicon.HAS_MEMBER_OF_RESULT;
 import static org.fcrepo.RdfLexicon.HAS_NAMESPACE_PREFIX;
@@ -63,6 +65,7 @@ import static org.fcrepo.utils.JcrRdfTools.getJcrNamespaceModel;
 import static org.fcrepo.utils.JcrRdfTools.getJcrNodeIteratorModel;
 import static org.fcrepo.utils.JcrRdfTools.getJcrPropertiesModel;
 import static org.fcrepo.utils.JcrRdfTools.getJcrTreeModel;
+import static org.fcrepo.utils.JcrRdfTools.getJcrTreeModels;
 import static org.fcrepo.utils.JcrRdfTools.getJcrVersionsModel;
 import static org.fcrepo.utils.JcrRdfTools.getNodeFromGraphSubject;
 import static org.fcrepo.utils.JcrRdfTools.getPropertyNameFromPredicate;
@@ -72,9 +75,11 @@ import static org.fcrepo.utils.JcrRdfTools.setGetClusterConfiguration;
 import static org.fcrepo.utils.JcrRdfTools.setLlstore;
 import static org.fcrepo.utils.NamespaceTools.getNamespaceRegistry;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -91,6 +96,7 @@ import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Calendar;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -118,6 +124,7 @@ import javax.jcr.version.VersionManager;
 
 import com.hp.hpl.jena.vocabulary.RDF;
 import org.fcrepo.RdfLexicon;
+import org.fcrepo.rdf.DescriptionSection;
 import org.fcrepo.rdf.GraphSubjects;
 import org.fcrepo.rdf.impl.DefaultGraphSubjects;
 import org.fcrepo.services.LowLevelStorageService;
@@ -444,6 +451,14 @@ public class JcrRdfToolsTest {
         assertTrue(actual.contains(testSubjects
                 .getGraphSubject(mockNodeContent), HAS_LOCATION, actual
                 .createLiteral("xyz")));
+
+        // the second time around, the locations come from the cache
+        final Model cached = getJcrPropertiesModel(testSubjects, mockNode);
+        assertTrue(cached.contains(testSubjects
+                .getGraphSubject(mockNodeContent), HAS_LOCATION, cached
+                .createLiteral("xyz")));
+        verify(mockLowLevelStorageService, times(1)).getLowLevelCacheEntries(
+                mockNodeContent);
     }
 
     @Test
@@ -546,46 +561,145 @@ public class JcrRdfToolsTest {
     }
 
     @Test
-    public void shouldIncludeChildNodeInformation() throws RepositoryException {
+    public void shouldOnlyCountChildNodesOutsideWindow()
+            throws RepositoryException {
         when(mockParent.getPath()).thenReturn("/test");
         when(mockNode.getPath()).thenReturn("/test/jcr");
         when(mockNode.getParent()).thenReturn(mockParent);
-        when(mockChildNode.getName()).thenReturn("some-name");
-        when(mockChildNode.getPath()).thenReturn("/test/jcr/1", "/test/jcr/2",
-                "/test/jcr/3", "/test/jcr/4", "/test/jcr/5");
         when(mockNodes.hasNext()).thenReturn(true, true, true, true, true,
                 false);
-        when(mockNodes.nextNode()).thenReturn(mockChildNode);
+        when(mockNodes.getSize()).thenReturn(5L);
 
         when(mockNode.getNodes()).thenReturn(mockNodes);
         final Model actual = getJcrTreeModel(testSubjects, mockNode, 0, 0);
-        assertEquals(5 * 2 + 1, actual.size());
+        assertEquals(1, actual.size());
+        assertEquals(5L, actual.listObjectsOfProperty(
+                HAS_CHILD_COUNT).next().asLiteral().getLong());
+        verify(mockNodes, never()).nextNode();
     }
 
     @Test
-    public void shouldIncludeFullChildNodeInformationInsideWindow()
+    public void shouldSkipToChildNodesInsideWindow()
             throws RepositoryException {
         when(mockParent.getPath()).thenReturn("/test");
         when(mockNode.getPath()).thenReturn("/test/jcr");
         when(mockNode.getParent()).thenReturn(mockParent);
-        when(mockChildNode.getName()).thenReturn("some-name");
-        when(mockChildNode.getPath()).thenReturn("/test/jcr/1", "/test/jcr/4",
-                "/test/jcr/5");
         when(mockFullChildNode.getName()).thenReturn("some-other-name");
         when(mockFullChildNode.getPath()).thenReturn("/test/jcr/2",
                 "/test/jcr/3");
         when(mockFullChildNode.getProperties()).thenReturn(mockProperties);
         when(mockProperties.hasNext()).thenReturn(false);
-        when(mockNodes.hasNext()).thenReturn(true, true, true, true, true,
-                false);
-        when(mockNodes.nextNode()).thenReturn(mockChildNode, mockFullChildNode,
+        when(mockNodes.getSize()).thenReturn(5L);
+        when(mockNodes.hasNext()).thenReturn(true, true, true, true, false);
+        when(mockNodes.nextNode()).thenReturn(mockFullChildNode,
                 mockFullChildNode, mockChildNode, mockChildNode);
         when(mockNode.getNodes()).thenReturn(mockNodes);
         final Model actual = getJcrTreeModel(testSubjects, mockNode, 1, 2);
-        assertEquals(5 * 2 + 1, actual.size());
+        assertEquals(2 * 2 + 1, actual.size());
+        verify(mockNodes).skip(1);
+        verify(mockNodes, times(2)).nextNode();
         verify(mockChildNode, never()).getProperties();
     }
 
+    @Test
+    public void shouldResumeAfterCursorAndLinkToNextPage()
+            throws RepositoryException {
+        final Node previous = mock(Node.class);
+        when(previous.getName()).thenReturn("b");
+        when(mockNode.getPath()).thenReturn("/test/jcr");
+        when(mockNode.hasNode("b")).thenReturn(true);
+        when(mockFullChildNode.getName()).thenReturn("c");
+        when(mockFullChildNode.getPath()).thenReturn("/test/jcr/c");
+        when(mockFullChildNode.getProperties()).thenReturn(mockProperties);
+        when(mockProperties.hasNext()).thenReturn(false);
+        when(mockChildNode.getName()).thenReturn("d");
+        when(mockNodes.getSize()).thenReturn(5L);
+        when(mockNodes.hasNext()).thenReturn(true);
+        when(mockNodes.nextNode()).thenReturn(previous, mockFullChildNode,
+                mockChildNode);
+        when(mockNodes.getPosition()).thenReturn(3L);
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+        final ChildCursor[] next = new ChildCursor[1];
+        final Function<ChildCursor, Model> pager =
+                new Function<ChildCursor, Model>() {
+
+                    @Override
+                    public Model apply(final ChildCursor cursor) {
+                        next[0] = cursor;
+                        return createDefaultModel();
+                    }
+                };
+
+        final Model actual =
+                getJcrTreeModel(testSubjects, mockNode, 0, new ChildCursor(2,
+                        "b"), 1, pager, DescriptionSection.all());
+        assertEquals(2 + 1, actual.size());
+        verify(mockNodes).skip(1);
+        verify(mockNodes, times(3)).nextNode();
+        assertEquals("c", next[0].getName());
+        assertEquals(3L, next[0].getPosition());
+    }
+
+    @Test
+    public void shouldCountOffsetPastExcludedChildNodes()
+            throws RepositoryException {
+        when(mockNode.getPath()).thenReturn("/test/jcr");
+        when(mockNode.hasNode(JCR_CONTENT)).thenReturn(true);
+        when(mockChildNode.getName()).thenReturn(JCR_CONTENT, "some-name");
+        when(mockChildNode.getPath()).thenReturn("/test/jcr/1");
+        when(mockFullChildNode.getName()).thenReturn("some-other-name");
+        when(mockFullChildNode.getPath()).thenReturn("/test/jcr/2");
+        when(mockFullChildNode.getProperties()).thenReturn(mockProperties);
+        when(mockProperties.hasNext()).thenReturn(false);
+        when(mockNodes.getSize()).thenReturn(3L);
+        when(mockNodes.hasNext()).thenReturn(true, true, true, false);
+        when(mockNodes.nextNode()).thenReturn(mockChildNode, mockChildNode,
+                mockFullChildNode);
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+        final Model actual = getJcrTreeModel(testSubjects, mockNode, 1, 1);
+        assertEquals(2 + 1, actual.size());
+        verify(mockNodes, never()).skip(anyLong());
+        assertEquals(2L, actual.listObjectsOfProperty(
+                HAS_CHILD_COUNT).next().asLiteral().getLong());
+    }
+
+    @Test
+    public void shouldReadChildNodesOnlyAsTheirModelsAreReached()
+            throws RepositoryException {
+        when(mockNode.getPath()).thenReturn("/test/jcr");
+        when(mockFullChildNode.getName()).thenReturn("some-other-name");
+        when(mockFullChildNode.getPath()).thenReturn("/test/jcr/1");
+        when(mockFullChildNode.getProperties()).thenReturn(mockProperties);
+        when(mockProperties.hasNext()).thenReturn(false);
+        when(mockNodes.hasNext()).thenReturn(true, false);
+        when(mockNodes.nextNode()).thenReturn(mockFullChildNode);
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+
+        final Iterator<Model> models =
+                getJcrTreeModels(testSubjects, mockNode, 0, -1);
+        verify(mockNodes, never()).nextNode();
+        // the root has no parent
+        assertEquals(0, models.next().size());
+        assertEquals(2, models.next().size());
+        verify(mockNodes).nextNode();
+        // and last, the count of children
+        assertEquals(1, models.next().size());
+        assertFalse(models.hasNext());
+    }
+
+    @Test
+    public void shouldNotVisitChildNodesWhenTheyAreLeftOut()
+            throws RepositoryException {
+        when(mockNode.getPath()).thenReturn("/test/jcr");
+        when(mockNode.getNodes()).thenReturn(mockNodes);
+
+        final Model actual =
+                getJcrTreeModel(testSubjects, mockNode, 0, null, -1, null,
+                        EnumSet.of(DescriptionSection.PARENT));
+        assertEquals(0, actual.size());
+        verify(mockNode, never()).getNodes();
+    }
+
     @Test
     public void shouldMapRdfValuesToJcrPropertyValues()
             throws RepositoryException {
@@ -907,6 +1021,7 @@ public class JcrRdfToolsTest {
                 createResource("abc").asNode()));
         assertTrue(gs.contains(ANY, ANY, HAS_COMPUTED_SIZE.asNode(),
                 createTypedLiteral(123).asNode()));
+        assertTrue(gs.contains(ANY, ANY, HAS_LAST_FIXITY_CHECK.asNode(), ANY));
 
     }
 
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -160,7 +161,9 @@ public class LowLevelCacheEntryTest {
                 new CacheStoreEntry(mockLowLevelCacheStore, "foo", testKey);
         final byte[] bytes = new byte[] {0, 1, 2, 3, 4};
         ispnEntry.storeValue(new ByteArrayInputStream(bytes));
-        verify(mockLowLevelCacheStore).store(any(InternalCacheEntry.class));
+        // the chunk and its digest
+        verify(mockLowLevelCacheStore, times(2)).store(
+                any(InternalCacheEntry.class));
     }
 
     @Test
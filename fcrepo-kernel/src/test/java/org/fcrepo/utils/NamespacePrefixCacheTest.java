@@ -0,0 +1,121 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Map;
+
+import javax.jcr.Repository;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.modeshape.jcr.api.NamespaceRegistry;
+
+public class NamespacePrefixCacheTest {
+
+    @Mock
+    private Session mockSession;
+
+    @Mock
+    private Session mockOtherSession;
+
+    @Mock
+    private Workspace mockWorkspace;
+
+    @Mock
+    private NamespaceRegistry mockNsRegistry;
+
+    @Mock
+    private Repository mockRepository;
+
+    @Mock
+    private Repository mockOtherRepository;
+
+    private NamespacePrefixCache testObj;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        initMocks(this);
+        when(mockSession.getRepository()).thenReturn(mockRepository);
+        when(mockSession.getWorkspace()).thenReturn(mockWorkspace);
+        when(mockOtherSession.getRepository()).thenReturn(mockOtherRepository);
+        when(mockOtherSession.getWorkspace()).thenReturn(mockWorkspace);
+        when(mockWorkspace.getNamespaceRegistry()).thenReturn(mockNsRegistry);
+        when(mockNsRegistry.getPrefixes()).thenReturn(
+                new String[] {"jcr", "xmlns", "some-prefix"});
+        when(mockNsRegistry.getURI("jcr")).thenReturn(
+                "http://www.jcp.org/jcr/1.0");
+        when(mockNsRegistry.getURI("xmlns")).thenReturn(
+                "http://www.w3.org/2000/xmlns/");
+        when(mockNsRegistry.getURI("some-prefix")).thenReturn(
+                "registered-uri#");
+        testObj = new NamespacePrefixCache(60000);
+    }
+
+    @Test
+    public void testGetPrefixes() throws RepositoryException {
+        final Map<String, String> prefixes = testObj.getPrefixes(mockSession);
+
+        assertEquals(2, prefixes.size());
+        assertEquals("info:fedora/fedora-system:def/internal#", prefixes
+                .get("fedora-internal"));
+        assertEquals("registered-uri#", prefixes.get("some-prefix"));
+    }
+
+    @Test
+    public void testReadsRegistryOnce() throws RepositoryException {
+        testObj.getPrefixes(mockSession);
+        testObj.getPrefixes(mockSession);
+
+        verify(mockNsRegistry, times(1)).getPrefixes();
+    }
+
+    @Test
+    public void testRereadsAfterInvalidate() throws RepositoryException {
+        testObj.getPrefixes(mockSession);
+        testObj.invalidate();
+        testObj.getPrefixes(mockSession);
+
+        verify(mockNsRegistry, times(2)).getPrefixes();
+    }
+
+    @Test
+    public void testRereadsForOtherRepository() throws RepositoryException {
+        testObj.getPrefixes(mockSession);
+        testObj.getPrefixes(mockOtherSession);
+
+        verify(mockNsRegistry, times(2)).getPrefixes();
+    }
+
+    @Test
+    public void testRereadsWhenExpired() throws RepositoryException {
+        testObj = new NamespacePrefixCache(-1);
+        testObj.getPrefixes(mockSession);
+        testObj.getPrefixes(mockSession);
+
+        verify(mockNsRegistry, times(2)).getPrefixes();
+    }
+}
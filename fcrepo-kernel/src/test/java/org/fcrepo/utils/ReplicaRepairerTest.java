@@ -0,0 +1,186 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.utils;
+
+import static java.util.Arrays.asList;
+import static org.apache.commons.io.IOUtils.copy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.modeshape.jcr.value.binary.BinaryStoreException;
+
+public class ReplicaRepairerTest {
+
+    private static final byte[] DATA = "0123456789".getBytes();
+
+    private static final URI CHECKSUM = URI
+            .create("urn:sha1:87acec17cd9dcd20a716cc2cf67417b71c8a7016");
+
+    @Mock
+    private LowLevelCacheEntry mockGoodEntry;
+
+    @Mock
+    private LowLevelCacheEntry mockBadEntry1;
+
+    @Mock
+    private LowLevelCacheEntry mockBadEntry2;
+
+    private ByteArrayOutputStream written1;
+
+    private ByteArrayOutputStream written2;
+
+    private final AtomicInteger commits = new AtomicInteger();
+
+    @Before
+    public void setUp() throws BinaryStoreException, IOException {
+        initMocks(this);
+        when(mockGoodEntry.getInputStream()).thenReturn(
+                new ByteArrayInputStream(DATA));
+        written1 = new ByteArrayOutputStream();
+        written2 = new ByteArrayOutputStream();
+        doAnswer(storeInto(written1)).when(mockBadEntry1).storeValue(
+                any(InputStream.class));
+        doAnswer(storeInto(written2)).when(mockBadEntry2).storeValue(
+                any(InputStream.class));
+    }
+
+    @Test
+    public void testRepairReadsGoodCopyOnce() throws BinaryStoreException {
+        final Collection<LowLevelCacheEntry> repaired =
+                new ReplicaRepairer(4).repair(mockGoodEntry, asList(
+                        mockBadEntry1, mockBadEntry2), CHECKSUM, DATA.length);
+
+        assertEquals(2, repaired.size());
+        assertEquals("0123456789", written1.toString());
+        assertEquals("0123456789", written2.toString());
+        verify(mockGoodEntry, times(1)).getInputStream();
+    }
+
+    @Test
+    public void testFailedStoreIsNotRepaired() throws BinaryStoreException,
+            IOException {
+        doThrow(new BinaryStoreException("Expected")).when(mockBadEntry2)
+                .storeValue(any(InputStream.class));
+
+        final Collection<LowLevelCacheEntry> repaired =
+                new ReplicaRepairer(4).repair(mockGoodEntry, asList(
+                        mockBadEntry1, mockBadEntry2), CHECKSUM, DATA.length);
+
+        assertEquals(1, repaired.size());
+        assertTrue(repaired.contains(mockBadEntry1));
+        assertEquals("0123456789", written1.toString());
+    }
+
+    @Test
+    public void testChangedGoodCopyRepairsNothing()
+        throws BinaryStoreException {
+        final Collection<LowLevelCacheEntry> repaired =
+                new ReplicaRepairer(4).repair(mockGoodEntry,
+                        asList(mockBadEntry1), URI.create("urn:sha1:abc"),
+                        DATA.length);
+
+        assertTrue(repaired.isEmpty());
+        assertEquals(0, commits.get());
+    }
+
+    @Test
+    public void testReadFailureAbortsStores() throws BinaryStoreException {
+        when(mockGoodEntry.getInputStream()).thenReturn(new InputStream() {
+
+            private int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ < 5) {
+                    return DATA[count];
+                }
+                throw new IOException("Expected");
+            }
+        });
+
+        final Collection<LowLevelCacheEntry> repaired =
+                new ReplicaRepairer(4).repair(mockGoodEntry, asList(
+                        mockBadEntry1, mockBadEntry2), CHECKSUM, DATA.length);
+
+        assertTrue(repaired.isEmpty());
+        assertEquals(0, commits.get());
+    }
+
+    @Test
+    public void testManyCopiesAreRepairedInBatches()
+        throws BinaryStoreException, IOException {
+        when(mockGoodEntry.getInputStream()).thenAnswer(
+                new Answer<InputStream>() {
+
+                    @Override
+                    public InputStream answer(
+                            final InvocationOnMock invocation) {
+                        return new ByteArrayInputStream(DATA);
+                    }
+                });
+        final List<LowLevelCacheEntry> damaged = new ArrayList<>();
+        for (int i = 0; i <= ReplicaRepairer.MAX_WRITERS; i++) {
+            final LowLevelCacheEntry entry = mock(LowLevelCacheEntry.class);
+            doAnswer(storeInto(new ByteArrayOutputStream())).when(entry)
+                    .storeValue(any(InputStream.class));
+            damaged.add(entry);
+        }
+
+        final Collection<LowLevelCacheEntry> repaired =
+                new ReplicaRepairer(4).repair(mockGoodEntry, damaged,
+                        CHECKSUM, DATA.length);
+
+        assertEquals(damaged.size(), repaired.size());
+        assertEquals(damaged.size(), commits.get());
+        verify(mockGoodEntry, times(2)).getInputStream();
+    }
+
+    private Answer<Void> storeInto(final ByteArrayOutputStream out) {
+        return new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+                throws IOException {
+                copy((InputStream) invocation.getArguments()[0], out);
+                commits.incrementAndGet();
+                return null;
+            }
+        };
+    }
+}
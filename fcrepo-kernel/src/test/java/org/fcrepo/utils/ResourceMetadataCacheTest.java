@@ -0,0 +1,139 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+import static org.fcrepo.utils.ResourceMetadataCache.CONTENT;
+import static org.fcrepo.utils.ResourceMetadataCache.DATASTREAMS;
+import static org.fcrepo.utils.ResourceMetadataCache.RESOURCE;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Date;
+
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+
+import org.fcrepo.TxSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class ResourceMetadataCacheTest {
+
+    private final ResourceMetadata metadata = new ResourceMetadata(new Date(),
+            null, "urn:sha1:abc", 4, "text/plain");
+
+    @Mock
+    private Session mockSession;
+
+    @Mock
+    private Workspace mockWorkspace;
+
+    private ResourceMetadataCache testObj;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(mockSession.getWorkspace()).thenReturn(mockWorkspace);
+        when(mockWorkspace.getName()).thenReturn("default");
+        testObj = new ResourceMetadataCache(10, 60000);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        testObj.put("/a/b", RESOURCE, metadata, testObj.generation());
+
+        assertSame(metadata, testObj.get("/a/b", RESOURCE));
+        assertNull(testObj.get("/a/b", DATASTREAMS));
+        assertNull(testObj.get("/a/b", CONTENT));
+        assertNull(testObj.get("/a", RESOURCE));
+    }
+
+    @Test
+    public void testInvalidateAncestors() {
+        testObj.put("/", RESOURCE, metadata, testObj.generation());
+        testObj.put("/a", DATASTREAMS, metadata, testObj.generation());
+        testObj.put("/a/b", RESOURCE, metadata, testObj.generation());
+        testObj.put("/a/c", RESOURCE, metadata, testObj.generation());
+
+        testObj.invalidate("/a/b/jcr:content/jcr:data");
+
+        assertNull(testObj.get("/", RESOURCE));
+        assertNull(testObj.get("/a", DATASTREAMS));
+        assertNull(testObj.get("/a/b", RESOURCE));
+        assertSame(metadata, testObj.get("/a/c", RESOURCE));
+    }
+
+    @Test
+    public void testInvalidateTree() {
+        testObj.put("/", RESOURCE, metadata, testObj.generation());
+        testObj.put("/a", RESOURCE, metadata, testObj.generation());
+        testObj.put("/a/b", RESOURCE, metadata, testObj.generation());
+        testObj.put("/ab", RESOURCE, metadata, testObj.generation());
+
+        testObj.invalidateTree("/a");
+
+        assertNull(testObj.get("/", RESOURCE));
+        assertNull(testObj.get("/a", RESOURCE));
+        assertNull(testObj.get("/a/b", RESOURCE));
+        assertSame(metadata, testObj.get("/ab", RESOURCE));
+    }
+
+    @Test
+    public void testStalePutIsDropped() {
+        final long generation = testObj.generation();
+        testObj.invalidate("/a/b");
+        testObj.put("/a/b", RESOURCE, metadata, generation);
+
+        assertNull(testObj.get("/a/b", RESOURCE));
+    }
+
+    @Test
+    public void testIsCurrentFor() {
+        assertFalse(testObj.isCurrentFor(mockSession));
+
+        testObj.keepCurrentFor("default");
+        assertTrue(testObj.isCurrentFor(mockSession));
+
+        when(mockWorkspace.getName()).thenReturn("other");
+        assertFalse(testObj.isCurrentFor(mockSession));
+    }
+
+    @Test
+    public void testNotCurrentForTransactions() {
+        final TxSession mockTxSession = mock(TxSession.class);
+        when(mockTxSession.getWorkspace()).thenReturn(mockWorkspace);
+        testObj.keepCurrentFor("default");
+
+        assertFalse(testObj.isCurrentFor(mockTxSession));
+    }
+
+    @Test
+    public void testDisabled() {
+        testObj = new ResourceMetadataCache(10, 0);
+        testObj.keepCurrentFor("default");
+        testObj.put("/a/b", RESOURCE, metadata, testObj.generation());
+
+        assertFalse(testObj.isCurrentFor(mockSession));
+        assertNull(testObj.get("/a/b", RESOURCE));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class VerifyingInputStreamTest {
+
+    private static final URI SHA1 =
+            URI.create("urn:sha1:3da541559918a808c2402bba5012f6c60b27661c");
+
+    private static final URI MD5 =
+            URI.create("urn:md5:912ec803b2ce49e4a541068d495ab570");
+
+    @Test
+    public void testMatchingContent() throws IOException {
+        final VerifyingInputStream testObj =
+                new VerifyingInputStream(stream("asdf"), SHA1, 4);
+        assertEquals("asdf", IOUtils.toString(testObj));
+        assertNull(testObj.getMismatch());
+    }
+
+    @Test
+    public void testMatchingContentWithOtherAlgorithm() throws IOException {
+        final VerifyingInputStream testObj =
+                new VerifyingInputStream(stream("asdf"), MD5, -1);
+        assertEquals("asdf", IOUtils.toString(testObj));
+        assertNull(testObj.getMismatch());
+    }
+
+    @Test
+    public void testMismatchedContentFailsAtTheEnd() {
+        final VerifyingInputStream testObj =
+                new VerifyingInputStream(stream("asdg"), SHA1, -1);
+        try {
+            IOUtils.toString(testObj);
+            fail("Expected the last read to fail");
+        } catch (final IOException e) {
+            assertNotNull(testObj.getMismatch());
+        }
+    }
+
+    @Test
+    public void testOversizedContentFailsEarly() throws IOException {
+        final VerifyingInputStream testObj =
+                new VerifyingInputStream(stream("asdfasdf"), SHA1, 4);
+        final byte[] buffer = new byte[4];
+        assertEquals(4, testObj.read(buffer));
+        try {
+            testObj.read();
+            fail("Expected the first read past the expected size to fail");
+        } catch (final IOException e) {
+            assertNotNull(testObj.getMismatch());
+        }
+    }
+
+    @Test
+    public void testTruncatedContentFails() {
+        final VerifyingInputStream testObj =
+                new VerifyingInputStream(stream("asd"), SHA1, 4);
+        try {
+            IOUtils.toString(testObj);
+            fail("Expected the last read to fail");
+        } catch (final IOException e) {
+            assertNotNull(testObj.getMismatch());
+        }
+    }
+
+    @Test
+    public void testSkippedBytesAreDigested() throws IOException {
+        final VerifyingInputStream testObj =
+                new VerifyingInputStream(stream("asdf"), SHA1, 4);
+        assertEquals(2, testObj.skip(2));
+        assertEquals("df", IOUtils.toString(testObj));
+        assertNull(testObj.getMismatch());
+    }
+
+    private static ByteArrayInputStream stream(final String content) {
+        return new ByteArrayInputStream(content.getBytes());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils.impl;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.apache.commons.io.FileUtils.deleteDirectory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.binary.BinaryStoreException;
+import org.modeshape.jcr.value.binary.FileSystemBinaryStore;
+
+import com.google.common.io.Files;
+
+public class LocalBinaryStoreEntryTest {
+
+    private File directory;
+
+    private FileSystemBinaryStore store;
+
+    @Before
+    public void setUp() {
+        directory = Files.createTempDir();
+        store = new FileSystemBinaryStore(directory);
+        store.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.shutdown();
+        deleteDirectory(directory);
+    }
+
+    @Test
+    public void testFileFollowsTheStoresLayout() throws BinaryStoreException,
+            IOException {
+        final BinaryValue binary =
+                store.storeValue(new ByteArrayInputStream("some content"
+                        .getBytes(UTF_8)));
+
+        final File file =
+                new LocalBinaryStoreEntry(store, binary.getKey()).getFile();
+
+        assertNotNull(file);
+        assertEquals("some content", Files.toString(file, UTF_8));
+    }
+
+    @Test
+    public void testNoFileForMissingBinary() {
+        assertNull(new LocalBinaryStoreEntry(store, new BinaryKey(
+                "0123456789abcdef0123456789abcdef01234567")).getFile());
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils.infinispan;
+
+import static org.fcrepo.utils.TestHelpers.randomData;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.infinispan.Cache;
+import org.junit.Test;
+
+public class CacheChunkInputStreamTest {
+
+    private static final String MOCK_KEY = "key-to-a-mock-blob";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSeeksThroughTheCache() throws IOException {
+        final byte[] data = randomData(1024);
+        final Cache<Object, Object> mockCache = mock(Cache.class);
+        when(mockCache.get(MOCK_KEY + "-0")).thenReturn(data);
+        when(mockCache.get(MOCK_KEY + "-7")).thenReturn(data);
+
+        final CacheChunkInputStream testObj =
+                new CacheChunkInputStream(mockCache, MOCK_KEY);
+        testObj.seek(7L * 1024 + 3);
+
+        assertEquals(data[3] & 0xff, testObj.read());
+        verify(mockCache, never()).get(MOCK_KEY + "-1");
+        testObj.close();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCantVerifyChunks() {
+        new CacheChunkInputStream(mock(Cache.class), MOCK_KEY)
+                .setVerifyChunks(true);
+    }
+}
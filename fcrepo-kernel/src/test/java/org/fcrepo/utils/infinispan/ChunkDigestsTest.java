@@ -0,0 +1,100 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.utils.infinispan;
+
+import static java.util.Collections.singleton;
+import static org.fcrepo.utils.infinispan.ChunkDigests.isChunkKey;
+import static org.fcrepo.utils.infinispan.ChunkDigests.removeWithChunks;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Collections;
+
+import org.fcrepo.utils.infinispan.ChunkDigests.ChunkRemovalListener;
+import org.infinispan.Cache;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class ChunkDigestsTest {
+
+    @Mock
+    private Cache<Object, Object> mockCache;
+
+    @Mock
+    private CacheStore mockStore;
+
+    @Mock
+    private CacheEntryRemovedEvent<Object, Object> mockEvent;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void testIsChunkKey() {
+        assertTrue(isChunkKey("abc-data-0"));
+        assertTrue(isChunkKey("abc-data-12"));
+        assertFalse(isChunkKey("abc-data-12-sha1"));
+        assertFalse(isChunkKey("abc-meta"));
+        assertFalse(isChunkKey("abc-"));
+        assertFalse(isChunkKey(12));
+    }
+
+    @Test
+    public void testRemovingChunkRemovesDigest() throws CacheLoaderException {
+        when(mockEvent.getKey()).thenReturn("abc-data-3");
+        new ChunkRemovalListener(mockStore).chunkRemoved(mockEvent);
+        verify(mockStore).remove("abc-data-3-sha1");
+    }
+
+    @Test
+    public void testRemovingDigestRemovesNothingElse()
+        throws CacheLoaderException {
+        when(mockEvent.getKey()).thenReturn("abc-data-3-sha1");
+        new ChunkRemovalListener(mockStore).chunkRemoved(mockEvent);
+
+        when(mockEvent.getKey()).thenReturn("abc-data-4");
+        when(mockEvent.isPre()).thenReturn(true);
+        new ChunkRemovalListener(mockStore).chunkRemoved(mockEvent);
+
+        verify(mockStore, never()).remove(anyString());
+    }
+
+    @Test
+    public void testRegistersOnce() {
+        when(mockCache.getListeners()).thenReturn(
+                Collections.<Object> emptySet());
+        removeWithChunks(mockCache, mockStore);
+        verify(mockCache).addListener(any(ChunkRemovalListener.class));
+
+        when(mockCache.getListeners()).thenReturn(
+                singleton((Object) new ChunkRemovalListener(mockStore)));
+        removeWithChunks(mockCache, mockStore);
+        verify(mockCache).addListener(any(ChunkRemovalListener.class));
+    }
+}
@@ -20,12 +20,15 @@ import static org.fcrepo.utils.TestHelpers.randomData;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.loaders.CacheLoaderException;
@@ -54,7 +57,7 @@ public class StoreChunkInputStreamTest {
     public void setUp() throws CacheLoaderException {
         initMocks(this);
         when(mockStore.containsKey(MOCK_FIRST_CHUNK)).thenReturn(true);
-        testObj = new StoreChunkInputStream(mockStore, MOCK_KEY);
+        testObj = new StoreChunkInputStream(mockStore, MOCK_KEY, 0);
     }
 
     @Test
@@ -144,9 +147,98 @@ public class StoreChunkInputStreamTest {
         verify(mockEntry, times(2)).getValue();
     }
 
+    @Test
+    public void testSkipJumpsOverWholeChunks() throws IOException,
+            CacheLoaderException {
+        final byte[] data = randomData(DATA_SIZE);
+        when(mockEntry.getValue()).thenReturn(data);
+        when(mockStore.load(MOCK_FIRST_CHUNK)).thenReturn(mockEntry);
+        when(mockStore.load(MOCK_KEY + "-1001")).thenReturn(mockEntry);
+
+        assertEquals(DATA_SIZE, testObj.read(new byte[DATA_SIZE], 0,
+                DATA_SIZE));
+        assertEquals(1000L * DATA_SIZE + 5, testObj
+                .skip(1000L * DATA_SIZE + 5));
+
+        assertEquals(data[5] & 0xff, testObj.read());
+        // only the chunk read and the one skipped to were loaded
+        verify(mockStore, times(2)).load(anyString());
+    }
+
     @Test
     public void testNextChunk() throws IOException {
         testObj.nextChunk();
     }
 
+
+    @Test
+    public void testVerifyChunks() throws IOException, CacheLoaderException {
+        final byte[] data = randomData(DATA_SIZE);
+        final byte[] badDigest = ChunkDigests.digest(randomData(DATA_SIZE));
+        final InternalCacheEntry mockDigestEntry =
+                mock(InternalCacheEntry.class);
+        when(mockDigestEntry.getValue()).thenReturn(badDigest);
+        when(mockEntry.getValue()).thenReturn(data);
+        when(mockStore.load(MOCK_KEY + "-0")).thenReturn(mockEntry);
+        when(mockStore.load(MOCK_KEY + "-1")).thenReturn(mockEntry);
+        when(mockStore.load(MOCK_KEY + "-1-sha1")).thenReturn(
+                mockDigestEntry);
+        testObj.setVerifyChunks(true);
+        while (testObj.read(new byte[DATA_SIZE], 0, DATA_SIZE) != -1) {
+            ;
+        }
+        assertEquals(1, testObj.getDamagedChunks().size());
+        assertTrue(testObj.getDamagedChunks().contains(1));
+        assertTrue(Arrays.equals(ChunkDigests.digest(data), testObj
+                .getUnrecordedDigests().get(0)));
+    }
+
+    @Test
+    public void testReadAhead() throws IOException, CacheLoaderException {
+        final byte[] data = randomData(DATA_SIZE);
+        when(mockEntry.getValue()).thenReturn(data);
+        when(mockStore.load(MOCK_KEY + "-0")).thenReturn(mockEntry);
+        when(mockStore.load(MOCK_KEY + "-1")).thenReturn(mockEntry);
+        when(mockStore.load(MOCK_KEY + "-2")).thenReturn(mockEntry);
+        testObj = new StoreChunkInputStream(mockStore, MOCK_KEY, 2);
+
+        final byte[] buffer = new byte[DATA_SIZE];
+        assertEquals(DATA_SIZE, testObj.read(buffer, 0, DATA_SIZE));
+        // the next two chunks were asked for with the first
+        verify(mockStore, timeout(1000)).load(MOCK_KEY + "-1");
+        verify(mockStore, timeout(1000)).load(MOCK_KEY + "-2");
+
+        int chunks = 1;
+        while (testObj.read(buffer, 0, DATA_SIZE) != -1) {
+            chunks++;
+        }
+        assertEquals(3, chunks);
+        testObj.close();
+    }
+
+    @Test
+    public void testSeek() throws IOException, CacheLoaderException {
+        final byte[] data = randomData(DATA_SIZE);
+        when(mockEntry.getValue()).thenReturn(data);
+        when(mockStore.load(MOCK_FIRST_CHUNK)).thenReturn(mockEntry);
+        when(mockStore.load(MOCK_KEY + "-1000")).thenReturn(mockEntry);
+
+        testObj.seek(1000L * DATA_SIZE + 5);
+
+        assertEquals(data[5] & 0xff, testObj.read());
+        assertEquals(DATA_SIZE - 6, testObj.available());
+        // only the first chunk (for the chunk size) and the target were read
+        verify(mockStore, times(2)).load(anyString());
+    }
+
+    @Test
+    public void testSeekPastTheEnd() throws IOException, CacheLoaderException {
+        final byte[] data = randomData(DATA_SIZE);
+        when(mockEntry.getValue()).thenReturn(data);
+        when(mockStore.load(MOCK_FIRST_CHUNK)).thenReturn(mockEntry);
+
+        testObj.seek(5L * DATA_SIZE);
+
+        assertEquals(-1, testObj.read());
+    }
 }
@@ -16,9 +16,13 @@
 
 package org.fcrepo.utils.infinispan;
 
+import static com.google.common.collect.ImmutableSet.of;
 import static org.fcrepo.utils.TestHelpers.randomData;
+import static org.fcrepo.utils.infinispan.StoreChunkOutputStream.CHUNKSIZE;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -61,6 +65,26 @@ public class StoreChunkOutputStreamTest {
             testObj.write(data);
         }
         testObj.close();
+        // two chunks and their digests
+        verify(mockStore, times(4)).store(any(InternalCacheEntry.class));
+        assertEquals(2, testObj.getNumberChunks());
+    }
+
+    @Test
+    public void testWritingSomeChunks() throws IOException,
+            CacheLoaderException {
+        when(mockStore.load(MOCK_KEY + "-0")).thenReturn(mockEntry);
+        when(mockEntry.getValue()).thenReturn(new byte[CHUNKSIZE]);
+        when(mockStore.containsKey(MOCK_KEY + "-1")).thenReturn(true);
+        testObj = new StoreChunkOutputStream(mockStore, MOCK_KEY, of(1));
+        final byte[] data = randomData(DATA_SIZE);
+        for (int i = 0; i < 1025; i++) {
+            testObj.write(data);
+        }
+        testObj.close();
+        // only to tell the chunk size
+        verify(mockStore).load(MOCK_KEY + "-0");
+        verify(mockStore).load(MOCK_KEY + "-1");
         verify(mockStore, times(2)).store(any(InternalCacheEntry.class));
         assertEquals(2, testObj.getNumberChunks());
     }
@@ -75,7 +99,68 @@ public class StoreChunkOutputStreamTest {
         }
         testObj.close();
         verify(mockStore).load(MOCK_KEY + "-0");
-        verify(mockStore, times(2)).store(any(InternalCacheEntry.class));
+        verify(mockStore, times(4)).store(any(InternalCacheEntry.class));
         assertEquals(2, testObj.getNumberChunks());
     }
+
+    @Test
+    public void testOverwriteKeepsExistingChunkSize() throws IOException,
+            CacheLoaderException {
+        when(mockStore.load(MOCK_KEY + "-0")).thenReturn(mockEntry);
+        when(mockEntry.getValue()).thenReturn(new byte[DATA_SIZE]);
+        when(mockStore.containsKey(MOCK_KEY + "-1")).thenReturn(true);
+        final byte[] data = randomData(DATA_SIZE);
+        for (int i = 0; i < 4; i++) {
+            testObj.write(data);
+        }
+        testObj.close();
+        assertEquals(DATA_SIZE, testObj.getChunkSize());
+        assertEquals(4, testObj.getNumberChunks());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRewritingChunksOfUnknownSizeIsRefused()
+        throws IOException {
+        testObj = new StoreChunkOutputStream(mockStore, MOCK_KEY, of(1));
+        testObj.write(randomData(DATA_SIZE));
+    }
+
+    @Test
+    public void testWritingNewKeyOnlyLooksUpFirstChunk() throws IOException,
+            CacheLoaderException {
+        final byte[] data = randomData(DATA_SIZE);
+        for (int i = 0; i < 2049; i++) {
+            testObj.write(data);
+        }
+        testObj.close();
+        verify(mockStore).load(MOCK_KEY + "-0");
+        verify(mockStore, never()).load(MOCK_KEY + "-1");
+        verify(mockStore, never()).load(MOCK_KEY + "-2");
+        verify(mockStore, times(6)).store(any(InternalCacheEntry.class));
+        assertEquals(3, testObj.getNumberChunks());
+    }
+
+    @Test
+    public void testWritingSynchronously() throws IOException,
+            CacheLoaderException {
+        testObj = new StoreChunkOutputStream(mockStore, MOCK_KEY, null, 0);
+        final byte[] data = randomData(DATA_SIZE);
+        for (int i = 0; i < 1024; i++) {
+            testObj.write(data);
+        }
+        // a full chunk is stored as soon as more data arrives
+        testObj.write(1);
+        verify(mockStore, times(2)).store(any(InternalCacheEntry.class));
+        testObj.close();
+        verify(mockStore, times(4)).store(any(InternalCacheEntry.class));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailedStoreFailsClose() throws IOException,
+            CacheLoaderException {
+        doThrow(new CacheLoaderException("Expected")).when(mockStore).store(
+                any(InternalCacheEntry.class));
+        testObj.write(randomData(DATA_SIZE));
+        testObj.close();
+    }
 }
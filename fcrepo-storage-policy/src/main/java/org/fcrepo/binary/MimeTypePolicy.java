@@ -72,4 +72,23 @@ public class MimeTypePolicy implements Policy {
 
         return null;
     }
+
+    /**
+     * @return the mime type this policy applies to
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return the binary storage hint
+     */
+    public String getHint() {
+        return hint;
+    }
+
+    @Override
+    public String toString() {
+        return "MimeTypePolicy(" + mimeType + " -> " + hint + ")";
+    }
 }
@@ -16,32 +16,49 @@
 
 package org.fcrepo.binary;
 
-import javax.jcr.Node;
+import static org.modeshape.jcr.api.JcrConstants.JCR_CONTENT;
+import static org.modeshape.jcr.api.JcrConstants.JCR_MIME_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import org.slf4j.Logger;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
-import static org.slf4j.LoggerFactory.getLogger;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.slf4j.Logger;
 
 /**
  * Service that evaluates a set of storage policies for an object and provides
- * storage hints for a binary stream
+ * storage hints for a binary stream.
+ *
+ * The policies are compiled into lookup tables whenever they change: a hash
+ * of mime types and a sorted map of size thresholds, so evaluating them
+ * doesn't walk every policy. The first matching policy, in the order they
+ * were added, still wins.
  * 
  * @author cbeer
  * @date Apr 25, 2013
  */
 public class PolicyDecisionPoint {
 
-    private static final Logger LOGGER = getLogger(MimeTypePolicy.class);
+    private static final Logger LOGGER = getLogger(PolicyDecisionPoint.class);
 
     private List<Policy> policies;
 
+    private volatile CompiledPolicies compiled;
+
     /**
      * Initialize the policy storage machinery
      */
     public PolicyDecisionPoint() {
         LOGGER.debug("Initializing binary PolicyDecisionPoint");
         policies = new ArrayList<Policy>();
+        compiled = new CompiledPolicies(policies);
     }
 
     /**
@@ -49,8 +66,9 @@ public class PolicyDecisionPoint {
      * 
      * @param p
      */
-    public void addPolicy(final Policy p) {
+    public synchronized void addPolicy(final Policy p) {
         policies.add(p);
+        compiled = new CompiledPolicies(policies);
     }
 
     /**
@@ -61,13 +79,19 @@ public class PolicyDecisionPoint {
      * @return
      */
     public String evaluatePolicies(final Node n) {
-        for (final Policy p : policies) {
-            final String h = p.evaluatePolicy(n);
-            if (h != null) {
-                return h;
-            }
-        }
-        return null;
+        return evaluatePolicies(n, -1);
+    }
+
+    /**
+     * Given a JCR node and the size of the content about to be stored in
+     * it, determine which storage policy should apply
+     * 
+     * @param n
+     * @param size the size of the content, or -1 if it isn't known
+     * @return
+     */
+    public String evaluatePolicies(final Node n, final long size) {
+        return compiled.evaluate(n, size);
     }
 
     /**
@@ -75,9 +99,116 @@ public class PolicyDecisionPoint {
      * 
      * @param policies
      */
-    public void setPolicies(final List<Policy> policies) {
+    public synchronized void setPolicies(final List<Policy> policies) {
         LOGGER.debug("Adding policies to " + "PolicyDecisionPoint: {}",
                 policies.toString());
-        this.policies = policies;
+        this.policies = new ArrayList<Policy>(policies);
+        compiled = new CompiledPolicies(this.policies);
+    }
+
+    /**
+     * A hint, and the position of the policy that gave it
+     */
+    private static class Rule {
+
+        final int position;
+
+        final String hint;
+
+        Rule(final int position, final String hint) {
+            this.position = position;
+            this.hint = hint;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the policies, indexed by what they match on
+     */
+    private static class CompiledPolicies {
+
+        private final Map<String, Rule> mimeTypes = new HashMap<>();
+
+        /**
+         * Each threshold maps to the earliest policy matching content of at
+         * least that size, so one floor lookup finds the winner
+         */
+        private final NavigableMap<Long, Rule> sizes = new TreeMap<>();
+
+        /**
+         * Policies we can't index, with their positions
+         */
+        private final Map<Integer, Policy> others = new TreeMap<>();
+
+        CompiledPolicies(final List<Policy> policies) {
+            final NavigableMap<Long, Rule> thresholds = new TreeMap<>();
+            for (int i = 0; i < policies.size(); i++) {
+                final Policy p = policies.get(i);
+                if (p instanceof MimeTypePolicy) {
+                    final MimeTypePolicy m = (MimeTypePolicy) p;
+                    if (!mimeTypes.containsKey(m.getMimeType())) {
+                        mimeTypes.put(m.getMimeType(), new Rule(i, m
+                                .getHint()));
+                    }
+                } else if (p instanceof SizePolicy) {
+                    final SizePolicy sp = (SizePolicy) p;
+                    final long min = Math.max(0, sp.getMinimumSize());
+                    if (!thresholds.containsKey(min)) {
+                        thresholds.put(min, new Rule(i, sp.getHint()));
+                    }
+                } else {
+                    others.put(i, p);
+                }
+            }
+
+            Rule best = null;
+            for (final Map.Entry<Long, Rule> t : thresholds.entrySet()) {
+                if (best == null || t.getValue().position < best.position) {
+                    best = t.getValue();
+                }
+                sizes.put(t.getKey(), best);
+            }
+        }
+
+        String evaluate(final Node n, final long size) {
+            Rule best = null;
+
+            if (!mimeTypes.isEmpty()) {
+                final String mimeType = getMimeType(n);
+                if (mimeType != null) {
+                    best = mimeTypes.get(mimeType);
+                }
+            }
+
+            if (size >= 0) {
+                final Map.Entry<Long, Rule> s = sizes.floorEntry(size);
+                if (s != null && (best == null ||
+                        s.getValue().position < best.position)) {
+                    best = s.getValue();
+                }
+            }
+
+            // only policies ahead of the best match so far can beat it
+            for (final Map.Entry<Integer, Policy> p : others.entrySet()) {
+                if (best != null && p.getKey() > best.position) {
+                    break;
+                }
+                final String h = p.getValue().evaluatePolicy(n);
+                if (h != null) {
+                    return h;
+                }
+            }
+
+            return best == null ? null : best.hint;
+        }
+
+        private static String getMimeType(final Node n) {
+            try {
+                return n.getNode(JCR_CONTENT).getProperty(JCR_MIME_TYPE)
+                        .getString();
+            } catch (final RepositoryException e) {
+                LOGGER.warn("Got Exception evaluating policy: {}", e);
+                return null;
+            }
+        }
     }
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.binary;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import javax.jcr.Node;
+
+import org.slf4j.Logger;
+
+/**
+ * A binary storage policy based on the size of the content being stored,
+ * e.g. to send large masters to a filesystem store and keep small
+ * thumbnails in a cache-backed one
+ */
+public class SizePolicy implements Policy {
+
+    private static final Logger LOGGER = getLogger(SizePolicy.class);
+
+    private final long minimumSize;
+
+    private final String hint;
+
+    /**
+     * Register a minimum size (in bytes) => binary storage hint mapping
+     */
+    public SizePolicy(final long minimumSize, final String hint) {
+        this.minimumSize = minimumSize;
+        this.hint = hint;
+    }
+
+    /**
+     * A node alone doesn't tell us how big the content about to be stored
+     * is, so this never matches; see {@link #evaluatePolicy(Node, long)}
+     */
+    @Override
+    public String evaluatePolicy(final Node n) {
+        return evaluatePolicy(n, -1);
+    }
+
+    /**
+     * Evaluate the size policy. If the content is at least this policy's
+     * minimum size, return the hint.
+     *
+     * @param n
+     * @param size the size of the content, or -1 if it isn't known
+     */
+    public String evaluatePolicy(final Node n, final long size) {
+        LOGGER.debug("Evaluating SizePolicy (>= {} -> {}) for {} of size {}",
+                minimumSize, hint, n, size);
+        return matches(size) ? hint : null;
+    }
+
+    /**
+     * @param size the size of the content, or -1 if it isn't known
+     * @return whether content of this size should get this policy's hint
+     */
+    public boolean matches(final long size) {
+        return size >= 0 && size >= minimumSize;
+    }
+
+    /**
+     * @return the smallest size (in bytes) this policy applies to
+     */
+    public long getMinimumSize() {
+        return minimumSize;
+    }
+
+    /**
+     * @return the binary storage hint
+     */
+    public String getHint() {
+        return hint;
+    }
+
+    @Override
+    public String toString() {
+        return "SizePolicy(>= " + minimumSize + " -> " + hint + ")";
+    }
+}
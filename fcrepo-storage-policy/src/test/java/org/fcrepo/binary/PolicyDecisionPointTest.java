@@ -16,16 +16,20 @@
 
 package org.fcrepo.binary;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.modeshape.jcr.api.JcrConstants.JCR_CONTENT;
 import static org.modeshape.jcr.api.JcrConstants.JCR_MIME_TYPE;
 
 import javax.jcr.Node;
 import javax.jcr.Property;
+import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
 import org.junit.BeforeClass;
@@ -110,4 +114,60 @@ public class PolicyDecisionPointTest {
         assertNull(receivedHint);
     }
 
+    @Test
+    public void testSizePolicies() throws Exception {
+        final PolicyDecisionPoint pdp = new PolicyDecisionPoint();
+        pdp.addPolicy(new MimeTypePolicy("image/tiff", tiffHint));
+        pdp.addPolicy(new SizePolicy(100, "big-store"));
+        pdp.addPolicy(new SizePolicy(10, "medium-store"));
+
+        final Node mockDsNode = mockNodeWithMimeType("image/jpeg");
+
+        assertThat(pdp.evaluatePolicies(mockDsNode, 1000), is("big-store"));
+        assertThat(pdp.evaluatePolicies(mockDsNode, 50), is("medium-store"));
+        assertNull(pdp.evaluatePolicies(mockDsNode, 5));
+        assertNull(pdp.evaluatePolicies(mockDsNode));
+    }
+
+    @Test
+    public void testFirstMatchingPolicyWins() throws Exception {
+        final PolicyDecisionPoint pdp = new PolicyDecisionPoint();
+        pdp.addPolicy(new SizePolicy(100, "big-store"));
+        pdp.addPolicy(new MimeTypePolicy("image/tiff", tiffHint));
+
+        final Node mockDsNode = mockNodeWithMimeType("image/tiff");
+
+        assertThat(pdp.evaluatePolicies(mockDsNode, 1000), is("big-store"));
+        assertThat(pdp.evaluatePolicies(mockDsNode, 10), is(tiffHint));
+    }
+
+    @Test
+    public void testOtherPoliciesKeepTheirOrder() throws Exception {
+        final PolicyDecisionPoint pdp = new PolicyDecisionPoint();
+        final Policy mockPolicy = mock(Policy.class);
+        final Node mockDsNode = mockNodeWithMimeType("image/tiff");
+        when(mockPolicy.evaluatePolicy(mockDsNode)).thenReturn("other-store");
+        pdp.setPolicies(asList(new MimeTypePolicy("image/tiff", tiffHint),
+                mockPolicy));
+
+        assertThat(pdp.evaluatePolicies(mockDsNode), is(tiffHint));
+        verify(mockPolicy, never()).evaluatePolicy(mockDsNode);
+
+        pdp.setPolicies(asList(mockPolicy, new MimeTypePolicy("image/tiff",
+                tiffHint)));
+
+        assertThat(pdp.evaluatePolicies(mockDsNode), is("other-store"));
+    }
+
+    private static Node mockNodeWithMimeType(final String mimeType)
+        throws RepositoryException {
+        final Node mockDsNode = mock(Node.class);
+        final Property mockProperty = mock(Property.class);
+        when(mockProperty.getString()).thenReturn(mimeType);
+        final Node mockContentNode = mock(Node.class);
+        when(mockDsNode.getNode(JCR_CONTENT)).thenReturn(mockContentNode);
+        when(mockContentNode.getProperty(JCR_MIME_TYPE)).thenReturn(
+                mockProperty);
+        return mockDsNode;
+    }
 }
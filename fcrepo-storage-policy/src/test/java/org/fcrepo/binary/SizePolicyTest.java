@@ -0,0 +1,50 @@
+/**
+ * Copyright 2013 DuraSpace, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fcrepo.binary;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import javax.jcr.Node;
+
+import org.junit.Test;
+
+public class SizePolicyTest {
+
+    private final SizePolicy policy = new SizePolicy(100, "big-store");
+
+    private final Node mockDsNode = mock(Node.class);
+
+    @Test
+    public void shouldEvaluatePolicyAndReturnHint() {
+        assertThat(policy.evaluatePolicy(mockDsNode, 100), is("big-store"));
+        assertThat(policy.evaluatePolicy(mockDsNode, 1000), is("big-store"));
+    }
+
+    @Test
+    public void shouldEvaluatePolicyAndReturnNoHint() {
+        assertNull(policy.evaluatePolicy(mockDsNode, 99));
+    }
+
+    @Test
+    public void shouldReturnNoHintForUnknownSize() {
+        assertNull(policy.evaluatePolicy(mockDsNode, -1));
+        assertNull(policy.evaluatePolicy(mockDsNode));
+    }
+}